@@ -66,6 +66,7 @@ import cn.nukkit.lang.TranslationContainer;
 import cn.nukkit.level.*;
 import cn.nukkit.level.format.FullChunk;
 import cn.nukkit.level.format.generic.BaseFullChunk;
+import cn.nukkit.level.format.generic.serializer.ChunkBlobs;
 import cn.nukkit.level.particle.ItemBreakParticle;
 import cn.nukkit.level.particle.PunchBlockParticle;
 import cn.nukkit.level.sound.ExperienceOrbSound;
@@ -107,10 +108,16 @@ import com.google.common.collect.HashBiMap;
 import io.netty.util.internal.PlatformDependent;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.ints.IntOpenHashSet;
+import it.unimi.dsi.fastutil.longs.Long2BooleanMap;
+import it.unimi.dsi.fastutil.longs.Long2BooleanOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongIterator;
 import it.unimi.dsi.fastutil.longs.LongLinkedOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import lombok.Getter;
 import lombok.Setter;
@@ -187,6 +194,8 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
 
     public static final int RESOURCE_PACK_CHUNK_SIZE = 8 * 1024; // 8KB
 
+    private static final int MAX_PENDING_BLOBS = 16384;
+
     /**
      * Regular expression for validating player name. Allows only: Number nicknames, letter nicknames, number and letters nicknames, nicknames with underscores, nicknames with space in the middle
      */
@@ -265,15 +274,42 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
 
     private final int loaderId;
 
-    public final Map<Long, Boolean> usedChunks = new Long2ObjectOpenHashMap<>();
+    /**
+     * Chunks sent to the player (true) or requested from the level (false)
+     */
+    public final Long2BooleanMap usedChunks = new Long2BooleanOpenHashMap();
 
     private int chunksSent = 0;
     private boolean hasSpawnChunks;
     protected final LongLinkedOpenHashSet loadQueue = new LongLinkedOpenHashSet();
     protected int nextChunkOrderRun = 1;
+    /**
+     * View the load queue was ordered for, null if the chunks have to be ordered from scratch
+     */
+    private ChunkViewShape chunkView;
+    private int chunkViewX;
+    private int chunkViewZ;
+    /**
+     * Chunks which were requested but not sent, or changed after they were sent, queued again by the next chunk order
+     */
+    private final LongSet pendingChunks = new LongOpenHashSet();
+
+    /**
+     * Whether the client supports the blob cache, see {@link ClientCacheStatusPacket}
+     */
+    private boolean blobCacheSupported;
+    /**
+     * Blobs sent by id whose status has not been reported by the client yet
+     */
+    private final Long2ObjectOpenHashMap<byte[]> pendingBlobs = new Long2ObjectOpenHashMap<>();
 
     protected final Map<UUID, Player> hiddenPlayers = new HashMap<>();
 
+    /**
+     * Resource pack chunks sent to the client by pack id, only tracked while chunks are sent ahead of the requests
+     */
+    protected final Map<UUID, BitSet> sentResourcePackChunks = new HashMap<>();
+
     protected Vector3 newPosition = null;
 
     protected int chunkRadius;
@@ -989,10 +1025,18 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
         }
         level.unregisterChunkLoader(this, x, z);
         this.loadQueue.remove(index);
+        this.pendingChunks.remove(index);
+
+        // Unloaded chunks within the view are sent again, like chunks which were never sent
+        if (level == this.level && this.chunkView != null && this.chunkView.contains(x - this.chunkViewX, z - this.chunkViewZ)) {
+            this.pendingChunks.add(index);
+        }
     }
 
     private void unloadChunks(boolean online) {
-        for (long index : this.usedChunks.keySet()) {
+        LongIterator iterator = this.usedChunks.keySet().iterator();
+        while (iterator.hasNext()) {
+            long index = iterator.nextLong();
             int chunkX = Level.getHashX(index);
             int chunkZ = Level.getHashZ(index);
             this.level.unregisterChunkLoader(this, chunkX, chunkZ);
@@ -1010,6 +1054,8 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
 
         this.usedChunks.clear();
         this.loadQueue.clear();
+        this.pendingChunks.clear();
+        this.chunkView = null;
     }
 
     public Position getSpawn() {
@@ -1050,7 +1096,9 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
             return;
         }
 
-        this.usedChunks.put(Level.chunkHash(x, z), Boolean.TRUE);
+        long index = Level.chunkHash(x, z);
+        this.usedChunks.put(index, true);
+        this.pendingChunks.remove(index);
 
         this.dataPacket(packet);
 
@@ -1087,6 +1135,13 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
     }
 
     public void sendChunk(int x, int z, int subChunkCount, byte[] payload, int dimension) {
+        this.sendChunk(x, z, subChunkCount, payload, dimension, null);
+    }
+
+    /**
+     * @param blobs the payload split up for the blob cache, the full payload is sent if null or the client does not use the cache
+     */
+    public void sendChunk(int x, int z, int subChunkCount, byte[] payload, int dimension, ChunkBlobs blobs) {
         if (!this.connected) {
             return;
         }
@@ -1096,11 +1151,71 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
         pk.chunkZ = z;
         pk.dimension = dimension;
         pk.subChunkCount = subChunkCount;
-        pk.data = payload;
+
+        if (blobs != null && this.isBlobCacheEnabled()) {
+            pk.cacheEnabled = true;
+            pk.blobIds = blobs.blobIds();
+            pk.data = blobs.extraData();
+            synchronized (this.pendingBlobs) {
+                if (this.pendingBlobs.size() > MAX_PENDING_BLOBS) {
+                    // The client doesn't answer, the blob store is still there for late requests
+                    this.pendingBlobs.clear();
+                }
+                long[] blobIds = blobs.blobIds();
+                for (int i = 0; i < blobIds.length; i++) {
+                    this.pendingBlobs.put(blobIds[i], blobs.blobs()[i]);
+                }
+            }
+        } else {
+            pk.data = payload;
+        }
 
         this.sendChunk(x, z, pk);
     }
 
+    public boolean isBlobCacheSupported() {
+        return this.blobCacheSupported;
+    }
+
+    public void setBlobCacheSupported(boolean blobCacheSupported) {
+        this.blobCacheSupported = blobCacheSupported;
+    }
+
+    /**
+     * @return whether chunks are sent to this player by blob ids
+     */
+    public boolean isBlobCacheEnabled() {
+        return this.blobCacheSupported && this.server.getSettings().network().clientBlobCache();
+    }
+
+    /**
+     * Send the blobs the client is missing and forget about the ones it reported.
+     */
+    public void handleBlobStatus(long[] missingBlobIds, long[] foundBlobIds) {
+        ClientCacheMissResponsePacket response = new ClientCacheMissResponsePacket();
+        synchronized (this.pendingBlobs) {
+            for (long blobId : foundBlobIds) {
+                this.pendingBlobs.remove(blobId);
+            }
+
+            for (long blobId : missingBlobIds) {
+                byte[] blob = this.pendingBlobs.remove(blobId);
+                if (blob == null) {
+                    blob = this.server.getClientBlobStore().get(blobId);
+                }
+                if (blob != null) {
+                    response.blobs.put(blobId, blob);
+                } else {
+                    log.debug("{} requested unknown blob {}", this.username, blobId);
+                }
+            }
+        }
+
+        if (!response.blobs.isEmpty()) {
+            this.dataPacket(response);
+        }
+    }
+
     protected void sendNextChunk() {
         if (!this.connected) {
             return;
@@ -1108,6 +1223,7 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
 
         if (!loadQueue.isEmpty()) {
             int count = 0;
+            boolean asyncLoading = server.getSettings().world().chunk().asyncLoading();
             LongIterator iter = loadQueue.longIterator();
             while (iter.hasNext()) {
                 if (count >= server.getSettings().world().chunk().sendingPerTick()) {
@@ -1124,6 +1240,12 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
                     this.usedChunks.put(index, false);
                     this.level.registerChunkLoader(this, chunkX, chunkZ, false);
 
+                    if (asyncLoading && !this.level.isChunkLoaded(chunkX, chunkZ)) {
+                        // Keep the chunk queued, it will be populated and sent once it has been read from disk
+                        this.level.loadChunkAsync(chunkX, chunkZ, true);
+                        continue;
+                    }
+
                     if (!this.level.populateChunk(chunkX, chunkZ)) {
                         if (this.spawned && this.teleportPosition == null) {
                             continue;
@@ -1133,6 +1255,7 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
                     }
 
                     iter.remove();
+                    this.pendingChunks.add(index);
                 } catch (Exception ex) {
                     server.getLogger().logException(ex);
                     return;
@@ -1210,7 +1333,9 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
             this.server.broadcastMessage(playerJoinEvent.getJoinMessage());
         }
 
-        for (long index : this.usedChunks.keySet()) {
+        LongIterator usedChunks = this.usedChunks.keySet().iterator();
+        while (usedChunks.hasNext()) {
+            long index = usedChunks.nextLong();
             int chunkX = Level.getHashX(index);
             int chunkZ = Level.getHashZ(index);
             for (Entity entity : this.level.getChunkEntities(chunkX, chunkZ).values()) {
@@ -1238,6 +1363,12 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
         }
     }
 
+    /**
+     * Queue the chunks around the player which were not sent yet and unload the chunks which went out of view.
+     * <p>
+     * Only the rows of the view which changed since the last run are looked at. The queue is ordered by distance, with
+     * chunks behind the player loaded as if they were further away.
+     */
     protected boolean orderChunks() {
         if (!this.connected) {
             return false;
@@ -1245,75 +1376,69 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
 
         this.nextChunkOrderRun = 20;
 
-        loadQueue.clear();
-        Long2ObjectOpenHashMap<Boolean> lastChunk = new Long2ObjectOpenHashMap<>(this.usedChunks);
-
         int centerX = (int) this.x >> 4;
         int centerZ = (int) this.z >> 4;
 
         int spawnThreshold = (int) Math.ceil(Math.sqrt(this.server.getSettings().world().chunk().spawnChunksThreshold()));
-        int radius = spawned ? this.chunkRadius : spawnThreshold;
-        int radiusSqr = radius * radius;
-
-        long index;
-        for (int x = 0; x <= radius; x++) {
-            int xx = x * x;
-            for (int z = 0; z <= x; z++) {
-                int distanceSqr = xx + z * z;
-                if (distanceSqr > radiusSqr) continue;
-
-                /* Top right quadrant */
-                if (this.usedChunks.get(index = Level.chunkHash(centerX + x, centerZ + z)) != Boolean.TRUE) {
+        ChunkViewShape view = ChunkViewShape.get(spawned ? this.chunkRadius : spawnThreshold);
+
+        ChunkViewShape lastView = this.chunkView;
+        int lastX = this.chunkViewX;
+        int lastZ = this.chunkViewZ;
+        this.chunkView = view;
+        this.chunkViewX = centerX;
+        this.chunkViewZ = centerZ;
+
+        if (lastView == null) {
+            this.loadQueue.clear();
+            for (int i = 0; i < view.size(); i++) {
+                long index = Level.chunkHash(centerX + view.getOffsetX(i), centerZ + view.getOffsetZ(i));
+                if (!this.usedChunks.get(index)) {
                     this.loadQueue.add(index);
                 }
-                lastChunk.remove(index);
-                /* Top left quadrant */
-                if (this.usedChunks.get(index = Level.chunkHash(centerX - x - 1, centerZ + z)) != Boolean.TRUE) {
-                    this.loadQueue.add(index);
+            }
+
+            LongList outOfView = new LongArrayList();
+            LongIterator iterator = this.usedChunks.keySet().iterator();
+            while (iterator.hasNext()) {
+                long index = iterator.nextLong();
+                if (!view.contains(Level.getHashX(index) - centerX, Level.getHashZ(index) - centerZ)) {
+                    outOfView.add(index);
                 }
-                lastChunk.remove(index);
-                /* Bottom right quadrant */
-                if (this.usedChunks.get(index = Level.chunkHash(centerX + x, centerZ - z - 1)) != Boolean.TRUE) {
-                    this.loadQueue.add(index);
+            }
+            for (int i = 0; i < outOfView.size(); i++) {
+                long index = outOfView.getLong(i);
+                this.unloadChunk(Level.getHashX(index), Level.getHashZ(index));
+            }
+        } else if (lastView != view || lastX != centerX || lastZ != centerZ) {
+            lastView.forEachNotIn(lastX, lastZ, view, centerX, centerZ, index -> {
+                if (this.usedChunks.containsKey(index)) {
+                    this.unloadChunk(Level.getHashX(index), Level.getHashZ(index));
+                } else {
+                    this.loadQueue.remove(index);
                 }
-                lastChunk.remove(index);
-                /* Bottom left quadrant */
-                if (this.usedChunks.get(index = Level.chunkHash(centerX - x - 1, centerZ - z - 1)) != Boolean.TRUE) {
+            });
+            view.forEachNotIn(centerX, centerZ, lastView, lastX, lastZ, index -> {
+                if (!this.usedChunks.get(index)) {
                     this.loadQueue.add(index);
                 }
-                lastChunk.remove(index);
-                if (x != z) {
-                    /* Top right quadrant mirror */
-                    if (this.usedChunks.get(index = Level.chunkHash(centerX + z, centerZ + x)) != Boolean.TRUE) {
-                        this.loadQueue.add(index);
-                    }
-                    lastChunk.remove(index);
-                    /* Top left quadrant mirror */
-                    if (this.usedChunks.get(index = Level.chunkHash(centerX - z - 1, centerZ + x)) != Boolean.TRUE) {
-                        this.loadQueue.add(index);
-                    }
-                    lastChunk.remove(index);
-                    /* Bottom right quadrant mirror */
-                    if (this.usedChunks.get(index = Level.chunkHash(centerX + z, centerZ - x - 1)) != Boolean.TRUE) {
-                        this.loadQueue.add(index);
-                    }
-                    lastChunk.remove(index);
-                    /* Bottom left quadrant mirror */
-                    if (this.usedChunks.get(index = Level.chunkHash(centerX - z - 1, centerZ - x - 1)) != Boolean.TRUE) {
-                        this.loadQueue.add(index);
-                    }
-                    lastChunk.remove(index);
-                }
-            }
+            });
         }
 
-        LongIterator keys = lastChunk.keySet().iterator();
-        while (keys.hasNext()) {
-            index = keys.nextLong();
-            this.unloadChunk(Level.getHashX(index), Level.getHashZ(index));
+        if (!this.pendingChunks.isEmpty()) {
+            LongIterator iterator = this.pendingChunks.iterator();
+            while (iterator.hasNext()) {
+                long index = iterator.nextLong();
+                if (!this.usedChunks.get(index) && view.contains(Level.getHashX(index) - centerX, Level.getHashZ(index) - centerZ)) {
+                    this.loadQueue.add(index);
+                }
+            }
+            this.pendingChunks.clear();
         }
 
         if (!loadQueue.isEmpty()) {
+            this.sortLoadQueue(centerX, centerZ);
+
             NetworkChunkPublisherUpdatePacket packet = new NetworkChunkPublisherUpdatePacket();
             packet.position = this.asBlockVector3();
             packet.radius = this.chunkRadius << 4;
@@ -1323,6 +1448,35 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
         return true;
     }
 
+    private void sortLoadQueue(int centerX, int centerZ) {
+        int size = this.loadQueue.size();
+        if (size < 2) {
+            return;
+        }
+
+        double yaw = Math.toRadians(this.yaw);
+        double directionX = -Math.sin(yaw);
+        double directionZ = Math.cos(yaw);
+
+        long[] chunks = this.loadQueue.toLongArray();
+        long[] order = new long[size];
+        for (int i = 0; i < size; i++) {
+            int offsetX = Level.getHashX(chunks[i]) - centerX;
+            int offsetZ = Level.getHashZ(chunks[i]) - centerZ;
+            long distance = ChunkViewShape.distanceSquared(offsetX, offsetZ);
+            if (distance > 4 && (offsetX + 0.5) * directionX + (offsetZ + 0.5) * directionZ < 0) {
+                distance = distance * 9 / 4;
+            }
+            order[i] = distance << 32 | i;
+        }
+        Arrays.sort(order);
+
+        this.loadQueue.clear();
+        for (long key : order) {
+            this.loadQueue.add(chunks[(int) key]);
+        }
+    }
+
     @Deprecated
     public boolean batchDataPacket(DataPacket packet) {
         return this.dataPacket(packet);
@@ -1342,8 +1496,8 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
         packet = packet.clone();
         packet.protocol = this.protocol;
 
-        DataPacketSendEvent event = new DataPacketSendEvent(this, packet);
-        if (!event.call()) {
+        if (this.server.getPluginManager().hasListeners(DataPacketSendEvent.class)
+                && !new DataPacketSendEvent(this, packet).call()) {
             return false;
         }
 
@@ -1855,14 +2009,17 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
                         }
                     });
                 } else {
-                    if (this.getLevel().getDimension() == Level.DIMENSION_NETHER) {
-                        this.teleport(this.getServer().getDefaultLevel().getSafeSpawn(), TeleportCause.NETHER_PORTAL);
-                    } else {
-                        Level nether = this.getServer().getNetherWorld(this.level.getName());
-                        if (nether != null) {
-                            this.teleport(nether.getSafeSpawn(), TeleportCause.NETHER_PORTAL);
+                    // Finding the spawn loads chunks of the target level, which may be ticking on another worker
+                    this.server.executeBetweenLevelTicks(() -> {
+                        if (this.getLevel().getDimension() == Level.DIMENSION_NETHER) {
+                            this.teleport(this.getServer().getDefaultLevel().getSafeSpawn(), TeleportCause.NETHER_PORTAL);
+                        } else {
+                            Level nether = this.getServer().getNetherWorld(this.level.getName());
+                            if (nether != null) {
+                                this.teleport(nether.getSafeSpawn(), TeleportCause.NETHER_PORTAL);
+                            }
                         }
-                    }
+                    });
                 }
             }
         }
@@ -2088,6 +2245,7 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
             this.y = from.y;
             this.z = from.z;
             this.boundingBox.setBounds(this.x - 0.3, this.y, this.z - 0.3, this.x + 0.3, this.y + this.getHeight(), this.z + 0.3);
+            this.level.getEntityIndex().update(this);
 
             this.lastX = from.x;
             this.lastY = from.y;
@@ -2240,7 +2398,7 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
      * @param motion new motion vector
      */
     public void setMotionLocally(Vector3 motion) {
-        if (!this.justCreated) {
+        if (!this.justCreated && this.server.getPluginManager().hasListeners(EntityMotionEvent.class)) {
             EntityMotionEvent ev = new EntityMotionEvent(this, motion);
             ev.call();
             if (ev.isCancelled()) {
@@ -4348,6 +4506,8 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
 
     @Override
     protected void checkChunks() {
+        this.level.getEntityIndex().update(this);
+
         if (this.chunk == null || (this.chunk.getX() != ((int) this.x >> 4) || this.chunk.getZ() != ((int) this.z >> 4))) {
             if (this.chunk != null) {
                 this.chunk.removeEntity(this);
@@ -4391,7 +4551,7 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
             for (int X = -1; X <= 1; ++X) {
                 for (int Z = -1; Z <= 1; ++Z) {
                     long index = Level.chunkHash(chunkX + X, chunkZ + Z);
-                    if (!this.usedChunks.containsKey(index) || !this.usedChunks.get(index)) {
+                    if (!this.usedChunks.get(index)) {
                         return false;
                     }
                 }
@@ -4429,6 +4589,13 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
             return false;
         }
 
+        if (location.level != null && location.level != this.level && this.server.isLevelTickWorkerThread()) {
+            // The target level may be ticking on another worker, teleport once every level is done
+            Location target = new Location(location.x, location.y, location.z, location.yaw, location.pitch, location.headYaw, location.level);
+            this.server.executeBetweenLevelTicks(() -> this.teleport(target, cause));
+            return true;
+        }
+
         Location from = this.getLocation();
         Location to = location;
 
@@ -4911,7 +5078,11 @@ public class Player extends EntityHuman implements CommandSender, InventoryHolde
 
     @Override
     public void onChunkChanged(FullChunk chunk) {
-        this.usedChunks.remove(Level.chunkHash(chunk.getX(), chunk.getZ()));
+        long index = Level.chunkHash(chunk.getX(), chunk.getZ());
+        if (this.usedChunks.containsKey(index)) {
+            this.usedChunks.remove(index);
+            this.pendingChunks.add(index);
+        }
     }
 
     @Override
@@ -24,6 +24,7 @@ import com.google.common.collect.BiMap;
 import org.jetbrains.annotations.NotNull;
 
 import java.net.InetSocketAddress;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -114,6 +115,10 @@ public final class PlayerHandle {
         return player.serverSettings;
     }
 
+    public Map<UUID, BitSet> getSentResourcePackChunks() {
+        return player.sentResourcePackChunks;
+    }
+
     public Cache<String, FormWindowDialog> getDialogWindows() {
         return player.dialogWindows;
     }
@@ -38,6 +38,7 @@ import cn.nukkit.nbt.tag.DoubleTag;
 import cn.nukkit.nbt.tag.FloatTag;
 import cn.nukkit.nbt.tag.ListTag;
 import cn.nukkit.network.BatchingHelper;
+import cn.nukkit.network.ClientBlobStore;
 import cn.nukkit.network.Network;
 import cn.nukkit.network.RakNetInterface;
 import cn.nukkit.network.SourceInterface;
@@ -57,6 +58,7 @@ import cn.nukkit.registry.Registries;
 import cn.nukkit.resourcepacks.ResourcePackManager;
 import cn.nukkit.resourcepacks.loader.JarPluginResourcePackLoader;
 import cn.nukkit.resourcepacks.loader.ZippedResourcePackLoader;
+import cn.nukkit.scheduler.LevelTickPool;
 import cn.nukkit.scheduler.ServerScheduler;
 import cn.nukkit.scheduler.Task;
 import cn.nukkit.scoreboard.manager.IScoreboardManager;
@@ -82,6 +84,7 @@ import org.iq80.leveldb.DB;
 import org.iq80.leveldb.Options;
 import org.iq80.leveldb.impl.Iq80DBFactory;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
@@ -204,6 +207,9 @@ public class Server {
     private PlayerDataSerializer playerDataSerializer;
     private EntitySpawnerTask spawnerTask;
     private final BatchingHelper batchingHelper;
+    private final ClientBlobStore clientBlobStore;
+    @Nullable
+    private final LevelTickPool levelTickPool;
 
     Server(final String filePath, String dataPath, String pluginPath, boolean loadPlugins, boolean debug) {
         Preconditions.checkState(instance == null, "Already initialized!");
@@ -268,7 +274,15 @@ public class Server {
 
         this.scheduler = new ServerScheduler();
 
-        this.batchingHelper = new BatchingHelper();
+        this.batchingHelper = new BatchingHelper(settings.network().batchingThreads());
+        this.clientBlobStore = new ClientBlobStore(settings.network().blobStoreMb() * 1024L * 1024L);
+
+        if (settings.performance().parallelLevelTicking()) {
+            int levelTickThreads = settings.performance().levelTickThreads();
+            this.levelTickPool = new LevelTickPool(levelTickThreads > 0 ? levelTickThreads : Runtime.getRuntime().availableProcessors());
+        } else {
+            this.levelTickPool = null;
+        }
 
         if (settings.network().rcon().enable()) {
             try {
@@ -562,6 +576,14 @@ public class Server {
         this.batchingHelper.batchPackets(players, packets);
     }
 
+    public BatchingHelper getBatchingHelper() {
+        return this.batchingHelper;
+    }
+
+    public ClientBlobStore getClientBlobStore() {
+        return this.clientBlobStore;
+    }
+
     @Deprecated
     public void batchPackets(Player[] players, DataPacket[] packets, boolean forceSync) {
         this.batchingHelper.batchPackets(players, packets);
@@ -690,6 +712,11 @@ public class Server {
                 this.nextTick = System.currentTimeMillis(); // Fix Watchdog killing the server while saving worlds
             }
 
+            if (this.levelTickPool != null) {
+                this.getLogger().debug("Stopping level tick pool...");
+                this.levelTickPool.shutdown();
+            }
+
             this.getLogger().debug("Removing event handlers...");
             HandlerList.unregisterAll();
 
@@ -932,45 +959,54 @@ public class Server {
         int baseTickRate = this.settings.performance().baseTickRate();
 
         // Do level ticks
-        for (Level level : this.levelArray) {
-            if (level.isBeingConverted || (level.getTickRate() > baseTickRate && --level.tickRateCounter > 0)) {
-                continue;
+        if (this.levelTickPool != null && this.levelArray.length > 1) {
+            // Levels are ticked in parallel, tick() only returns once all of them are done
+            this.levelTickPool.tick(this.levelArray, level -> this.tickLevel(level, currentTick, baseTickRate));
+        } else {
+            for (Level level : this.levelArray) {
+                this.tickLevel(level, currentTick, baseTickRate);
             }
+        }
+    }
 
-            try {
-                long levelTime = System.currentTimeMillis();
-                level.providerLock.readLock().lock();
-                if (level.getProvider() == null) {//世界在其他线程上卸载
-                    continue;
-                }
-                level.doTick(currentTick);
-                int tickMs = (int) (System.currentTimeMillis() - levelTime);
-                level.tickRateTime = tickMs;
-
-                if (this.settings.performance().autoTickRate()) {
-                    if (tickMs < 50 && level.getTickRate() > baseTickRate) {
-                        int r;
-                        level.setTickRate(r = level.getTickRate() - 1);
-                        if (r > baseTickRate) {
-                            level.tickRateCounter = level.getTickRate();
-                        }
-                        this.getLogger().debug("Raising level \"" + level.getName() + "\" tick rate to " + level.getTickRate() + " ticks");
-                    } else if (tickMs >= 50) {
-                        if (level.getTickRate() == baseTickRate) {
-                            level.setTickRate(Math.max(baseTickRate + 1, Math.min(this.settings.performance().autoTickRateLimit(), tickMs / 50)));
-                            this.getLogger().debug("Level \"" + level.getName() + "\" took " + tickMs + "ms, setting tick rate to " + level.getTickRate() + " ticks");
-                        } else if ((tickMs / level.getTickRate()) >= 50 && level.getTickRate() < this.settings.performance().autoTickRateLimit()) {
-                            level.setTickRate(level.getTickRate() + 1);
-                            this.getLogger().debug("Level \"" + level.getName() + "\" took " + tickMs + "ms, setting tick rate to " + level.getTickRate() + " ticks");
-                        }
+    private void tickLevel(Level level, int currentTick, int baseTickRate) {
+        if (level.isBeingConverted || (level.getTickRate() > baseTickRate && --level.tickRateCounter > 0)) {
+            return;
+        }
+
+        try {
+            long levelTime = System.currentTimeMillis();
+            level.providerLock.readLock().lock();
+            if (level.getProvider() == null) {//世界在其他线程上卸载
+                return;
+            }
+            level.doTick(currentTick);
+            int tickMs = (int) (System.currentTimeMillis() - levelTime);
+            level.tickRateTime = tickMs;
+
+            if (this.settings.performance().autoTickRate()) {
+                if (tickMs < 50 && level.getTickRate() > baseTickRate) {
+                    int r;
+                    level.setTickRate(r = level.getTickRate() - 1);
+                    if (r > baseTickRate) {
                         level.tickRateCounter = level.getTickRate();
                     }
+                    this.getLogger().debug("Raising level \"" + level.getName() + "\" tick rate to " + level.getTickRate() + " ticks");
+                } else if (tickMs >= 50) {
+                    if (level.getTickRate() == baseTickRate) {
+                        level.setTickRate(Math.max(baseTickRate + 1, Math.min(this.settings.performance().autoTickRateLimit(), tickMs / 50)));
+                        this.getLogger().debug("Level \"" + level.getName() + "\" took " + tickMs + "ms, setting tick rate to " + level.getTickRate() + " ticks");
+                    } else if ((tickMs / level.getTickRate()) >= 50 && level.getTickRate() < this.settings.performance().autoTickRateLimit()) {
+                        level.setTickRate(level.getTickRate() + 1);
+                        this.getLogger().debug("Level \"" + level.getName() + "\" took " + tickMs + "ms, setting tick rate to " + level.getTickRate() + " ticks");
+                    }
+                    level.tickRateCounter = level.getTickRate();
                 }
-            } catch (Exception e) {
-                log.error(this.baseLang.translateString("nukkit.level.tickError", new String[]{level.getFolderName(), Utils.getExceptionMessage(e)}));
-            } finally {
-                level.providerLock.readLock().unlock();
             }
+        } catch (Exception e) {
+            log.error(this.baseLang.translateString("nukkit.level.tickError", new String[]{level.getFolderName(), Utils.getExceptionMessage(e)}));
+        } finally {
+            level.providerLock.readLock().unlock();
         }
     }
 
@@ -2115,6 +2151,28 @@ public class Server {
         return Thread.currentThread() == currentThread;
     }
 
+    /**
+     * @return true if the current thread is a worker ticking a level in parallel to the other levels
+     */
+    public boolean isLevelTickWorkerThread() {
+        return this.levelTickPool != null && this.levelTickPool.isWorkerThread();
+    }
+
+    /**
+     * Run a task touching more than one level, like moving an entity to another level. The task runs immediately
+     * unless it is called from a worker ticking a level in parallel, in which case it runs on the main thread once
+     * every level has finished its tick.
+     *
+     * @param task task to run
+     */
+    public void executeBetweenLevelTicks(Runnable task) {
+        if (this.isLevelTickWorkerThread()) {
+            this.levelTickPool.executeAfterTick(task);
+        } else {
+            task.run();
+        }
+    }
+
     /**
      * Get server's primary thread
      *
@@ -0,0 +1,349 @@
+package cn.nukkit.block;
+
+import cn.nukkit.math.AxisAlignedBB;
+import cn.nukkit.math.SimpleAxisAlignedBB;
+import cn.nukkit.registry.Registries;
+import lombok.extern.log4j.Log4j2;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
+
+import java.io.InputStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.objectweb.asm.Opcodes.*;
+
+/**
+ * Collision shapes of block states, looked up by full block id ({@code id << Block.DATA_BITS | data}).
+ * <p>
+ * A state has a static shape when its bounding box and {@link Block#canPassThrough()} only depend on the state itself,
+ * so collision checks can use the shape without creating a {@link Block}. Whether that is the case is decided once per
+ * block class by looking at the bytecode of the methods defining the shape: they must not touch the level, neighbour
+ * blocks or anything else outside the block. The shape is then taken from the block at two different positions, which
+ * also has to give the same result. Everything else, like fences, stairs or custom blocks, is {@link #DYNAMIC}.
+ * <p>
+ * Shape codes are computed on first use. A code is either {@link #DYNAMIC} or a positive value combining the index of
+ * the bounding box relative to the block position and the pass through flag.
+ */
+@Log4j2
+public final class BlockShapes {
+
+    public static final int DYNAMIC = -1;
+    private static final int UNKNOWN = 0;
+
+    private static final int NO_BOX = 0;
+    private static final int FULL_CUBE_BOX = 1;
+
+    private static final String[] SHAPE_METHODS = {
+            "getBoundingBox", "recalculateBoundingBox", "canPassThrough",
+            "getMinX", "getMinY", "getMinZ", "getMaxX", "getMaxY", "getMaxZ"
+    };
+
+    // Methods reading the level or the blocks around, directly or through a position
+    private static final Set<String> LEVEL_METHODS = Set.of(
+            "getLevel", "getValidLevel", "isValid", "getChunk", "getLevelBlock", "getLevelBlockAtLayer",
+            "getLevelBlockEntity", "getBlockEntity", "getTickCachedLevelBlock", "getSide", "getSideAtLayer",
+            "getSideVec", "up", "down", "north", "south", "east", "west", "getLocation", "getPosition"
+    );
+
+    private static final int MAX_CALL_DEPTH = 4;
+
+    private static final Object LOCK = new Object();
+    private static volatile int[][] shapes = new int[Block.MAX_BLOCK_ID][];
+    private static volatile AxisAlignedBB[] boxes = {null, new SimpleAxisAlignedBB(0, 0, 0, 1, 1, 1)};
+
+    private static final ClassValue<Boolean> STATIC_SHAPE = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            try {
+                return hasStaticShape(type.asSubclass(Block.class));
+            } catch (Throwable t) {
+                log.debug("Unable to analyse the shape of {}", type.getName(), t);
+                return false;
+            }
+        }
+    };
+
+    private BlockShapes() {
+    }
+
+    /**
+     * @return shape code of the state, {@link #DYNAMIC} if a {@link Block} is needed to know its shape
+     */
+    public static int getShape(int fullId) {
+        int id = fullId >> Block.DATA_BITS;
+        if (id < 0 || id >= Block.MAX_BLOCK_ID) {
+            return DYNAMIC;
+        }
+
+        int[] states = shapes[id];
+        if (states == null) {
+            synchronized (LOCK) {
+                states = shapes[id];
+                if (states == null) {
+                    states = new int[Block.DATA_SIZE];
+                    shapes[id] = states;
+                }
+            }
+        }
+
+        int data = fullId & Block.DATA_MASK;
+        int shape = states[data];
+        if (shape == UNKNOWN) {
+            // Racing threads compute the same value
+            states[data] = shape = computeShape(fullId);
+        }
+        return shape;
+    }
+
+    public static boolean canPassThrough(int shape) {
+        return (shape & 1) != 0;
+    }
+
+    public static boolean isFullCube(int shape) {
+        return (shape >> 1) - 1 == FULL_CUBE_BOX;
+    }
+
+    /**
+     * @return bounding box of the shape relative to the block position, null if it has none
+     */
+    public static AxisAlignedBB getBox(int shape) {
+        int index = (shape >> 1) - 1;
+        AxisAlignedBB[] boxes = BlockShapes.boxes;
+        if (index >= boxes.length) {
+            synchronized (LOCK) {
+                boxes = BlockShapes.boxes;
+            }
+        }
+        return boxes[index];
+    }
+
+    /**
+     * Forget every computed shape, called when blocks are registered again.
+     */
+    public static void clear() {
+        synchronized (LOCK) {
+            shapes = new int[Block.MAX_BLOCK_ID][];
+            boxes = Arrays.copyOf(boxes, FULL_CUBE_BOX + 1);
+        }
+    }
+
+    private static int encode(int box, boolean canPassThrough) {
+        return ((box + 1) << 1) | (canPassThrough ? 1 : 0);
+    }
+
+    private static int computeShape(int fullId) {
+        Block prototype = Registries.BLOCK.get(fullId);
+        if (prototype == null || !STATIC_SHAPE.get(prototype.getClass())) {
+            return DYNAMIC;
+        }
+
+        try {
+            Block first = prototype.clone();
+            first.x = 0;
+            first.y = 0;
+            first.z = 0;
+            Block second = prototype.clone();
+            second.x = 1031;
+            second.y = 67;
+            second.z = -2053;
+
+            boolean canPassThrough = first.canPassThrough();
+            if (canPassThrough != second.canPassThrough()) {
+                return DYNAMIC;
+            }
+
+            AxisAlignedBB firstBox = first.getBoundingBox();
+            AxisAlignedBB secondBox = second.getBoundingBox();
+            if (firstBox == null || secondBox == null) {
+                return firstBox == secondBox ? encode(NO_BOX, canPassThrough) : DYNAMIC;
+            }
+
+            if (!isSameBox(firstBox, secondBox, second.x, second.y, second.z)) {
+                return DYNAMIC;
+            }
+            return encode(internBox(firstBox), canPassThrough);
+        } catch (Throwable t) {
+            return DYNAMIC;
+        }
+    }
+
+    private static boolean isSameBox(AxisAlignedBB box, AxisAlignedBB other, double offsetX, double offsetY, double offsetZ) {
+        return box.getMinX() + offsetX == other.getMinX() && box.getMinY() + offsetY == other.getMinY() &&
+                box.getMinZ() + offsetZ == other.getMinZ() && box.getMaxX() + offsetX == other.getMaxX() &&
+                box.getMaxY() + offsetY == other.getMaxY() && box.getMaxZ() + offsetZ == other.getMaxZ();
+    }
+
+    private static int internBox(AxisAlignedBB box) {
+        synchronized (LOCK) {
+            AxisAlignedBB[] boxes = BlockShapes.boxes;
+            for (int i = FULL_CUBE_BOX; i < boxes.length; i++) {
+                if (isSameBox(boxes[i], box, 0, 0, 0)) {
+                    return i;
+                }
+            }
+            boxes = Arrays.copyOf(boxes, boxes.length + 1);
+            // Blocks are their own bounding box by default, so keep a copy
+            boxes[boxes.length - 1] = new SimpleAxisAlignedBB(box.getMinX(), box.getMinY(), box.getMinZ(), box.getMaxX(), box.getMaxY(), box.getMaxZ());
+            BlockShapes.boxes = boxes;
+            return boxes.length - 1;
+        }
+    }
+
+    private static boolean hasStaticShape(Class<? extends Block> type) throws ReflectiveOperationException {
+        // Shapes made of several boxes can't be described by a single one
+        if (type.getMethod("collidesWithBB", AxisAlignedBB.class).getDeclaringClass() != Block.class ||
+                type.getMethod("collidesWithBB", AxisAlignedBB.class, boolean.class).getDeclaringClass() != Block.class) {
+            return false;
+        }
+
+        Set<String> visited = new HashSet<>();
+        for (String name : SHAPE_METHODS) {
+            Method method = findMethod(type, name, "()");
+            if (method == null || Modifier.isAbstract(method.getModifiers())) {
+                return false;
+            }
+            if (method.getDeclaringClass() != Block.class && !isPure(type, method.getDeclaringClass(), name, Type.getMethodDescriptor(method), visited, 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find the implementation of a method the given class would run, including protected ones.
+     */
+    private static Method findMethod(Class<?> type, String name, String descriptorPrefix) {
+        for (Class<?> clazz = type; clazz != null; clazz = clazz.getSuperclass()) {
+            for (Method method : clazz.getDeclaredMethods()) {
+                if (method.getName().equals(name) && !method.isBridge() && Type.getMethodDescriptor(method).startsWith(descriptorPrefix)) {
+                    return method;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether the method only works with the block itself. Calls to other block methods are followed, resolved against
+     * the analysed block class.
+     */
+    private static boolean isPure(Class<?> blockType, Class<?> owner, String name, String descriptor, Set<String> visited, int depth) {
+        if (!visited.add(Type.getInternalName(owner) + '.' + name + descriptor)) {
+            return true;
+        }
+        if (depth > MAX_CALL_DEPTH) {
+            return false;
+        }
+
+        byte[] bytecode = readClass(owner);
+        if (bytecode == null) {
+            return false;
+        }
+
+        MethodScanner scanner = new MethodScanner(name, descriptor);
+        new ClassReader(bytecode).accept(scanner, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        if (!scanner.found || scanner.impure) {
+            return false;
+        }
+
+        for (Call call : scanner.calls) {
+            Class<?> target;
+            try {
+                target = Class.forName(Type.getObjectType(call.owner).getClassName(), false, owner.getClassLoader());
+            } catch (ClassNotFoundException e) {
+                return false;
+            }
+
+            // Virtual calls are assumed to run on the analysed block
+            if (!call.isStatic && target.isAssignableFrom(blockType)) {
+                target = blockType;
+            }
+            Method method = findMethod(target, call.name, call.descriptor);
+            if (method == null || Modifier.isAbstract(method.getModifiers()) ||
+                    !isPure(blockType, method.getDeclaringClass(), call.name, call.descriptor, visited, depth + 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte[] readClass(Class<?> type) {
+        ClassLoader loader = type.getClassLoader();
+        if (loader == null) {
+            return null;
+        }
+        try (InputStream stream = loader.getResourceAsStream(Type.getInternalName(type) + ".class")) {
+            return stream == null ? null : stream.readAllBytes();
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static boolean isBlockClass(String internalName) {
+        return internalName.startsWith("cn/nukkit/block/");
+    }
+
+    private static boolean isWorldClass(String internalName) {
+        return internalName.startsWith("cn/nukkit/level/") || internalName.startsWith("cn/nukkit/blockentity/") ||
+                internalName.startsWith("cn/nukkit/entity/") || internalName.equals("cn/nukkit/Server") ||
+                internalName.equals("cn/nukkit/Player");
+    }
+
+    private static final class MethodScanner extends ClassVisitor {
+
+        private final String name;
+        private final String descriptor;
+
+        private boolean found;
+        private boolean impure;
+        private final List<Call> calls = new ArrayList<>();
+
+        private MethodScanner(String name, String descriptor) {
+            super(ASM9);
+            this.name = name;
+            this.descriptor = descriptor;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+            if (!name.equals(this.name) || !descriptor.equals(this.descriptor)) {
+                return null;
+            }
+            this.found = true;
+            return new MethodVisitor(ASM9) {
+                @Override
+                public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                    if (name.equals("level") || isWorldClass(Type.getType(descriptor).getInternalName())) {
+                        impure = true;
+                    }
+                }
+
+                @Override
+                public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                    if (LEVEL_METHODS.contains(name) || isWorldClass(owner)) {
+                        impure = true;
+                    } else if (isBlockClass(owner)) {
+                        calls.add(new Call(owner, name, descriptor, opcode == INVOKESTATIC));
+                    }
+                }
+
+                @Override
+                public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+                    impure = true;
+                }
+            };
+        }
+    }
+
+    private record Call(String owner, String name, String descriptor, boolean isStatic) {
+    }
+}
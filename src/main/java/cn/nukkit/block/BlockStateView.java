@@ -0,0 +1,221 @@
+package cn.nukkit.block;
+
+import cn.nukkit.level.Level;
+import cn.nukkit.math.BlockFace;
+import cn.nukkit.registry.Registries;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Immutable properties of a block state, looked up by full block id ({@code id << Block.DATA_BITS | data}) and shared
+ * by every block of that state.
+ * <p>
+ * Engines visiting many positions, like explosions or redstone updates, read the full id from the chunk and check the
+ * view first, a positioned {@link Block} is only created when the block at the position has to do something. The values
+ * are taken from the registered prototype of the state. Whether a block reacts to updates or emits power is decided by
+ * its class: a class keeping the implementation of {@link Block} never does, anything else has to be asked.
+ * <p>
+ * Views are created on first use and dropped when the block registry reloads. Custom blocks have no view.
+ */
+@Log4j2
+public final class BlockStateView {
+
+    private static final int UPDATE_HANDLER = 1;
+    private static final int NEIGHBOR_CHANGE_HANDLER = 1 << 1;
+    private static final int WEAK_POWER = 1 << 2;
+    private static final int STRONG_POWER = 1 << 3;
+
+    private static final Object LOCK = new Object();
+    private static volatile BlockStateView[][] views = new BlockStateView[Block.MAX_BLOCK_ID][];
+
+    private static final ClassValue<Integer> OVERRIDES = new ClassValue<>() {
+        @Override
+        protected Integer computeValue(Class<?> type) {
+            try {
+                int overrides = 0;
+                if (type.getMethod("onUpdate", int.class).getDeclaringClass() != Block.class) {
+                    overrides |= UPDATE_HANDLER;
+                }
+                if (type.getMethod("onNeighborChange", BlockFace.class).getDeclaringClass() != Block.class) {
+                    overrides |= NEIGHBOR_CHANGE_HANDLER;
+                }
+                if (type.getMethod("getWeakPower", BlockFace.class).getDeclaringClass() != Block.class) {
+                    overrides |= WEAK_POWER;
+                }
+                if (type.getMethod("getStrongPower", BlockFace.class).getDeclaringClass() != Block.class) {
+                    overrides |= STRONG_POWER;
+                }
+                return overrides;
+            } catch (NoSuchMethodException e) {
+                log.debug("Unable to inspect {}", type.getName(), e);
+                return UPDATE_HANDLER | NEIGHBOR_CHANGE_HANDLER | WEAK_POWER | STRONG_POWER;
+            }
+        }
+    };
+
+    private final int fullId;
+    private final double hardness;
+    private final double resistance;
+    private final int lightLevel;
+    private final int lightFilter;
+    private final boolean air;
+    private final boolean solid;
+    private final boolean transparent;
+    private final boolean normalBlock;
+    private final boolean powerSource;
+    private final int overrides;
+
+    private BlockStateView(int fullId, Block prototype) {
+        int id = fullId >> Block.DATA_BITS;
+        this.fullId = fullId;
+        this.hardness = prototype.getHardness();
+        this.resistance = prototype.getResistance();
+        this.lightLevel = Registries.BLOCK.getLight(id);
+        this.lightFilter = Registries.BLOCK.getLightFilter(id);
+        this.air = prototype.isAir();
+        this.solid = prototype.isSolid();
+        this.transparent = prototype.isTransparent();
+        this.normalBlock = prototype.isNormalBlock();
+        this.powerSource = prototype.isPowerSource();
+        this.overrides = OVERRIDES.get(prototype.getClass());
+    }
+
+    /**
+     * @return view of the state, null if it isn't registered or is a custom block
+     */
+    public static BlockStateView get(int fullId) {
+        int id = fullId >> Block.DATA_BITS;
+        if (id < 0 || id >= Block.MAX_BLOCK_ID) {
+            return null;
+        }
+
+        BlockStateView[] states = views[id];
+        if (states == null) {
+            synchronized (LOCK) {
+                states = views[id];
+                if (states == null) {
+                    states = new BlockStateView[Block.DATA_SIZE];
+                    views[id] = states;
+                }
+            }
+        }
+
+        int data = fullId & Block.DATA_MASK;
+        BlockStateView view = states[data];
+        if (view == null) {
+            Block prototype = Registries.BLOCK.get(fullId);
+            if (prototype == null || prototype instanceof BlockUnknown) {
+                return null;
+            }
+            // Racing threads create equal views
+            states[data] = view = new BlockStateView(fullId, prototype);
+        }
+        return view;
+    }
+
+    public static BlockStateView get(int id, int data) {
+        return get(id << Block.DATA_BITS | data);
+    }
+
+    /**
+     * Forget every view, called when blocks are registered again.
+     */
+    public static void clear() {
+        synchronized (LOCK) {
+            views = new BlockStateView[Block.MAX_BLOCK_ID][];
+        }
+    }
+
+    /**
+     * Create the positioned block of this state, for everything needing more than the view.
+     */
+    public Block toBlock(Level level, int x, int y, int z, int layer) {
+        return Block.get(this.getId(), this.getData(), level, x, y, z, layer);
+    }
+
+    public int getFullId() {
+        return this.fullId;
+    }
+
+    public int getId() {
+        return this.fullId >> Block.DATA_BITS;
+    }
+
+    public int getData() {
+        return this.fullId & Block.DATA_MASK;
+    }
+
+    public double getHardness() {
+        return this.hardness;
+    }
+
+    public double getResistance() {
+        return this.resistance;
+    }
+
+    public int getLightLevel() {
+        return this.lightLevel;
+    }
+
+    public int getLightFilter() {
+        return this.lightFilter;
+    }
+
+    public boolean isAir() {
+        return this.air;
+    }
+
+    public boolean isSolid() {
+        return this.solid;
+    }
+
+    public boolean isTransparent() {
+        return this.transparent;
+    }
+
+    public boolean isNormalBlock() {
+        return this.normalBlock;
+    }
+
+    public boolean isPowerSource() {
+        return this.powerSource;
+    }
+
+    public boolean isRandomTicking() {
+        return Level.isRandomTickBlock(this.getId());
+    }
+
+    /**
+     * @return shape code of the state, see {@link BlockShapes}
+     */
+    public int getShape() {
+        return BlockShapes.getShape(this.fullId);
+    }
+
+    /**
+     * @return false if {@link Block#onUpdate(int)} of the state does nothing
+     */
+    public boolean hasUpdateHandler() {
+        return (this.overrides & UPDATE_HANDLER) != 0;
+    }
+
+    /**
+     * @return false if {@link Block#onNeighborChange(BlockFace)} of the state does nothing
+     */
+    public boolean hasNeighborChangeHandler() {
+        return (this.overrides & NEIGHBOR_CHANGE_HANDLER) != 0;
+    }
+
+    /**
+     * @return false if {@link Block#getWeakPower(BlockFace)} of the state is always 0
+     */
+    public boolean hasWeakPower() {
+        return (this.overrides & WEAK_POWER) != 0;
+    }
+
+    /**
+     * @return false if {@link Block#getStrongPower(BlockFace)} of the state is always 0
+     */
+    public boolean hasStrongPower() {
+        return (this.overrides & STRONG_POWER) != 0;
+    }
+}
@@ -0,0 +1,147 @@
+package cn.nukkit.command.defaults;
+
+import cn.nukkit.command.CommandSender;
+import cn.nukkit.command.data.CommandParamType;
+import cn.nukkit.command.data.CommandParameter;
+import cn.nukkit.lang.TranslationContainer;
+import cn.nukkit.level.Level;
+import cn.nukkit.level.Position;
+import cn.nukkit.level.generator.ChunkPregenerator;
+
+public class PregenerateCommand extends VanillaCommand {
+
+    public PregenerateCommand(String name) {
+        super(name, "%nukkit.command.pregenerate.description", "%nukkit.command.pregenerate.usage");
+        this.setPermission("nukkit.command.pregenerate");
+        this.commandParameters.clear();
+        this.commandParameters.put("start", new CommandParameter[]{
+                CommandParameter.newEnum("start", new String[]{"start"}),
+                CommandParameter.newType("radius", CommandParamType.INT),
+                CommandParameter.newEnum("shape", true, new String[]{"square", "circle"}),
+                CommandParameter.newType("world", true, CommandParamType.STRING),
+                CommandParameter.newType("chunkX", true, CommandParamType.INT),
+                CommandParameter.newType("chunkZ", true, CommandParamType.INT)
+        });
+        this.commandParameters.put("control", new CommandParameter[]{
+                CommandParameter.newEnum("action", new String[]{"status", "pause", "resume", "stop"}),
+                CommandParameter.newType("world", true, CommandParamType.STRING)
+        });
+    }
+
+    @Override
+    public boolean execute(CommandSender sender, String commandLabel, String[] args) {
+        if (!this.testPermission(sender)) {
+            return true;
+        }
+
+        if (args.length == 0) {
+            sender.sendMessage(new TranslationContainer("commands.generic.usage", this.usageMessage));
+            return false;
+        }
+
+        String action = args[0].toLowerCase();
+        if (action.equals("start")) {
+            return this.start(sender, args);
+        }
+
+        if (args.length > 2) {
+            sender.sendMessage(new TranslationContainer("commands.generic.usage", this.usageMessage));
+            return false;
+        }
+
+        Level level = args.length > 1 ? sender.getServer().getLevelByName(args[1]) : sender.getPosition().getLevel();
+        if (level == null) {
+            sender.sendMessage(new TranslationContainer("nukkit.command.pregenerate.unknownLevel"));
+            return true;
+        }
+
+        ChunkPregenerator pregenerator = level.getPregenerator();
+        if (action.equals("status")) {
+            if (pregenerator == null) {
+                sender.sendMessage(new TranslationContainer("nukkit.command.pregenerate.notRunning", level.getName()));
+            } else {
+                sender.sendMessage(new TranslationContainer("nukkit.command.pregenerate.status", level.getName(),
+                        String.valueOf(pregenerator.getCompleted()), String.valueOf(pregenerator.getTotal()),
+                        String.format("%.1f", pregenerator.getProgress() * 100), String.format("%.1f", pregenerator.getChunksPerSecond()),
+                        pregenerator.isFinished() ? "finished" : pregenerator.isPaused() ? "paused" : "running"));
+            }
+            return true;
+        }
+
+        if (pregenerator == null || pregenerator.isFinished()) {
+            sender.sendMessage(new TranslationContainer("nukkit.command.pregenerate.notRunning", level.getName()));
+            return true;
+        }
+
+        switch (action) {
+            case "pause" -> {
+                pregenerator.pause();
+                sender.sendMessage(new TranslationContainer("nukkit.command.pregenerate.paused", level.getName()));
+            }
+            case "resume" -> {
+                pregenerator.resume();
+                sender.sendMessage(new TranslationContainer("nukkit.command.pregenerate.resumed", level.getName()));
+            }
+            case "stop" -> {
+                pregenerator.stop();
+                sender.sendMessage(new TranslationContainer("nukkit.command.pregenerate.stopped", level.getName()));
+            }
+            default -> {
+                sender.sendMessage(new TranslationContainer("commands.generic.usage", this.usageMessage));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean start(CommandSender sender, String[] args) {
+        if (args.length < 2 || args.length > 6 || args.length == 5) {
+            sender.sendMessage(new TranslationContainer("commands.generic.usage", this.usageMessage));
+            return false;
+        }
+
+        ChunkPregenerator.Shape shape = ChunkPregenerator.Shape.SQUARE;
+        if (args.length > 2) {
+            try {
+                shape = ChunkPregenerator.Shape.valueOf(args[2].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                sender.sendMessage(new TranslationContainer("commands.generic.usage", this.usageMessage));
+                return false;
+            }
+        }
+
+        Level level = args.length > 3 ? sender.getServer().getLevelByName(args[3]) : sender.getPosition().getLevel();
+        if (level == null) {
+            sender.sendMessage(new TranslationContainer("nukkit.command.pregenerate.unknownLevel"));
+            return true;
+        }
+
+        int radius;
+        int chunkX;
+        int chunkZ;
+        try {
+            radius = Integer.parseInt(args[1]);
+            if (args.length == 6) {
+                chunkX = Integer.parseInt(args[4]);
+                chunkZ = Integer.parseInt(args[5]);
+            } else {
+                Position center = sender.getPosition().getLevel() == level ? sender.getPosition() : level.getSpawnLocation();
+                chunkX = center.getChunkX();
+                chunkZ = center.getChunkZ();
+            }
+        } catch (NumberFormatException e) {
+            sender.sendMessage(new TranslationContainer("commands.generic.usage", this.usageMessage));
+            return false;
+        }
+
+        if (radius < 0) {
+            sender.sendMessage(new TranslationContainer("commands.generic.usage", this.usageMessage));
+            return false;
+        }
+
+        ChunkPregenerator pregenerator = level.pregenerate(chunkX, chunkZ, radius, shape);
+        sender.sendMessage(new TranslationContainer("nukkit.command.pregenerate.started", String.valueOf(pregenerator.getTotal()),
+                level.getName(), chunkX + " " + chunkZ, String.valueOf(level.getGenerationThreads())));
+        return true;
+    }
+}
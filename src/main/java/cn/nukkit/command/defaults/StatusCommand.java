@@ -1,12 +1,15 @@
 package cn.nukkit.command.defaults;
 
 import cn.nukkit.Nukkit;
+import cn.nukkit.Player;
 import cn.nukkit.Server;
 import cn.nukkit.command.CommandSender;
 import cn.nukkit.command.data.CommandParameter;
 import cn.nukkit.level.Level;
 import cn.nukkit.math.NukkitMath;
+import cn.nukkit.network.BatchingHelper;
 import cn.nukkit.network.Network;
+import cn.nukkit.network.session.CompressionPolicy;
 import cn.nukkit.utils.TextFormat;
 import com.sun.jna.platform.win32.COM.WbemcliUtil;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
@@ -344,6 +347,40 @@ public class StatusCommand extends VanillaCommand {
             } catch (Exception ignored) {
                 sender.sendMessage(TextFormat.RED + "    Failed to get network info.");
             }
+            // 广播数据包批处理
+            {
+                BatchingHelper batchingHelper = server.getBatchingHelper();
+                sender.sendMessage(TextFormat.YELLOW + ">>> " + TextFormat.WHITE + "Packet Batching" + TextFormat.YELLOW + " <<<" + TextFormat.RESET);
+                sender.sendMessage(TextFormat.GOLD + "Threads: " + TextFormat.GREEN + batchingHelper.getThreadCount());
+                sender.sendMessage(TextFormat.GOLD + "Queued batches: " + TextFormat.GREEN + batchingHelper.getQueueDepth());
+                sender.sendMessage(TextFormat.GOLD + "Average latency: " + TextFormat.GREEN + NukkitMath.round(batchingHelper.getAverageLatencyMillis(), 2) + "ms");
+                sender.sendMessage("");
+            }
+            // 会话压缩
+            {
+                long batches = 0;
+                long skipped = 0;
+                long uncompressed = 0;
+                long compressed = 0;
+                long nanos = 0;
+                for (Player player : server.getOnlinePlayers().values()) {
+                    CompressionPolicy policy = player.getNetworkSession() == null ? null : player.getNetworkSession().getCompressionPolicy();
+                    if (policy != null) {
+                        batches += policy.getBatches();
+                        skipped += policy.getSkippedBatches();
+                        uncompressed += policy.getUncompressedBytes();
+                        compressed += policy.getCompressedBytes();
+                        nanos += policy.getCompressionNanos();
+                    }
+                }
+                sender.sendMessage(TextFormat.YELLOW + ">>> " + TextFormat.WHITE + "Compression" + TextFormat.YELLOW + " <<<" + TextFormat.RESET);
+                sender.sendMessage(TextFormat.GOLD + "Batches: " + TextFormat.GREEN + batches + TextFormat.GRAY + " (" + skipped + " below threshold)");
+                sender.sendMessage(TextFormat.GOLD + "Ratio: " + TextFormat.GREEN + (uncompressed == 0 ? 100 : NukkitMath.round(compressed * 100d / uncompressed, 2)) + "%");
+                sender.sendMessage(TextFormat.GOLD + "Bytes saved: " + TextFormat.GREEN + formatMB((uncompressed - compressed) / 1000));
+                sender.sendMessage(TextFormat.GOLD + "CPU time: " + TextFormat.GREEN + TimeUnit.NANOSECONDS.toMillis(nanos) + "ms" +
+                        TextFormat.GRAY + " (network load " + NukkitMath.round(CompressionPolicy.getNetworkLoad() * 100, 2) + "%)");
+                sender.sendMessage("");
+            }
             // CPU信息
             {
                 CentralProcessor cpu = systemInfo.getHardware().getProcessor();
@@ -59,6 +59,7 @@ import java.util.*;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static cn.nukkit.network.protocol.SetEntityLinkPacket.*;
 import static cn.nukkit.utils.Utils.dynamic;
@@ -404,7 +405,8 @@ public abstract class Entity extends Location implements Metadatable {
     public static final double STEP_CLIP_MULTIPLIER = 0.4;
     public static final int ENTITY_COORDINATES_MAX_VALUE = 2100000000;
 
-    public static long entityCount = 1;
+    // Entities are created on every level tick worker when levels are ticked in parallel
+    public static final AtomicLong entityCount = new AtomicLong(1);
 
     private static final Map<Integer, String> entityRuntimeMapping589 = new HashMap<>();
     private static final Map<Integer, String> entityRuntimeMapping685 = new HashMap<>();
@@ -492,6 +494,15 @@ public abstract class Entity extends Location implements Metadatable {
     protected boolean noFallDamage;
     public float fallDistance = 0;
     public int lastUpdate;
+    /**
+     * Last tick the entity was within its activation range, see {@link cn.nukkit.level.EntityActivationRange}
+     */
+    public int activatedTick = Integer.MIN_VALUE;
+    /**
+     * Section of the entity in the {@link cn.nukkit.level.EntitySpatialIndex} of its level and its slot in there
+     */
+    public EntitySpatialIndex.Cell spatialCell;
+    public int spatialSlot = -1;
     public int fireTicks = 0;
     public int inPortalTicks = 0;
     public int freezingTicks = 0;//0 - 140
@@ -590,6 +601,13 @@ public abstract class Entity extends Location implements Metadatable {
         return 1;
     }
 
+    /**
+     * @return a new runtime id for an entity or a client side only entity like a floating text
+     */
+    public static long nextEntityId() {
+        return entityCount.getAndIncrement();
+    }
+
     public Entity(FullChunk chunk, CompoundTag nbt) {
         this.isPlayer = this instanceof Player;
         if (this.isPlayer) {
@@ -665,7 +683,7 @@ public abstract class Entity extends Location implements Metadatable {
 
         this.temporalVector = new Vector3();
 
-        this.id = entityCount++;
+        this.id = nextEntityId();
         this.justCreated = true;
         this.namedTag = nbt;
 
@@ -1882,11 +1900,8 @@ public abstract class Entity extends Location implements Metadatable {
             this.server.getPluginManager().callEvent(ev);
 
             if (!ev.isCancelled()) {
-                if (this.getLevel().getDimension() == Level.DIMENSION_NETHER) {
-                    this.switchLevel(server.getDefaultLevel());
-                } else {
-                    this.switchLevel(server.getNetherWorld(this.level.getName()));
-                }
+                Level targetLevel = this.getLevel().getDimension() == Level.DIMENSION_NETHER ? server.getDefaultLevel() : server.getNetherWorld(this.level.getName());
+                this.server.executeBetweenLevelTicks(() -> this.switchLevel(targetLevel));
             }
         }
 
@@ -2755,6 +2770,8 @@ public abstract class Entity extends Location implements Metadatable {
     }
 
     protected void checkChunks() {
+        this.level.getEntityIndex().update(this);
+
         int cx = (int) this.x >> 4;
         int cz = (int) this.z >> 4;
         if (this.chunk == null || (this.chunk.getX() != cx) || this.chunk.getZ() != cz) {
@@ -2806,6 +2823,13 @@ public abstract class Entity extends Location implements Metadatable {
             Level newLevel = ((Position) pos).level;
 
             if (newLevel != null && newLevel != oldLevel) {
+                if (this.server.isLevelTickWorkerThread()) {
+                    // The target level may be ticking on another worker, move once every level is done
+                    Position target = new Position(pos.x, pos.y, pos.z, newLevel);
+                    this.server.executeBetweenLevelTicks(() -> this.setPosition(target));
+                    return true;
+                }
+
                 if (!this.switchLevel(newLevel)) {
                     return false;
                 }
@@ -2849,7 +2873,7 @@ public abstract class Entity extends Location implements Metadatable {
     }
 
     public boolean setMotion(Vector3 motion) {
-        if (!this.justCreated) {
+        if (!this.justCreated && this.server.getPluginManager().hasListeners(EntityMotionEvent.class)) {
             EntityMotionEvent ev = new EntityMotionEvent(this, motion);
             this.server.getPluginManager().callEvent(ev);
             if (ev.isCancelled()) {
@@ -2902,6 +2926,13 @@ public abstract class Entity extends Location implements Metadatable {
     }
 
     public boolean teleport(Location location, PlayerTeleportEvent.TeleportCause cause) {
+        if (location.level != null && location.level != this.level && this.server.isLevelTickWorkerThread()) {
+            // The target level may be ticking on another worker, teleport once every level is done
+            Location target = new Location(location.x, location.y, location.z, location.yaw, location.pitch, location.headYaw, location.level);
+            this.server.executeBetweenLevelTicks(() -> this.teleport(target, cause));
+            return true;
+        }
+
         Location from = this.getLocation();
         Location to = location;
         if (cause != null) {
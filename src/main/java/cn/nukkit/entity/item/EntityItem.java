@@ -211,36 +211,28 @@ public class EntityItem extends Entity {
 
             if (this.age % 200 == 0 && this.onGround && this.item != null) {
                 if (this.item.getCount() < this.item.getMaxStackSize()) {
-                    //if (e == null) {
-                    Entity[] e = this.getLevel().getNearbyEntities(getBoundingBox().grow(1, 1, 1), this, false);
-                    //}
-
-                    for (Entity entity : e) {
-                        if (entity instanceof EntityItem) {
-                            if (entity.closed || !entity.isAlive()) {
-                                continue;
-                            }
-                            Item closeItem = ((EntityItem) entity).item;
-                            if (!closeItem.equals(item, true, true)) {
-                                continue;
-                            }
-                            if (!entity.isOnGround()) {
-                                continue;
-                            }
-                            int newAmount = this.item.getCount() + closeItem.getCount();
-                            if (newAmount > this.item.getMaxStackSize()) {
-                                continue;
-                            }
-                            closeItem.setCount(0);
-                            entity.close();
-                            this.item.setCount(newAmount);
-                            EntityEventPacket packet = new EntityEventPacket();
-                            packet.eid = getId();
-                            packet.data = newAmount;
-                            packet.event = EntityEventPacket.MERGE_ITEMS;
-                            Server.broadcastPacket(this.getViewers().values(), packet);
+                    this.getLevel().forEachNearbyEntity(getBoundingBox().grow(1, 1, 1), EntityItem.class, this, entity -> {
+                        if (entity.closed || !entity.isAlive() || !entity.isOnGround()) {
+                            return true;
                         }
-                    }
+                        Item closeItem = entity.item;
+                        if (!closeItem.equals(item, true, true)) {
+                            return true;
+                        }
+                        int newAmount = this.item.getCount() + closeItem.getCount();
+                        if (newAmount > this.item.getMaxStackSize()) {
+                            return true;
+                        }
+                        closeItem.setCount(0);
+                        entity.close();
+                        this.item.setCount(newAmount);
+                        EntityEventPacket packet = new EntityEventPacket();
+                        packet.eid = getId();
+                        packet.data = newAmount;
+                        packet.event = EntityEventPacket.MERGE_ITEMS;
+                        Server.broadcastPacket(this.getViewers().values(), packet);
+                        return true;
+                    });
                 }
             }
 
@@ -106,10 +106,8 @@ public class EntityMinecartTNT extends EntityMinecartAbstract implements EntityE
             return;
         }
         Explosion explosion = new Explosion(this, event.getForce(), this);
-        if (event.isBlockBreaking()) {
-            explosion.explodeA();
-        }
-        explosion.explodeB();
+        explosion.setBlockBreaking(event.isBlockBreaking());
+        this.level.queueExplosion(explosion);
         this.close();
     }
 
@@ -166,10 +166,8 @@ public class EntityPrimedTNT extends Entity implements EntityExplosive {
             return;
         }
         Explosion explosion = new Explosion(this, event.getForce(), this);
-        if (event.isBlockBreaking()) {
-            explosion.explodeA();
-        }
-        explosion.explodeB();
+        explosion.setBlockBreaking(event.isBlockBreaking());
+        this.level.queueExplosion(explosion);
         this.level.getVibrationManager().callVibrationEvent(new VibrationEvent(this, this, VanillaVibrationTypes.EXPLODE));
     }
 
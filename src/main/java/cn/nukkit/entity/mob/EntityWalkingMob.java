@@ -205,22 +205,27 @@ public abstract class EntityWalkingMob extends EntityWalking implements EntityMo
 
     protected void pushEntities() {
         double radius = 1.5;
-        for (Entity entity : this.level.getNearbyEntities(this.boundingBox.grow(radius, 0.5, radius), this)) {
-            if (entity instanceof EntityWalkingMob && entity != this && entity.isAlive()) {
-                double dx = this.x - entity.x;
-                double dz = this.z - entity.z;
-                double distance = Math.sqrt(dx * dx + dz * dz);
+        this.level.forEachNearbyEntity(this.boundingBox.grow(radius, 0.5, radius), EntityWalkingMob.class, this, entity -> {
+            if (!entity.isAlive()) {
+                return true;
+            }
 
-                if (distance < 0.01) continue;
+            double dx = this.x - entity.x;
+            double dz = this.z - entity.z;
+            double distance = Math.sqrt(dx * dx + dz * dz);
 
-                double strength = 0.15;
-                double force = strength * (1.0 - (distance / radius));
+            if (distance < 0.01) {
+                return true;
+            }
 
-                dx /= distance;
-                dz /= distance;
+            double strength = 0.15;
+            double force = strength * (1.0 - (distance / radius));
 
-                entity.addMotion(dx * force, 0, dz * force);
-            }
-        }
+            dx /= distance;
+            dz /= distance;
+
+            entity.addMotion(dx * force, 0, dz * force);
+            return true;
+        });
     }
 }
\ No newline at end of file
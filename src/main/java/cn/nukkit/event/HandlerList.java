@@ -125,6 +125,10 @@ public class HandlerList {
         return handlers;
     }
 
+    public boolean isEmpty() {
+        return getRegisteredListeners().length == 0;
+    }
+
 
     public static ArrayList<RegisteredListener> getRegisteredListeners(Plugin plugin) {
         ArrayList<RegisteredListener> listeners = new ArrayList<>();
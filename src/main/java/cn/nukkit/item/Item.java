@@ -19,6 +19,8 @@ import cn.nukkit.math.Vector3;
 import cn.nukkit.nbt.NBTIO;
 import cn.nukkit.nbt.tag.*;
 import cn.nukkit.network.protocol.ProtocolInfo;
+import cn.nukkit.registry.ItemLegacyRegistry;
+import cn.nukkit.registry.ItemRegistry;
 import cn.nukkit.registry.Registries;
 import cn.nukkit.utils.*;
 import lombok.extern.log4j.Log4j2;
@@ -108,7 +110,7 @@ public class Item implements Cloneable, BlockID, ItemID, ProtocolInfo {
 
     public static Item get(int id, Integer meta, int count, byte[] tags) {
         try {
-            Class<?> clazz;
+            boolean registered;
             if (id < 255 - Block.MAX_BLOCK_ID) {
                 var customBlockItem = Block.get(255 - id).toItem();
                 customBlockItem.setCount(count);
@@ -117,13 +119,13 @@ public class Item implements Cloneable, BlockID, ItemID, ProtocolInfo {
                 return customBlockItem;
             } else if (id < 0) {
                 int blockId = 255 - id;
-                clazz = Registries.BLOCK.getClass(blockId);
+                registered = Registries.BLOCK.getClass(blockId) != null;
             } else {
-                clazz = Registries.ITEM_LEGACY.get(id);
+                registered = Registries.ITEM_LEGACY.get(id) != null;
             }
 
             Item item;
-            if (clazz == null) {
+            if (!registered) {
                 item = new Item(id, meta, count);
             } else if (id < 256 && id != 166) {
                 if (meta >= 0) {
@@ -132,7 +134,8 @@ public class Item implements Cloneable, BlockID, ItemID, ProtocolInfo {
                     item = new ItemBlock(Block.get(id), meta, count);
                 }
             } else {
-                item = (Item) clazz.getConstructor(Integer.class, int.class).newInstance(meta, count);
+                ItemLegacyRegistry.Factory factory = Registries.ITEM_LEGACY.getFactory(id);
+                item = factory != null ? factory.create(meta, count) : new Item(id, meta, count);
             }
 
             if (tags.length != 0) {
@@ -158,10 +161,7 @@ public class Item implements Cloneable, BlockID, ItemID, ProtocolInfo {
     }
 
     public static Item get(String id, Integer meta, int count, byte[] tags) {
-        id = id.toLowerCase();
-        if (!id.contains(":")) id = "minecraft:" + id;
-
-        Item item = Registries.ITEM.get(id);
+        Item item = Registries.ITEM.get(ItemRegistry.normalizeId(id));
         if (meta != null) {
             item.setDamage(meta);
         }
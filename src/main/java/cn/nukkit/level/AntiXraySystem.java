@@ -4,12 +4,16 @@ import cn.nukkit.Player;
 import cn.nukkit.block.Block;
 import cn.nukkit.block.BlockID;
 import cn.nukkit.item.Item;
+import cn.nukkit.level.antixray.AntiXrayEngine;
 import cn.nukkit.level.antixray.ObfuscatedBlock;
 import cn.nukkit.math.BlockFace;
 import cn.nukkit.math.Vector3;
 import cn.nukkit.network.protocol.UpdateBlockPacket;
 import cn.nukkit.registry.Registries;
+import cn.nukkit.utils.Hash;
 import it.unimi.dsi.fastutil.ints.*;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import lombok.Getter;
 import lombok.Setter;
 import org.jetbrains.annotations.NotNull;
@@ -17,19 +21,36 @@ import org.jetbrains.annotations.NotNull;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 
 import static cn.nukkit.level.Level.getBlockXYZ;
-import static cn.nukkit.level.Level.localBlockHash;
 
+/**
+ * Anti-xray settings of a level.
+ * <p>
+ * Sections are obfuscated while they are serialized, see {@link cn.nukkit.level.antixray.ExposureMask} for how hidden
+ * blocks are found. The counters sum up the work done for the level since the last reset.
+ */
 @Getter
 @Setter
 public final class AntiXraySystem {
+
+    private static final BlockFace[] FACES = BlockFace.values();
+
     private final Level level;
     private int fakeOreDenominator = 16;
     private boolean preDeObfuscate = true;
+    private AntiXrayEngine engine = AntiXrayEngine.FAKE_ORES;
     private final Int2IntMap realOreToReplacedBlockIds = new Int2IntOpenHashMap(24);
     private final Int2ObjectOpenHashMap<IntList> fakeOreToPutBlockIds = new Int2ObjectOpenHashMap<>(4);
 
+    // Cost of the obfuscation, sections are serialized on several threads
+    private final LongAdder obfuscatedSections = new LongAdder();
+    private final LongAdder hiddenBlocks = new LongAdder();
+    private final LongAdder replacedBlocks = new LongAdder();
+    private final LongAdder resentBlocks = new LongAdder();
+    private final LongAdder obfuscationNanos = new LongAdder();
+
     public AntiXraySystem(Level level) {
         this.level = level;
     }
@@ -55,106 +76,104 @@ public final class AntiXraySystem {
         }
     }
 
-    public void obfuscateSendBlocks(Long index, Player[] playerArray, Int2ObjectOpenHashMap<Object> blocks) {
-        int size = blocks.size();
-        var vectorSet = new IntOpenHashSet(size * 6);
-        var vRidList = new ArrayList<Vector3WithBlockId>(size * 7);
-        Vector3WithBlockId tmpV3Rid;
+    /**
+     * @return whether the block may be sent as another block while it is hidden
+     */
+    public boolean isObfuscatable(int blockId) {
+        return this.realOreToReplacedBlockIds.containsKey(blockId) || (this.engine != AntiXrayEngine.HIDE && this.fakeOreToPutBlockIds.containsKey(blockId));
+    }
+
+    public void obfuscateSendBlocks(long index, Player[] playerArray, Int2ObjectOpenHashMap<Object> blocks) {
+        LongSet positions = new LongOpenHashSet(blocks.size() * 2);
+        List<Vector3> toSend = new ArrayList<>(blocks.size() * 2);
         for (int blockHash : blocks.keySet()) {
-            Vector3 hash = getBlockXYZ(index, blockHash, level);
-            var x = hash.getFloorX();
-            var y = hash.getFloorY();
-            var z = hash.getFloorZ();
-            if (!vectorSet.contains(blockHash)) {
-                vectorSet.add(blockHash);
-                try {
-                    tmpV3Rid = new Vector3WithBlockId(x, y, z, level.getBlockIdAt(x, y, z, 0), level.getBlockIdAt(x, y, z, 1));
-                    vRidList.add(tmpV3Rid);
-                    if (!Registries.BLOCK.isTransparent(tmpV3Rid.getBlockIdLayer0())) {
-                        continue;
-                    }
-                } catch (Exception ignore) {
-                }
-            }
-            x++;
-            blockHash = localBlockHash(x, y, z, level);
-            if (!vectorSet.contains(blockHash)) {
-                vectorSet.add(blockHash);
-                try {
-                    vRidList.add(new Vector3WithBlockId(x, y, z, level.getBlockIdAt(x, y, z, 0), level.getBlockIdAt(x, y, z, 1)));
-                } catch (Exception ignore) {
-                }
+            Vector3 pos = getBlockXYZ(index, blockHash, level);
+            int x = pos.getFloorX();
+            int y = pos.getFloorY();
+            int z = pos.getFloorZ();
+            if (positions.add(Hash.hashBlock(x, y, z))) {
+                toSend.add(pos);
             }
-            x -= 2;
-            blockHash = localBlockHash(x, y, z, level);
-            if (!vectorSet.contains(blockHash)) {
-                vectorSet.add(blockHash);
-                try {
-                    vRidList.add(new Vector3WithBlockId(x, y, z, level.getBlockIdAt(x, y, z, 0), level.getBlockIdAt(x, y, z, 1)));
-                } catch (Exception ignore) {
-                }
-            }
-            x++;
-            y++;
-            blockHash = localBlockHash(x, y, z, level);
-            if (!vectorSet.contains(blockHash)) {
-                vectorSet.add(blockHash);
-                try {
-                    vRidList.add(new Vector3WithBlockId(x, y, z, level.getBlockIdAt(x, y, z, 0), level.getBlockIdAt(x, y, z, 1)));
-                } catch (Exception ignore) {
-                }
-            }
-            y -= 2;
-            blockHash = localBlockHash(x, y, z, level);
-            if (!vectorSet.contains(blockHash)) {
-                vectorSet.add(blockHash);
-                try {
-                    vRidList.add(new Vector3WithBlockId(x, y, z, level.getBlockIdAt(x, y, z, 0), level.getBlockIdAt(x, y, z, 1)));
-                } catch (Exception ignore) {
-                }
-            }
-            y++;
-            z++;
-            blockHash = localBlockHash(x, y, z, level);
-            if (!vectorSet.contains(blockHash)) {
-                vectorSet.add(blockHash);
-                try {
-                    vRidList.add(new Vector3WithBlockId(x, y, z, level.getBlockIdAt(x, y, z, 0), level.getBlockIdAt(x, y, z, 1)));
-                } catch (Exception ignore) {
-                }
+
+            if (!level.isYInRange(y) || !Registries.BLOCK.isTransparent(level.getBlockIdAt(x, y, z))) {
+                continue;
             }
-            z -= 2;
-            blockHash = localBlockHash(x, y, z, level);
-            if (!vectorSet.contains(blockHash)) {
-                vectorSet.add(blockHash);
-                try {
-                    vRidList.add(new Vector3WithBlockId(x, y, z, level.getBlockIdAt(x, y, z, 0), level.getBlockIdAt(x, y, z, 1)));
-                } catch (Exception ignore) {
+
+            // The neighbours can be seen now, they were only sent as another block if they could be obfuscated
+            for (BlockFace face : FACES) {
+                int sideX = x + face.getXOffset();
+                int sideY = y + face.getYOffset();
+                int sideZ = z + face.getZOffset();
+                if (level.isYInRange(sideY) && this.isObfuscatable(level.getBlockIdAt(sideX, sideY, sideZ))
+                        && positions.add(Hash.hashBlock(sideX, sideY, sideZ))) {
+                    toSend.add(new Vector3(sideX, sideY, sideZ));
                 }
             }
         }
-        level.sendBlocks(playerArray, vRidList.toArray(Vector3[]::new), UpdateBlockPacket.FLAG_ALL);
+        this.resentBlocks.add(toSend.size() - blocks.size());
+        level.sendBlocks(playerArray, toSend.toArray(Vector3[]::new), UpdateBlockPacket.FLAG_ALL);
     }
 
     public void deObfuscateBlock(Player player, BlockFace face, Block target) {
-        var vecList = new ArrayList<Vector3WithBlockId>(5);
-        Vector3WithBlockId tmpVec;
-        for (var each : BlockFace.values()) {
+        var vecList = new ArrayList<Vector3>(5);
+        for (var each : FACES) {
             if (each == face) continue;
             var tmpX = target.getFloorX() + each.getXOffset();
             var tmpY = target.getFloorY() + each.getYOffset();
             var tmpZ = target.getFloorZ() + each.getZOffset();
-            try {
-                tmpVec = new Vector3WithBlockId(tmpX, tmpY, tmpZ, level.getBlockIdAt(tmpX, tmpY, tmpZ, 0), level.getBlockIdAt(tmpX, tmpY, tmpZ, 1));
-                if (this.getFakeOreToPutBlockIds().containsKey(tmpVec.getBlockIdLayer0())) {
-                    vecList.add(tmpVec);
-                }
-            } catch (Exception ignore) {
+            if (level.isYInRange(tmpY) && this.isObfuscatable(level.getBlockIdAt(tmpX, tmpY, tmpZ))) {
+                vecList.add(new Vector3(tmpX, tmpY, tmpZ));
             }
         }
+        this.resentBlocks.add(vecList.size());
         level.sendBlocks(new Player[]{player}, vecList.toArray(Vector3[]::new), UpdateBlockPacket.FLAG_ALL);
     }
 
+    /**
+     * Count an obfuscated section.
+     *
+     * @param hidden blocks which were hidden from every side
+     * @param replaced hidden ores and fake ores sent instead of the real block
+     * @param nanos time spent
+     */
+    public void recordSection(int hidden, int replaced, long nanos) {
+        this.obfuscatedSections.increment();
+        this.hiddenBlocks.add(hidden);
+        this.replacedBlocks.add(replaced);
+        this.obfuscationNanos.add(nanos);
+    }
+
+    public long getObfuscatedSections() {
+        return this.obfuscatedSections.sum();
+    }
+
+    public long getHiddenBlocks() {
+        return this.hiddenBlocks.sum();
+    }
+
+    public long getReplacedBlocks() {
+        return this.replacedBlocks.sum();
+    }
+
+    /**
+     * @return blocks sent again because a neighbour changed or was broken
+     */
+    public long getResentBlocks() {
+        return this.resentBlocks.sum();
+    }
+
+    public long getObfuscationNanos() {
+        return this.obfuscationNanos.sum();
+    }
+
+    public void resetCounters() {
+        this.obfuscatedSections.reset();
+        this.hiddenBlocks.reset();
+        this.replacedBlocks.reset();
+        this.resentBlocks.reset();
+        this.obfuscationNanos.reset();
+    }
+
     public void initObfuscatedBlockList(List<ObfuscatedBlock> obfuscatedBlocks) {
         this.fakeOreToPutBlockIds.clear();
         this.realOreToReplacedBlockIds.clear();
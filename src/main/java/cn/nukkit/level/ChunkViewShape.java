@@ -0,0 +1,138 @@
+package cn.nukkit.level;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongConsumer;
+
+/**
+ * Chunks within a view distance, relative to a centre chunk.
+ * <p>
+ * The view is a circle around the north-west corner of the centre chunk: an offset {@code d} is {@code d} chunks away
+ * if it is positive and {@code -d - 1} chunks away if it is negative. Shapes are immutable and shared by every player
+ * with the same view distance.
+ */
+public final class ChunkViewShape {
+
+    private static final int MAX_CACHED_RADIUS = 128;
+    private static final AtomicReferenceArray<ChunkViewShape> SHAPES = new AtomicReferenceArray<>(MAX_CACHED_RADIUS + 1);
+
+    private final int radius;
+    // Rows are [-width - 1, width] wide, by distance of the row from the centre
+    private final int[] widths;
+    // Offsets of every chunk, nearest first
+    private final int[] offsetX;
+    private final int[] offsetZ;
+
+    private ChunkViewShape(int radius) {
+        this.radius = radius;
+        this.widths = new int[radius + 1];
+        int size = 0;
+        for (int z = 0; z <= radius; z++) {
+            this.widths[z] = (int) Math.sqrt((double) radius * radius - (double) z * z);
+            size += 4 * (this.widths[z] + 1);
+        }
+
+        long[] order = new long[size];
+        int i = 0;
+        for (int dz = -radius - 1; dz <= radius; dz++) {
+            int width = this.widths[distance(dz)];
+            for (int dx = -width - 1; dx <= width; dx++) {
+                // Sorted by distance, the offsets are kept as 16 bit values
+                order[i++] = distanceSquared(dx, dz) << 32 | (dx & 0xffffL) << 16 | (dz & 0xffffL);
+            }
+        }
+        Arrays.sort(order);
+
+        this.offsetX = new int[size];
+        this.offsetZ = new int[size];
+        for (i = 0; i < size; i++) {
+            this.offsetX[i] = (short) (order[i] >> 16);
+            this.offsetZ[i] = (short) order[i];
+        }
+    }
+
+    public static ChunkViewShape get(int radius) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Negative view distance " + radius);
+        }
+        if (radius > MAX_CACHED_RADIUS) {
+            return new ChunkViewShape(radius);
+        }
+
+        ChunkViewShape shape = SHAPES.get(radius);
+        if (shape == null) {
+            shape = new ChunkViewShape(radius);
+            if (!SHAPES.compareAndSet(radius, null, shape)) {
+                shape = SHAPES.get(radius);
+            }
+        }
+        return shape;
+    }
+
+    public static int distance(int offset) {
+        return offset >= 0 ? offset : -offset - 1;
+    }
+
+    public static long distanceSquared(int offsetX, int offsetZ) {
+        long x = distance(offsetX);
+        long z = distance(offsetZ);
+        return x * x + z * z;
+    }
+
+    public int getRadius() {
+        return this.radius;
+    }
+
+    public int size() {
+        return this.offsetX.length;
+    }
+
+    /**
+     * @return x offset of the chunk at the index, chunks are ordered by distance
+     */
+    public int getOffsetX(int index) {
+        return this.offsetX[index];
+    }
+
+    public int getOffsetZ(int index) {
+        return this.offsetZ[index];
+    }
+
+    public boolean contains(int offsetX, int offsetZ) {
+        int z = distance(offsetZ);
+        return z <= this.radius && distance(offsetX) <= this.widths[z];
+    }
+
+    /**
+     * Visit the chunks of this view around the centre which are not part of the other view around its centre, by
+     * comparing the rows of both views.
+     *
+     * @param consumer receives {@link Level#chunkHash(int, int)} of the chunks
+     */
+    public void forEachNotIn(int centerX, int centerZ, ChunkViewShape other, int otherX, int otherZ, LongConsumer consumer) {
+        for (int dz = -this.radius - 1; dz <= this.radius; dz++) {
+            int z = centerZ + dz;
+            int width = this.widths[distance(dz)];
+            int minX = centerX - width - 1;
+            int maxX = centerX + width;
+
+            int otherDz = distance(z - otherZ);
+            if (otherDz > other.radius) {
+                for (int x = minX; x <= maxX; x++) {
+                    consumer.accept(Level.chunkHash(x, z));
+                }
+                continue;
+            }
+
+            int otherWidth = other.widths[otherDz];
+            int otherMinX = otherX - otherWidth - 1;
+            int otherMaxX = otherX + otherWidth;
+            for (int x = minX; x <= Math.min(maxX, otherMinX - 1); x++) {
+                consumer.accept(Level.chunkHash(x, z));
+            }
+            for (int x = Math.max(minX, otherMaxX + 1); x <= maxX; x++) {
+                consumer.accept(Level.chunkHash(x, z));
+            }
+        }
+    }
+}
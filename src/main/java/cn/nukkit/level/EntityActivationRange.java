@@ -0,0 +1,226 @@
+package cn.nukkit.level;
+
+import cn.nukkit.entity.Entity;
+import cn.nukkit.entity.EntityBoss;
+import cn.nukkit.entity.item.EntityFallingBlock;
+import cn.nukkit.entity.item.EntityFirework;
+import cn.nukkit.entity.item.EntityItem;
+import cn.nukkit.entity.item.EntityPrimedTNT;
+import cn.nukkit.entity.item.EntityVehicle;
+import cn.nukkit.entity.item.EntityXPOrb;
+import cn.nukkit.entity.mob.EntityMob;
+import cn.nukkit.entity.passive.EntityAnimal;
+import cn.nukkit.entity.projectile.EntityProjectile;
+import cn.nukkit.level.format.generic.BaseFullChunk;
+import cn.nukkit.settings.WorldSettings;
+
+import java.util.Arrays;
+
+/**
+ * Entity activation ranges of a level.
+ * <p>
+ * Once per tick every entity within the activation range of its {@link Category} around a chunk loader is marked as
+ * active. Active entities are ticked as usual, inactive ones only every {@code inactive-tick-interval} ticks and then
+ * catch up through the tick difference passed to {@link Entity#onUpdate(int)}. The inactive ticks are spread over the
+ * interval by entity id. Entities which would visibly misbehave with a lower tick rate, like burning, dying or ridden
+ * entities, flying projectiles and falling items, are always ticked. So are primed TNT, falling blocks, vehicles,
+ * fireworks and bosses, which only apply a single physics step per update regardless of the tick difference.
+ * <p>
+ * Only used from the level tick thread.
+ */
+public class EntityActivationRange {
+
+    private static final ClassValue<Category> CATEGORIES = new ClassValue<>() {
+        @Override
+        protected Category computeValue(Class<?> type) {
+            if (EntityMob.class.isAssignableFrom(type)) {
+                return Category.MONSTER;
+            }
+            if (EntityAnimal.class.isAssignableFrom(type)) {
+                return Category.ANIMAL;
+            }
+            if (EntityItem.class.isAssignableFrom(type) || EntityXPOrb.class.isAssignableFrom(type)) {
+                return Category.ITEM;
+            }
+            if (EntityProjectile.class.isAssignableFrom(type)) {
+                return Category.PROJECTILE;
+            }
+            return Category.MISC;
+        }
+    };
+
+    private static final ClassValue<Boolean> ALWAYS_ACTIVE = new ClassValue<>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            return EntityPrimedTNT.class.isAssignableFrom(type)
+                    || EntityFallingBlock.class.isAssignableFrom(type)
+                    || EntityVehicle.class.isAssignableFrom(type)
+                    || EntityFirework.class.isAssignableFrom(type)
+                    || EntityBoss.class.isAssignableFrom(type);
+        }
+    };
+
+    private static final Category[] CATEGORY_VALUES = Category.values();
+
+    private final Level level;
+    private final boolean enabled;
+    private final int inactiveTickInterval;
+    // Squared horizontal range per category, negative if entities of the category are always active
+    private final long[] rangesSquared = new long[CATEGORY_VALUES.length];
+    private final int maxChunkRadius;
+
+    private final int[] activeCounter = new int[CATEGORY_VALUES.length];
+    private final int[] inactiveCounter = new int[CATEGORY_VALUES.length];
+    private volatile int[] activeCounts = new int[CATEGORY_VALUES.length];
+    private volatile int[] inactiveCounts = new int[CATEGORY_VALUES.length];
+
+    public EntityActivationRange(Level level, WorldSettings.ActivationRangeSettings settings) {
+        this.level = level;
+        this.enabled = settings.enable();
+        this.inactiveTickInterval = Math.max(1, settings.inactiveTickInterval());
+
+        int maxRange = 0;
+        for (Category category : CATEGORY_VALUES) {
+            int range = switch (category) {
+                case MONSTER -> settings.monster();
+                case ANIMAL -> settings.animal();
+                case ITEM -> settings.item();
+                case PROJECTILE -> settings.projectile();
+                case MISC -> settings.misc();
+            };
+            this.rangesSquared[category.ordinal()] = range <= 0 ? -1 : (long) range * range;
+            maxRange = Math.max(maxRange, range);
+        }
+        this.maxChunkRadius = (maxRange + 15) >> 4;
+    }
+
+    public static Category getCategory(Entity entity) {
+        return CATEGORIES.get(entity.getClass());
+    }
+
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Mark every entity within its activation range around a chunk loader as active for the given tick.
+     */
+    public void activateEntities(int currentTick) {
+        if (!this.enabled || this.maxChunkRadius == 0) {
+            return;
+        }
+
+        for (ChunkLoader loader : this.level.getLoaders().values()) {
+            if (!loader.isLoaderActive()) {
+                continue;
+            }
+
+            double loaderX = loader.getX();
+            double loaderZ = loader.getZ();
+            int chunkX = (int) Math.floor(loaderX) >> 4;
+            int chunkZ = (int) Math.floor(loaderZ) >> 4;
+
+            for (int x = chunkX - this.maxChunkRadius; x <= chunkX + this.maxChunkRadius; x++) {
+                for (int z = chunkZ - this.maxChunkRadius; z <= chunkZ + this.maxChunkRadius; z++) {
+                    BaseFullChunk chunk = this.level.getChunkIfLoaded(x, z);
+                    if (chunk == null) {
+                        continue;
+                    }
+
+                    for (Entity entity : chunk.getEntities().values()) {
+                        if (entity.activatedTick == currentTick) {
+                            continue;
+                        }
+
+                        long rangeSquared = this.rangesSquared[getCategory(entity).ordinal()];
+                        if (rangeSquared < 0) {
+                            continue;
+                        }
+
+                        double dx = entity.x - loaderX;
+                        double dz = entity.z - loaderZ;
+                        if (dx * dx + dz * dz <= rangeSquared) {
+                            entity.activatedTick = currentTick;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the entity should be ticked this tick. Also counts the entity as active or inactive.
+     */
+    public boolean shouldTick(Entity entity, int currentTick) {
+        Category category = getCategory(entity);
+        if (this.isActive(entity, category, currentTick)) {
+            this.activeCounter[category.ordinal()]++;
+            return true;
+        }
+        this.inactiveCounter[category.ordinal()]++;
+        return Math.floorMod(currentTick + entity.getId(), this.inactiveTickInterval) == 0;
+    }
+
+    /**
+     * Whether the entity is close enough to a chunk loader to be ticked every tick.
+     */
+    public boolean isActive(Entity entity, int currentTick) {
+        return this.isActive(entity, getCategory(entity), currentTick);
+    }
+
+    private boolean isActive(Entity entity, Category category, int currentTick) {
+        if (!this.enabled || this.rangesSquared[category.ordinal()] < 0 || entity.activatedTick == currentTick) {
+            return true;
+        }
+
+        if (ALWAYS_ACTIVE.get(entity.getClass())) {
+            return true;
+        }
+
+        if (entity.isPlayer || !entity.isAlive() || entity.fireTicks > 0 || entity.riding != null || !entity.passengers.isEmpty()) {
+            return true;
+        }
+
+        return switch (category) {
+            case PROJECTILE -> !((EntityProjectile) entity).hadCollision;
+            case ITEM -> !entity.onGround;
+            default -> false;
+        };
+    }
+
+    /**
+     * Publish the counts of the tick. Called after every entity due for an update has been looked at.
+     */
+    public void finishTick() {
+        this.activeCounts = this.activeCounter.clone();
+        this.inactiveCounts = this.inactiveCounter.clone();
+        Arrays.fill(this.activeCounter, 0);
+        Arrays.fill(this.inactiveCounter, 0);
+    }
+
+    /**
+     * @return number of entities of the category which were ticked normally during the last tick
+     */
+    public int getActiveCount(Category category) {
+        return this.activeCounts[category.ordinal()];
+    }
+
+    /**
+     * @return number of entities of the category which were throttled during the last tick
+     */
+    public int getInactiveCount(Category category) {
+        return this.inactiveCounts[category.ordinal()];
+    }
+
+    public int getInactiveTickInterval() {
+        return this.inactiveTickInterval;
+    }
+
+    public enum Category {
+        MONSTER,
+        ANIMAL,
+        ITEM,
+        PROJECTILE,
+        MISC
+    }
+}
@@ -0,0 +1,471 @@
+package cn.nukkit.level;
+
+import cn.nukkit.entity.Entity;
+import cn.nukkit.math.AxisAlignedBB;
+import cn.nukkit.utils.Hash;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Predicate;
+
+/**
+ * Spatial index of the entities of a level.
+ * <p>
+ * Entities are bucketed by the 16x16x16 section their position is in. A query only looks at the sections overlapping
+ * the queried area, grown by the largest bounding box of an entity seen so far, so its cost depends on the entities
+ * around the area instead of on every entity in the chunks it touches. An entity is moved to another bucket as soon
+ * as it moves into another section, see {@link #update(Entity)}.
+ * <p>
+ * Matching entities are collected while holding the lock and only handed to the visitor afterwards, so visitors may
+ * move, spawn or remove entities and run queries themselves. The index can be queried from any thread.
+ */
+public class EntitySpatialIndex {
+
+    private static final double MIN_MARGIN = 2;
+    private static final Entity[] EMPTY_ARRAY = new Entity[0];
+
+    private static final ThreadLocal<QueryBuffer> BUFFER = ThreadLocal.withInitial(QueryBuffer::new);
+
+    private final StampedLock lock = new StampedLock();
+    private final Long2ObjectOpenHashMap<Cell> cells = new Long2ObjectOpenHashMap<>();
+    // Largest bounding box dimension of an indexed entity, only grows
+    private volatile double margin = MIN_MARGIN;
+    private int size;
+
+    /**
+     * Add the entity at its current position. Removes it from the index of its previous level first.
+     */
+    public void add(Entity entity) {
+        Cell previous = entity.spatialCell;
+        if (previous != null) {
+            if (previous.index == this) {
+                this.update(entity);
+                return;
+            }
+            previous.index.remove(entity);
+        }
+
+        this.growMargin(entity);
+        long stamp = this.lock.writeLock();
+        try {
+            this.insert(entity, key(entity.x, entity.y, entity.z));
+            this.size++;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    public void remove(Entity entity) {
+        Cell cell = entity.spatialCell;
+        if (cell == null || cell.index != this) {
+            return;
+        }
+
+        long stamp = this.lock.writeLock();
+        try {
+            this.unlink(entity, cell);
+            this.size--;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Called after the entity moved. Only takes the lock if it moved into another section.
+     */
+    public void update(Entity entity) {
+        Cell cell = entity.spatialCell;
+        if (cell == null || cell.index != this) {
+            return;
+        }
+
+        this.growMargin(entity);
+        long key = key(entity.x, entity.y, entity.z);
+        if (cell.key == key) {
+            return;
+        }
+
+        long stamp = this.lock.writeLock();
+        try {
+            this.unlink(entity, cell);
+            this.insert(entity, key);
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return number of indexed entities
+     */
+    public int size() {
+        long stamp = this.lock.readLock();
+        try {
+            return this.size;
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Visit every entity of the given type with a bounding box intersecting the given one.
+     *
+     * @param exclude entity to leave out, may be null
+     */
+    public <T extends Entity> void forEachEntity(AxisAlignedBB bb, Class<T> type, Entity exclude, Visitor<? super T> visitor) {
+        QueryBuffer buffer = acquire();
+        try {
+            int count = this.collectIntersecting(buffer, bb, type, exclude);
+            visit(buffer, count, type, visitor);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Visit every entity of the given type whose position is within the radius around the given point.
+     *
+     * @param exclude entity to leave out, may be null
+     */
+    public <T extends Entity> void forEachEntity(double x, double y, double z, double radius, Class<T> type, Entity exclude, Visitor<? super T> visitor) {
+        QueryBuffer buffer = acquire();
+        try {
+            int count = this.collectInRadius(buffer, x, y, z, radius, type, exclude);
+            visit(buffer, count, type, visitor);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * @param exclude entity to leave out, may be null
+     * @return entities with a bounding box intersecting the given one
+     */
+    public Entity[] getEntities(AxisAlignedBB bb, Entity exclude) {
+        QueryBuffer buffer = acquire();
+        try {
+            int count = this.collectIntersecting(buffer, bb, Entity.class, exclude);
+            return count == 0 ? EMPTY_ARRAY : Arrays.copyOf(buffer.entities, count);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * @param filter additional condition, may be null
+     * @return the entity of the given type closest to the given point within the radius, null if there is none
+     */
+    public <T extends Entity> T getNearestEntity(double x, double y, double z, double radius, Class<T> type, Predicate<? super T> filter) {
+        QueryBuffer buffer = acquire();
+        try {
+            int count = this.collectNearest(buffer, x, y, z, radius, 1, type, filter);
+            return count == 0 ? null : type.cast(buffer.entities[0]);
+        } finally {
+            release(buffer);
+        }
+    }
+
+    /**
+     * Add the up to {@code limit} entities of the given type closest to the given point within the radius to the list,
+     * closest first.
+     *
+     * @param filter additional condition, may be null
+     * @return number of entities added
+     */
+    public <T extends Entity> int getNearestEntities(double x, double y, double z, double radius, int limit, Class<T> type,
+                                                     Predicate<? super T> filter, List<? super T> result) {
+        QueryBuffer buffer = acquire();
+        try {
+            int count = this.collectNearest(buffer, x, y, z, radius, limit, type, filter);
+            for (int i = 0; i < count; i++) {
+                result.add(type.cast(buffer.entities[i]));
+            }
+            return count;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    private int collectIntersecting(QueryBuffer buffer, AxisAlignedBB bb, Class<? extends Entity> type, Entity exclude) {
+        double margin = this.margin;
+        int minX = floor(bb.getMinX() - margin) >> 4;
+        int minY = floor(bb.getMinY() - margin) >> 4;
+        int minZ = floor(bb.getMinZ() - margin) >> 4;
+        int maxX = floor(bb.getMaxX() + margin) >> 4;
+        int maxY = floor(bb.getMaxY() + margin) >> 4;
+        int maxZ = floor(bb.getMaxZ() + margin) >> 4;
+
+        int count = 0;
+        long stamp = this.lock.readLock();
+        try {
+            if ((long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1) > this.cells.size()) {
+                for (Cell cell : this.cells.values()) {
+                    if (cell.isWithin(minX, minY, minZ, maxX, maxY, maxZ)) {
+                        count = cell.collectIntersecting(buffer, count, bb, type, exclude);
+                    }
+                }
+            } else {
+                for (int x = minX; x <= maxX; x++) {
+                    for (int z = minZ; z <= maxZ; z++) {
+                        for (int y = minY; y <= maxY; y++) {
+                            Cell cell = this.cells.get(Hash.hashBlock(x, y, z));
+                            if (cell != null) {
+                                count = cell.collectIntersecting(buffer, count, bb, type, exclude);
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+        return count;
+    }
+
+    private int collectInRadius(QueryBuffer buffer, double x, double y, double z, double radius, Class<? extends Entity> type, Entity exclude) {
+        int minX = floor(x - radius) >> 4;
+        int minY = floor(y - radius) >> 4;
+        int minZ = floor(z - radius) >> 4;
+        int maxX = floor(x + radius) >> 4;
+        int maxY = floor(y + radius) >> 4;
+        int maxZ = floor(z + radius) >> 4;
+        double radiusSquared = radius * radius;
+
+        int count = 0;
+        long stamp = this.lock.readLock();
+        try {
+            if ((long) (maxX - minX + 1) * (maxY - minY + 1) * (maxZ - minZ + 1) > this.cells.size()) {
+                for (Cell cell : this.cells.values()) {
+                    if (cell.isWithin(minX, minY, minZ, maxX, maxY, maxZ)) {
+                        count = cell.collectInRadius(buffer, count, x, y, z, radiusSquared, type, exclude);
+                    }
+                }
+            } else {
+                for (int cellX = minX; cellX <= maxX; cellX++) {
+                    for (int cellZ = minZ; cellZ <= maxZ; cellZ++) {
+                        for (int cellY = minY; cellY <= maxY; cellY++) {
+                            Cell cell = this.cells.get(Hash.hashBlock(cellX, cellY, cellZ));
+                            if (cell != null) {
+                                count = cell.collectInRadius(buffer, count, x, y, z, radiusSquared, type, exclude);
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            this.lock.unlockRead(stamp);
+        }
+        return count;
+    }
+
+    /**
+     * Leave the closest {@code limit} matching entities at the start of the buffer, closest first.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Entity> int collectNearest(QueryBuffer buffer, double x, double y, double z, double radius, int limit,
+                                                  Class<T> type, Predicate<? super T> filter) {
+        int count = this.collectInRadius(buffer, x, y, z, radius, type, null);
+        Entity[] entities = buffer.entities;
+        double[] distances = buffer.distances;
+
+        // The filter may call into entities and runs without the lock
+        if (filter != null) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (filter.test((T) entities[i])) {
+                    entities[kept] = entities[i];
+                    distances[kept++] = distances[i];
+                }
+            }
+            Arrays.fill(entities, kept, count, null);
+            count = kept;
+        }
+
+        int selected = Math.min(limit, count);
+        for (int i = 0; i < selected; i++) {
+            int closest = i;
+            for (int j = i + 1; j < count; j++) {
+                if (distances[j] < distances[closest]) {
+                    closest = j;
+                }
+            }
+            if (closest != i) {
+                Entity entity = entities[i];
+                entities[i] = entities[closest];
+                entities[closest] = entity;
+                double distance = distances[i];
+                distances[i] = distances[closest];
+                distances[closest] = distance;
+            }
+        }
+        return selected;
+    }
+
+    private static <T extends Entity> void visit(QueryBuffer buffer, int count, Class<T> type, Visitor<? super T> visitor) {
+        Entity[] entities = buffer.entities;
+        for (int i = 0; i < count; i++) {
+            if (!visitor.visit(type.cast(entities[i]))) {
+                return;
+            }
+        }
+    }
+
+    private void insert(Entity entity, long key) {
+        Cell cell = this.cells.get(key);
+        if (cell == null) {
+            cell = new Cell(this, key, floor(entity.x) >> 4, floor(entity.y) >> 4, floor(entity.z) >> 4);
+            this.cells.put(key, cell);
+        }
+        cell.add(entity);
+    }
+
+    private void unlink(Entity entity, Cell cell) {
+        cell.remove(entity);
+        if (cell.size == 0) {
+            this.cells.remove(cell.key);
+        }
+    }
+
+    private void growMargin(Entity entity) {
+        AxisAlignedBB bb = entity.boundingBox;
+        if (bb == null) {
+            return;
+        }
+
+        double extent = Math.max(bb.getMaxY() - bb.getMinY(), Math.max(bb.getMaxX() - bb.getMinX(), bb.getMaxZ() - bb.getMinZ()));
+        if (extent > this.margin) {
+            synchronized (this) {
+                if (extent > this.margin) {
+                    this.margin = extent;
+                }
+            }
+        }
+    }
+
+    private static long key(double x, double y, double z) {
+        return Hash.hashBlock(floor(x) >> 4, floor(y) >> 4, floor(z) >> 4);
+    }
+
+    private static int floor(double value) {
+        int i = (int) value;
+        return value < i ? i - 1 : i;
+    }
+
+    private static QueryBuffer acquire() {
+        QueryBuffer buffer = BUFFER.get();
+        // A visitor running a query of its own gets a fresh buffer
+        if (buffer.inUse) {
+            buffer = new QueryBuffer();
+        }
+        buffer.inUse = true;
+        return buffer;
+    }
+
+    private static void release(QueryBuffer buffer) {
+        Arrays.fill(buffer.entities, 0, buffer.used, null);
+        buffer.used = 0;
+        buffer.inUse = false;
+    }
+
+    @FunctionalInterface
+    public interface Visitor<T extends Entity> {
+
+        /**
+         * @return whether to continue with the next entity
+         */
+        boolean visit(T entity);
+    }
+
+    /**
+     * Entities of one section. Referenced by the entities in it so they can be removed without a lookup.
+     */
+    public static final class Cell {
+
+        private final EntitySpatialIndex index;
+        private final long key;
+        private final int x;
+        private final int y;
+        private final int z;
+        private Entity[] entities = new Entity[4];
+        private int size;
+
+        private Cell(EntitySpatialIndex index, long key, int x, int y, int z) {
+            this.index = index;
+            this.key = key;
+            this.x = x;
+            this.y = y;
+            this.z = z;
+        }
+
+        private void add(Entity entity) {
+            if (this.size == this.entities.length) {
+                this.entities = Arrays.copyOf(this.entities, this.size << 1);
+            }
+            entity.spatialCell = this;
+            entity.spatialSlot = this.size;
+            this.entities[this.size++] = entity;
+        }
+
+        private void remove(Entity entity) {
+            int slot = entity.spatialSlot;
+            Entity last = this.entities[--this.size];
+            this.entities[slot] = last;
+            last.spatialSlot = slot;
+            this.entities[this.size] = null;
+            entity.spatialCell = null;
+            entity.spatialSlot = -1;
+        }
+
+        private boolean isWithin(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+            return this.x >= minX && this.x <= maxX && this.y >= minY && this.y <= maxY && this.z >= minZ && this.z <= maxZ;
+        }
+
+        private int collectIntersecting(QueryBuffer buffer, int count, AxisAlignedBB bb, Class<? extends Entity> type, Entity exclude) {
+            for (int i = 0; i < this.size; i++) {
+                Entity entity = this.entities[i];
+                if (entity != exclude && type.isInstance(entity) && entity.boundingBox.intersectsWith(bb)) {
+                    buffer.add(count++, entity, 0);
+                }
+            }
+            return count;
+        }
+
+        private int collectInRadius(QueryBuffer buffer, int count, double x, double y, double z, double radiusSquared,
+                                    Class<? extends Entity> type, Entity exclude) {
+            for (int i = 0; i < this.size; i++) {
+                Entity entity = this.entities[i];
+                if (entity == exclude || !type.isInstance(entity)) {
+                    continue;
+                }
+
+                double dx = entity.x - x;
+                double dy = entity.y - y;
+                double dz = entity.z - z;
+                double distance = dx * dx + dy * dy + dz * dz;
+                if (distance <= radiusSquared) {
+                    buffer.add(count++, entity, distance);
+                }
+            }
+            return count;
+        }
+    }
+
+    private static final class QueryBuffer {
+
+        private Entity[] entities = new Entity[64];
+        private double[] distances = new double[64];
+        private int used;
+        private boolean inUse;
+
+        private void add(int index, Entity entity, double distance) {
+            if (index == this.entities.length) {
+                this.entities = Arrays.copyOf(this.entities, index << 1);
+                this.distances = Arrays.copyOf(this.distances, index << 1);
+            }
+            this.entities[index] = entity;
+            this.distances[index] = distance;
+            this.used = Math.max(this.used, index + 1);
+        }
+    }
+}
@@ -10,7 +10,6 @@ import cn.nukkit.entity.EntityExplosive;
 import cn.nukkit.entity.item.EntityItem;
 import cn.nukkit.entity.item.EntityXPOrb;
 import cn.nukkit.event.block.BlockExplodeEvent;
-import cn.nukkit.event.block.BlockUpdateEvent;
 import cn.nukkit.event.entity.EntityDamageByBlockEvent;
 import cn.nukkit.event.entity.EntityDamageByEntityEvent;
 import cn.nukkit.event.entity.EntityDamageEvent;
@@ -22,8 +21,8 @@ import cn.nukkit.item.ItemBlock;
 import cn.nukkit.level.particle.HugeExplodeSeedParticle;
 import cn.nukkit.math.*;
 import cn.nukkit.nbt.tag.CompoundTag;
-import cn.nukkit.utils.Hash;
-import it.unimi.dsi.fastutil.longs.LongArraySet;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
@@ -49,6 +48,7 @@ public class Explosion {
 
     private final Object what;
     private boolean doesDamage = true;
+    private boolean blockBreaking = true;
 
     public Explosion(Position center, double size, Entity what) {
         this(center, size, (Object) what);
@@ -85,6 +85,17 @@ public class Explosion {
         }
     }
 
+    /**
+     * @return whether the explosion destroys blocks when it is run by {@link Level#queueExplosion(Explosion)}
+     */
+    public boolean isBlockBreaking() {
+        return blockBreaking;
+    }
+
+    public void setBlockBreaking(boolean blockBreaking) {
+        this.blockBreaking = blockBreaking;
+    }
+
     /**
      * @return bool
      */
@@ -102,6 +113,17 @@ public class Explosion {
      * @return {@code true} if success
      */
     public boolean explodeA() {
+        // Explosions caused by the batch of the tick, like end crystals damaged by TNT, run inside that batch
+        ExplosionBatch batch = this.level.getExplosionBatch();
+        return explodeA(batch.isCollecting() ? batch : new ExplosionBatch(this.level));
+    }
+
+    /**
+     * Calculates which blocks will be destroyed by this explosion, reading the block resistances from the batch.
+     *
+     * @return {@code true} if success
+     */
+    public boolean explodeA(ExplosionBatch batch) {
         if (what instanceof EntityExplosive) {
             Entity entity = (Entity) what;
             Block blockLayer0 = level.getBlock(entity.floor());
@@ -132,7 +154,9 @@ public class Explosion {
         ThreadLocalRandom random = ThreadLocalRandom.current();
 
         Vector3 vector = new Vector3(0, 0, 0);
-        Vector3 vBlock = new Vector3(0, 0, 0);
+        // Rays cross the same blocks many times, only the first visit that breaks a block creates it
+        LongSet affectedPositions = new LongOpenHashSet();
+        DimensionData dimensionData = this.level.getDimensionData();
 
         int mRays = RAYS - 1;
         for (int i = 0; i < RAYS; ++i) {
@@ -150,19 +174,19 @@ public class Explosion {
                             int x = (int) pointerX;
                             int y = (int) pointerY;
                             int z = (int) pointerZ;
-                            vBlock.x = pointerX >= x ? x : x - 1;
-                            vBlock.y = pointerY >= y ? y : y - 1;
-                            vBlock.z = pointerZ >= z ? z : z - 1;
-                            if (!this.level.isYInRange((int) vBlock.y)) {
+                            int blockX = pointerX >= x ? x : x - 1;
+                            int blockY = pointerY >= y ? y : y - 1;
+                            int blockZ = pointerZ >= z ? z : z - 1;
+                            if (!this.level.isYInRange(blockY)) {
                                 break;
                             }
-                            Block block = this.level.getBlock(vBlock);
 
-                            if (!block.isAir()) {
-                                Block layer1 = block.getLevelBlockAtLayer(1);
-                                double resistance = Math.max(block.getResistance(), layer1.getResistance());
+                            double resistance = batch.getResistance(blockX, blockY, blockZ);
+                            if (resistance >= 0) {
                                 blastForce -= (resistance / 5 + 0.3d) * this.STEP_LEN;
-                                if (blastForce > 0) {
+                                if (blastForce > 0 && affectedPositions.add(Level.blockHash(blockX, blockY, blockZ, dimensionData))) {
+                                    Block block = this.level.getBlock(blockX, blockY, blockZ, 0);
+                                    Block layer1 = this.level.getBlock(blockX, blockY, blockZ, 1);
                                     if (this.affectedBlocks.add(block)) {
                                         if (incendiary && random.nextDouble() <= fireSpawnChance) {
                                             this.fireIgnitions.add(block);
@@ -192,10 +216,26 @@ public class Explosion {
      * @return {@code false} if explosion was canceled, otherwise {@code true}
      */
     public boolean explodeB() {
+        ExplosionBatch batch = this.level.getExplosionBatch();
+        if (batch.isCollecting()) {
+            // The blocks are removed with the others of the batch
+            return explodeB(batch);
+        }
 
-        LongArraySet updateBlocks = new LongArraySet();
-        List<Vector3> send = new ArrayList<>();
+        batch = new ExplosionBatch(this.level);
+        try {
+            return explodeB(batch);
+        } finally {
+            batch.apply();
+        }
+    }
 
+    /**
+     * Executes the explosion's effects, the destroyed blocks are removed and the fire is placed when the batch is applied.
+     *
+     * @return {@code false} if explosion was canceled, otherwise {@code true}
+     */
+    public boolean explodeB(ExplosionBatch batch) {
         Vector3 source = (new Vector3(this.source.x, this.source.y, this.source.z)).floor();
         double yield = (1d / this.size) * 100d;
 
@@ -297,44 +337,12 @@ public class Explosion {
                 smokePositions.add(block);
             }
 
-            this.level.setBlock(new Vector3((int) block.x, (int) block.y, (int) block.z),
-                    block.layer, Block.get(BlockID.AIR));
-
-            if (block.layer != 0) {
-                continue;
-            }
-
-            Vector3 pos = new Vector3(block.x, block.y, block.z);
-
-            for (BlockFace side : BlockFace.values()) {
-                Vector3 sideBlock = pos.getSide(side);
-                long index = Hash.hashBlock((int) sideBlock.x, (int) sideBlock.y, (int) sideBlock.z);
-                if (!this.affectedBlocks.contains(sideBlock) && !updateBlocks.contains(index)) {
-                    BlockUpdateEvent ev = new BlockUpdateEvent(this.level.getBlock(sideBlock));
-                    this.level.getServer().getPluginManager().callEvent(ev);
-                    if (!ev.isCancelled()) {
-                        ev.getBlock().onUpdate(Level.BLOCK_UPDATE_NORMAL);
-                    }
-                    Block layer1 = this.level.getBlock(sideBlock, 1);
-                    if (!layer1.isAir()) {
-                        ev = new BlockUpdateEvent(layer1);
-                        this.level.getServer().getPluginManager().callEvent(ev);
-                        if (!ev.isCancelled()) {
-                            ev.getBlock().onUpdate(Level.BLOCK_UPDATE_NORMAL);
-                        }
-                    }
-                    updateBlocks.add(index);
-                }
-            }
-            send.add(new Vector3(block.x - source.x, block.y - source.y, block.z - source.z));
+            batch.remove(block);
         }
 
-        if(fireIgnitions != null) {
+        if (fireIgnitions != null) {
             for (Vector3 remainingPos : fireIgnitions) {
-                Block toIgnite = level.getBlock(remainingPos);
-                if (toIgnite.isAir() && toIgnite.down().isSolid(BlockFace.UP)) {
-                    level.setBlock(toIgnite, Block.get(BlockID.FIRE));
-                }
+                batch.ignite(remainingPos);
             }
         }
 
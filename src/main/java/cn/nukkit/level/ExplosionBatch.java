@@ -0,0 +1,495 @@
+package cn.nukkit.level;
+
+import cn.nukkit.Player;
+import cn.nukkit.Server;
+import cn.nukkit.block.Block;
+import cn.nukkit.block.BlockID;
+import cn.nukkit.block.BlockStateView;
+import cn.nukkit.entity.Entity;
+import cn.nukkit.event.block.BlockUpdateEvent;
+import cn.nukkit.level.format.generic.BaseChunk;
+import cn.nukkit.level.format.generic.BaseFullChunk;
+import cn.nukkit.math.BlockFace;
+import cn.nukkit.math.BlockVector3;
+import cn.nukkit.math.SimpleAxisAlignedBB;
+import cn.nukkit.math.Vector3;
+import cn.nukkit.network.protocol.UpdateBlockPacket;
+import cn.nukkit.network.protocol.UpdateSubChunkBlocksPacket;
+import cn.nukkit.network.protocol.types.BlockChangeEntry;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectList;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Explosions of a level processed together, the explosions queued during a tick run at the end of its entity updates.
+ * <p>
+ * The rays of every explosion read the blast resistance from a flat cache, a {@code float[4096]} per section filled from
+ * {@link BlockStateView}s on first use. Blocks destroyed by an explosion are air in the cache right away, so the later
+ * explosions of the batch go through the holes like they would if the blocks were set one by one.
+ * <p>
+ * The destroyed blocks stay in the world until {@link #apply()}: one bulk edit per section and layer, the light and
+ * entity updates of the section, one {@link UpdateSubChunkBlocksPacket} per section instead of a packet per block and
+ * a single update of the neighbours of every removed block. Fire is placed after that. Explosions run directly while
+ * the batch is collecting, like an end crystal damaged by one of its explosions, join the batch so they don't destroy
+ * those blocks a second time.
+ */
+@Log4j2
+public class ExplosionBatch {
+
+    private static final int LAYERS = 2;
+    private static final float UNKNOWN = -2;
+    private static final float AIR = -1;
+
+    private final Level level;
+    private final Queue<Explosion> queue = new ArrayDeque<>();
+
+    private final Long2ObjectOpenHashMap<float[]> resistances = new Long2ObjectOpenHashMap<>();
+    private long lastSection;
+    private float[] lastResistances;
+
+    private Long2ObjectLinkedOpenHashMap<SectionChanges> sections = new Long2ObjectLinkedOpenHashMap<>();
+    private List<Vector3> ignitions = new ObjectArrayList<>();
+    private boolean collecting;
+
+    public ExplosionBatch(Level level) {
+        this.level = level;
+    }
+
+    public Level getLevel() {
+        return this.level;
+    }
+
+    public void queue(Explosion explosion) {
+        this.queue.add(explosion);
+    }
+
+    public boolean isEmpty() {
+        return this.queue.isEmpty() && this.sections.isEmpty() && this.ignitions.isEmpty();
+    }
+
+    /**
+     * @return true while the queued explosions run, their destroyed blocks are still in the world until they are applied
+     */
+    public boolean isCollecting() {
+        return this.collecting;
+    }
+
+    /**
+     * @return true if the block at the position is removed when the batch is applied
+     */
+    public boolean isRemoved(int x, int y, int z) {
+        if (this.sections.isEmpty()) {
+            return false;
+        }
+        SectionChanges section = this.sections.get(sectionKey(x >> 4, y >> 4, z >> 4));
+        return section != null && section.isMarked(0, localIndex(x, y, z));
+    }
+
+    /**
+     * Run the queued explosions, in the order they were queued, and apply their changes.
+     */
+    public void process() {
+        if (this.queue.isEmpty()) {
+            return;
+        }
+
+        this.collecting = true;
+        try {
+            Explosion explosion;
+            while ((explosion = this.queue.poll()) != null) {
+                try {
+                    if (explosion.isBlockBreaking()) {
+                        explosion.explodeA(this);
+                    }
+                    explosion.explodeB(this);
+                } catch (Exception e) {
+                    log.error("Error while processing an explosion in {}", this.level.getName(), e);
+                }
+            }
+        } finally {
+            this.collecting = false;
+        }
+        this.apply();
+    }
+
+    /**
+     * @return blast resistance of the block at the position, negative if there is no block to destroy
+     */
+    public double getResistance(int x, int y, int z) {
+        float[] cells = this.getResistances(x, y, z);
+        int index = localIndex(x, y, z);
+        float resistance = cells[index];
+        if (resistance == UNKNOWN) {
+            cells[index] = resistance = this.loadResistance(x, y, z);
+        }
+        return resistance;
+    }
+
+    /**
+     * Remove the block when the batch is applied.
+     */
+    public void remove(Block block) {
+        int x = block.getFloorX();
+        int y = block.getFloorY();
+        int z = block.getFloorZ();
+        int layer = block.layer;
+        if (layer < 0 || layer >= LAYERS || !this.level.isYInRange(y)) {
+            return;
+        }
+
+        long key = sectionKey(x >> 4, y >> 4, z >> 4);
+        SectionChanges section = this.sections.get(key);
+        if (section == null) {
+            section = new SectionChanges(x >> 4, y >> 4, z >> 4);
+            this.sections.put(key, section);
+        }
+        int index = localIndex(x, y, z);
+        section.mark(layer, index);
+
+        if (layer == 0) {
+            this.getResistances(x, y, z)[index] = AIR;
+        }
+    }
+
+    /**
+     * Set the position on fire when the batch is applied, if it is air above a solid block by then.
+     */
+    public void ignite(Vector3 pos) {
+        this.ignitions.add(pos);
+    }
+
+    /**
+     * Called for blocks set by {@link Level#setBlock} while the explosions run, the position is read from the world
+     * again and is no longer removed.
+     */
+    void onBlockSet(int x, int y, int z) {
+        if (!this.collecting) {
+            return;
+        }
+
+        long key = sectionKey(x >> 4, y >> 4, z >> 4);
+        int index = localIndex(x, y, z);
+        float[] cells = this.resistances.get(key);
+        if (cells != null) {
+            cells[index] = UNKNOWN;
+        }
+        SectionChanges section = this.sections.get(key);
+        if (section != null) {
+            section.unmark(0, index);
+            section.unmark(1, index);
+        }
+    }
+
+    /**
+     * Remove the blocks and place the fire of the explosions since the last call.
+     */
+    public void apply() {
+        this.resistances.clear();
+        this.lastResistances = null;
+
+        // Block updates may cause new explosions, they start a new batch
+        Long2ObjectLinkedOpenHashMap<SectionChanges> sections = this.sections;
+        List<Vector3> ignitions = this.ignitions;
+        if (!sections.isEmpty()) {
+            this.sections = new Long2ObjectLinkedOpenHashMap<>();
+        }
+        if (!ignitions.isEmpty()) {
+            this.ignitions = new ObjectArrayList<>();
+        }
+
+        if (!sections.isEmpty()) {
+            for (SectionChanges section : sections.values()) {
+                this.applySection(section);
+            }
+
+            boolean listeners = this.level.getServer().getPluginManager().hasListeners(BlockUpdateEvent.class);
+            LongSet updated = new LongOpenHashSet();
+            for (SectionChanges section : sections.values()) {
+                this.updateNeighbours(sections, section, updated, listeners);
+            }
+        }
+
+        for (Vector3 pos : ignitions) {
+            Block toIgnite = this.level.getBlock(pos);
+            if (toIgnite.isAir() && toIgnite.down().isSolid(BlockFace.UP)) {
+                this.level.setBlock(toIgnite, Block.get(BlockID.FIRE));
+            }
+        }
+    }
+
+    private void applySection(SectionChanges section) {
+        BaseFullChunk chunk = this.level.getChunk(section.chunkX, section.chunkZ);
+        if (chunk == null) {
+            return;
+        }
+
+        int baseX = section.chunkX << 4;
+        int baseY = section.sectionY << 4;
+        int baseZ = section.chunkZ << 4;
+        boolean antiXray = this.level.isAntiXrayEnabled();
+        long chunkIndex = Level.chunkHash(section.chunkX, section.chunkZ);
+
+        int[][] changed = new int[LAYERS][];
+        int[] changedCounts = new int[LAYERS];
+        int total = 0;
+        for (int layer = 0; layer < LAYERS; layer++) {
+            int count = section.compact(layer);
+            if (count == 0) {
+                continue;
+            }
+
+            int[] indexes = section.indexes[layer].elements();
+            int[] previous = new int[count];
+            if (chunk instanceof BaseChunk baseChunk) {
+                baseChunk.setFullBlockIds(section.sectionY, layer, indexes, count, BlockID.AIR, previous);
+            } else {
+                for (int i = 0; i < count; i++) {
+                    int index = indexes[i];
+                    int y = baseY | (index & 0x0f);
+                    previous[i] = chunk.getFullBlock(index >> 8, y, (index >> 4) & 0x0f, layer);
+                    chunk.setFullBlockId(index >> 8, y, (index >> 4) & 0x0f, layer, BlockID.AIR);
+                }
+            }
+
+            int[] layerChanged = new int[count];
+            int changedCount = 0;
+            for (int i = 0; i < count; i++) {
+                if (previous[i] == BlockID.AIR) {
+                    continue;
+                }
+
+                int index = indexes[i];
+                int x = baseX | index >> 8;
+                int y = baseY | (index & 0x0f);
+                int z = baseZ | (index >> 4) & 0x0f;
+                layerChanged[changedCount++] = index;
+
+                BlockStateView state = BlockStateView.get(previous[i]);
+                if (state == null || !state.isTransparent() || state.getLightLevel() != 0) {
+                    this.level.addLightUpdate(x, y, z);
+                }
+                this.level.updateBlockSkyLight(x, y, z);
+                this.level.notifyBlockChanged(x, y, z, layer, BlockID.AIR);
+                if (antiXray) {
+                    this.level.addBlockChange(chunkIndex, x, y, z);
+                }
+            }
+            changed[layer] = layerChanged;
+            changedCounts[layer] = changedCount;
+            total += changedCount;
+        }
+
+        if (total == 0) {
+            return;
+        }
+
+        for (Entity entity : this.level.getNearbyEntities(new SimpleAxisAlignedBB(baseX - 1, baseY - 1, baseZ - 1, baseX + 17, baseY + 17, baseZ + 17))) {
+            entity.scheduleUpdate();
+        }
+
+        // Anti-xray obfuscates the surroundings of the changes, those are sent with the changed blocks of the tick
+        if (antiXray) {
+            return;
+        }
+
+        Map<Integer, Player> players = this.level.getChunkPlayers(section.chunkX, section.chunkZ);
+        if (players.isEmpty()) {
+            return;
+        }
+
+        BlockVector3 position = new BlockVector3(section.chunkX, section.sectionY, section.chunkZ);
+        for (Int2ObjectMap.Entry<ObjectList<Player>> entry : Server.sortPlayers(players.values()).int2ObjectEntrySet()) {
+            long air = GlobalBlockPalette.getOrCreateRuntimeId(entry.getIntKey(), BlockID.AIR, 0);
+            UpdateSubChunkBlocksPacket packet = new UpdateSubChunkBlocksPacket();
+            packet.position = position;
+            addEntries(packet.standardBlocks, changed[0], changedCounts[0], baseX, baseY, baseZ, air);
+            addEntries(packet.extraBlocks, changed[1], changedCounts[1], baseX, baseY, baseZ, air);
+            for (Player player : entry.getValue()) {
+                player.dataPacket(packet);
+            }
+        }
+    }
+
+    private static void addEntries(List<BlockChangeEntry> entries, int[] indexes, int count, int baseX, int baseY, int baseZ, long runtimeId) {
+        for (int i = 0; i < count; i++) {
+            int index = indexes[i];
+            BlockVector3 pos = new BlockVector3(baseX | index >> 8, baseY | (index & 0x0f), baseZ | (index >> 4) & 0x0f);
+            entries.add(new BlockChangeEntry(pos, runtimeId, UpdateBlockPacket.FLAG_ALL, 0, BlockChangeEntry.MessageType.NONE));
+        }
+    }
+
+    private void updateNeighbours(Long2ObjectLinkedOpenHashMap<SectionChanges> sections, SectionChanges section, LongSet updated, boolean listeners) {
+        int count = section.indexes[0].size();
+        int[] indexes = section.indexes[0].elements();
+        int baseX = section.chunkX << 4;
+        int baseY = section.sectionY << 4;
+        int baseZ = section.chunkZ << 4;
+        DimensionData dimensionData = this.level.getDimensionData();
+
+        for (int i = 0; i < count; i++) {
+            int index = indexes[i];
+            int x = baseX | index >> 8;
+            int y = baseY | (index & 0x0f);
+            int z = baseZ | (index >> 4) & 0x0f;
+
+            if (!section.isMarked(1, index)) {
+                this.updateBlock(x, y, z, 1, null, listeners);
+            }
+
+            for (BlockFace face : BlockFace.values()) {
+                int sideX = x + face.getXOffset();
+                int sideY = y + face.getYOffset();
+                int sideZ = z + face.getZOffset();
+                if (!this.level.isYInRange(sideY)) {
+                    continue;
+                }
+
+                SectionChanges sideSection = sections.get(sectionKey(sideX >> 4, sideY >> 4, sideZ >> 4));
+                if (sideSection != null && sideSection.isMarked(0, localIndex(sideX, sideY, sideZ))) {
+                    continue;
+                }
+                if (updated.add(Level.blockHash(sideX, sideY, sideZ, dimensionData))) {
+                    this.updateBlock(sideX, sideY, sideZ, 0, face, listeners);
+                    this.updateBlock(sideX, sideY, sideZ, 1, face, listeners);
+                }
+            }
+        }
+    }
+
+    private void updateBlock(int x, int y, int z, int layer, BlockFace face, boolean listeners) {
+        BlockStateView state = this.level.getBlockStateView(x, y, z, layer);
+        Block block;
+        if (state != null) {
+            if (layer != 0 && state.isAir()) {
+                return;
+            }
+            if (!listeners && !state.hasUpdateHandler() && (face == null || !state.hasNeighborChangeHandler())) {
+                return;
+            }
+            block = state.toBlock(this.level, x, y, z, layer);
+        } else {
+            block = this.level.getBlock(x, y, z, layer);
+        }
+
+        if (listeners) {
+            BlockUpdateEvent ev = new BlockUpdateEvent(block);
+            this.level.getServer().getPluginManager().callEvent(ev);
+            if (ev.isCancelled()) {
+                return;
+            }
+            block = ev.getBlock();
+        }
+
+        block.onUpdate(Level.BLOCK_UPDATE_NORMAL);
+        if (face != null) {
+            block.onNeighborChange(face.getOpposite());
+        }
+    }
+
+    private float[] getResistances(int x, int y, int z) {
+        long key = sectionKey(x >> 4, y >> 4, z >> 4);
+        if (this.lastResistances != null && this.lastSection == key) {
+            return this.lastResistances;
+        }
+
+        float[] cells = this.resistances.get(key);
+        if (cells == null) {
+            cells = new float[4096];
+            Arrays.fill(cells, UNKNOWN);
+            this.resistances.put(key, cells);
+        }
+        this.lastSection = key;
+        this.lastResistances = cells;
+        return cells;
+    }
+
+    private float loadResistance(int x, int y, int z) {
+        BlockStateView state = this.level.getBlockStateView(x, y, z, 0);
+        if (state != null && state.isAir()) {
+            return AIR;
+        }
+
+        BlockStateView layer1 = this.level.getBlockStateView(x, y, z, 1);
+        if (state != null && layer1 != null) {
+            return (float) Math.max(state.getResistance(), layer1.getResistance());
+        }
+        return (float) Math.max(this.level.getBlock(x, y, z, 0).getResistance(), this.level.getBlock(x, y, z, 1).getResistance());
+    }
+
+    private static long sectionKey(int chunkX, int sectionY, int chunkZ) {
+        return ((long) chunkX & 0x3ffffff) << 38 | ((long) chunkZ & 0x3ffffff) << 12 | (sectionY & 0xfff);
+    }
+
+    private static int localIndex(int x, int y, int z) {
+        return (x & 0x0f) << 8 | (z & 0x0f) << 4 | (y & 0x0f);
+    }
+
+    private static class SectionChanges {
+
+        private final int chunkX;
+        private final int sectionY;
+        private final int chunkZ;
+        // Positions to remove per layer, x << 8 | z << 4 | y, and a bit per position
+        private final IntArrayList[] indexes = new IntArrayList[LAYERS];
+        private final long[][] marked = new long[LAYERS][64];
+
+        private SectionChanges(int chunkX, int sectionY, int chunkZ) {
+            this.chunkX = chunkX;
+            this.sectionY = sectionY;
+            this.chunkZ = chunkZ;
+            for (int layer = 0; layer < LAYERS; layer++) {
+                this.indexes[layer] = new IntArrayList();
+            }
+        }
+
+        private void mark(int layer, int index) {
+            long[] bits = this.marked[layer];
+            long bit = 1L << index;
+            if ((bits[index >> 6] & bit) == 0) {
+                bits[index >> 6] |= bit;
+                this.indexes[layer].add(index);
+            }
+        }
+
+        private void unmark(int layer, int index) {
+            this.marked[layer][index >> 6] &= ~(1L << index);
+        }
+
+        private boolean isMarked(int layer, int index) {
+            return (this.marked[layer][index >> 6] & 1L << index) != 0;
+        }
+
+        /**
+         * Drop the positions which are no longer marked.
+         *
+         * @return number of positions left
+         */
+        private int compact(int layer) {
+            IntArrayList list = this.indexes[layer];
+            long[] seen = new long[64];
+            int count = 0;
+            for (int i = 0; i < list.size(); i++) {
+                int index = list.getInt(i);
+                long bit = 1L << index;
+                if (this.isMarked(layer, index) && (seen[index >> 6] & bit) == 0) {
+                    seen[index >> 6] |= bit;
+                    list.set(count++, index);
+                }
+            }
+            list.size(count);
+            return count;
+        }
+    }
+}
@@ -36,12 +36,17 @@ import cn.nukkit.level.format.FullChunk;
 import cn.nukkit.level.format.LevelProvider;
 import cn.nukkit.level.format.generic.BaseFullChunk;
 import cn.nukkit.level.format.generic.EmptyChunkSection;
+import cn.nukkit.level.format.generic.serializer.ChunkBlobs;
+import cn.nukkit.level.format.generic.serializer.NetworkChunkCache;
 import cn.nukkit.level.format.generic.serializer.NetworkChunkSerializer;
+import cn.nukkit.level.generator.ChunkPregenerator;
 import cn.nukkit.level.generator.Generator;
 import cn.nukkit.level.generator.PopChunkManager;
 import cn.nukkit.level.generator.task.GenerationTask;
 import cn.nukkit.level.generator.task.LightPopulationTask;
 import cn.nukkit.level.generator.task.PopulationTask;
+import cn.nukkit.level.light.BlockLightEngine;
+import cn.nukkit.level.light.SkyLightEngine;
 import cn.nukkit.level.particle.DestroyBlockParticle;
 import cn.nukkit.level.particle.ItemBreakParticle;
 import cn.nukkit.level.particle.Particle;
@@ -129,6 +134,12 @@ public class Level implements ChunkManager, Metadatable {
     // The blocks that can randomly tick
     public static final IntList RANDOM_TICK_BLOCKS = new IntArrayList();
 
+    // Lookup table built from RANDOM_TICK_BLOCKS, see updateRandomTickLookup()
+    private static volatile boolean[] randomTickLookup = new boolean[0];
+    private static volatile int randomTickLookupVersion;
+    private static int randomTickListHash;
+    private static int randomTickListSize;
+
     static {
         RANDOM_TICK_BLOCKS.add(Block.GRASS);
         RANDOM_TICK_BLOCKS.add(Block.FARMLAND);
@@ -225,6 +236,51 @@ public class Level implements ChunkManager, Metadatable {
         RANDOM_TICK_BLOCKS.add(Block.OXIDIZED_COPPER_GOLEM_STATUE);
 
         RANDOM_TICK_BLOCKS.add(Block.BUDDING_AMETHYST);
+
+        updateRandomTickLookup();
+    }
+
+    /**
+     * Rebuild the random tick lookup table if {@link #RANDOM_TICK_BLOCKS} has been changed since the last call.
+     */
+    public static synchronized void updateRandomTickLookup() {
+        int hash = RANDOM_TICK_BLOCKS.hashCode();
+        int size = RANDOM_TICK_BLOCKS.size();
+        if (randomTickLookupVersion != 0 && hash == randomTickListHash && size == randomTickListSize) {
+            return;
+        }
+
+        int max = -1;
+        for (int i = 0; i < size; i++) {
+            max = Math.max(max, RANDOM_TICK_BLOCKS.getInt(i));
+        }
+        boolean[] lookup = new boolean[max + 1];
+        for (int i = 0; i < size; i++) {
+            int id = RANDOM_TICK_BLOCKS.getInt(i);
+            if (id >= 0) {
+                lookup[id] = true;
+            }
+        }
+
+        randomTickLookup = lookup;
+        randomTickListHash = hash;
+        randomTickListSize = size;
+        randomTickLookupVersion++;
+    }
+
+    /**
+     * @return whether blocks with this id are listed in {@link #RANDOM_TICK_BLOCKS}
+     */
+    public static boolean isRandomTickBlock(int blockId) {
+        boolean[] lookup = randomTickLookup;
+        return blockId >= 0 && blockId < lookup.length && lookup[blockId];
+    }
+
+    /**
+     * @return a number that changes whenever the set of random tick blocks changes
+     */
+    public static int getRandomTickLookupVersion() {
+        return randomTickLookupVersion;
     }
 
     @NonComputationAtomic
@@ -282,15 +338,21 @@ public class Level implements ChunkManager, Metadatable {
     private final BlockUpdateScheduler updateQueue;
     private final Queue<QueuedUpdate> normalUpdateQueue = new ConcurrentLinkedDeque<>();
     private final Map<Long, Set<Integer>> lightQueue = new ConcurrentHashMap<>(8, 0.9f, 1);
+    private BlockLightEngine blockLightEngine;
+    private SkyLightEngine skyLightEngine;
 
     private final Int2ObjectMap<ConcurrentMap<Long, Int2ObjectMap<Player>>> chunkSendQueues = new Int2ObjectOpenHashMap<>();
     private final Int2ObjectMap<LongSet> chunkSendTasks = new Int2ObjectOpenHashMap<>();
 
-    private final Long2ObjectOpenHashMap<Boolean> chunkPopulationQueue = new Long2ObjectOpenHashMap<>();
-    private final Long2ObjectOpenHashMap<Boolean> chunkPopulationLock = new Long2ObjectOpenHashMap<>();
-    private final Long2ObjectOpenHashMap<Boolean> chunkGenerationQueue = new Long2ObjectOpenHashMap<>();
+    private final LongSet chunkPopulationQueue = new LongOpenHashSet();
+    // Chunks leased by a population task, every task leases the 3x3 area around its chunk
+    private final LongSet chunkPopulationLock = new LongOpenHashSet();
+    private final LongSet chunkGenerationQueue = new LongOpenHashSet();
     private final int chunkGenerationQueueSize;
     private final int chunkPopulationQueueSize;
+    // Every worker keeps its own generator and chunk manager, see generators
+    private final ThreadPoolExecutor generationExecutor;
+    private ChunkPregenerator pregenerator;
 
     @Getter
     private final VibrationManager vibrationManager = new VibrationManagerImpl(this);
@@ -316,6 +378,10 @@ public class Level implements ChunkManager, Metadatable {
     private final int chunksPerTicks;
     private final boolean clearChunksOnTick;
 
+    private final EntityActivationRange entityActivationRange;
+    private final ExplosionBatch explosionBatch = new ExplosionBatch(this);
+    private final EntitySpatialIndex entityIndex = new EntitySpatialIndex();
+
     private int updateLCG = ThreadLocalRandom.current().nextInt();
 
     private static final int LCG_CONSTANT = 1013904223;
@@ -369,6 +435,11 @@ public class Level implements ChunkManager, Metadatable {
     @Getter
     private ExecutorService asyncChuckExecutor;
     private final Queue<NetworkChunkSerializer.NetworkChunkSerializerCallbackData> asyncChunkRequestCallbackQueue = new ConcurrentLinkedQueue<>();
+    private final NetworkChunkCache networkChunkCache = new NetworkChunkCache(Server.getInstance().getSettings().world().chunk().networkCacheMb() * 1024L * 1024L);
+    private final Long2ObjectMap<CompletableFuture<BaseFullChunk>> chunkLoadFutures = Long2ObjectMaps.synchronize(new Long2ObjectOpenHashMap<>());
+
+    private volatile Thread tickThread;
+    private final Queue<Runnable> tickThreadTasks = new ConcurrentLinkedQueue<>();
 
     private Iterator<LongObjectEntry<Long>> lastUsingUnloadingIter;
 
@@ -431,8 +502,21 @@ public class Level implements ChunkManager, Metadatable {
         this.chunksPerTicks = this.server.getSettings().world().chunk().tickingPerTick();
         this.chunkGenerationQueueSize = this.server.getSettings().world().chunk().generationQueueSize();
         this.chunkPopulationQueueSize = this.server.getSettings().world().chunk().generationPopulationQueueSize();
+
+        int generationThreads = this.server.getSettings().world().chunk().generationThreads();
+        if (generationThreads <= 0) {
+            generationThreads = Runtime.getRuntime().availableProcessors();
+        }
+        ThreadFactoryBuilder generationBuilder = new ThreadFactoryBuilder();
+        generationBuilder.setNameFormat("Chunk Generator for " + name + " #%d");
+        generationBuilder.setDaemon(true);
+        generationBuilder.setUncaughtExceptionHandler((thread, ex) -> Server.getInstance().getLogger().error("Exception in " + thread.getName(), ex));
+        this.generationExecutor = new ThreadPoolExecutor(generationThreads, generationThreads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), generationBuilder.build());
+        // Idle workers die with their generators, worlds nobody explores don't keep them around
+        this.generationExecutor.allowCoreThreadTimeOut(true);
         this.chunkTickList.clear();
         this.clearChunksOnTick = this.server.getSettings().world().clearChunkTickList();
+        this.entityActivationRange = new EntityActivationRange(this, this.server.getSettings().world().entity().activationRange());
         this.temporalVector = new Vector3(0, 0, 0);
         this.tickRate = 1;
 
@@ -451,6 +535,7 @@ public class Level implements ChunkManager, Metadatable {
                 case MEDIUM -> 8;
                 default -> 16;
             });
+            this.antiXraySystem.setEngine(antiXraySettings.engine());
             this.antiXraySystem.setPreDeObfuscate(antiXraySettings.preDeobfuscate());
             this.antiXraySystem.initObfuscatedBlockList(antiXraySettings.obfuscatedBlocks());
         }
@@ -552,12 +637,49 @@ public class Level implements ChunkManager, Metadatable {
         Generator generator = generators.get();
         this.dimensionData = generator.getDimensionData();
         this.gameRules = this.requireProvider().getGamerules();
+
+        if (this.server.getSettings().world().pregeneration().resumeOnStart()) {
+            this.pregenerator = ChunkPregenerator.load(this);
+            if (this.pregenerator != null) {
+                this.server.getLogger().info("Resuming the pre-generation of " + this.getName() + " at " + this.pregenerator.getCompleted() + "/" + this.pregenerator.getTotal() + " chunks");
+                this.pregenerator.start();
+            }
+        }
     }
 
+    /**
+     * @return generator of the calling thread, generation workers each have their own generator and chunk manager
+     */
     public Generator getGenerator() {
         return generators.get();
     }
 
+    public int getGenerationThreads() {
+        return this.generationExecutor.getMaximumPoolSize();
+    }
+
+    public ChunkPregenerator pregenerate(int centerX, int centerZ, int radius) {
+        return this.pregenerate(centerX, centerZ, radius, ChunkPregenerator.Shape.SQUARE);
+    }
+
+    /**
+     * Generate and populate every chunk of the shape around the centre chunk on all generation workers.
+     * A previous pre-generation of this level is stopped.
+     */
+    public ChunkPregenerator pregenerate(int centerX, int centerZ, int radius, ChunkPregenerator.Shape shape) {
+        if (this.pregenerator != null) {
+            this.pregenerator.stop();
+        }
+        this.pregenerator = new ChunkPregenerator(this, centerX, centerZ, radius, shape);
+        this.pregenerator.start();
+        return this.pregenerator;
+    }
+
+    @Nullable
+    public ChunkPregenerator getPregenerator() {
+        return this.pregenerator;
+    }
+
     public BlockMetadataStore getBlockMetadata() {
         return this.blockMetadata;
     }
@@ -603,6 +725,11 @@ public class Level implements ChunkManager, Metadatable {
             if (this.asyncChuckExecutor != null) {
                 this.asyncChuckExecutor.shutdownNow();
             }
+            if (this.pregenerator != null) {
+                this.pregenerator.cancel();
+                this.pregenerator = null;
+            }
+            this.generationExecutor.shutdownNow();
 
             LevelProvider levelProvider = this.provider;
             if (levelProvider != null) {
@@ -622,6 +749,7 @@ public class Level implements ChunkManager, Metadatable {
             }
 
             this.provider = null;
+            this.networkChunkCache.clear();
             this.blockMetadata = null;
             this.server.getLevels().remove(this.levelId);
             this.generators.remove();
@@ -1048,9 +1176,58 @@ public class Level implements ChunkManager, Metadatable {
         return gameRules;
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * The level, its block update scheduler and its entity maps are owned by the thread ticking the level.
+     * This is the main thread unless parallel level ticking is enabled, in which case it is the worker
+     * currently running {@link #doTick(int)}.
+     *
+     * @return true if the current thread may mutate this level
+     */
+    public boolean isTickThread() {
+        Thread thread = this.tickThread;
+        return thread != null ? thread == Thread.currentThread() : this.server.isPrimaryThread();
+    }
+
+    /**
+     * Run the task on the thread that owns this level. The task runs immediately when called from that thread,
+     * otherwise it is queued and runs at the start of the next level tick.
+     * Moving entities between levels touches both of them and goes through
+     * {@link Server#executeBetweenLevelTicks(Runnable)} instead.
+     *
+     * @param task task to run
+     */
+    public void executeOnTickThread(Runnable task) {
+        if (this.isTickThread()) {
+            task.run();
+        } else {
+            this.tickThreadTasks.add(task);
+        }
+    }
+
     public void doTick(int currentTick) {
+        this.tickThread = Thread.currentThread();
+        try {
+            Runnable task;
+            while ((task = this.tickThreadTasks.poll()) != null) {
+                try {
+                    task.run();
+                } catch (Exception e) {
+                    this.server.getLogger().error("Exception in a task scheduled on level " + this.getName(), e);
+                }
+            }
+
+            this.doTick0(currentTick);
+        } finally {
+            this.tickThread = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void doTick0(int currentTick) {
         updateBlockLight(lightQueue);
+        if (this.skyLightEngine != null) {
+            this.skyLightEngine.tick();
+        }
         this.checkTime();
 
         if (/*stopTime || !this.gameRules.getBoolean(GameRule.DO_DAYLIGHT_CYCLE) ||*/ currentTick % 6000 == 0) { // Keep the time in sync
@@ -1114,29 +1291,41 @@ public class Level implements ChunkManager, Metadatable {
         QueuedUpdate queuedUpdate;
         while ((queuedUpdate = this.normalUpdateQueue.poll()) != null) {
             Block block = getBlock(queuedUpdate.block, queuedUpdate.block.layer);
-            BlockUpdateEvent event = new BlockUpdateEvent(block);
-            this.server.getPluginManager().callEvent(event);
-
-            if (!event.isCancelled()) {
-                block.onUpdate(BLOCK_UPDATE_NORMAL);
-                if (queuedUpdate.neighbor != null) {
-                    block.onNeighborChange(queuedUpdate.neighbor.getOpposite());
+            if (this.server.getPluginManager().hasListeners(BlockUpdateEvent.class)) {
+                BlockUpdateEvent event = new BlockUpdateEvent(block);
+                this.server.getPluginManager().callEvent(event);
+                if (event.isCancelled()) {
+                    continue;
                 }
             }
+
+            block.onUpdate(BLOCK_UPDATE_NORMAL);
+            if (queuedUpdate.neighbor != null) {
+                block.onNeighborChange(queuedUpdate.neighbor.getOpposite());
+            }
         }
 
         if (!this.updateEntities.isEmpty()) {
+            this.entityActivationRange.activateEntities(currentTick);
             for (long id : this.updateEntities.keySetLong()) {
                 Entity entity = this.updateEntities.get(id);
                 if (entity == null) {
                     this.updateEntities.remove(id);
                     continue;
                 }
-                if (entity.closed || !entity.onUpdate(currentTick)) {
+                if (entity.closed) {
+                    this.updateEntities.remove(id);
+                    continue;
+                }
+                // Inactive entities stay queued until their next reduced rate tick
+                if (this.entityActivationRange.shouldTick(entity, currentTick) && !entity.onUpdate(currentTick)) {
                     this.updateEntities.remove(id);
                 }
             }
         }
+        this.entityActivationRange.finishTick();
+
+        this.explosionBatch.process();
 
         this.updateBlockEntities.removeIf(blockEntity -> !blockEntity.isValid() || !blockEntity.onUpdate());
         // Closing invalid block entities
@@ -1186,11 +1375,13 @@ public class Level implements ChunkManager, Metadatable {
             }
         }
 
+        this.requireProvider().processChunkLoads();
+
         if (this.server.getSettings().world().chunk().asyncChunks()) {
             NetworkChunkSerializer.NetworkChunkSerializerCallbackData data;
             int count = (this.getPlayers().size() + 1) * this.server.getSettings().world().chunk().sendingPerTick();
             for (int i = 0; i < count && (data = this.asyncChunkRequestCallbackQueue.poll()) != null; ++i) {
-                this.chunkRequestCallback(data.getProtocol(), data.getTimestamp(), data.getX(), data.getZ(), data.getSubChunkCount(), data.getPayload());
+                this.chunkRequestCallback(data.getProtocol(), data.getTimestamp(), data.getX(), data.getZ(), data.getSubChunkCount(), data.getPayload(), data.getBlobs());
             }
         }
 
@@ -1451,6 +1642,11 @@ public class Level implements ChunkManager, Metadatable {
 
         boolean blockTest = true;
 
+        if (this.randomTickingEnabled()) {
+            // Pick up blocks plugins added to RANDOM_TICK_BLOCKS
+            updateRandomTickLookup();
+        }
+
         if (!chunkTickList.isEmpty()) {
             ObjectIterator<Long2IntMap.Entry> iter = chunkTickList.long2IntEntrySet().iterator();
             while (iter.hasNext()) {
@@ -1483,19 +1679,23 @@ public class Level implements ChunkManager, Metadatable {
                     final int randomTickSpeed = gameRules.getInteger(GameRule.RANDOM_TICK_SPEED);
                     if (this.useSections) {
                         for (ChunkSection section : ((Chunk) chunk).getSections()) {
-                            if (!(section instanceof EmptyChunkSection)) {
-                                int Y = section.getY();
-                                for (int i = 0; i < randomTickSpeed; ++i) {
-                                    int n = ThreadLocalRandom.current().nextInt();
-                                    int x = n & 0xF;
-                                    int z = n >> 8 & 0xF;
-                                    int y = n >> 16 & 0xF;
-
-                                    int blockId = section.getBlockId(x, y, z);
-                                    if (blockId >= 0 && RANDOM_TICK_BLOCKS.contains(blockId)) {
-                                        Block block = Block.get(blockId, section.getBlockData(x, y, z), this, chunkX * 16 + x, (Y << 4) + y, chunkZ * 16 + z);
-                                        block.onUpdate(BLOCK_UPDATE_RANDOM);
-                                    }
+                            // Sections without any random tick block can't do anything
+                            if (section instanceof EmptyChunkSection || section.getRandomTickBlockCount() == 0) {
+                                continue;
+                            }
+
+                            int Y = section.getY();
+                            for (int i = 0; i < randomTickSpeed; ++i) {
+                                int n = ThreadLocalRandom.current().nextInt();
+                                int x = n & 0xF;
+                                int z = n >> 8 & 0xF;
+                                int y = n >> 16 & 0xF;
+
+                                int fullId = section.getFullBlock(x, y, z);
+                                int blockId = fullId >> Block.DATA_BITS;
+                                if (isRandomTickBlock(blockId)) {
+                                    Block block = Block.get(blockId, fullId & Block.DATA_MASK, this, chunkX * 16 + x, (Y << 4) + y, chunkZ * 16 + z);
+                                    block.onUpdate(BLOCK_UPDATE_RANDOM);
                                 }
                             }
                         }
@@ -1511,7 +1711,7 @@ public class Level implements ChunkManager, Metadatable {
                                 int[] state = chunk.getBlockState(x, y + (Y << 4), z);
                                 int blockId = state[0];
                                 blockTest |= blockId != 0 && state[1] != 0;
-                                if (blockId >= 0 && RANDOM_TICK_BLOCKS.contains(blockId)) {
+                                if (isRandomTickBlock(blockId)) {
                                     Block block = Block.get(blockId, state[1], this, x, y + (Y << 4), z);
                                     block.onUpdate(BLOCK_UPDATE_RANDOM);
                                 }
@@ -1566,7 +1766,12 @@ public class Level implements ChunkManager, Metadatable {
                 continue;
             }
 
-            this.getBlock(pos.getSideVec(side)).onUpdate(BLOCK_UPDATE_REDSTONE);
+            Vector3 sidePos = pos.getSideVec(side);
+            BlockStateView state = this.getBlockStateView(sidePos.getFloorX(), sidePos.getFloorY(), sidePos.getFloorZ(), 0);
+            if (state != null && !state.hasUpdateHandler()) {
+                continue;
+            }
+            this.getBlock(sidePos).onUpdate(BLOCK_UPDATE_REDSTONE);
         }
     }
 
@@ -1780,17 +1985,50 @@ public class Level implements ChunkManager, Metadatable {
 
     public boolean hasCollisionBlocks(Entity entity, AxisAlignedBB bb, boolean checkCanPassThrough) {
         int minX = NukkitMath.floorDouble(bb.getMinX());
-        int minY = NukkitMath.floorDouble(bb.getMinY());
+        int minY = Math.max(NukkitMath.floorDouble(bb.getMinY()), this.getMinBlockY());
         int minZ = NukkitMath.floorDouble(bb.getMinZ());
         int maxX = NukkitMath.ceilDouble(bb.getMaxX());
-        int maxY = NukkitMath.ceilDouble(bb.getMaxY());
+        int maxY = Math.min(NukkitMath.ceilDouble(bb.getMaxY()), this.getMaxBlockY());
         int maxZ = NukkitMath.ceilDouble(bb.getMaxZ());
 
+        FullChunk chunk = entity != null ? entity.chunk : null;
         for (int z = minZ; z <= maxZ; ++z) {
             for (int x = minX; x <= maxX; ++x) {
+                if (chunk == null || chunk.getX() != x >> 4 || chunk.getZ() != z >> 4) {
+                    chunk = this.getChunkIfLoaded(x >> 4, z >> 4);
+                    if (chunk == null) {
+                        continue;
+                    }
+                }
+
+                ChunkSection section = null;
+                int sectionY = Integer.MIN_VALUE;
                 for (int y = minY; y <= maxY; ++y) {
-                    Block block = this.getBlock(entity != null ? entity.chunk : null, x, y, z, 0, false);
-                    if ((!checkCanPassThrough || !block.canPassThrough()) && block.collidesWithBB(bb)) {
+                    int fullId;
+                    if (chunk instanceof Chunk sectionedChunk) {
+                        if (sectionY != y >> 4) {
+                            sectionY = y >> 4;
+                            section = sectionedChunk.getSection(sectionY);
+                        }
+                        if (section instanceof EmptyChunkSection) {
+                            y |= 0x0f;
+                            continue;
+                        }
+                        fullId = section.getFullBlock(x & 0x0f, y & 0x0f, z & 0x0f);
+                    } else {
+                        fullId = chunk.getFullBlock(x & 0x0f, y, z & 0x0f);
+                    }
+                    if (fullId == 0) {
+                        continue;
+                    }
+
+                    int shape = BlockShapes.getShape(fullId);
+                    if (shape == BlockShapes.DYNAMIC) {
+                        Block block = Block.get(fullId >> Block.DATA_BITS, fullId & Block.DATA_MASK, this, x, y, z);
+                        if ((!checkCanPassThrough || !block.canPassThrough()) && block.collidesWithBB(bb)) {
+                            return true;
+                        }
+                    } else if ((!checkCanPassThrough || !BlockShapes.canPassThrough(shape)) && intersectsShape(bb, shape, x, y, z)) {
                         return true;
                     }
                 }
@@ -1824,37 +2062,86 @@ public class Level implements ChunkManager, Metadatable {
 
     public AxisAlignedBB[] getCollisionCubes(Entity entity, AxisAlignedBB bb, boolean entities, boolean solidEntities) {
         int minX = NukkitMath.floorDouble(bb.getMinX());
-        int minY = NukkitMath.floorDouble(bb.getMinY());
+        int minY = Math.max(NukkitMath.floorDouble(bb.getMinY()), this.getMinBlockY());
         int minZ = NukkitMath.floorDouble(bb.getMinZ());
         int maxX = NukkitMath.ceilDouble(bb.getMaxX());
-        int maxY = NukkitMath.ceilDouble(bb.getMaxY());
+        int maxY = Math.min(NukkitMath.ceilDouble(bb.getMaxY()), this.getMaxBlockY());
         int maxZ = NukkitMath.ceilDouble(bb.getMaxZ());
 
-        List<AxisAlignedBB> collides = new ArrayList<>();
-
-        for (int z = minZ; z <= maxZ; ++z) {
-            for (int x = minX; x <= maxX; ++x) {
-                for (int y = minY; y <= maxY; ++y) {
-                    Block block = this.getBlock(x, y, z, false);
-                    if (block.getId() == BlockID.BARRIER && entity.canPassThroughBarrier()) {
-                        continue;
+        CollisionBuffer buffer = COLLISION_BUFFER.get();
+        // Dynamic shapes run block code which could end up here again
+        List<AxisAlignedBB> collides = buffer.inUse ? new ArrayList<>() : buffer.boxes;
+        boolean owner = !buffer.inUse;
+        buffer.inUse = true;
+        try {
+            boolean passBarriers = entity != null && entity.canPassThroughBarrier();
+            FullChunk chunk = entity != null ? entity.chunk : null;
+            for (int z = minZ; z <= maxZ; ++z) {
+                for (int x = minX; x <= maxX; ++x) {
+                    if (chunk == null || chunk.getX() != x >> 4 || chunk.getZ() != z >> 4) {
+                        chunk = this.getChunkIfLoaded(x >> 4, z >> 4);
+                        if (chunk == null) {
+                            continue;
+                        }
                     }
-                    if (!block.canPassThrough() && block.collidesWithBB(bb)) {
-                        collides.add(block.getBoundingBox());
+
+                    ChunkSection section = null;
+                    int sectionY = Integer.MIN_VALUE;
+                    for (int y = minY; y <= maxY; ++y) {
+                        int fullId;
+                        if (chunk instanceof Chunk sectionedChunk) {
+                            if (sectionY != y >> 4) {
+                                sectionY = y >> 4;
+                                section = sectionedChunk.getSection(sectionY);
+                            }
+                            if (section instanceof EmptyChunkSection) {
+                                y |= 0x0f;
+                                continue;
+                            }
+                            fullId = section.getFullBlock(x & 0x0f, y & 0x0f, z & 0x0f);
+                        } else {
+                            fullId = chunk.getFullBlock(x & 0x0f, y, z & 0x0f);
+                        }
+                        if (fullId == 0 || (passBarriers && fullId >> Block.DATA_BITS == BlockID.BARRIER)) {
+                            continue;
+                        }
+
+                        int shape = BlockShapes.getShape(fullId);
+                        if (shape == BlockShapes.DYNAMIC) {
+                            Block block = Block.get(fullId >> Block.DATA_BITS, fullId & Block.DATA_MASK, this, x, y, z);
+                            if (!block.canPassThrough() && block.collidesWithBB(bb)) {
+                                collides.add(block.getBoundingBox());
+                            }
+                        } else if (!BlockShapes.canPassThrough(shape) && intersectsShape(bb, shape, x, y, z)) {
+                            AxisAlignedBB box = BlockShapes.getBox(shape);
+                            collides.add(new SimpleAxisAlignedBB(box.getMinX() + x, box.getMinY() + y, box.getMinZ() + z,
+                                    box.getMaxX() + x, box.getMaxY() + y, box.getMaxZ() + z));
+                        }
                     }
                 }
             }
-        }
 
-        if (entities || solidEntities) {
-            for (Entity ent : this.getCollidingEntities(bb.grow(0.25f, 0.25f, 0.25f), entity)) {
-                if (solidEntities || !ent.canPassThrough()) {
-                    collides.add(ent.boundingBox.clone());
+            if (entities || solidEntities) {
+                for (Entity ent : this.getCollidingEntities(bb.grow(0.25f, 0.25f, 0.25f), entity)) {
+                    if (solidEntities || !ent.canPassThrough()) {
+                        collides.add(ent.boundingBox.clone());
+                    }
                 }
             }
+
+            return collides.isEmpty() ? AxisAlignedBB.EMPTY_ARRAY : collides.toArray(AxisAlignedBB.EMPTY_ARRAY);
+        } finally {
+            if (owner) {
+                collides.clear();
+                buffer.inUse = false;
+            }
         }
+    }
 
-        return collides.toArray(AxisAlignedBB.EMPTY_ARRAY);
+    private static boolean intersectsShape(AxisAlignedBB bb, int shape, int x, int y, int z) {
+        AxisAlignedBB box = BlockShapes.getBox(shape);
+        return box != null && bb.intersectsWith(box.getMinX() + x, box.getMinY() + y, box.getMinZ() + z,
+                box.getMaxX() + x, box.getMaxY() + y, box.getMaxZ() + z);
     }
 
     public boolean hasCollision(Entity entity, AxisAlignedBB bb, boolean entities) {
@@ -1944,6 +2231,23 @@ public class Level implements ChunkManager, Metadatable {
         return chunk.getFullBlock(x & 0x0f, y, z & 0x0f, layer);
     }
 
+    /**
+     * Look up the state of a block without creating it, the chunk is loaded if needed.
+     *
+     * @return view of the state at the position, null for custom or unknown blocks
+     */
+    @Nullable
+    public BlockStateView getBlockStateView(int x, int y, int z, int layer) {
+        int fullId = 0;
+        if (isYInRange(y)) {
+            FullChunk chunk = this.getChunk(x >> 4, z >> 4);
+            if (chunk != null) {
+                fullId = chunk.getFullBlock(x & 0x0f, y, z & 0x0f, layer);
+            }
+        }
+        return BlockStateView.get(fullId);
+    }
+
     public int getBlockRuntimeId(int x, int y, int z, int layer) {
         return this.getBlockRuntimeId(ProtocolInfo.CURRENT_PROTOCOL, x, y, z, layer);
     }
@@ -2038,122 +2342,26 @@ public class Level implements ChunkManager, Metadatable {
     }
 
     public void updateBlockSkyLight(int x, int y, int z) {
-    }
-
-    public void updateBlockLight(Map<Long, Set<Integer>> map) {
-        int size = map.size();
-        if (size == 0) {
+        if (!this.isOverWorld() || !isYInRange(y) || !this.server.getSettings().world().lightUpdates()) {
             return;
         }
-        Queue<Long> lightPropagationQueue = new ConcurrentLinkedQueue<>();
-        Queue<Object[]> lightRemovalQueue = new ConcurrentLinkedQueue<>();
-        LongOpenHashSet visited = new LongOpenHashSet();
-        LongOpenHashSet removalVisited = new LongOpenHashSet();
-
-        Iterator<Map.Entry<Long, Set<Integer>>> iter = map.entrySet().iterator();
-        while (iter.hasNext() && size-- > 0) {
-            Map.Entry<Long, Set<Integer>> entry = iter.next();
-            iter.remove();
-            long index = entry.getKey();
-            BaseFullChunk chunk = getChunk(getHashX(index), getHashZ(index), false);
-            Set<Integer> blocks = entry.getValue();
-
-            for (int blockHash : blocks) {
-                Vector3 pos = getBlockXYZ(index, blockHash, this.getDimensionData());
-                if (chunk != null) {
-                    int lcx = pos.getFloorX() & 0xF;
-                    int lcz = pos.getFloorZ() & 0xF;
-                    int oldLevel = chunk.getBlockLight(lcx, pos.getFloorY(), lcz);
-                    int newLevel = Block.getBlockLight(chunk.getBlockId(lcx, pos.getFloorY(), lcz));
-                    if (oldLevel != newLevel) {
-                        chunk.setBlockLight(((int) pos.x) & 0x0f, ensureY((int) pos.y), ((int) pos.z) & 0x0f, newLevel & 0x0f);
-
-                        long hash = Hash.hashBlock(pos.getFloorX(), pos.getFloorY(), pos.getFloorZ());
-                        if (newLevel < oldLevel) {
-                            removalVisited.add(hash);
-                            lightRemovalQueue.add(new Object[]{hash, oldLevel});
-                        } else {
-                            visited.add(hash);
-                            lightPropagationQueue.add(hash);
-                        }
-                    }
-                }
-            }
-        }
 
-        while (!lightRemovalQueue.isEmpty()) {
-            Object[] val = lightRemovalQueue.poll();
-            long node = (long) val[0];
-            int x = Hash.hashBlockX(node);
-            int y = Hash.hashBlockY(node);
-            int z = Hash.hashBlockZ(node);
-
-            int lightLevel = (int) val[1];
-
-            this.computeRemoveBlockLight(x - 1, y, z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            this.computeRemoveBlockLight(x + 1, y, z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            this.computeRemoveBlockLight(x, y - 1, z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            this.computeRemoveBlockLight(x, y + 1, z, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            this.computeRemoveBlockLight(x, y, z - 1, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-            this.computeRemoveBlockLight(x, y, z + 1, lightLevel, lightRemovalQueue, lightPropagationQueue, removalVisited, visited);
-        }
-
-        while (!lightPropagationQueue.isEmpty()) {
-            long node = lightPropagationQueue.poll();
-
-            int x = Hash.hashBlockX(node);
-            int y = Hash.hashBlockY(node);
-            int z = Hash.hashBlockZ(node);
-
-            int id = this.getBlockIdAt(x, y, z);
-            int lightFilter = id >= Block.MAX_BLOCK_ID ? 15 : Registries.BLOCK.getLightFilter(id);
-            int lightLevel = this.getBlockLightAt(x, y, z) - lightFilter;
-
-            if (lightLevel >= 1) {
-                this.computeSpreadBlockLight(x - 1, y, z, lightLevel, lightPropagationQueue, visited);
-                this.computeSpreadBlockLight(x + 1, y, z, lightLevel, lightPropagationQueue, visited);
-                this.computeSpreadBlockLight(x, y - 1, z, lightLevel, lightPropagationQueue, visited);
-                this.computeSpreadBlockLight(x, y + 1, z, lightLevel, lightPropagationQueue, visited);
-                this.computeSpreadBlockLight(x, y, z - 1, lightLevel, lightPropagationQueue, visited);
-                this.computeSpreadBlockLight(x, y, z + 1, lightLevel, lightPropagationQueue, visited);
-            }
+        BaseFullChunk chunk = this.getChunkIfLoaded(x >> 4, z >> 4);
+        if (chunk == null) {
+            return;
         }
-    }
 
-    private void computeRemoveBlockLight(int x, int y, int z, int currentLight, Queue<Object[]> queue,
-                                         Queue<Long> spreadQueue, Set<Long> visited, Set<Long> spreadVisited) {
-        int current = this.getBlockLightAt(x, y, z);
-        if (current != 0 && current < currentLight) {
-            this.setBlockLightAt(x, y, z, 0);
-            if (current > 1) {
-                long index = Hash.hashBlock(x, y, z);
-                if (!visited.contains(index)) {
-                    visited.add(index);
-                    queue.add(new Object[]{index, current});
-                }
-            }
-        } else if (current >= currentLight) {
-            long index = Hash.hashBlock(x, y, z);
-            if (!spreadVisited.contains(index)) {
-                spreadVisited.add(index);
-                spreadQueue.add(index);
-            }
+        if (this.skyLightEngine == null) {
+            this.skyLightEngine = new SkyLightEngine(this);
         }
+        this.skyLightEngine.enqueue(chunk, x, y, z);
     }
 
-    private void computeSpreadBlockLight(int x, int y, int z, int currentLight, Queue<Long> queue, Set<Long> visited) {
-        int current = this.getBlockLightAt(x, y, z);
-        if (current < currentLight - 1) {
-            this.setBlockLightAt(x, y, z, currentLight);
-
-            long index = Hash.hashBlock(x, y, z);
-            if (!visited.contains(index)) {
-                visited.add(index);
-                if (currentLight > 1) {
-                    queue.add(index);
-                }
-            }
+    public void updateBlockLight(Map<Long, Set<Integer>> map) {
+        if (this.blockLightEngine == null) {
+            this.blockLightEngine = new BlockLightEngine(this);
         }
+        this.blockLightEngine.update(map);
     }
 
     public void addLightUpdate(int x, int y, int z) {
@@ -2220,13 +2428,8 @@ public class Level implements ChunkManager, Metadatable {
         block.level = this;
         block.layer = layer;
 
-        try {
-            for (Consumer<Block> callback : this.callbackBlockSet.values()) {
-                callback.accept(block);
-            }
-        } catch (Exception e) {
-            Server.getInstance().getLogger().error("Error while calling block set callback", e);
-        }
+        this.callBlockSetCallbacks(block);
+        this.explosionBatch.onBlockSet(x, y, z);
 
         int cx = x >> 4;
         int cz = z >> 4;
@@ -2247,13 +2450,22 @@ public class Level implements ChunkManager, Metadatable {
             if (blockPrevious.isTransparent() != block.isTransparent() || blockPrevious.getLightLevel() != block.getLightLevel()) {
                 addLightUpdate(x, y, z);
             }
-            BlockUpdateEvent ev = new BlockUpdateEvent(block);
-            this.server.getPluginManager().callEvent(ev);
-            if (!ev.isCancelled()) {
+            if (blockPrevious.isTransparent() != block.isTransparent() || blockPrevious.diffusesSkyLight() != block.diffusesSkyLight()
+                    || (blockPrevious.getId() == BlockID.AIR) != (block.getId() == BlockID.AIR)) {
+                updateBlockSkyLight(x, y, z);
+            }
+            BlockUpdateEvent ev = null;
+            if (this.server.getPluginManager().hasListeners(BlockUpdateEvent.class)) {
+                ev = new BlockUpdateEvent(block);
+                this.server.getPluginManager().callEvent(ev);
+            }
+            if (ev == null || !ev.isCancelled()) {
                 for (Entity entity : this.getNearbyEntities(new SimpleAxisAlignedBB(x - 1, y - 1, z - 1, x + 1, y + 1, z + 1))) {
                     entity.scheduleUpdate();
                 }
-                block = ev.getBlock();
+                if (ev != null) {
+                    block = ev.getBlock();
+                }
                 block.onUpdate(BLOCK_UPDATE_NORMAL);
                 block.getLevelBlockAtLayer(layer == 0 ? 1 : 0).onUpdate(BLOCK_UPDATE_NORMAL);
                 this.updateAround(new Vector3(x, y, z));
@@ -2271,12 +2483,51 @@ public class Level implements ChunkManager, Metadatable {
         }
     }
 
+    private void callBlockSetCallbacks(Block block) {
+        try {
+            for (Consumer<Block> callback : this.callbackBlockSet.values()) {
+                callback.accept(block);
+            }
+        } catch (Exception e) {
+            Server.getInstance().getLogger().error("Error while calling block set callback", e);
+        }
+    }
+
+    /**
+     * Tell the block set callbacks and chunk loaders about a block changed in the chunk directly, without {@link #setBlock}.
+     */
+    void notifyBlockChanged(int x, int y, int z, int layer, int fullId) {
+        if (!this.callbackBlockSet.isEmpty()) {
+            this.callBlockSetCallbacks(Block.get(fullId >> Block.DATA_BITS, fullId & Block.DATA_MASK, this, x, y, z, layer));
+        }
+
+        ChunkLoader[] loaders = this.getChunkLoaders(x >> 4, z >> 4);
+        if (loaders.length > 0) {
+            Vector3 pos = new Vector3(x, y, z);
+            for (ChunkLoader loader : loaders) {
+                loader.onBlockChanged(pos);
+            }
+        }
+    }
+
+    ExplosionBatch getExplosionBatch() {
+        return this.explosionBatch;
+    }
+
+    /**
+     * Run the explosion with the other explosions of the tick, at the end of the entity updates. Explosions queued
+     * outside of a tick run in the next one.
+     */
+    public void queueExplosion(Explosion explosion) {
+        this.explosionBatch.queue(explosion);
+    }
+
     private void addBlockChange(int x, int y, int z) {
         long index = Level.chunkHash(x >> 4, z >> 4);
         addBlockChange(index, x, y, z);
     }
 
-    private void addBlockChange(long index, int x, int y, int z) {
+    void addBlockChange(long index, int x, int y, int z) {
         synchronized (changedBlocks) {
             SoftReference<Int2ObjectOpenHashMap<Object>> current = changedBlocks.computeIfAbsent(index, k -> new SoftReference<>(new Int2ObjectOpenHashMap<>()));
             Map<Integer, Object> currentMap = current.get();
@@ -2840,27 +3091,22 @@ public class Level implements ChunkManager, Metadatable {
     }
 
     public Entity[] getCollidingEntities(AxisAlignedBB bb, Entity entity) {
-        List<Entity> nearby = new ArrayList<>();
+        if (entity != null && !entity.canCollide()) {
+            return EMPTY_ENTITY_ARR;
+        }
 
-        if (entity == null || entity.canCollide()) {
-            int minX = NukkitMath.floorDouble((bb.getMinX() - 2) / 16);
-            int maxX = NukkitMath.ceilDouble((bb.getMaxX() + 2) / 16);
-            int minZ = NukkitMath.floorDouble((bb.getMinZ() - 2) / 16);
-            int maxZ = NukkitMath.ceilDouble((bb.getMaxZ() + 2) / 16);
+        Entity[] nearby = this.entityIndex.getEntities(bb, entity);
+        if (entity == null) {
+            return nearby;
+        }
 
-            for (int x = minX; x <= maxX; ++x) {
-                for (int z = minZ; z <= maxZ; ++z) {
-                    for (Entity ent : this.getChunkEntities(x, z, false).values()) {
-                        if ((entity == null || (ent != entity && entity.canCollideWith(ent)))
-                                && ent.boundingBox.intersectsWith(bb)) {
-                            nearby.add(ent);
-                        }
-                    }
-                }
+        int count = 0;
+        for (Entity ent : nearby) {
+            if (entity.canCollideWith(ent)) {
+                nearby[count++] = ent;
             }
         }
-
-        return nearby.toArray(new Entity[0]);
+        return count == nearby.length ? nearby : Arrays.copyOf(nearby, count);
     }
 
     public Entity[] getNearbyEntities(AxisAlignedBB bb) {
@@ -2868,51 +3114,39 @@ public class Level implements ChunkManager, Metadatable {
     }
 
     private static final Entity[] EMPTY_ENTITY_ARR = new Entity[0];
-    private static final Entity[] ENTITY_BUFFER = new Entity[512];
+    private static final ThreadLocal<CollisionBuffer> COLLISION_BUFFER = ThreadLocal.withInitial(CollisionBuffer::new);
 
     public Entity[] getNearbyEntities(AxisAlignedBB bb, Entity entity) {
         return getNearbyEntities(bb, entity, false);
     }
 
     public Entity[] getNearbyEntities(AxisAlignedBB bb, Entity entity, boolean loadChunks) {
-        int index = 0;
-
-        int minX = NukkitMath.floorDouble((bb.getMinX() - 2) * 0.0625);
-        int maxX = NukkitMath.ceilDouble((bb.getMaxX() + 2) * 0.0625);
-        int minZ = NukkitMath.floorDouble((bb.getMinZ() - 2) * 0.0625);
-        int maxZ = NukkitMath.ceilDouble((bb.getMaxZ() + 2) * 0.0625);
-
-        ArrayList<Entity> overflow = null;
-
-        for (int x = minX; x <= maxX; ++x) {
-            for (int z = minZ; z <= maxZ; ++z) {
-                for (Entity ent : this.getChunkEntities(x, z, loadChunks).values()) {
-                    if (ent != entity && ent.boundingBox.intersectsWith(bb)) {
-                        if (index < ENTITY_BUFFER.length) {
-                            ENTITY_BUFFER[index] = ent;
-                        } else {
-                            if (overflow == null) overflow = new ArrayList<>(1024);
-                            overflow.add(ent);
-                        }
-                        index++;
-                    }
+        if (loadChunks) {
+            // Entities are indexed once their chunk is loaded
+            int minX = NukkitMath.floorDouble((bb.getMinX() - 2) * 0.0625);
+            int maxX = NukkitMath.ceilDouble((bb.getMaxX() + 2) * 0.0625);
+            int minZ = NukkitMath.floorDouble((bb.getMinZ() - 2) * 0.0625);
+            int maxZ = NukkitMath.ceilDouble((bb.getMaxZ() + 2) * 0.0625);
+            for (int x = minX; x <= maxX; ++x) {
+                for (int z = minZ; z <= maxZ; ++z) {
+                    this.getChunk(x, z, true);
                 }
             }
         }
+        return this.entityIndex.getEntities(bb, entity);
+    }
 
-        if (index == 0) return EMPTY_ENTITY_ARR;
-        Entity[] copy;
-        if (overflow == null) {
-            copy = Arrays.copyOfRange(ENTITY_BUFFER, 0, index);
-            Arrays.fill(ENTITY_BUFFER, 0, index, null);
-        } else {
-            copy = new Entity[ENTITY_BUFFER.length + overflow.size()];
-            System.arraycopy(ENTITY_BUFFER, 0, copy, 0, ENTITY_BUFFER.length);
-            for (int i = 0; i < overflow.size(); i++) {
-                copy[ENTITY_BUFFER.length + i] = overflow.get(i);
-            }
-        }
-        return copy;
+    /**
+     * Visit the entities of the given type with a bounding box intersecting the given one, without creating an array.
+     *
+     * @param exclude entity to leave out, may be null
+     */
+    public <T extends Entity> void forEachNearbyEntity(AxisAlignedBB bb, Class<T> type, Entity exclude, EntitySpatialIndex.Visitor<? super T> visitor) {
+        this.entityIndex.forEachEntity(bb, type, exclude, visitor);
+    }
+
+    public EntitySpatialIndex getEntityIndex() {
+        return this.entityIndex;
     }
 
     @NonComputationAtomic
@@ -2933,6 +3167,10 @@ public class Level implements ChunkManager, Metadatable {
         return loaders;
     }
 
+    public EntityActivationRange getEntityActivationRange() {
+        return this.entityActivationRange;
+    }
+
     public BlockEntity getBlockEntity(Vector3 pos) {
         return this.getBlockEntity(null, pos);
     }
@@ -3036,6 +3274,7 @@ public class Level implements ChunkManager, Metadatable {
     public void setBlockIdAt(int x, int y, int z, int layer, int id) {
         this.getChunk(x >> 4, z >> 4, true).setBlockId(x & 0x0f, ensureY(y), z & 0x0f, layer, id & Block.ID_MASK);
         addBlockChange(x, y, z);
+        this.explosionBatch.onBlockSet(x, y, z);
         temporalVector.setComponents(x, y, z);
         for (ChunkLoader loader : this.getChunkLoaders(x >> 4, z >> 4)) {
             loader.onBlockChanged(temporalVector);
@@ -3179,14 +3418,9 @@ public class Level implements ChunkManager, Metadatable {
                 return;
             }
             long index = Level.chunkHash(x, z);
-            if (this.chunkPopulationQueue.containsKey(index)) {
+            if (this.chunkPopulationQueue.remove(index)) {
                 FullChunk oldChunk = this.getChunk(x, z, false);
-                for (int xx = -1; xx <= 1; ++xx) {
-                    for (int zz = -1; zz <= 1; ++zz) {
-                        this.chunkPopulationLock.remove(Level.chunkHash(x + xx, z + zz));
-                    }
-                }
-                this.chunkPopulationQueue.remove(index);
+                this.releasePopulationArea(x, z);
                 chunk.setProvider(levelProvider);
                 this.setChunk(x, z, chunk, false);
                 chunk = this.getChunk(x, z, false);
@@ -3197,9 +3431,7 @@ public class Level implements ChunkManager, Metadatable {
                         loader.onChunkPopulated(chunk);
                     }
                 }
-            } else if (this.chunkGenerationQueue.containsKey(index) || this.chunkPopulationLock.containsKey(index)) {
-                this.chunkGenerationQueue.remove(index);
-                this.chunkPopulationLock.remove(index);
+            } else if (this.chunkGenerationQueue.remove(index) | this.chunkPopulationLock.remove(index)) {
                 chunk.setProvider(levelProvider);
                 this.setChunk(x, z, chunk, false);
             } else {
@@ -3658,19 +3890,42 @@ public class Level implements ChunkManager, Metadatable {
     }
 
     private void chunkRequestInternal(Long2ObjectMap<IntSet> chunkRequests) {
+        boolean asyncLoading = this.server.getSettings().world().chunk().asyncLoading();
         for (long index : chunkRequests.keySet()) {
             IntSet protocols = new IntOpenHashSet(chunkRequests.get(index));
             int x = getHashX(index);
             int z = getHashZ(index);
 
+            BaseFullChunk chunk = asyncLoading ? this.getChunkIfLoaded(x, z) : this.getChunk(x, z);
+            if (chunk == null && asyncLoading) {
+                // Retry the request once the chunk has been read from disk
+                for (int protocol : protocols) {
+                    this.getChunkSendTasks(protocol).remove(index);
+                }
+                this.loadChunkAsync(x, z).thenAccept(loaded -> {
+                    if (loaded == null) {
+                        for (int protocol : protocols) {
+                            this.getChunkSendQueue(protocol).remove(index);
+                        }
+                    }
+                });
+                continue;
+            }
+
             for (int protocol : chunkRequests.get(index)) {
-                BaseFullChunk chunk = this.getChunk(x, z);
                 if (chunk != null) {
                     BatchPacket packet = chunk.getChunkPacket(protocol);
                     if (packet != null) {
                         //this.sendChunk(x, z, index, packet);
                         this.sendChunkInternal(x, z, index, packet, protocol);
                         protocols.remove(protocol);
+                        continue;
+                    }
+
+                    NetworkChunkCache.Entry cached = this.networkChunkCache.get(index, protocol, chunk, this.isAntiXrayEnabled());
+                    if (cached != null) {
+                        this.sendChunkPayload(protocol, x, z, cached.subChunkCount(), cached.payload(), cached.blobs());
+                        protocols.remove(protocol);
                     }
                 }
             }
@@ -3683,17 +3938,32 @@ public class Level implements ChunkManager, Metadatable {
         }
     }
 
+    public NetworkChunkCache getNetworkChunkCache() {
+        return this.networkChunkCache;
+    }
+
     public void asyncChunkRequestCallback(int protocol, long timestamp, int x, int z, int subChunkCount, byte[] payload) {
-        this.asyncChunkRequestCallbackQueue.add(new NetworkChunkSerializer.NetworkChunkSerializerCallbackData(protocol, timestamp, x, z, subChunkCount, payload));
+        this.asyncChunkRequestCallback(protocol, timestamp, x, z, subChunkCount, payload, null);
+    }
+
+    public void asyncChunkRequestCallback(int protocol, long timestamp, int x, int z, int subChunkCount, byte[] payload, ChunkBlobs blobs) {
+        this.asyncChunkRequestCallbackQueue.add(new NetworkChunkSerializer.NetworkChunkSerializerCallbackData(protocol, timestamp, x, z, subChunkCount, payload, blobs));
     }
 
     public void chunkRequestCallback(int protocol, long timestamp, int x, int z, int subChunkCount, byte[] payload) {
+        this.chunkRequestCallback(protocol, timestamp, x, z, subChunkCount, payload, null);
+    }
+
+    /**
+     * @param blobs the payload split up for the client blob cache, null if it is disabled
+     */
+    public void chunkRequestCallback(int protocol, long timestamp, int x, int z, int subChunkCount, byte[] payload, ChunkBlobs blobs) {
         long index = Level.chunkHash(x, z);
 
         if (server.getSettings().world().chunk().cacheChunks()) {
             BatchPacket data = Player.getChunkCacheFromData(protocol, x, z, subChunkCount, payload, this.getDimension());
             BaseFullChunk chunk = getChunkIfLoaded(x, z);
-            if (chunk != null && chunk.getChanges() <= timestamp) {
+            if (chunk != null && chunk.getNetworkVersion() == timestamp) {
                 chunk.setChunkPacket(protocol, data);
             }
             //this.sendChunk(x, z, index, data);
@@ -3701,6 +3971,18 @@ public class Level implements ChunkManager, Metadatable {
             return;
         }
 
+        if (this.networkChunkCache.isEnabled()) {
+            BaseFullChunk chunk = getChunkIfLoaded(x, z);
+            if (chunk != null) {
+                this.networkChunkCache.put(index, protocol, chunk, timestamp, this.isAntiXrayEnabled(), subChunkCount, payload, blobs);
+            }
+        }
+
+        this.sendChunkPayload(protocol, x, z, subChunkCount, payload, blobs);
+    }
+
+    private void sendChunkPayload(int protocol, int x, int z, int subChunkCount, byte[] payload, ChunkBlobs blobs) {
+        long index = Level.chunkHash(x, z);
         LongSet tasks = this.getChunkSendTasks(protocol);
         if (tasks.contains(index)) {
             ConcurrentMap<Long, Int2ObjectMap<Player>> queue = this.getChunkSendQueue(protocol);
@@ -3709,7 +3991,7 @@ public class Level implements ChunkManager, Metadatable {
                 for (Player player : queue.get(index).values()) {
                     if (player.isConnected() && player.usedChunks.containsKey(index)) {
                         if (matchMVChunkProtocol(protocol, player.protocol)) {
-                            player.sendChunk(x, z, subChunkCount, payload, this.getDimension());
+                            player.sendChunk(x, z, subChunkCount, payload, this.getDimension(), blobs);
                         }
                     }
                 }
@@ -3734,6 +4016,7 @@ public class Level implements ChunkManager, Metadatable {
 
         this.entities.remove(entity.getId());
         this.updateEntities.remove(entity.getId());
+        this.entityIndex.remove(entity);
     }
 
     public void addEntity(Entity entity) {
@@ -3745,6 +4028,7 @@ public class Level implements ChunkManager, Metadatable {
             this.players.put(entity.getId(), (Player) entity);
         }
         this.entities.put(entity.getId(), entity);
+        this.entityIndex.add(entity);
     }
 
     public void addBlockEntity(BlockEntity blockEntity) {
@@ -3793,6 +4077,54 @@ public class Level implements ChunkManager, Metadatable {
         return forceLoadChunk(index, x, z, generate) != null;
     }
 
+    /**
+     * Load a chunk without blocking the main thread. The chunk is read on the provider's loader pool
+     * and published on the main thread, concurrent requests for the same chunk share one read.
+     *
+     * @param x chunk x
+     * @param z chunk z
+     * @return future completed on the main thread with the loaded chunk, or null if it does not exist
+     */
+    public CompletableFuture<BaseFullChunk> loadChunkAsync(int x, int z) {
+        return this.loadChunkAsync(x, z, false);
+    }
+
+    public CompletableFuture<BaseFullChunk> loadChunkAsync(int x, int z, boolean create) {
+        long index = Level.chunkHash(x, z);
+        LevelProvider levelProvider = this.requireProvider();
+        BaseFullChunk loaded = levelProvider.getLoadedChunk(index);
+        if (loaded != null) {
+            return CompletableFuture.completedFuture(loaded);
+        }
+
+        if (!this.server.getSettings().world().chunk().asyncLoading()) {
+            return CompletableFuture.completedFuture(this.getChunk(x, z, create));
+        }
+
+        synchronized (this.chunkLoadFutures) {
+            CompletableFuture<BaseFullChunk> future = this.chunkLoadFutures.get(index);
+            if (future != null) {
+                if (create) {
+                    // Upgrades the pending read so that a missing chunk gets created
+                    levelProvider.loadChunkAsync(x, z, true);
+                }
+                return future;
+            }
+
+            future = levelProvider.loadChunkAsync(x, z, create).thenApply(chunk -> {
+                this.chunkLoadFutures.remove(index);
+                if (chunk == null || chunk.isInit()) {
+                    return chunk;
+                }
+                return this.initLoadedChunk(index, x, z, chunk);
+            });
+            if (!future.isDone()) {
+                this.chunkLoadFutures.put(index, future);
+            }
+            return future;
+        }
+    }
+
     private synchronized BaseFullChunk forceLoadChunk(long index, int x, int z, boolean generate) {
         BaseFullChunk chunk = this.requireProvider().getChunk(x, z, generate);
 
@@ -3803,6 +4135,10 @@ public class Level implements ChunkManager, Metadatable {
             return null;
         }
 
+        return this.initLoadedChunk(index, x, z, chunk);
+    }
+
+    private BaseFullChunk initLoadedChunk(long index, int x, int z, BaseFullChunk chunk) {
         if (chunk.getProvider() != null) {
             this.server.getPluginManager().callEvent(new ChunkLoadEvent(chunk, !chunk.isGenerated()));
         } else {
@@ -3903,6 +4239,7 @@ public class Level implements ChunkManager, Metadatable {
                 }
             }
             levelProvider.unloadChunk(x, z, safe);
+            this.networkChunkCache.invalidate(Level.chunkHash(x, z));
         } catch (Exception e) {
             MainLogger logger = this.server.getLogger();
             logger.error(this.server.getLanguage().translateString("nukkit.level.chunkUnloadError", e.toString()));
@@ -4016,41 +4353,48 @@ public class Level implements ChunkManager, Metadatable {
 
     public boolean populateChunk(int x, int z, boolean force) {
         long index = Level.chunkHash(x, z);
-        if (this.chunkPopulationQueue.containsKey(index) || this.chunkPopulationQueue.size() >= this.chunkPopulationQueueSize && !force) {
+        if (this.chunkPopulationQueue.contains(index) || this.chunkPopulationQueue.size() >= this.chunkPopulationQueueSize && !force) {
             return false;
         }
 
         BaseFullChunk chunk = this.getChunk(x, z, true);
-        boolean populate;
         if (!chunk.isPopulated()) {
-            populate = true;
-            for (int xx = -1; xx <= 1; ++xx) {
-                for (int zz = -1; zz <= 1; ++zz) {
-                    if (this.chunkPopulationLock.containsKey(Level.chunkHash(x + xx, z + zz))) {
-                        populate = false;
-                        break;
-                    }
-                }
+            // Tasks with overlapping areas would write the same chunks, the chunk is retried once the area is free
+            if (this.leasePopulationArea(x, z)) {
+                this.chunkPopulationQueue.add(index);
+                this.generationExecutor.execute(new PopulationTask(this, chunk));
             }
+            return false;
+        }
 
-            if (populate) {
-                if (!this.chunkPopulationQueue.containsKey(index)) {
-                    this.chunkPopulationQueue.put(index, Boolean.TRUE);
-                    for (int xx = -1; xx <= 1; ++xx) {
-                        for (int zz = -1; zz <= 1; ++zz) {
-                            this.chunkPopulationLock.put(Level.chunkHash(x + xx, z + zz), Boolean.TRUE);
-                        }
-                    }
+        return true;
+    }
 
-                    this.server.getScheduler().scheduleAsyncTask(InternalPlugin.INSTANCE, new PopulationTask(this, chunk));
+    private boolean leasePopulationArea(int x, int z) {
+        for (int xx = -1; xx <= 1; ++xx) {
+            for (int zz = -1; zz <= 1; ++zz) {
+                if (this.chunkPopulationLock.contains(Level.chunkHash(x + xx, z + zz))) {
+                    return false;
                 }
             }
-            return false;
         }
 
+        for (int xx = -1; xx <= 1; ++xx) {
+            for (int zz = -1; zz <= 1; ++zz) {
+                this.chunkPopulationLock.add(Level.chunkHash(x + xx, z + zz));
+            }
+        }
         return true;
     }
 
+    private void releasePopulationArea(int x, int z) {
+        for (int xx = -1; xx <= 1; ++xx) {
+            for (int zz = -1; zz <= 1; ++zz) {
+                this.chunkPopulationLock.remove(Level.chunkHash(x + xx, z + zz));
+            }
+        }
+    }
+
     public void generateChunk(int x, int z) {
         this.generateChunk(x, z, false);
     }
@@ -4061,10 +4405,8 @@ public class Level implements ChunkManager, Metadatable {
         }
 
         long index = Level.chunkHash(x, z);
-        if (!this.chunkGenerationQueue.containsKey(index)) {
-            this.chunkGenerationQueue.put(index, Boolean.TRUE);
-            GenerationTask task = new GenerationTask(this, this.getChunk(x, z, true));
-            this.server.getScheduler().scheduleAsyncTask(InternalPlugin.INSTANCE, task);
+        if (this.chunkGenerationQueue.add(index)) {
+            this.generationExecutor.execute(new GenerationTask(this, this.getChunk(x, z, true)));
         }
     }
 
@@ -4498,6 +4840,10 @@ public class Level implements ChunkManager, Metadatable {
     }
 
     public int getStrongPower(Vector3 pos, BlockFace direction) {
+        BlockStateView state = this.getBlockStateView(pos.getFloorX(), pos.getFloorY(), pos.getFloorZ(), 0);
+        if (state != null && !state.hasStrongPower()) {
+            return 0;
+        }
         return this.getBlock(pos).getStrongPower(direction);
     }
 
@@ -4520,6 +4866,15 @@ public class Level implements ChunkManager, Metadatable {
     }
 
     public int getRedstonePower(Vector3 pos, BlockFace face) {
+        BlockStateView state = this.getBlockStateView(pos.getFloorX(), pos.getFloorY(), pos.getFloorZ(), 0);
+        if (state != null) {
+            if (state.isNormalBlock()) {
+                return this.getStrongPower(pos);
+            }
+            if (!state.hasWeakPower()) {
+                return 0;
+            }
+        }
         Block block = this.getBlock(pos);
         return block.isNormalBlock() ? this.getStrongPower(pos) : block.getWeakPower(face);
     }
@@ -4861,6 +5216,11 @@ public class Level implements ChunkManager, Metadatable {
         }
     }
 
+    private static class CollisionBuffer {
+        private final List<AxisAlignedBB> boxes = new ArrayList<>();
+        private boolean inUse;
+    }
+
     @AllArgsConstructor
     @Data
     private static class QueuedUpdate {
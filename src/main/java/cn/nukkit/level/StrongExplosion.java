@@ -48,6 +48,17 @@ public class StrongExplosion extends Explosion {
         this.what = what;
     }
 
+    // Removes its blocks itself, a queued explosion of this type doesn't use the batch
+    @Override
+    public boolean explodeA(ExplosionBatch batch) {
+        return this.explodeA();
+    }
+
+    @Override
+    public boolean explodeB(ExplosionBatch batch) {
+        return this.explodeB();
+    }
+
     @Override
     public boolean explodeA() {
         if (what instanceof EntityExplosive && ((Entity) what).isInsideOfWater()) {
@@ -58,6 +69,9 @@ public class StrongExplosion extends Explosion {
         if (this.size < 0.1) return false;
         if (!level.getServer().getSettings().world().explosionBreakBlocks()) return true;
 
+        // Blocks an explosion of the running batch already destroyed are air
+        ExplosionBatch batch = this.level.getExplosionBatch();
+
         Vector3 vector = new Vector3(0, 0, 0);
         Vector3 vBlock = new Vector3(0, 0, 0);
 
@@ -85,7 +99,7 @@ public class StrongExplosion extends Explosion {
                             }
                             Block block = this.level.getBlock(vBlock);
 
-                            if (block.getId() != Block.AIR && block.getId() != Block.BEDROCK) {
+                            if (block.getId() != Block.AIR && block.getId() != Block.BEDROCK && !batch.isRemoved(block.getFloorX(), block.getFloorY(), block.getFloorZ())) {
                                 if (block.getId() != Block.OBSIDIAN) {
                                     blastForce -= (block.getResistance() / 5 + 0.3d) * 0.3d;
                                 }
@@ -48,6 +48,17 @@ public class WeakExplosion extends Explosion {
         this.what = what;
     }
 
+    // Removes its blocks itself, a queued explosion of this type doesn't use the batch
+    @Override
+    public boolean explodeA(ExplosionBatch batch) {
+        return this.explodeA();
+    }
+
+    @Override
+    public boolean explodeB(ExplosionBatch batch) {
+        return this.explodeB();
+    }
+
     @Override
     public boolean explodeA() {
         if (what instanceof EntityExplosive && ((Entity) what).isInsideOfWater()) {
@@ -56,6 +67,8 @@ public class WeakExplosion extends Explosion {
         }
         if (this.size < 0.1) return false;
         if (!level.getServer().getSettings().world().explosionBreakBlocks()) return true;
+        // Blocks an explosion of the running batch already destroyed are air
+        ExplosionBatch batch = this.level.getExplosionBatch();
         Vector3 vector = new Vector3(0, 0, 0);
         Vector3 vBlock = new Vector3(0, 0, 0);
         for (int i = 0; i < 16; ++i) {
@@ -79,7 +92,7 @@ public class WeakExplosion extends Explosion {
                                 break;
                             }
                             Block block = this.level.getBlock(vBlock);
-                            if (block.getId() != 0 && block.getResistance() < 20) {
+                            if (block.getId() != 0 && block.getResistance() < 20 && !batch.isRemoved(block.getFloorX(), block.getFloorY(), block.getFloorZ())) {
                                 blastForce -= (block.getResistance() / 5 + 0.3d) * 0.3d;
                                 if (blastForce > 0) {
                                     if (!this.affectedBlocks.contains(block)) {
@@ -0,0 +1,20 @@
+package cn.nukkit.level.antixray;
+
+/**
+ * How hidden blocks are obfuscated.
+ */
+public enum AntiXrayEngine {
+    /**
+     * Hidden ores are sent as the block they are found in, nothing else changes.
+     */
+    HIDE,
+    /**
+     * Hidden ores are sent as the block they are found in and hidden blocks randomly as fake ores.
+     */
+    FAKE_ORES,
+    /**
+     * Like {@link #FAKE_ORES}, but every y layer of a section uses a single fake ore, so the fake ores can't be told
+     * apart from real ones by their distribution.
+     */
+    LAYERED
+}
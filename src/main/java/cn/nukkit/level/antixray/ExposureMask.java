@@ -0,0 +1,126 @@
+package cn.nukkit.level.antixray;
+
+/**
+ * Blocks of a chunk section which can be seen through a transparent neighbour.
+ * <p>
+ * Bits are indexed like the section storages, {@code x << 8 | z << 4 | y}, so every long holds four z rows of one
+ * x column and the neighbours of a whole word are found by shifting it and its neighbouring words. Blocks on the border
+ * of the section always count as exposed, their neighbours belong to other sections.
+ * <p>
+ * Not thread safe, the owning storage is only changed under the write lock of its section.
+ */
+public final class ExposureMask {
+
+    public static final int WORDS = 64;
+
+    // y == 0 and y == 15 of the four z rows of a word
+    private static final long Y_MIN = 0x0001000100010001L;
+    private static final long Y_MAX = 0x8000800080008000L;
+    private static final long[] BORDER = new long[WORDS];
+
+    static {
+        for (int word = 0; word < WORDS; word++) {
+            int x = word >> 2;
+            int row = word & 3;
+            if (x == 0 || x == 15) {
+                BORDER[word] = -1L;
+                continue;
+            }
+
+            long border = Y_MIN | Y_MAX;
+            if (row == 0) {
+                border |= 0xffffL;
+            } else if (row == 3) {
+                border |= 0xffffL << 48;
+            }
+            BORDER[word] = border;
+        }
+    }
+
+    private final long[] transparent;
+    private final long[] exposed = new long[WORDS];
+
+    /**
+     * @param transparent bit set of the transparent blocks of the section, taken over by the mask
+     */
+    public ExposureMask(long[] transparent) {
+        if (transparent.length != WORDS) {
+            throw new IllegalArgumentException("Expected " + WORDS + " words, got " + transparent.length);
+        }
+        this.transparent = transparent;
+        for (int word = 0; word < WORDS; word++) {
+            this.exposed[word] = this.computeExposed(word);
+        }
+    }
+
+    public boolean isTransparent(int index) {
+        return (this.transparent[index >> 6] & (1L << index)) != 0;
+    }
+
+    public boolean isExposed(int index) {
+        return (this.exposed[index >> 6] & (1L << index)) != 0;
+    }
+
+    /**
+     * @return bits of the 64 blocks starting at {@code word << 6} which are hidden from every side
+     */
+    public long getHidden(int word) {
+        return ~this.exposed[word];
+    }
+
+    public int countHidden() {
+        int count = 0;
+        for (long exposed : this.exposed) {
+            count += Long.bitCount(~exposed);
+        }
+        return count;
+    }
+
+    /**
+     * Update the mask after the block at the index changed.
+     */
+    public void setTransparent(int index, boolean transparent) {
+        int word = index >> 6;
+        long bit = 1L << index;
+        if (((this.transparent[word] & bit) != 0) == transparent) {
+            return;
+        }
+        this.transparent[word] ^= bit;
+
+        // Every neighbour of a bit is in the same word, the next or previous z rows or the next or previous x column
+        this.exposed[word] = this.computeExposed(word);
+        if ((word & 3) != 0) {
+            this.exposed[word - 1] = this.computeExposed(word - 1);
+        }
+        if ((word & 3) != 3) {
+            this.exposed[word + 1] = this.computeExposed(word + 1);
+        }
+        if (word >= 4) {
+            this.exposed[word - 4] = this.computeExposed(word - 4);
+        }
+        if (word < WORDS - 4) {
+            this.exposed[word + 4] = this.computeExposed(word + 4);
+        }
+    }
+
+    private long computeExposed(int word) {
+        long[] transparent = this.transparent;
+        long bits = transparent[word];
+        int row = word & 3;
+
+        long neighbours = ((bits << 1) & ~Y_MIN) | ((bits >>> 1) & ~Y_MAX) | (bits << 16) | (bits >>> 16);
+        if (row != 0) {
+            neighbours |= transparent[word - 1] >>> 48;
+        }
+        if (row != 3) {
+            neighbours |= transparent[word + 1] << 48;
+        }
+        if (word >= 4) {
+            neighbours |= transparent[word - 4];
+        }
+        if (word < WORDS - 4) {
+            neighbours |= transparent[word + 4];
+        }
+        return neighbours | BORDER[word];
+    }
+}
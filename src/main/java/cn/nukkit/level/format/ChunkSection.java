@@ -50,6 +50,29 @@ public interface ChunkSection {
 
     int getFullBlock(int x, int y, int z, int layer);
 
+    /**
+     * Set several blocks of a layer to the same full block id.
+     *
+     * @param indexes  positions in the section, {@code x << 8 | z << 4 | y}
+     * @param count    number of positions to use from indexes
+     * @param previous receives the full block id each position had before
+     * @return number of changed blocks
+     */
+    default int setFullBlockIds(int layer, int[] indexes, int count, int fullId, int[] previous) {
+        int changed = 0;
+        for (int i = 0; i < count; i++) {
+            int index = indexes[i];
+            int x = index >> 8;
+            int y = index & 0x0f;
+            int z = (index >> 4) & 0x0f;
+            previous[i] = this.getFullBlock(x, y, z, layer);
+            if (this.setFullBlockId(x, y, z, layer, fullId)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
     boolean setBlock(int x, int y, int z, int blockId);
 
     boolean setBlock(int x, int y, int z, int blockId, int meta);
@@ -137,4 +160,13 @@ public interface ChunkSection {
     default boolean maybeHasLightSource() {
         return true; // Default: assume light sources may exist
     }
+
+    /**
+     * Number of blocks in the first layer whose id is listed in {@link cn.nukkit.level.Level#RANDOM_TICK_BLOCKS}.
+     *
+     * @return block count, or -1 if the section doesn't keep track of it
+     */
+    default int getRandomTickBlockCount() {
+        return -1;
+    }
 }
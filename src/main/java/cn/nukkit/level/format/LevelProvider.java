@@ -7,6 +7,7 @@ import cn.nukkit.math.Vector3;
 import it.unimi.dsi.fastutil.ints.IntSet;
 
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author MagicDroidX
@@ -47,6 +48,22 @@ public interface LevelProvider {
 
     boolean loadChunk(int X, int Z, boolean create);
 
+    /**
+     * Load a chunk without blocking the caller.
+     * The returned future is completed on the main thread once the chunk has been published,
+     * or with null if it does not exist and create is false.
+     */
+    default CompletableFuture<BaseFullChunk> loadChunkAsync(int X, int Z, boolean create) {
+        return CompletableFuture.completedFuture(this.getChunk(X, Z, create));
+    }
+
+    /**
+     * Publish chunks read by {@link #loadChunkAsync(int, int, boolean)}. Called from the main thread every level tick.
+     */
+    default void processChunkLoads() {
+
+    }
+
     boolean unloadChunk(int X, int Z);
 
     boolean unloadChunk(int X, int Z, boolean safe);
@@ -132,6 +132,30 @@ public abstract class BaseChunk extends BaseFullChunk implements Chunk {
         }
     }
 
+    /**
+     * Set several blocks of one section and layer to the same full block id.
+     *
+     * @see ChunkSection#setFullBlockIds(int, int[], int, int, int[])
+     */
+    public int setFullBlockIds(int sectionY, int layer, int[] indexes, int count, int fullId, int[] previous) {
+        try {
+            setChanged();
+            return this.getSection(sectionY).setFullBlockIds(layer, indexes, count, fullId, previous);
+        } catch (ChunkException e) {
+            try {
+                this.setInternalSection(sectionY, (ChunkSection) this.providerClass.getMethod("createChunkSection", int.class).invoke(this.providerClass, sectionY));
+            } catch (IllegalAccessException | InvocationTargetException | NoSuchMethodException e1) {
+                Server.getInstance().getLogger().logException(e1);
+            }
+            return this.getSection(sectionY).setFullBlockIds(layer, indexes, count, fullId, previous);
+        } finally {
+            for (int i = 0; i < count; i++) {
+                int index = indexes[i];
+                removeInvalidTile(index >> 8, sectionY << 4 | (index & 0x0f), (index >> 4) & 0x0f);
+            }
+        }
+    }
+
     @Override
     public boolean setBlock(int x, int y, int z, int blockId, int meta) {
         return this.setBlockAtLayer(x, y, z, 0, blockId, meta);
@@ -27,6 +27,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * @author MagicDroidX
@@ -72,6 +73,13 @@ public abstract class BaseFullChunk implements FullChunk, ChunkManager {
 
     protected long changes;
 
+    // Chunks may be changed from generation threads and the main thread at once. An updater instead of an AtomicLong
+    // keeps the counter per instance when the chunk is cloned
+    private static final AtomicLongFieldUpdater<BaseFullChunk> NETWORK_VERSION = AtomicLongFieldUpdater.newUpdater(BaseFullChunk.class, "networkVersion");
+
+    // Unlike changes this is never reset by saving, so it identifies the chunk contents sent to players
+    private volatile long networkVersion;
+
     protected boolean isInit;
 
     protected boolean lightPopulated;
@@ -686,6 +694,13 @@ public abstract class BaseFullChunk implements FullChunk, ChunkManager {
         return changes;
     }
 
+    /**
+     * @return counter increased on every change of the chunk, it is not reset when the chunk is saved
+     */
+    public long getNetworkVersion() {
+        return this.networkVersion;
+    }
+
     @Override
     public boolean hasChanged() {
         return this.changes != 0;
@@ -694,6 +709,7 @@ public abstract class BaseFullChunk implements FullChunk, ChunkManager {
     @Override
     public void setChanged() {
         this.changes++;
+        NETWORK_VERSION.incrementAndGet(this);
         chunkPackets = null;
     }
 
@@ -711,6 +727,10 @@ public abstract class BaseFullChunk implements FullChunk, ChunkManager {
         return this.toBinary();
     }
 
+    public boolean isInit() {
+        return this.isInit;
+    }
+
     @Override
     public boolean isLightPopulated() {
         return this.lightPopulated;
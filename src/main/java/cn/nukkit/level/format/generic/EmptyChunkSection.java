@@ -218,6 +218,11 @@ public class EmptyChunkSection implements ChunkSection {
         return true;
     }
 
+    @Override
+    public int getRandomTickBlockCount() {
+        return 0;
+    }
+
     @Override
     public boolean hasLayer(int layer) {
         return false;
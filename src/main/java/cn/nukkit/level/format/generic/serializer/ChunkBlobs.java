@@ -0,0 +1,51 @@
+package cn.nukkit.level.format.generic.serializer;
+
+import cn.nukkit.network.ClientBlobStore;
+import cn.nukkit.utils.Hash;
+
+import java.util.Arrays;
+
+/**
+ * A serialized chunk split up for clients with the blob cache enabled.
+ * Sub-chunks and the biome data are sent by their xxHash64 id, only the remaining data (border blocks and block
+ * entities) is sent inline.
+ *
+ * @param blobIds   ids of every sub-chunk followed by the id of the biome data
+ * @param blobs     blob data in the same order as the ids
+ * @param extraData data sent along with the ids
+ */
+public record ChunkBlobs(long[] blobIds, byte[][] blobs, byte[] extraData) {
+
+    /**
+     * Split a serialized chunk payload into blobs.
+     *
+     * @param payload  serialized chunk
+     * @param length   length of the payload
+     * @param blobEnds end offset of every sub-chunk followed by the end of the biome data
+     * @param store    store used to share equal blobs between chunks
+     */
+    public static ChunkBlobs create(byte[] payload, int length, int[] blobEnds, ClientBlobStore store) {
+        long[] blobIds = new long[blobEnds.length];
+        byte[][] blobs = new byte[blobEnds.length][];
+        int start = 0;
+        for (int i = 0; i < blobEnds.length; i++) {
+            int end = blobEnds[i];
+            long blobId = Hash.xxHash64(payload, start, end - start);
+            blobIds[i] = blobId;
+            blobs[i] = store.intern(blobId, payload, start, end - start);
+            start = end;
+        }
+        return new ChunkBlobs(blobIds, blobs, Arrays.copyOfRange(payload, start, length));
+    }
+
+    /**
+     * @return approximate memory used by the blobs
+     */
+    public long size() {
+        long size = this.extraData.length + this.blobIds.length * 24L;
+        for (byte[] blob : this.blobs) {
+            size += blob.length;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,160 @@
+package cn.nukkit.level.format.generic.serializer;
+
+import cn.nukkit.level.format.generic.BaseFullChunk;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Serialized chunk payloads of a level shared by every player requesting the same chunk.
+ * <p>
+ * Entries are stored per chunk and protocol and are only returned while the chunk instance, its network version
+ * and the anti-xray setting still match the ones the payload was created from. Chunks are evicted in least recently
+ * used order once the payloads exceed the memory budget.
+ */
+public class NetworkChunkCache {
+
+    // Rough per entry overhead of the maps, the entry and its weak reference
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final Long2ObjectLinkedOpenHashMap<Int2ObjectMap<Entry>> entries = new Long2ObjectLinkedOpenHashMap<>();
+    private long usedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public NetworkChunkCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    public boolean isEnabled() {
+        return this.maxBytes > 0;
+    }
+
+    /**
+     * @return cached payload for the chunk or null if there is none or it is outdated
+     */
+    public synchronized Entry get(long chunkHash, int protocol, BaseFullChunk chunk, boolean antiXray) {
+        if (!this.isEnabled()) {
+            return null;
+        }
+
+        Int2ObjectMap<Entry> protocols = this.entries.getAndMoveToLast(chunkHash);
+        Entry entry = protocols == null ? null : protocols.get(protocol);
+        if (entry == null) {
+            this.misses.increment();
+            return null;
+        }
+
+        if (entry.chunk.get() != chunk || entry.version != chunk.getNetworkVersion() || entry.antiXray != antiXray) {
+            // The chunk was modified or replaced, none of the payloads are valid anymore
+            this.invalidate(chunkHash);
+            this.misses.increment();
+            return null;
+        }
+
+        this.hits.increment();
+        return entry;
+    }
+
+    /**
+     * Store a payload serialized from the chunk when its network version was {@code version}.
+     * Payloads of a chunk that has been modified since are ignored.
+     */
+    public synchronized void put(long chunkHash, int protocol, BaseFullChunk chunk, long version, boolean antiXray, int subChunkCount, byte[] payload, ChunkBlobs blobs) {
+        if (!this.isEnabled() || chunk.getNetworkVersion() != version) {
+            return;
+        }
+
+        Entry entry = new Entry(new WeakReference<>(chunk), version, antiXray, subChunkCount, payload, blobs);
+        long size = entry.size();
+        if (size > this.maxBytes) {
+            return;
+        }
+
+        Int2ObjectMap<Entry> protocols = this.entries.getAndMoveToLast(chunkHash);
+        if (protocols == null) {
+            protocols = new Int2ObjectOpenHashMap<>();
+            this.entries.putAndMoveToLast(chunkHash, protocols);
+        } else {
+            Entry any = protocols.values().iterator().next();
+            if (any.chunk.get() != chunk || any.version != version) {
+                this.invalidate(chunkHash);
+                protocols = new Int2ObjectOpenHashMap<>();
+                this.entries.putAndMoveToLast(chunkHash, protocols);
+            }
+        }
+
+        Entry previous = protocols.put(protocol, entry);
+        if (previous != null) {
+            this.usedBytes -= previous.size();
+        }
+        this.usedBytes += size;
+
+        while (this.usedBytes > this.maxBytes && !this.entries.isEmpty()) {
+            if (this.entries.firstLongKey() == chunkHash && this.entries.size() == 1) {
+                break;
+            }
+            this.evict(this.entries.firstLongKey());
+        }
+    }
+
+    public synchronized void invalidate(long chunkHash) {
+        Int2ObjectMap<Entry> protocols = this.entries.remove(chunkHash);
+        if (protocols != null) {
+            for (Entry entry : protocols.values()) {
+                this.usedBytes -= entry.size();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        this.entries.clear();
+        this.usedBytes = 0;
+    }
+
+    private void evict(long chunkHash) {
+        this.invalidate(chunkHash);
+        this.evictions.increment();
+    }
+
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public synchronized int getChunkCount() {
+        return this.entries.size();
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+
+    /**
+     * @param blobs the payload split up for the client blob cache, null if it is disabled
+     */
+    public record Entry(WeakReference<BaseFullChunk> chunk, long version, boolean antiXray, int subChunkCount, byte[] payload, ChunkBlobs blobs) {
+
+        private long size() {
+            // Blobs are shared with other chunks through the blob store, so this overestimates a bit
+            return this.payload.length + ENTRY_OVERHEAD + (this.blobs == null ? 0 : this.blobs.size());
+        }
+    }
+}
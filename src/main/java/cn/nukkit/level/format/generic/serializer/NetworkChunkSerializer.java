@@ -1,5 +1,6 @@
 package cn.nukkit.level.format.generic.serializer;
 
+import cn.nukkit.Server;
 import cn.nukkit.blockentity.BlockEntity;
 import cn.nukkit.blockentity.BlockEntitySpawnable;
 import cn.nukkit.level.BlockPalette;
@@ -13,6 +14,7 @@ import cn.nukkit.level.format.generic.BaseFullChunk;
 import cn.nukkit.level.util.PalettedBlockStorage;
 import cn.nukkit.nbt.NBTIO;
 import cn.nukkit.nbt.tag.CompoundTag;
+import cn.nukkit.network.ClientBlobStore;
 import cn.nukkit.network.protocol.ProtocolInfo;
 import cn.nukkit.utils.BinaryStream;
 import cn.nukkit.utils.ThreadCache;
@@ -43,6 +45,8 @@ public class NetworkChunkSerializer {
     }
 
     public static void serialize(IntSet protocols, BaseChunk chunk, Consumer<NetworkChunkSerializerCallback> callback, boolean antiXray, DimensionData dimensionData) {
+        Server server = Server.getInstance();
+        boolean blobCache = server.getSettings().network().clientBlobCache();
         for (int protocolId : protocols) {
             byte[] blockEntities;
             if (chunk.getBlockEntities().isEmpty()) {
@@ -64,17 +68,25 @@ public class NetworkChunkSerializer {
             NetworkChunkData networkChunkData = new NetworkChunkData(protocolId, subChunkCount, antiXray, dimensionData);
 
 
-            serializeChunk(stream, chunk, sections, networkChunkData, GlobalBlockPalette.getPaletteByProtocol(protocolId));
+            int[] blobEnds = serializeChunk(stream, chunk, sections, networkChunkData, GlobalBlockPalette.getPaletteByProtocol(protocolId), blobCache);
 
             // Border blocks
             stream.putByte((byte) 0);
             stream.put(blockEntities);
 
-            callback.accept(new NetworkChunkSerializerCallback(protocolId, stream, networkChunkData.getChunkSections()));
+            ChunkBlobs blobs = null;
+            if (blobEnds != null) {
+                blobs = ChunkBlobs.create(stream.getBufferUnsafe(), stream.getCount(), blobEnds, server.getClientBlobStore());
+            }
+
+            callback.accept(new NetworkChunkSerializerCallback(protocolId, stream, networkChunkData.getChunkSections(), blobs));
         }
     }
 
-    private static void serializeChunk(BinaryStream stream, BaseChunk chunk, ChunkSection[] sections, NetworkChunkData chunkData, BlockPalette blockPalette) {
+    /**
+     * @return end offsets of every written sub-chunk followed by the end of the biome data, or null if blobs are not needed
+     */
+    private static int[] serializeChunk(BinaryStream stream, BaseChunk chunk, ChunkSection[] sections, NetworkChunkData chunkData, BlockPalette blockPalette, boolean blobs) {
         DimensionData dimensionData = chunkData.getDimensionData();
         int maxDimensionSections = dimensionData.getHeight() >> 4;
         int subChunkCount = Math.min(maxDimensionSections, chunkData.getChunkSections());
@@ -84,19 +96,38 @@ public class NetworkChunkSerializer {
 
         // Overworld has negative coordinates, But the anvil world does not support it
         int writtenSections = subChunkCount;
-        if (dimensionData.getDimensionId() == Level.DIMENSION_OVERWORLD && chunk.getSectionOffset() == 0) {
-            stream.put(negativeSubChunks);
+        boolean negative = dimensionData.getDimensionId() == Level.DIMENSION_OVERWORLD && chunk.getSectionOffset() == 0;
+        if (negative) {
             writtenSections += EXTENDED_NEGATIVE_SUB_CHUNKS;
         }
 
+        int[] blobEnds = blobs ? new int[writtenSections + 1] : null;
+        int blob = 0;
+        if (negative) {
+            stream.put(negativeSubChunks);
+            if (blobEnds != null) {
+                int size = negativeSubChunks.length / EXTENDED_NEGATIVE_SUB_CHUNKS;
+                for (int i = 0; i < EXTENDED_NEGATIVE_SUB_CHUNKS; i++) {
+                    blobEnds[blob++] = size * (i + 1);
+                }
+            }
+        }
+
         for (int i = 0; i < subChunkCount; i++) {
             sections[i].writeTo(chunkData.getProtocol(), stream, chunkData.isAntiXray(), blockPalette);
+            if (blobEnds != null) {
+                blobEnds[blob++] = stream.getCount();
+            }
         }
 
         stream.put(biomePalettes);
+        if (blobEnds != null) {
+            blobEnds[blob] = stream.getCount();
+        }
         stream.putByte((byte) 0); // Border blocks
 
         chunkData.setChunkSections(writtenSections);
+        return blobEnds;
     }
 
     private static byte[] serialize3DBiomes(BaseFullChunk chunk, int protocolId, int maxDimensionSections) {
@@ -156,6 +187,7 @@ public class NetworkChunkSerializer {
         private int protocolId;
         private BinaryStream stream;
         private Integer subchunks;
+        private ChunkBlobs blobs;
     }
 
     @AllArgsConstructor
@@ -167,5 +199,6 @@ public class NetworkChunkSerializer {
         private int z;
         private int subChunkCount;
         private byte[] payload;
+        private ChunkBlobs blobs;
     }
 }
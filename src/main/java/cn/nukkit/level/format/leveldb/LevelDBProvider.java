@@ -78,6 +78,10 @@ public class LevelDBProvider implements LevelProvider {
     protected final Lock gcLock;
     private final ExecutorService executor;
 
+    private final ExecutorService loadExecutor;
+    private final Long2ObjectMap<PendingChunkLoad> loadingChunks = Long2ObjectMaps.synchronize(new Long2ObjectOpenHashMap<>());
+    private final Queue<PendingChunkLoad> loadedChunks = new ConcurrentLinkedQueue<>();
+
     private Task autoCompactionTask;
 
     public LevelDBProvider(Level level, String path) {
@@ -152,6 +156,12 @@ public class LevelDBProvider implements LevelProvider {
         builder.setUncaughtExceptionHandler((thread, ex) -> Server.getInstance().getLogger().error("Exception in " + thread.getName(), ex));
         this.executor = Executors.newSingleThreadExecutor(builder.build());
 
+        ThreadFactoryBuilder loadBuilder = new ThreadFactoryBuilder();
+        loadBuilder.setNameFormat("LevelDB Loader for " + this.getName() + " #%d");
+        loadBuilder.setDaemon(true);
+        loadBuilder.setUncaughtExceptionHandler((thread, ex) -> Server.getInstance().getLogger().error("Exception in " + thread.getName(), ex));
+        this.loadExecutor = Executors.newFixedThreadPool(Math.max(1, level.getServer().getSettings().world().chunk().loadingThreads()), loadBuilder.build());
+
         if (level.isAutoCompaction()) {
             int delay = level.getServer().getSettings().world().worldAutoCompactionTicks();
             this.autoCompactionTask = new Task() {
@@ -328,7 +338,7 @@ public class LevelDBProvider implements LevelProvider {
             throw new ChunkException("Invalid Chunk Set");
         }
 
-        long timestamp = chunk.getChanges();
+        long timestamp = chunk.getNetworkVersion();
 
         if (this.getServer().getSettings().world().chunk().asyncChunks()) {
             final BaseChunk chunkClone = chunk.cloneForChunkSending();
@@ -339,7 +349,8 @@ public class LevelDBProvider implements LevelProvider {
                             chunkX,
                             chunkZ,
                             networkChunkSerializerCallback.getSubchunks(),
-                            networkChunkSerializerCallback.getStream().getBuffer()
+                            networkChunkSerializerCallback.getStream().getBuffer(),
+                            networkChunkSerializerCallback.getBlobs()
                     );
                 }, level.isAntiXrayEnabled(), getLevel().getDimensionData());
             });
@@ -350,7 +361,8 @@ public class LevelDBProvider implements LevelProvider {
                         chunkX,
                         chunkZ,
                         networkChunkSerializerCallback.getSubchunks(),
-                        networkChunkSerializerCallback.getStream().getBuffer()
+                        networkChunkSerializerCallback.getStream().getBuffer(),
+                        networkChunkSerializerCallback.getBlobs()
                 );
             }, level.isAntiXrayEnabled(), this.level.getDimensionData());
         }
@@ -408,8 +420,106 @@ public class LevelDBProvider implements LevelProvider {
         return this.readOrCreateChunk(chunkX, chunkZ, create) != null;
     }
 
+    @Override
+    public CompletableFuture<BaseFullChunk> loadChunkAsync(int chunkX, int chunkZ, boolean create) {
+        long index = Level.chunkHash(chunkX, chunkZ);
+        BaseFullChunk loaded = this.chunks.get(index);
+        if (loaded != null) {
+            return CompletableFuture.completedFuture(loaded);
+        }
+
+        synchronized (this.loadingChunks) {
+            PendingChunkLoad pending = this.loadingChunks.get(index);
+            if (pending != null) {
+                pending.create |= create;
+                return pending.future;
+            }
+
+            pending = new PendingChunkLoad(index, chunkX, chunkZ, create);
+            this.loadingChunks.put(index, pending);
+            this.submitChunkLoad(pending);
+            return pending.future;
+        }
+    }
+
+    private void submitChunkLoad(PendingChunkLoad pending) {
+        try {
+            this.loadExecutor.execute(() -> {
+                try {
+                    pending.decoded = this.decodeChunk(pending.chunkX, pending.chunkZ);
+                } catch (Exception ex) {
+                    log.error("Failed to read chunk {}, {}", pending.chunkX, pending.chunkZ, ex);
+                }
+                this.loadedChunks.offer(pending);
+            });
+        } catch (RejectedExecutionException ex) {
+            this.loadingChunks.remove(pending.index);
+            pending.future.completeExceptionally(ex);
+        }
+    }
+
+    /**
+     * Cancel the futures of all chunk loads that are still queued, being read or waiting to be applied,
+     * so that nothing waiting on them hangs once the provider is closed.
+     */
+    private void cancelChunkLoads() {
+        List<PendingChunkLoad> cancelled;
+        synchronized (this.loadingChunks) {
+            cancelled = new ArrayList<>(this.loadingChunks.values());
+            this.loadingChunks.clear();
+        }
+        this.loadedChunks.clear();
+
+        for (PendingChunkLoad pending : cancelled) {
+            pending.future.cancel(false);
+        }
+    }
+
+    @Override
+    public void processChunkLoads() {
+        PendingChunkLoad pending;
+        while ((pending = this.loadedChunks.poll()) != null) {
+            BaseFullChunk chunk = this.chunks.get(pending.index);
+            if (chunk == null && pending.superseded) {
+                // The chunk was loaded and unloaded again while we were reading it, the data we have may be stale
+                pending.superseded = false;
+                pending.decoded = null;
+                this.submitChunkLoad(pending);
+                continue;
+            }
+
+            this.loadingChunks.remove(pending.index);
+
+            // A synchronous load may have won the race, in which case the decoded copy is dropped
+            if (chunk == null) {
+                LevelDBChunk decoded = null;
+                if (pending.decoded != null) {
+                    decoded = this.applyDecodedChunk(pending.decoded);
+                } else if (pending.create) {
+                    decoded = this.getEmptyChunk(pending.chunkX, pending.chunkZ);
+                }
+
+                if (decoded != null) {
+                    this.chunks.put(pending.index, decoded);
+                }
+                chunk = decoded;
+            }
+
+            pending.future.complete(chunk);
+        }
+    }
+
     @Nullable
     public LevelDBChunk readChunk(int chunkX, int chunkZ) {
+        DecodedChunk decoded = this.decodeChunk(chunkX, chunkZ);
+        return decoded == null ? null : this.applyDecodedChunk(decoded);
+    }
+
+    /**
+     * Read the chunk data from the database without touching the level, so it is safe to call off the main thread.
+     */
+    @Nullable
+    private DecodedChunk decodeChunk(int chunkX, int chunkZ) {
         byte[] versionData = this.db.get(VERSION.getKey(chunkX, chunkZ, this.level.getDimensionData().getDimensionId()));
         if (versionData == null || versionData.length != 1) {
             versionData = this.db.get(VERSION_OLD.getKey(chunkX, chunkZ, this.level.getDimensionData().getDimensionId()));
@@ -444,14 +554,7 @@ public class LevelDBProvider implements LevelProvider {
         EntitySerializer.loadEntities(this.db, chunkBuilder);
 
         byte[] tickingData = this.db.get(PENDING_TICKS.getKey(chunkX, chunkZ, this.level.getDimension()));
-        if (tickingData != null && tickingData.length != 0) {
-            loadBlockTickingQueue(tickingData, false);
-        }
-
         byte[] randomTickingData = this.db.get(RANDOM_TICKS.getKey(chunkX, chunkZ, this.level.getDimension()));
-        if (randomTickingData != null && randomTickingData.length != 0) {
-            loadBlockTickingQueue(randomTickingData, true);
-        }
 
         LevelDBChunk chunk = chunkBuilder.build();
 
@@ -459,7 +562,18 @@ public class LevelDBProvider implements LevelProvider {
             chunk.setHeightmapOrBiomesDirty();
         }
 
-        return chunk;
+        return new DecodedChunk(chunk, tickingData, randomTickingData);
+    }
+
+    private LevelDBChunk applyDecodedChunk(DecodedChunk decoded) {
+        if (decoded.tickingData() != null && decoded.tickingData().length != 0) {
+            loadBlockTickingQueue(decoded.tickingData(), false);
+        }
+
+        if (decoded.randomTickingData() != null && decoded.randomTickingData().length != 0) {
+            loadBlockTickingQueue(decoded.randomTickingData(), true);
+        }
+        return decoded.chunk();
     }
 
     @Override
@@ -506,7 +620,7 @@ public class LevelDBProvider implements LevelProvider {
 
         chunk.setChanged(false);
 
-        WriteBatch batch = this.save0(chunkX, chunkZ, chunk);
+        WriteBatch batch = this.save0(this.db.createWriteBatch(), chunkX, chunkZ, chunk);
         return CompletableFuture.runAsync(() -> this.saveChunkCallback(batch, chunk), this.executor);
     }
 
@@ -524,13 +638,42 @@ public class LevelDBProvider implements LevelProvider {
 
         chunk.setChanged(false);
 
-        WriteBatch batch = this.save0(chunkX, chunkZ, chunk);
+        WriteBatch batch = this.save0(this.db.createWriteBatch(), chunkX, chunkZ, chunk);
         this.saveChunkCallback(batch, chunk);
     }
 
-    private WriteBatch save0(int chunkX, int chunkZ, LevelDBChunk chunk) {
-        WriteBatch writeBatch = this.db.createWriteBatch();
+    /**
+     * Save the chunks with a single write batch, for chunks which are written together anyway like freshly
+     * generated ones. Chunks which are not generated are skipped.
+     */
+    public CompletableFuture<Void> saveChunksFuture(Collection<? extends FullChunk> chunks) {
+        List<LevelDBChunk> saved = new ArrayList<>(chunks.size());
+        WriteBatch batch = this.db.createWriteBatch();
+        for (FullChunk fullChunk : chunks) {
+            if (!(fullChunk instanceof LevelDBChunk chunk)) {
+                throw new IllegalArgumentException("Only LevelDB chunks are supported");
+            }
+            if (!chunk.isGenerated()) {
+                continue;
+            }
+
+            chunk.setChanged(false);
+            this.save0(batch, chunk.getX(), chunk.getZ(), chunk);
+            saved.add(chunk);
+        }
+
+        if (saved.isEmpty()) {
+            try {
+                batch.close();
+            } catch (IOException e) {
+                log.error("Failed to close WriteBatch for {}", this.getName(), e);
+            }
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> this.saveChunksCallback(batch, saved), this.executor);
+    }
 
+    private WriteBatch save0(WriteBatch writeBatch, int chunkX, int chunkZ, LevelDBChunk chunk) {
         if (chunk.isSubChunksDirty()) {
             ChunkSerializers.serializeChunk(writeBatch, chunk, CURRENT_LEVEL_CHUNK_VERSION);
         }
@@ -623,6 +766,27 @@ public class LevelDBProvider implements LevelProvider {
         }
     }
 
+    private void saveChunksCallback(WriteBatch batch, List<LevelDBChunk> chunks) {
+        // Saves run one by one on the executor, the chunks can't be locked in another order meanwhile
+        for (LevelDBChunk chunk : chunks) {
+            chunk.writeLock().lock();
+        }
+        try {
+            this.db.write(batch);
+        } catch (Exception e) {
+            log.error("Exception in saveChunksCallback for {}", this.getName(), e);
+        } finally {
+            try {
+                batch.close();
+            } catch (IOException e) {
+                log.error("Failed to close WriteBatch for {}", this.getName(), e);
+            }
+            for (LevelDBChunk chunk : chunks) {
+                chunk.writeLock().unlock();
+            }
+        }
+    }
+
     @Override
     public void saveChunks() {
         for (BaseFullChunk chunk : this.chunks.values()) {
@@ -712,6 +876,11 @@ public class LevelDBProvider implements LevelProvider {
     }
 
     private synchronized LevelDBChunk readOrCreateChunk(int chunkX, int chunkZ, boolean create) {
+        PendingChunkLoad pending = this.loadingChunks.get(Level.chunkHash(chunkX, chunkZ));
+        if (pending != null) {
+            pending.superseded = true;
+        }
+
         LevelDBChunk chunk = null;
         try {
             chunk = this.readChunk(chunkX, chunkZ);
@@ -750,9 +919,15 @@ public class LevelDBProvider implements LevelProvider {
             }
             this.closed = true;
             this.level = null;
+            this.loadExecutor.shutdownNow();
+            this.cancelChunkLoads();
             this.executor.shutdown();
 
             try {
+                // Reads that were already running must not touch the database after it is closed
+                if (!this.loadExecutor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    log.warn("Chunk loading threads did not terminate in time for: {}", this.getName());
+                }
                 if (!this.executor.awaitTermination(10, TimeUnit.MINUTES)) {
                     log.warn("LevelDB executor did not terminate in time, forcing shutdown for: {}", this.getName());
                     java.util.List<Runnable> droppedTasks = this.executor.shutdownNow();
@@ -1132,6 +1307,26 @@ public class LevelDBProvider implements LevelProvider {
         }
     }
 
+    private record DecodedChunk(LevelDBChunk chunk, byte[] tickingData, byte[] randomTickingData) {
+    }
+
+    private static class PendingChunkLoad {
+        private final long index;
+        private final int chunkX;
+        private final int chunkZ;
+        private final CompletableFuture<BaseFullChunk> future = new CompletableFuture<>();
+        private volatile boolean create;
+        private volatile boolean superseded;
+        private volatile DecodedChunk decoded;
+
+        private PendingChunkLoad(long index, int chunkX, int chunkZ, boolean create) {
+            this.index = index;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.create = create;
+        }
+    }
+
     private class AutoCompaction implements Runnable {
         @Override
         public void run() {
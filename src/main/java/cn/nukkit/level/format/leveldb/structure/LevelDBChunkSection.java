@@ -17,19 +17,34 @@ import lombok.extern.log4j.Log4j2;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
 
 import static cn.nukkit.level.format.generic.EmptyChunkSection.EMPTY_DATA_ARRAY;
 import static cn.nukkit.level.format.generic.EmptyChunkSection.EMPTY_ID_ARRAY;
 
+/**
+ * Chunk section of a LevelDB world.
+ * <p>
+ * Block reads first try an optimistic read of the {@link StampedLock} and only take the read lock if a write happened
+ * meanwhile. Writes take the write lock, so serializers holding the read lock see a consistent section. The lock is not
+ * reentrant: code holding it must only call the {@code Unsafe} variants of the methods of this class.
+ * <p>
+ * Light arrays are read without a lock. Inflating and changing them is guarded by a separate lock.
+ */
 @Log4j2
 public class LevelDBChunkSection implements ChunkSection {
 
+    // Number of protocols the network encoding is kept for
+    private static final int MAX_NETWORK_DATA = 4;
+
     private WeakReference<LevelDBChunk> parent;
 
     protected final int y;
@@ -37,9 +52,9 @@ public class LevelDBChunkSection implements ChunkSection {
     protected StateBlockStorage[] storages;
 
 
-    protected byte[] blockLight;
-    protected byte[] skyLight;
-    protected byte[] compressedLight;
+    protected volatile byte[] blockLight;
+    protected volatile byte[] skyLight;
+    protected volatile byte[] compressedLight;
     protected boolean hasBlockLight;
     protected boolean hasSkyLight;
     protected long blockChanges = 0;
@@ -47,10 +62,14 @@ public class LevelDBChunkSection implements ChunkSection {
 
     protected boolean dirty;
 
-    protected ReadWriteLock lock = new ReentrantReadWriteLock();
+    protected final StampedLock stampedLock = new StampedLock();
+    protected ReadWriteLock lock = stampedLock.asReadWriteLock();
     protected Lock readLock = lock.readLock();
     protected Lock writeLock = lock.writeLock();
-    private final ReentrantLock skyLightLock = new ReentrantLock();
+    private final ReentrantLock lightLock = new ReentrantLock();
+
+    // Network encodings of the section for the protocols it was last sent with, see writeTo
+    private volatile SoftReference<NetworkData[]> networkData;
 
     public LevelDBChunkSection(Level level, int y) {
         this(level, null, y);
@@ -99,11 +118,7 @@ public class LevelDBChunkSection implements ChunkSection {
         }
 
         int count = maxLayer + 1;
-        if (count == storages.length) {
-            this.storages = storages;
-        }
-
-        this.storages = Arrays.copyOf(this.storages, count);
+        this.storages = count == storages.length ? storages : Arrays.copyOf(storages, count);
 
         this.blockLight = blockLight;
         this.skyLight = skyLight;
@@ -138,17 +153,7 @@ public class LevelDBChunkSection implements ChunkSection {
 
     @Override
     public int getBlockId(int x, int y, int z, int layer) {
-        try {
-            this.readLock.lock();
-
-            if (!this.hasLayerUnsafe(layer)) {
-                return BlockID.AIR;
-            }
-
-            return (this.storages[layer].getBlockState(x, y, z)).getLegacyId();
-        } finally {
-            this.readLock.unlock();
-        }
+        return this.getFullBlock(x, y, z, layer) >> Block.DATA_BITS;
     }
 
     @Override
@@ -180,6 +185,7 @@ public class LevelDBChunkSection implements ChunkSection {
             storage.set(x, y, z, fullId);
 
             dirty = true;
+            this.blockChanges++;
             parent.get().onSubChunkBlockChanged(this, x, y, z, layer, previous, fullId);
         } finally {
             this.writeLock.unlock();
@@ -198,17 +204,7 @@ public class LevelDBChunkSection implements ChunkSection {
 
     @Override
     public int getBlockData(int x, int y, int z, int layer) {
-        try {
-            this.readLock.lock();
-
-            if (!this.hasLayerUnsafe(layer)) {
-                return 0;
-            }
-
-            return (this.storages[layer].getBlockState(x, y, z)).getLegacyData();
-        } finally {
-            this.readLock.unlock();
-        }
+        return this.getFullBlock(x, y, z, layer) & Block.DATA_MASK;
     }
 
     @Override
@@ -236,6 +232,7 @@ public class LevelDBChunkSection implements ChunkSection {
             storage.set(x, y, z, fullId);
 
             dirty = true;
+            this.blockChanges++;
             parent.get().onSubChunkBlockChanged(this, x, y, z, layer, previous, fullId);
         } finally {
             this.writeLock.unlock();
@@ -249,33 +246,38 @@ public class LevelDBChunkSection implements ChunkSection {
 
     @Override
     public int getFullBlock(int x, int y, int z, int layer) {
-        try {
-            this.readLock.lock();
-
-            if (!this.hasLayerUnsafe(layer)) {
-                return BlockID.AIR;
+        long stamp = this.stampedLock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int fullId = this.getFullBlockUnsafe(x, y, z, layer);
+                if (this.stampedLock.validate(stamp)) {
+                    return fullId;
+                }
+            } catch (RuntimeException e) {
+                // Raced with a write, read again below
             }
+        }
 
-            return this.storages[layer].get(x, y, z);
+        stamp = this.stampedLock.readLock();
+        try {
+            return this.getFullBlockUnsafe(x, y, z, layer);
         } finally {
-            this.readLock.unlock();
+            this.stampedLock.unlockRead(stamp);
         }
     }
 
+    protected int getFullBlockUnsafe(int x, int y, int z, int layer) {
+        StateBlockStorage[] storages = this.storages;
+        if (layer >= storages.length || storages[layer] == null) {
+            return BlockID.AIR;
+        }
+        return storages[layer].get(x, y, z);
+    }
+
     @Override
     public int[] getBlockState(int x, int y, int z, int layer) {
-        try {
-            this.readLock.lock();
-
-            if (!this.hasLayerUnsafe(layer)) {
-                return new int[] { BlockID.AIR, 0 };
-            }
-
-            BlockStateSnapshot blockState = this.storages[layer].getBlockState(x, y, z);
-            return new int[] { blockState.getLegacyId(), blockState.getLegacyData() };
-        } finally {
-            this.readLock.unlock();
-        }
+        int fullId = this.getFullBlock(x, y, z, layer);
+        return new int[] { fullId >> Block.DATA_BITS, fullId & Block.DATA_MASK };
     }
 
     @Override
@@ -355,6 +357,7 @@ public class LevelDBChunkSection implements ChunkSection {
             }
 
             dirty = true;
+            this.blockChanges++;
             parent.get().onSubChunkBlockChanged(this, x, y, z, layer, previous, fullId);
         } finally {
             this.writeLock.unlock();
@@ -395,6 +398,7 @@ public class LevelDBChunkSection implements ChunkSection {
             storage.set(x, y, z, fullId);
 
             dirty = true;
+            this.blockChanges++;
             parent.get().onSubChunkBlockChanged(this, x, y, z, layer, previous, fullId);
             return true;
         } finally {
@@ -402,21 +406,63 @@ public class LevelDBChunkSection implements ChunkSection {
         }
     }
 
+    @Override
+    public int setFullBlockIds(int layer, int[] indexes, int count, int fullId, int[] previous) {
+        try {
+            this.writeLock.lock();
+
+            if (!this.hasLayerUnsafe(layer)) {
+                if (fullId == BlockID.AIR) {
+                    Arrays.fill(previous, 0, count, BlockID.AIR);
+                    return 0;
+                }
+                this.createLayerUnsafe(layer);
+            }
+
+            StateBlockStorage storage = this.storages[layer];
+            LevelDBChunk chunk = parent.get();
+            int changed = 0;
+            for (int i = 0; i < count; i++) {
+                int index = indexes[i];
+                int x = index >> 8;
+                int y = index & 0x0f;
+                int z = (index >> 4) & 0x0f;
+                int before = storage.get(x, y, z);
+                previous[i] = before;
+                if (before == fullId) {
+                    continue;
+                }
+
+                storage.set(x, y, z, fullId);
+                chunk.onSubChunkBlockChanged(this, x, y, z, layer, before, fullId);
+                changed++;
+            }
+
+            if (changed > 0) {
+                dirty = true;
+                this.blockChanges += changed;
+            }
+            return changed;
+        } finally {
+            this.writeLock.unlock();
+        }
+    }
+
     public boolean setBlock(int x, int y, int z, int layer, int blockId, int meta) {
         return setFullBlockId( x, y, z, layer, (blockId << Block.DATA_BITS) | (meta & Block.DATA_MASK));
     }
 
     @Override
     public int getBlockSkyLight(int x, int y, int z) {
-        if (this.skyLight == null) {
+        byte[] skyLight = this.skyLight;
+        if (skyLight == null) {
             if (!hasSkyLight) {
                 return 0;
-            } else if (compressedLight == null) {
+            } else if (compressedLight == null || (skyLight = this.inflateSkyLight()) == null) {
                 return 15;
             }
         }
-        this.skyLight = getSkyLightArray();
-        int sl = this.skyLight[(y << 7) | (z << 3) | (x >> 1)] & 0xff;
+        int sl = skyLight[(y << 7) | (z << 3) | (x >> 1)] & 0xff;
         if ((x & 1) == 0) {
             return sl & 0x0f;
         }
@@ -425,19 +471,20 @@ public class LevelDBChunkSection implements ChunkSection {
 
     @Override
     public void setBlockSkyLight(int x, int y, int z, int level) {
-        this.skyLightLock.lock();
+        this.lightLock.lock();
         try {
+            if (this.skyLight == null && hasSkyLight && compressedLight != null) {
+                this.inflate();
+            }
             if (this.skyLight == null) {
-                if (hasSkyLight && compressedLight != null) {
-                    this.skyLight = getSkyLightArray();
-                } else if (level == (hasSkyLight ? 15 : 0)) {
+                if (level == (hasSkyLight ? 15 : 0)) {
                     return;
-                } else {
-                    this.skyLight = new byte[2048];
-                    if (hasSkyLight) {
-                        Arrays.fill(this.skyLight, (byte) 0xFF);
-                    }
                 }
+                byte[] skyLight = new byte[2048];
+                if (hasSkyLight) {
+                    Arrays.fill(skyLight, (byte) 0xFF);
+                }
+                this.skyLight = skyLight;
             }
             int i = (y << 7) | (z << 3) | (x >> 1);
             int old = this.skyLight[i] & 0xff;
@@ -447,16 +494,19 @@ public class LevelDBChunkSection implements ChunkSection {
                 this.skyLight[i] = (byte) (((level & 0x0f) << 4) | (old & 0x0f));
             }
         } finally {
-            this.skyLightLock.unlock();
+            this.lightLock.unlock();
         }
     }
 
     @Override
     public int getBlockLight(int x, int y, int z) {
-        if (blockLight == null && !hasBlockLight) {
-            return 0;
+        byte[] blockLight = this.blockLight;
+        if (blockLight == null) {
+            if (!hasBlockLight) {
+                return 0;
+            }
+            blockLight = this.getLightArray();
         }
-        this.blockLight = getLightArray();
         int l = blockLight[(y << 7) | (z << 3) | (x >> 1)] & 0xff;
         if ((x & 1) == 0) {
             return l & 0x0f;
@@ -466,21 +516,26 @@ public class LevelDBChunkSection implements ChunkSection {
 
     @Override
     public void setBlockLight(int x, int y, int z, int level) {
-        if (this.blockLight == null) {
-            if (hasBlockLight) {
-                this.blockLight = getLightArray();
-            } else if (level == 0) {
-                return;
-            } else {
+        this.lightLock.lock();
+        try {
+            if (this.blockLight == null && hasBlockLight) {
+                this.inflate();
+            }
+            if (this.blockLight == null) {
+                if (level == 0) {
+                    return;
+                }
                 this.blockLight = new byte[2048];
             }
-        }
-        int i = (y << 7) | (z << 3) | (x >> 1);
-        int old = this.blockLight[i] & 0xff;
-        if ((x & 1) == 0) {
-            this.blockLight[i] = (byte) ((old & 0xf0) | (level & 0x0f));
-        } else {
-            this.blockLight[i] = (byte) (((level & 0x0f) << 4) | (old & 0x0f));
+            int i = (y << 7) | (z << 3) | (x >> 1);
+            int old = this.blockLight[i] & 0xff;
+            if ((x & 1) == 0) {
+                this.blockLight[i] = (byte) ((old & 0xf0) | (level & 0x0f));
+            } else {
+                this.blockLight[i] = (byte) (((level & 0x0f) << 4) | (old & 0x0f));
+            }
+        } finally {
+            this.lightLock.unlock();
         }
     }
 
@@ -534,6 +589,7 @@ public class LevelDBChunkSection implements ChunkSection {
 
     @Override
     public byte[] getSkyLightArray() {
+        byte[] skyLight = this.skyLight;
         if (skyLight != null) {
             return skyLight.clone();
         }
@@ -542,18 +598,33 @@ public class LevelDBChunkSection implements ChunkSection {
             return new byte[EmptyChunkSection.EMPTY_LIGHT_ARR.length];
         }
 
-        if (compressedLight != null && inflate() && skyLight != null) {
+        if (compressedLight != null && (skyLight = this.inflateSkyLight()) != null) {
             return skyLight.clone();
         }
 
         return EmptyChunkSection.EMPTY_SKY_LIGHT_ARR.clone();
     }
 
+    private byte[] inflateSkyLight() {
+        this.lightLock.lock();
+        try {
+            if (this.skyLight == null) {
+                this.inflate();
+            }
+            return this.skyLight;
+        } finally {
+            this.lightLock.unlock();
+        }
+    }
+
+    /**
+     * Inflate the compressed light arrays. Must be called holding the light lock.
+     */
     private boolean inflate() {
         try {
             if (compressedLight != null && compressedLight.length != 0) {
                 byte[] inflated = Zlib.inflate(compressedLight);
-                blockLight = Arrays.copyOfRange(inflated, 0, 2048);
+                byte[] skyLight;
                 if (inflated.length > 2048) {
                     skyLight = Arrays.copyOfRange(inflated, 2048, 4096);
                 } else {
@@ -562,12 +633,20 @@ public class LevelDBChunkSection implements ChunkSection {
                         Arrays.fill(skyLight, (byte) 0xFF);
                     }
                 }
+                this.blockLight = Arrays.copyOfRange(inflated, 0, 2048);
+                this.skyLight = skyLight;
                 compressedLight = null;
             } else {
-                blockLight = new byte[2048];
-                skyLight = new byte[2048];
-                if (hasSkyLight) {
-                    Arrays.fill(skyLight, (byte) 0xFF);
+                // Keep an array which is already there
+                if (this.skyLight == null) {
+                    byte[] skyLight = new byte[2048];
+                    if (hasSkyLight) {
+                        Arrays.fill(skyLight, (byte) 0xFF);
+                    }
+                    this.skyLight = skyLight;
+                }
+                if (this.blockLight == null) {
+                    this.blockLight = new byte[2048];
                 }
             }
             return true;
@@ -579,43 +658,60 @@ public class LevelDBChunkSection implements ChunkSection {
 
     @Override
     public byte[] getLightArray() {
-        if (this.blockLight != null) return this.blockLight;
+        byte[] blockLight = this.blockLight;
+        if (blockLight != null) return blockLight;
         if (this.hasBlockLight) {
-            this.inflate();
-            if (this.blockLight != null) return this.blockLight;
+            this.lightLock.lock();
+            try {
+                if (this.blockLight == null) {
+                    this.inflate();
+                }
+                blockLight = this.blockLight;
+            } finally {
+                this.lightLock.unlock();
+            }
+            if (blockLight != null) return blockLight;
         }
         return EmptyChunkSection.EMPTY_LIGHT_ARR;
     }
 
     @Override
     public boolean isEmpty() {
+        long stamp = this.stampedLock.readLock();
         try {
-            this.readLock.lock();
-
-            for (StateBlockStorage storage : this.storages) {
-                if (storage == null) {
-                    continue;
-                }
+            return this.isEmptyUnsafe();
+        } finally {
+            this.stampedLock.unlockRead(stamp);
+        }
+    }
 
-                if (!storage.isEmpty()) {
-                    return false;
-                }
+    protected boolean isEmptyUnsafe() {
+        for (StateBlockStorage storage : this.storages) {
+            if (storage == null) {
+                continue;
             }
 
-            return true;
-        } finally {
-            this.readLock.unlock();
+            if (!storage.isEmpty()) {
+                return false;
+            }
         }
+
+        return true;
     }
 
     @Override
     public boolean hasLayer(int layer) {
-        try {
-            this.readLock.lock();
+        long stamp = this.stampedLock.tryOptimisticRead();
+        boolean hasLayer = this.hasLayerUnsafe(layer);
+        if (this.stampedLock.validate(stamp)) {
+            return hasLayer;
+        }
 
+        stamp = this.stampedLock.readLock();
+        try {
             return this.hasLayerUnsafe(layer);
         } finally {
-            this.readLock.unlock();
+            this.stampedLock.unlockRead(stamp);
         }
     }
 
@@ -632,10 +728,11 @@ public class LevelDBChunkSection implements ChunkSection {
     }
 
     protected boolean hasLayerUnsafe(int layer) {
-        if (layer >= this.storages.length) {
+        StateBlockStorage[] storages = this.storages;
+        if (layer >= storages.length) {
             return false;
         }
-        return this.storages[layer] != null;
+        return storages[layer] != null;
     }
 
     protected void createLayer(int layer) {
@@ -649,28 +746,32 @@ public class LevelDBChunkSection implements ChunkSection {
     }
 
     protected void createLayerUnsafe(int layer) {
-        StateBlockStorage[] storages;
-        if (this.storages.length <= layer) {
-            storages = Arrays.copyOf(this.storages, layer + 1);
-            this.storages = storages;
-        } else {
-            storages = this.storages;
-        }
-
+        this.blockChanges++;
+        // Copied so optimistic readers never see a layer before it is set up
+        StateBlockStorage[] storages = Arrays.copyOf(this.storages, Math.max(this.storages.length, layer + 1));
         for (int i = layer; i >= 0; i--) {
             if (storages[i] != null) {
                 continue;
             }
             storages[i] = new StateBlockStorage();
         }
+        this.storages = storages;
     }
 
     @Override
     public void writeTo(int protocol, BinaryStream stream, boolean antiXray, BlockPalette blockPalette) {
+        long stamp = this.stampedLock.readLock();
         try {
-            this.readLock.lock();
+            if (!antiXray) {
+                byte[] cached = this.getCachedNetworkData(blockPalette);
+                if (cached != null) {
+                    stream.put(cached);
+                    return;
+                }
+            }
 
-            int layers = this.hasLayer(1) ? 2 : 1;
+            int start = stream.getCount();
+            int layers = this.hasLayerUnsafe(1) ? 2 : 1;
 
             stream.putByte((byte) 8);
             stream.putByte((byte) layers);
@@ -678,11 +779,51 @@ public class LevelDBChunkSection implements ChunkSection {
             for (int i = 0; i < layers; i++) {
                 this.storages[i].writeTo(level, protocol, stream, antiXray, blockPalette);
             }
+
+            if (!antiXray) {
+                this.cacheNetworkData(blockPalette, Arrays.copyOfRange(stream.getBufferUnsafe(), start, stream.getCount()));
+            }
         } finally {
-            this.readLock.unlock();
+            this.stampedLock.unlockRead(stamp);
         }
     }
 
+    /**
+     * @return the section as last written for the palette, null if it changed since. Must be called holding the lock.
+     */
+    private byte[] getCachedNetworkData(BlockPalette blockPalette) {
+        SoftReference<NetworkData[]> reference = this.networkData;
+        NetworkData[] entries = reference == null ? null : reference.get();
+        if (entries != null) {
+            for (NetworkData entry : entries) {
+                if (entry.palette() == blockPalette && entry.blockChanges() == this.blockChanges) {
+                    return entry.data();
+                }
+            }
+        }
+        return null;
+    }
+
+    private void cacheNetworkData(BlockPalette blockPalette, byte[] data) {
+        SoftReference<NetworkData[]> reference = this.networkData;
+        NetworkData[] entries = reference == null ? null : reference.get();
+
+        // Entries written before the last change are dropped, as are the oldest protocols
+        List<NetworkData> kept = new ArrayList<>(MAX_NETWORK_DATA);
+        kept.add(new NetworkData(blockPalette, this.blockChanges, data));
+        if (entries != null) {
+            for (NetworkData entry : entries) {
+                if (kept.size() < MAX_NETWORK_DATA && entry.palette() != blockPalette && entry.blockChanges() == this.blockChanges) {
+                    kept.add(entry);
+                }
+            }
+        }
+        this.networkData = new SoftReference<>(kept.toArray(new NetworkData[0]));
+    }
+
+    private record NetworkData(BlockPalette palette, long blockChanges, byte[] data) {
+    }
+
     public StateBlockStorage[] getStorages() {
         return storages;
     }
@@ -692,7 +833,7 @@ public class LevelDBChunkSection implements ChunkSection {
         try {
             this.writeLock.lock();
 
-            if (this.isEmpty()) {
+            if (this.isEmptyUnsafe()) {
                 return false;
             }
 
@@ -708,18 +849,19 @@ public class LevelDBChunkSection implements ChunkSection {
                 if (checkRemove) {
                     if (storage.isEmpty() && i > 0) {
                         this.storages = Arrays.copyOfRange(this.storages, 0, i);
+                        this.blockChanges++;
                     } else {
                         checkRemove = false;
                     }
                 }
             }
 
-            if (blockLight != null) {
-                byte[] arr1 = blockLight;
-                hasBlockLight = !Utils.isByteArrayEmpty(arr1);
-                byte[] arr2;
-                this.skyLightLock.lock();
-                try {
+            this.lightLock.lock();
+            try {
+                if (blockLight != null) {
+                    byte[] arr1 = blockLight;
+                    hasBlockLight = !Utils.isByteArrayEmpty(arr1);
+                    byte[] arr2;
                     if (skyLight != null) {
                         arr2 = skyLight;
                         hasSkyLight = !Utils.isByteArrayEmpty(arr2);
@@ -728,25 +870,26 @@ public class LevelDBChunkSection implements ChunkSection {
                     } else {
                         arr2 = EmptyChunkSection.EMPTY_LIGHT_ARR;
                     }
-                    skyLight = null;
-                } finally {
-                    this.skyLightLock.unlock();
-                }
-                blockLight = null;
-                byte[] toDeflate = null;
-                if (hasBlockLight && hasSkyLight && arr2 != EmptyChunkSection.EMPTY_SKY_LIGHT_ARR) {
-                    toDeflate = Binary.appendBytes(arr1, arr2);
-                } else if (hasBlockLight) {
-                    toDeflate = arr1;
-                }
-                if (toDeflate != null) {
-                    try {
-                        compressedLight = Zlib.deflate(toDeflate, 1);
-                        dirty = true;
-                    } catch (Exception e) {
-                        log.error("Error compressing the light data", e);
+                    byte[] toDeflate = null;
+                    if (hasBlockLight && hasSkyLight && arr2 != EmptyChunkSection.EMPTY_SKY_LIGHT_ARR) {
+                        toDeflate = Binary.appendBytes(arr1, arr2);
+                    } else if (hasBlockLight) {
+                        toDeflate = arr1;
+                    }
+                    if (toDeflate != null) {
+                        try {
+                            compressedLight = Zlib.deflate(toDeflate, 1);
+                            dirty = true;
+                        } catch (Exception e) {
+                            log.error("Error compressing the light data", e);
+                        }
                     }
+                    // Dropped last, lock free readers fall back to the compressed light
+                    skyLight = null;
+                    blockLight = null;
                 }
+            } finally {
+                this.lightLock.unlock();
             }
 
             this.dirty |= dirty;
@@ -787,6 +930,20 @@ public class LevelDBChunkSection implements ChunkSection {
         this.dirty = true;
     }
 
+    @Override
+    public int getRandomTickBlockCount() {
+        try {
+            this.readLock.lock();
+
+            if (!this.hasLayerUnsafe(0)) {
+                return 0;
+            }
+            return this.storages[0].getRandomTickBlockCount();
+        } finally {
+            this.readLock.unlock();
+        }
+    }
+
     @Override
     public boolean maybeHasLightSource() {
         try {
@@ -4,19 +4,25 @@ import cn.nukkit.Nukkit;
 import cn.nukkit.block.Block;
 import cn.nukkit.block.BlockID;
 import cn.nukkit.level.BlockPalette;
+import cn.nukkit.level.AntiXraySystem;
 import cn.nukkit.level.Level;
+import cn.nukkit.level.antixray.AntiXrayEngine;
+import cn.nukkit.level.antixray.ExposureMask;
 import cn.nukkit.level.format.leveldb.BlockStateMapping;
 import cn.nukkit.level.util.BitArray;
 import cn.nukkit.level.util.BitArrayVersion;
-import cn.nukkit.level.util.PalettedBlockStorage;
 import cn.nukkit.level.util.SingletonBitArray;
 import cn.nukkit.math.BlockVector3;
-import cn.nukkit.math.NukkitRandom;
 import cn.nukkit.registry.Registries;
 import cn.nukkit.utils.BinaryStream;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufInputStream;
 import io.netty.buffer.ByteBufOutputStream;
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntList;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import lombok.extern.log4j.Log4j2;
 import org.cloudburstmc.nbt.NBTInputStream;
@@ -26,18 +32,36 @@ import org.cloudburstmc.nbt.NbtUtils;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static cn.nukkit.level.format.leveldb.LevelDBConstants.SUB_CHUNK_SIZE;
 
+/**
+ * Block states of one layer of a chunk section.
+ * <p>
+ * The palette and the bit array are never resized in place: growing the palette or the bit array creates a new one,
+ * which is published after it is complete. A reader without a lock therefore always sees a palette and a bit array it
+ * can index, although possibly not the matching pair, so {@link LevelDBChunkSection} can read optimistically and
+ * validate afterwards.
+ */
 @Log4j2
 public class StateBlockStorage {
 
     private static final int SECTION_SIZE = 16 * 16 * 16;
     private static final BlockStateSnapshot AIR = BlockStateMapping.get().getState(0, 0);
+    private static final long INVALID_RANDOM_TICK_STATE = -1L << 32;
 
     private List<BlockStateSnapshot> palette;
     private BitArray bitArray;
 
+    // Random tick lookup version in the upper and number of random tick blocks in the lower 32 bits, the count is only
+    // valid while the version matches Level.getRandomTickLookupVersion(). Readers refresh it concurrently under the
+    // shared read lock, so both are kept in one field to be published together
+    private volatile long randomTickState = INVALID_RANDOM_TICK_STATE;
+
+    // Blocks without a transparent neighbour, only created once the storage is sent with anti-xray
+    private volatile ExposureMask exposure;
+
     public StateBlockStorage() {
         this(BitArrayVersion.V2);
     }
@@ -98,6 +122,7 @@ public class StateBlockStorage {
         }
 
         this.palette.clear();
+        this.randomTickState = INVALID_RANDOM_TICK_STATE;
 
         BitArrayVersion version = BitArrayVersion.get(header >> 1, true);
 
@@ -187,8 +212,25 @@ public class StateBlockStorage {
 
     public void set(int index, BlockStateSnapshot value) {
         try {
+            long randomTickState = this.randomTickState;
+            int randomTickVersion = (int) (randomTickState >>> 32);
+            boolean trackRandomTicks = randomTickVersion == Level.getRandomTickLookupVersion();
+            boolean wasRandomTick = trackRandomTicks && Level.isRandomTickBlock(this.getBlockState(index).getLegacyId());
+
             int paletteIndex = this.getOrAdd(value);
             this.bitArray.set(index, paletteIndex);
+
+            ExposureMask exposure = this.exposure;
+            if (exposure != null) {
+                exposure.setTransparent(index, Registries.BLOCK.isTransparent(value.getLegacyId()));
+            }
+
+            if (trackRandomTicks) {
+                boolean isRandomTick = Level.isRandomTickBlock(value.getLegacyId());
+                if (wasRandomTick != isRandomTick) {
+                    this.randomTickState = randomTickState(randomTickVersion, (int) randomTickState + (isRandomTick ? 1 : -1));
+                }
+            }
         } catch (IllegalArgumentException e) {
             throw new IllegalArgumentException("Unable to set value: " + value + ", palette: " + palette, e);
         }
@@ -206,58 +248,207 @@ public class StateBlockStorage {
         this.set(elementIndex(pos.x, pos.y, pos.z), BlockStateMapping.get().getBlockStateFromFullId(value));
     }
 
+    /**
+     * Write the storage in the network format of the protocol.
+     * <p>
+     * The palette is translated to runtime ids once and the bit array is written as it is, unless several states share
+     * a runtime id and the indices have to be remapped. Only anti-xray looks at every block.
+     */
     public void writeTo(Level level, int protocol, BinaryStream stream, boolean antiXray, BlockPalette blockPalette) {
-        PalettedBlockStorage palettedBlockStorage = PalettedBlockStorage.createFromBlockPalette(BitArrayVersion.V2, protocol);
-
-        if(this.bitArray.getClass() != SingletonBitArray.class) {
-            if (antiXray) {
-                final NukkitRandom nukkitRandom = new NukkitRandom();
-                var realOreToFakeMap = level.getAntiXraySystem().getRealOreToReplacedBlockIds();
-                var fakeBlockMap = level.getAntiXraySystem().getFakeOreToPutBlockIds();
-                var XAndDenominator = level.getAntiXraySystem().getFakeOreDenominator() - 1;
-
-                for (int i = 0; i < SECTION_SIZE; i++) {
-                    int x = (i >> 8) & 0xF;
-                    int z = (i >> 4) & 0xF;
-                    int y = i & 0xF;
-
-                    final int fullId = get(i);
-                    int id = fullId >> Block.DATA_BITS;
-                    int meta = fullId & Block.DATA_MASK;
-
-                    if (x != 0 && z != 0 && y != 0 && x != 15 && z != 15 && y != 15) {
-                        var tmp = realOreToFakeMap.getOrDefault(id, Integer.MAX_VALUE);
-                        boolean canBeObfuscated = canBeObfuscated(x, y, z);
-                        if (tmp != Integer.MAX_VALUE && canBeObfuscated) {
-                            id = tmp;
-                        } else {
-                            var tmp2 = fakeBlockMap.get(id);
-                            if (tmp2 != null && (nukkitRandom.nextInt() & XAndDenominator) == 0 && canBeObfuscated) {
-                                id = tmp2.getInt(nukkitRandom.nextRange(0, tmp2.size() - 1));
-                                meta = 0;
-                            }
-                        }
+        if (antiXray && this.bitArray.getClass() != SingletonBitArray.class && this.writeObfuscatedTo(level, stream, blockPalette)) {
+            return;
+        }
+
+        List<BlockStateSnapshot> palette = this.palette;
+        BitArray bitArray = this.bitArray;
+        int paletteSize = palette.size();
+
+        int[] runtimeIds = new int[paletteSize];
+        int[] remap = null;
+        int count = 0;
+        Int2IntMap indices = new Int2IntOpenHashMap(paletteSize);
+        indices.defaultReturnValue(-1);
+        for (int i = 0; i < paletteSize; i++) {
+            BlockStateSnapshot state = palette.get(i);
+            int fullId = state.getLegacyId() << Block.DATA_BITS | state.getLegacyData();
+            int runtimeId = blockPalette.getRuntimeId(fullId >> Block.DATA_BITS, fullId & Block.DATA_MASK);
+            int index = indices.putIfAbsent(runtimeId, count);
+            if (index == -1) {
+                index = count;
+                runtimeIds[count++] = runtimeId;
+            }
+
+            if (index != i && remap == null) {
+                remap = new int[paletteSize];
+                for (int j = 0; j < i; j++) {
+                    remap[j] = j;
+                }
+            }
+            if (remap != null) {
+                remap[i] = index;
+            }
+        }
+
+        if (count <= 1) {
+            stream.putByte((byte) getPaletteHeader(BitArrayVersion.V0, true));
+            stream.putVarInt(runtimeIds[0]);
+            return;
+        }
+
+        if (remap != null) {
+            BitArray remapped = bitArray.getVersion().createPalette(SECTION_SIZE);
+            for (int i = 0; i < SECTION_SIZE; i++) {
+                remapped.set(i, remap[bitArray.get(i)]);
+            }
+            bitArray = remapped;
+        }
+
+        stream.putByte((byte) getPaletteHeader(bitArray.getVersion(), true));
+        for (int word : bitArray.getWords()) {
+            stream.putLInt(word);
+        }
+        stream.putVarInt(count);
+        for (int i = 0; i < count; i++) {
+            stream.putVarInt(runtimeIds[i]);
+        }
+    }
+
+    /**
+     * Write the storage with the ores which can't be seen hidden and fake ores added, as configured for the level.
+     *
+     * @return false if nothing in the storage can be obfuscated and nothing was written
+     */
+    private boolean writeObfuscatedTo(Level level, BinaryStream stream, BlockPalette blockPalette) {
+        long start = System.nanoTime();
+        AntiXraySystem antiXray = level.getAntiXraySystem();
+        AntiXrayEngine engine = antiXray.getEngine();
+        Int2IntMap realOreToReplaced = antiXray.getRealOreToReplacedBlockIds();
+        Int2ObjectMap<IntList> fakeOres = antiXray.getFakeOreToPutBlockIds();
+
+        List<BlockStateSnapshot> palette = this.palette;
+        BitArray bitArray = this.bitArray;
+        int paletteSize = palette.size();
+
+        // Every state which may be sent is in the palette before the blocks are written
+        IntList runtimeIds = new IntArrayList(paletteSize + 8);
+        Int2IntMap indices = new Int2IntOpenHashMap(paletteSize + 8);
+        indices.defaultReturnValue(-1);
+        int[] real = new int[paletteSize];
+        int[] hidden = new int[paletteSize];
+        int[][] fakes = new int[paletteSize][];
+        boolean obfuscates = false;
+        for (int i = 0; i < paletteSize; i++) {
+            BlockStateSnapshot state = palette.get(i);
+            int fullId = state.getLegacyId() << Block.DATA_BITS | state.getLegacyData();
+            int id = fullId >> Block.DATA_BITS;
+            int meta = fullId & Block.DATA_MASK;
+
+            real[i] = paletteIndex(runtimeIds, indices, blockPalette.getRuntimeId(id, meta));
+            hidden[i] = -1;
+            if (realOreToReplaced.containsKey(id)) {
+                hidden[i] = paletteIndex(runtimeIds, indices, blockPalette.getRuntimeId(realOreToReplaced.get(id), meta));
+                obfuscates = true;
+            } else if (engine != AntiXrayEngine.HIDE) {
+                IntList fakeIds = fakeOres.get(id);
+                if (fakeIds != null && !fakeIds.isEmpty()) {
+                    int[] fake = new int[fakeIds.size()];
+                    for (int j = 0; j < fake.length; j++) {
+                        fake[j] = paletteIndex(runtimeIds, indices, blockPalette.getRuntimeId(fakeIds.getInt(j), 0));
                     }
-                    palettedBlockStorage.setBlock(i, blockPalette.getRuntimeId(id, meta));
+                    fakes[i] = fake;
+                    obfuscates = true;
                 }
-            } else {
-                for (int i = 0; i < SECTION_SIZE; i++) {
-                    final int fullId = get(i);
-                    palettedBlockStorage.setBlock(i, blockPalette.getRuntimeId(fullId >> Block.DATA_BITS, fullId & Block.DATA_MASK));
+            }
+        }
+
+        if (!obfuscates) {
+            return false;
+        }
+
+        ExposureMask exposure = this.getExposureMask(palette, bitArray);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int denominatorMask = antiXray.getFakeOreDenominator() - 1;
+        int[] layers = null;
+        if (engine == AntiXrayEngine.LAYERED) {
+            layers = new int[16];
+            for (int y = 0; y < layers.length; y++) {
+                layers[y] = random.nextInt(Integer.MAX_VALUE);
+            }
+        }
+
+        BitArrayVersion version = BitArrayVersion.V1;
+        while (version.getMaxEntryValue() < runtimeIds.size() - 1) {
+            version = version.next();
+        }
+        BitArray obfuscated = version.createPalette(SECTION_SIZE);
+
+        int replaced = 0;
+        for (int word = 0; word < ExposureMask.WORDS; word++) {
+            long hiddenBits = exposure.getHidden(word);
+            for (int bit = 0; bit < 64; bit++) {
+                int index = word << 6 | bit;
+                int paletteIndex = bitArray.get(index);
+                int value = real[paletteIndex];
+
+                if ((hiddenBits & (1L << bit)) != 0) {
+                    if (hidden[paletteIndex] != -1) {
+                        value = hidden[paletteIndex];
+                        replaced++;
+                    } else if (fakes[paletteIndex] != null && (random.nextInt() & denominatorMask) == 0) {
+                        int[] fake = fakes[paletteIndex];
+                        value = fake[layers != null ? layers[index & 0xf] % fake.length : random.nextInt(fake.length)];
+                        replaced++;
+                    }
+                }
+
+                if (value != 0) {
+                    obfuscated.set(index, value);
                 }
             }
         }
 
-        palettedBlockStorage.writeTo(stream);
+        stream.putByte((byte) getPaletteHeader(version, true));
+        for (int word : obfuscated.getWords()) {
+            stream.putLInt(word);
+        }
+        stream.putVarInt(runtimeIds.size());
+        for (int i = 0; i < runtimeIds.size(); i++) {
+            stream.putVarInt(runtimeIds.getInt(i));
+        }
+
+        antiXray.recordSection(exposure.countHidden(), replaced, System.nanoTime() - start);
+        return true;
+    }
+
+    private static int paletteIndex(IntList runtimeIds, Int2IntMap indices, int runtimeId) {
+        int index = indices.putIfAbsent(runtimeId, runtimeIds.size());
+        if (index == -1) {
+            index = runtimeIds.size();
+            runtimeIds.add(runtimeId);
+        }
+        return index;
     }
 
-    private boolean canBeObfuscated(int x, int y, int z) {
-        return !Registries.BLOCK.isTransparent(get(x + 1, y, z) >> Block.DATA_BITS) &&
-                !Registries.BLOCK.isTransparent(get(x - 1, y, z) >> Block.DATA_BITS) &&
-                !Registries.BLOCK.isTransparent(get(x, y + 1, z) >> Block.DATA_BITS) &&
-                !Registries.BLOCK.isTransparent(get(x, y - 1, z) >> Block.DATA_BITS) &&
-                !Registries.BLOCK.isTransparent(get(x, y, z + 1) >> Block.DATA_BITS) &&
-                !Registries.BLOCK.isTransparent(get(x, y, z - 1) >> Block.DATA_BITS);
+    /**
+     * Must be called holding at least the read lock of the section.
+     */
+    private ExposureMask getExposureMask(List<BlockStateSnapshot> palette, BitArray bitArray) {
+        ExposureMask exposure = this.exposure;
+        if (exposure == null) {
+            boolean[] transparentStates = new boolean[palette.size()];
+            for (int i = 0; i < transparentStates.length; i++) {
+                transparentStates[i] = Registries.BLOCK.isTransparent(palette.get(i).getLegacyId());
+            }
+
+            long[] transparent = new long[ExposureMask.WORDS];
+            for (int i = 0; i < SECTION_SIZE; i++) {
+                if (transparentStates[bitArray.get(i)]) {
+                    transparent[i >> 6] |= 1L << i;
+                }
+            }
+            this.exposure = exposure = new ExposureMask(transparent);
+        }
+        return exposure;
     }
 
     private void grow(BitArrayVersion version) {
@@ -291,9 +482,15 @@ public class StateBlockStorage {
                 this.grow(next);
             } else if (!this.compress()) {
                 throw new IndexOutOfBoundsException("too many elements");
+            } else {
+                // Compressing dropped unused entries
+                index = this.palette.size();
             }
         }
-        this.palette.add(snapshot);
+        List<BlockStateSnapshot> palette = new ObjectArrayList<>(index + 1);
+        palette.addAll(this.palette);
+        palette.add(snapshot);
+        this.palette = palette;
         return index;
     }
 
@@ -333,9 +530,9 @@ public class StateBlockStorage {
             break;
         }
         if (noBlock) {
-            BlockStateSnapshot firstId = this.palette.get(0);
-            this.palette.clear();
-            this.palette.add(firstId);
+            List<BlockStateSnapshot> palette = new ObjectArrayList<>(16);
+            palette.add(this.palette.get(0));
+            this.palette = palette;
 
 //            Arrays.fill(this.bitArray.getWords(), 0);
             this.bitArray = BitArrayVersion.V1.createPalette(SECTION_SIZE);
@@ -373,10 +570,54 @@ public class StateBlockStorage {
     }
 
     public StateBlockStorage copy() {
-        return new StateBlockStorage(
+        StateBlockStorage copy = new StateBlockStorage(
                 this.bitArray.copy(),
                 new ObjectArrayList<>(this.palette)
         );
+        copy.randomTickState = this.randomTickState;
+        return copy;
+    }
+
+    /**
+     * Number of blocks whose id is listed in {@link Level#RANDOM_TICK_BLOCKS}.
+     * The count is kept up to date by {@link #set(int, BlockStateSnapshot)} and only recounted after loading or when
+     * the list of random tick blocks changes.
+     */
+    public int getRandomTickBlockCount() {
+        int version = Level.getRandomTickLookupVersion();
+        long state = this.randomTickState;
+        if ((int) (state >>> 32) != version) {
+            int count = this.countRandomTickBlocks();
+            this.randomTickState = randomTickState(version, count);
+            return count;
+        }
+        return (int) state;
+    }
+
+    private static long randomTickState(int version, int count) {
+        return (long) version << 32 | (count & 0xffffffffL);
+    }
+
+    private int countRandomTickBlocks() {
+        int paletteSize = this.palette.size();
+        boolean[] randomTick = new boolean[paletteSize];
+        boolean any = false;
+        for (int i = 0; i < paletteSize; i++) {
+            randomTick[i] = Level.isRandomTickBlock(this.palette.get(i).getLegacyId());
+            any |= randomTick[i];
+        }
+        if (!any) {
+            return 0;
+        }
+
+        int count = 0;
+        for (int i = 0; i < SECTION_SIZE; i++) {
+            int paletteIndex = this.bitArray.get(i);
+            if (paletteIndex < paletteSize && randomTick[paletteIndex]) {
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
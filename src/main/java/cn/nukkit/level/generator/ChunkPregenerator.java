@@ -0,0 +1,376 @@
+package cn.nukkit.level.generator;
+
+import cn.nukkit.Server;
+import cn.nukkit.level.Level;
+import cn.nukkit.level.format.FullChunk;
+import cn.nukkit.level.format.LevelProvider;
+import cn.nukkit.level.format.generic.BaseFullChunk;
+import cn.nukkit.level.format.leveldb.LevelDBProvider;
+import cn.nukkit.plugin.InternalPlugin;
+import cn.nukkit.scheduler.Task;
+import cn.nukkit.settings.WorldSettings;
+import cn.nukkit.utils.Config;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates and populates every chunk of a square or circle around a centre chunk, in a spiral from the centre.
+ * <p>
+ * Runs on the main thread and keeps enough population tasks queued to occupy every generation worker of the level,
+ * the chunks themselves are generated by {@link Level#populateChunk(int, int, boolean)}. The main thread time per tick
+ * is capped by {@code tick-budget-ms} and no chunks are queued while the server runs below {@code min-tps}. Finished
+ * chunks are saved in groups, a single LevelDB write batch each, and queued for unloading unless a player uses them.
+ * <p>
+ * The progress is kept in {@value #PROGRESS_FILE} in the world folder until the pre-generation finishes or is stopped,
+ * a pre-generation which was paused or interrupted by a shutdown continues from there.
+ */
+@Log4j2
+public class ChunkPregenerator extends Task {
+
+    public static final String PROGRESS_FILE = "pregeneration.yml";
+
+    private static final long REPORT_INTERVAL = TimeUnit.SECONDS.toNanos(10);
+
+    public enum Shape {
+        SQUARE,
+        CIRCLE
+    }
+
+    private final Level level;
+    @Getter
+    private final int centerX;
+    @Getter
+    private final int centerZ;
+    @Getter
+    private final int radius;
+    @Getter
+    private final Shape shape;
+    @Getter
+    private final long total;
+    // Chunks of the square around the centre, only those of the shape are generated
+    private final long positions;
+
+    private final long tickBudget;
+    private final float minTps;
+    private final int saveBatchSize;
+
+    // Chunks whose population was requested but not finished yet, with their position in the spiral
+    private final LongArrayList pending = new LongArrayList();
+    private final LongArrayList pendingPositions = new LongArrayList();
+    // Populated chunks waiting to be saved
+    private final LongArrayList populated = new LongArrayList();
+
+    private long position;
+    private int ring;
+    private int ringIndex;
+    @Getter
+    private long completed;
+    private long sessionCompleted;
+
+    private long startTime;
+    private long lastReport;
+    @Getter
+    private boolean paused;
+    @Getter
+    private boolean finished;
+    private boolean stopped;
+
+    public ChunkPregenerator(Level level, int centerX, int centerZ, int radius, Shape shape) {
+        if (radius < 0) {
+            throw new IllegalArgumentException("Negative radius " + radius);
+        }
+        this.level = level;
+        this.centerX = centerX;
+        this.centerZ = centerZ;
+        this.radius = radius;
+        this.shape = shape;
+        this.positions = (2L * radius + 1) * (2L * radius + 1);
+
+        long total = 0;
+        for (int dz = -radius; dz <= radius; dz++) {
+            total += 2L * this.halfWidth(dz) + 1;
+        }
+        this.total = total;
+
+        WorldSettings.PregenerationSettings settings = level.getServer().getSettings().world().pregeneration();
+        this.tickBudget = TimeUnit.MILLISECONDS.toNanos(Math.max(1, settings.tickBudgetMs()));
+        this.minTps = settings.minTps();
+        this.saveBatchSize = Math.max(1, settings.saveBatchSize());
+    }
+
+    /**
+     * Restore the pre-generation saved in the world folder of the level.
+     *
+     * @return the pre-generation, not started yet, or null if there is none
+     */
+    @Nullable
+    public static ChunkPregenerator load(Level level) {
+        File file = getProgressFile(level);
+        if (!file.isFile()) {
+            return null;
+        }
+
+        try {
+            Config config = new Config(file, Config.YAML);
+            ChunkPregenerator pregenerator = new ChunkPregenerator(level, config.getInt("center-x", 0), config.getInt("center-z", 0),
+                    config.getInt("radius", 0), Shape.valueOf(config.getString("shape", Shape.SQUARE.name())));
+            pregenerator.seek(config.getLong("position", 0));
+            pregenerator.paused = config.getBoolean("paused", false);
+            return pregenerator;
+        } catch (Exception e) {
+            log.error("Failed to load the pre-generation progress of {}", level.getName(), e);
+            return null;
+        }
+    }
+
+    private static File getProgressFile(Level level) {
+        return new File(level.getProvider().getPath(), PROGRESS_FILE);
+    }
+
+    public void start() {
+        this.startTime = System.nanoTime();
+        this.lastReport = this.startTime;
+        this.save();
+        Server.getInstance().getScheduler().scheduleRepeatingTask(InternalPlugin.INSTANCE, this, 1);
+    }
+
+    public Level getLevel() {
+        return this.level;
+    }
+
+    /**
+     * Stop queueing chunks, the queued ones are still finished.
+     */
+    public void pause() {
+        if (!this.paused) {
+            this.paused = true;
+            this.save();
+        }
+    }
+
+    public void resume() {
+        if (this.paused) {
+            this.paused = false;
+            this.save();
+        }
+    }
+
+    /**
+     * Cancel the pre-generation and forget its progress.
+     */
+    public void stop() {
+        this.stopped = true;
+        this.cancel();
+        if (!getProgressFile(this.level).delete()) {
+            log.debug("No pre-generation progress to delete for {}", this.level.getName());
+        }
+    }
+
+    /**
+     * @return finished share of the chunks, between 0 and 1
+     */
+    public double getProgress() {
+        return this.total == 0 ? 1 : (double) this.completed / this.total;
+    }
+
+    /**
+     * @return chunks finished per second since the pre-generation was started or resumed
+     */
+    public double getChunksPerSecond() {
+        long elapsed = System.nanoTime() - this.startTime;
+        return elapsed <= 0 ? 0 : this.sessionCompleted * 1e9 / elapsed;
+    }
+
+    @Override
+    public void onRun(int currentTick) {
+        if (this.finished) {
+            return;
+        }
+        long deadline = System.nanoTime() + this.tickBudget;
+
+        for (int i = this.pending.size() - 1; i >= 0; i--) {
+            long index = this.pending.getLong(i);
+            if (this.populate(Level.getHashX(index), Level.getHashZ(index))) {
+                this.pending.removeLong(i);
+                this.pendingPositions.removeLong(i);
+            }
+        }
+
+        if (!this.paused && this.level.getServer().getTicksPerSecond() >= this.minTps) {
+            int target = this.level.getGenerationThreads() * 2;
+            while (this.pending.size() < target && this.position < this.positions && System.nanoTime() < deadline) {
+                int dx = this.getOffsetX();
+                int dz = this.getOffsetZ();
+                long position = this.position;
+                this.advance();
+                if (Math.abs(dx) > this.halfWidth(dz)) {
+                    continue;
+                }
+
+                int x = this.centerX + dx;
+                int z = this.centerZ + dz;
+                if (!this.populate(x, z)) {
+                    this.pending.add(Level.chunkHash(x, z));
+                    this.pendingPositions.add(position);
+                }
+            }
+        }
+
+        boolean done = this.position >= this.positions && this.pending.isEmpty();
+        if (this.populated.size() >= this.saveBatchSize || done) {
+            this.flush();
+        }
+
+        long now = System.nanoTime();
+        if (done) {
+            this.finished = true;
+            this.stop();
+            log.info("Pre-generated {} chunks of {} in {}s ({} chunks/s)", this.total, this.level.getName(),
+                    TimeUnit.NANOSECONDS.toSeconds(now - this.startTime), String.format("%.1f", this.getChunksPerSecond()));
+        } else if (now - this.lastReport >= REPORT_INTERVAL) {
+            this.lastReport = now;
+            this.save();
+            if (!this.paused) {
+                log.info("Pre-generating {}: {}/{} chunks ({}%), {} chunks/s", this.level.getName(), this.completed, this.total,
+                        String.format("%.1f", this.getProgress() * 100), String.format("%.1f", this.getChunksPerSecond()));
+            }
+        }
+    }
+
+    @Override
+    public void onCancel() {
+        // Also called when the level closes, the provider waits for the pending writes
+        if (!this.stopped) {
+            this.flush();
+            this.save();
+        }
+        this.populated.clear();
+        this.pending.clear();
+        this.pendingPositions.clear();
+    }
+
+    private boolean populate(int x, int z) {
+        if (!this.level.populateChunk(x, z, true)) {
+            return false;
+        }
+        this.completed++;
+        this.sessionCompleted++;
+        this.populated.add(Level.chunkHash(x, z));
+        return true;
+    }
+
+    private void flush() {
+        LevelProvider provider = this.level.getProvider();
+        if (provider == null) {
+            return;
+        }
+
+        List<FullChunk> chunks = new ArrayList<>(this.populated.size());
+        for (int i = 0; i < this.populated.size(); i++) {
+            long index = this.populated.getLong(i);
+            BaseFullChunk chunk = provider.getLoadedChunk(index);
+            if (chunk != null && chunk.hasChanged()) {
+                chunks.add(chunk);
+            }
+        }
+
+        if (provider instanceof LevelDBProvider levelDB) {
+            levelDB.saveChunksFuture(chunks);
+        } else {
+            for (FullChunk chunk : chunks) {
+                provider.saveChunk(chunk.getX(), chunk.getZ(), chunk);
+            }
+        }
+
+        for (int i = 0; i < this.populated.size(); i++) {
+            long index = this.populated.getLong(i);
+            this.level.unloadChunkRequest(Level.getHashX(index), Level.getHashZ(index));
+        }
+        this.populated.clear();
+    }
+
+    private void save() {
+        if (this.finished || this.level.getProvider() == null) {
+            return;
+        }
+
+        // Queued chunks are not finished yet, they are requested again after a restart
+        long position = this.position;
+        for (int i = 0; i < this.pendingPositions.size(); i++) {
+            position = Math.min(position, this.pendingPositions.getLong(i));
+        }
+
+        Config config = new Config(getProgressFile(this.level), Config.YAML);
+        config.set("shape", this.shape.name());
+        config.set("center-x", this.centerX);
+        config.set("center-z", this.centerZ);
+        config.set("radius", this.radius);
+        config.set("position", position);
+        config.set("paused", this.paused);
+        config.save();
+    }
+
+    private void seek(long position) {
+        this.position = 0;
+        this.ring = 0;
+        this.ringIndex = 0;
+        this.completed = 0;
+        while (this.position < Math.min(position, this.positions)) {
+            if (Math.abs(this.getOffsetX()) <= this.halfWidth(this.getOffsetZ())) {
+                this.completed++;
+            }
+            this.advance();
+        }
+    }
+
+    private int halfWidth(int dz) {
+        if (this.shape == Shape.SQUARE) {
+            return this.radius;
+        }
+        return (int) Math.sqrt((double) this.radius * this.radius - (double) dz * dz);
+    }
+
+    // Ring r of the spiral holds 8r chunks, its four sides are walked clockwise starting at the north-west corner
+    private int getOffsetX() {
+        if (this.ring == 0) {
+            return 0;
+        }
+        int side = this.ringIndex / (2 * this.ring);
+        int offset = this.ringIndex % (2 * this.ring);
+        return switch (side) {
+            case 0 -> -this.ring + offset;
+            case 1 -> this.ring;
+            case 2 -> this.ring - offset;
+            default -> -this.ring;
+        };
+    }
+
+    private int getOffsetZ() {
+        if (this.ring == 0) {
+            return 0;
+        }
+        int side = this.ringIndex / (2 * this.ring);
+        int offset = this.ringIndex % (2 * this.ring);
+        return switch (side) {
+            case 0 -> -this.ring;
+            case 1 -> -this.ring + offset;
+            case 2 -> this.ring;
+            default -> this.ring - offset;
+        };
+    }
+
+    private void advance() {
+        this.position++;
+        if (++this.ringIndex >= 8 * this.ring) {
+            this.ring++;
+            this.ringIndex = 0;
+        }
+    }
+}
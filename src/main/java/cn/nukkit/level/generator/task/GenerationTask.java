@@ -39,28 +39,27 @@ public class GenerationTask extends AsyncTask {
             return;
         }
 
+        // The manager belongs to this worker, only the chunk can be shared with a population task of a neighbour
         manager.cleanChunks(level.getSeed());
-        synchronized (manager) {
-            try {
-                BaseFullChunk chunk = this.chunk;
+        try {
+            BaseFullChunk chunk = this.chunk;
 
-                if (chunk == null) {
-                    return;
-                }
+            if (chunk == null) {
+                return;
+            }
 
-                synchronized (chunk) {
-                    if (!chunk.isGenerated()) {
-                        manager.setChunk(chunk.getX(), chunk.getZ(), chunk);
-                        generator.generateChunk(chunk.getX(), chunk.getZ());
-                        chunk = manager.getChunk(chunk.getX(), chunk.getZ());
-                        chunk.setGenerated();
-                    }
+            synchronized (chunk) {
+                if (!chunk.isGenerated()) {
+                    manager.setChunk(chunk.getX(), chunk.getZ(), chunk);
+                    generator.generateChunk(chunk.getX(), chunk.getZ());
+                    chunk = manager.getChunk(chunk.getX(), chunk.getZ());
+                    chunk.setGenerated();
                 }
-                this.chunk = chunk;
-                state = true;
-            } finally {
-                manager.cleanChunks(level.getSeed());
             }
+            this.chunk = chunk;
+            state = true;
+        } finally {
+            manager.cleanChunks(level.getSeed());
         }
     }
 
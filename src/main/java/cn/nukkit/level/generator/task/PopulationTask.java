@@ -72,68 +72,67 @@ public class PopulationTask extends AsyncTask {
             return;
         }
 
-        synchronized (manager) {
-            try {
-                manager.cleanChunks(this.seed);
-                BaseFullChunk centerChunk = this.centerChunk;
+        // The manager belongs to this worker and the 3x3 area is leased by the level, tasks of other areas run concurrently
+        try {
+            manager.cleanChunks(this.seed);
+            BaseFullChunk centerChunk = this.centerChunk;
 
-                if (centerChunk == null) {
-                    return;
-                }
+            if (centerChunk == null) {
+                return;
+            }
 
-                int index = 0;
-                for (int x = -1; x < 2; x++) {
-                    for (int z = -1; z < 2; z++, index++) {
-                        BaseFullChunk ck = this.chunks[index];
-                        if (ck == centerChunk) continue;
-                        if (ck == null) {
-                            this.chunks[index] = level.getProvider().getEmptyChunk(centerChunk.getX() + x, centerChunk.getZ() + z);
-                        } else {
-                            this.chunks[index] = ck;
-                        }
+            int index = 0;
+            for (int x = -1; x < 2; x++) {
+                for (int z = -1; z < 2; z++, index++) {
+                    BaseFullChunk ck = this.chunks[index];
+                    if (ck == centerChunk) continue;
+                    if (ck == null) {
+                        this.chunks[index] = level.getProvider().getEmptyChunk(centerChunk.getX() + x, centerChunk.getZ() + z);
+                    } else {
+                        this.chunks[index] = ck;
                     }
                 }
+            }
 
-                for (BaseFullChunk chunk : this.chunks) {
-                    manager.setChunk(chunk.getX(), chunk.getZ(), chunk);
-                    if (!chunk.isGenerated()) {
-                        generator.generateChunk(chunk.getX(), chunk.getZ());
-                        BaseFullChunk newChunk = manager.getChunk(chunk.getX(), chunk.getZ());
-                        newChunk.setGenerated();
-                        if (newChunk != chunk) manager.setChunk(chunk.getX(), chunk.getZ(), newChunk);
-                    }
+            for (BaseFullChunk chunk : this.chunks) {
+                manager.setChunk(chunk.getX(), chunk.getZ(), chunk);
+                if (!chunk.isGenerated()) {
+                    generator.generateChunk(chunk.getX(), chunk.getZ());
+                    BaseFullChunk newChunk = manager.getChunk(chunk.getX(), chunk.getZ());
+                    newChunk.setGenerated();
+                    if (newChunk != chunk) manager.setChunk(chunk.getX(), chunk.getZ(), newChunk);
                 }
+            }
 
-                isPopulated = centerChunk.isPopulated();
-                if (!isPopulated) {
-                    generator.populateChunk(centerChunk.getX(), centerChunk.getZ());
-                    centerChunk = manager.getChunk(centerChunk.getX(), centerChunk.getZ());
-                    centerChunk.setPopulated();
-                    centerChunk.recalculateHeightMap();
-                    centerChunk.populateSkyLight();
-                    centerChunk.populateBlockLight();
-                    centerChunk.setLightPopulated();
-                    this.centerChunk = centerChunk;
-                }
+            isPopulated = centerChunk.isPopulated();
+            if (!isPopulated) {
+                generator.populateChunk(centerChunk.getX(), centerChunk.getZ());
+                centerChunk = manager.getChunk(centerChunk.getX(), centerChunk.getZ());
+                centerChunk.setPopulated();
+                centerChunk.recalculateHeightMap();
+                centerChunk.populateSkyLight();
+                centerChunk.populateBlockLight();
+                centerChunk.setLightPopulated();
+                this.centerChunk = centerChunk;
+            }
+
+            manager.setChunk(centerChunk.getX(), centerChunk.getZ());
 
-                manager.setChunk(centerChunk.getX(), centerChunk.getZ());
-
-                index = 0;
-                for (int x = -1; x < 2; x++) {
-                    for (int z = -1; z < 2; z++, index++) {
-                        chunks[index] = null;
-                        BaseFullChunk newChunk = manager.getChunk(centerChunk.getX() + x, centerChunk.getZ() + z);
-                        if (newChunk != null) {
-                            if (newChunk.hasChanged()) {
-                                chunks[index] = newChunk;
-                            }
+            index = 0;
+            for (int x = -1; x < 2; x++) {
+                for (int z = -1; z < 2; z++, index++) {
+                    chunks[index] = null;
+                    BaseFullChunk newChunk = manager.getChunk(centerChunk.getX() + x, centerChunk.getZ() + z);
+                    if (newChunk != null) {
+                        if (newChunk.hasChanged()) {
+                            chunks[index] = newChunk;
                         }
                     }
                 }
-                this.state = true;
-            } finally {
-                manager.cleanChunks(this.seed);
             }
+            this.state = true;
+        } finally {
+            manager.cleanChunks(this.seed);
         }
     }
 
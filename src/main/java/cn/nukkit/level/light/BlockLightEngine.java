@@ -0,0 +1,252 @@
+package cn.nukkit.level.light;
+
+import cn.nukkit.block.Block;
+import cn.nukkit.level.Level;
+import cn.nukkit.level.format.ChunkSection;
+import cn.nukkit.level.format.generic.BaseChunk;
+import cn.nukkit.level.format.generic.BaseFullChunk;
+import cn.nukkit.level.format.generic.EmptyChunkSection;
+import cn.nukkit.registry.Registries;
+import cn.nukkit.utils.Hash;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Block light propagation for a single level.
+ * <p>
+ * Runs the same removal/propagation flood fill the level always used, but keeps the queues in primitive ring buffers,
+ * reuses its visited sets between updates and reads light and block ids straight from the chunk section under the
+ * cursor instead of going through the synchronized per-block accessors of {@link Level}.
+ * An instance is not thread safe and must only be used from the thread ticking its level.
+ */
+public class BlockLightEngine {
+
+    private static final int VISITED_TRIM_SIZE = 4096;
+
+    private final Level level;
+
+    private final LightQueue removalQueue = new LightQueue();
+    private final LightQueue propagationQueue = new LightQueue();
+    private final LongOpenHashSet removalVisited = new LongOpenHashSet();
+    private final LongOpenHashSet propagationVisited = new LongOpenHashSet();
+
+    private final int minY;
+    private final int maxY;
+
+    // Section cursor, see select()
+    private BaseChunk chunk;
+    private int chunkX;
+    private int chunkZ;
+    private ChunkSection section;
+    private int sectionY;
+
+    public BlockLightEngine(Level level) {
+        this.level = level;
+        this.minY = level.getMinBlockY();
+        this.maxY = level.getMaxBlockY();
+    }
+
+    /**
+     * Recalculate block light around every queued position and drain the queue.
+     *
+     * @param queue chunk hash to set of {@link Level#localBlockHash(double, double, double, Level)} of changed blocks
+     */
+    public void update(Map<Long, Set<Integer>> queue) {
+        int size = queue.size();
+        if (size == 0) {
+            return;
+        }
+
+        try {
+            Iterator<Map.Entry<Long, Set<Integer>>> iter = queue.entrySet().iterator();
+            while (iter.hasNext() && size-- > 0) {
+                Map.Entry<Long, Set<Integer>> entry = iter.next();
+                iter.remove();
+                long index = entry.getKey();
+                this.enqueueSources(index, entry.getValue());
+            }
+
+            this.propagateRemoval();
+            this.propagateLight();
+        } finally {
+            this.reset();
+        }
+    }
+
+    private void enqueueSources(long index, Set<Integer> blocks) {
+        int cx = Level.getHashX(index);
+        int cz = Level.getHashZ(index);
+        BaseFullChunk chunk = this.level.getChunk(cx, cz, false);
+        if (chunk == null) {
+            return;
+        }
+
+        int dimensionMinY = this.level.getDimensionData().getMinHeight();
+        int dimensionMaxY = this.level.getDimensionData().getMaxHeight();
+        for (int blockHash : blocks) {
+            // Inverse of Level.localBlockHash
+            int hi = (byte) (blockHash >>> 16);
+            int lcx = hi & 0xF;
+            int lcz = (hi >> 4) & 0xF;
+            int y = Math.max(Math.min((short) blockHash + dimensionMinY, dimensionMaxY), dimensionMinY);
+            if (y < this.minY || y > this.maxY) {
+                continue;
+            }
+
+            int oldLevel = chunk.getBlockLight(lcx, y, lcz);
+            int newLevel = Block.getBlockLight(chunk.getBlockId(lcx, y, lcz));
+            if (oldLevel == newLevel) {
+                continue;
+            }
+            chunk.setBlockLight(lcx, y, lcz, newLevel & 0x0f);
+
+            long hash = Hash.hashBlock((cx << 4) | lcx, y, (cz << 4) | lcz);
+            if (newLevel < oldLevel) {
+                this.removalVisited.add(hash);
+                this.removalQueue.add(hash, oldLevel);
+            } else {
+                this.propagationVisited.add(hash);
+                this.propagationQueue.add(hash, newLevel);
+            }
+        }
+        // Sources may have replaced an empty section
+        this.chunk = null;
+    }
+
+    private void propagateRemoval() {
+        LightQueue queue = this.removalQueue;
+        while (!queue.isEmpty()) {
+            long node = queue.poll();
+            int lightLevel = queue.level();
+            int x = Hash.hashBlockX(node);
+            int y = Hash.hashBlockY(node);
+            int z = Hash.hashBlockZ(node);
+
+            this.removeLight(x - 1, y, z, lightLevel);
+            this.removeLight(x + 1, y, z, lightLevel);
+            this.removeLight(x, y - 1, z, lightLevel);
+            this.removeLight(x, y + 1, z, lightLevel);
+            this.removeLight(x, y, z - 1, lightLevel);
+            this.removeLight(x, y, z + 1, lightLevel);
+        }
+    }
+
+    private void propagateLight() {
+        LightQueue queue = this.propagationQueue;
+        while (!queue.isEmpty()) {
+            long node = queue.poll();
+            int x = Hash.hashBlockX(node);
+            int y = Hash.hashBlockY(node);
+            int z = Hash.hashBlockZ(node);
+
+            if (!this.select(x, y, z)) {
+                continue;
+            }
+
+            int id = this.section.getBlockId(x & 0x0f, y & 0x0f, z & 0x0f);
+            int lightFilter = id >= Block.MAX_BLOCK_ID ? 15 : Registries.BLOCK.getLightFilter(id);
+            int lightLevel = this.section.getBlockLight(x & 0x0f, y & 0x0f, z & 0x0f) - lightFilter;
+
+            if (lightLevel >= 1) {
+                this.spreadLight(x - 1, y, z, lightLevel);
+                this.spreadLight(x + 1, y, z, lightLevel);
+                this.spreadLight(x, y - 1, z, lightLevel);
+                this.spreadLight(x, y + 1, z, lightLevel);
+                this.spreadLight(x, y, z - 1, lightLevel);
+                this.spreadLight(x, y, z + 1, lightLevel);
+            }
+        }
+    }
+
+    private void removeLight(int x, int y, int z, int currentLight) {
+        if (!this.select(x, y, z)) {
+            return;
+        }
+
+        int current = this.section.getBlockLight(x & 0x0f, y & 0x0f, z & 0x0f);
+        if (current != 0 && current < currentLight) {
+            this.write(x, y, z, 0);
+            if (current > 1) {
+                long index = Hash.hashBlock(x, y, z);
+                if (this.removalVisited.add(index)) {
+                    this.removalQueue.add(index, current);
+                }
+            }
+        } else if (current >= currentLight) {
+            long index = Hash.hashBlock(x, y, z);
+            if (this.propagationVisited.add(index)) {
+                this.propagationQueue.add(index, current);
+            }
+        }
+    }
+
+    private void spreadLight(int x, int y, int z, int currentLight) {
+        if (!this.select(x, y, z)) {
+            return;
+        }
+
+        int current = this.section.getBlockLight(x & 0x0f, y & 0x0f, z & 0x0f);
+        if (current < currentLight - 1) {
+            this.write(x, y, z, currentLight);
+
+            long index = Hash.hashBlock(x, y, z);
+            if (this.propagationVisited.add(index) && currentLight > 1) {
+                this.propagationQueue.add(index, currentLight);
+            }
+        }
+    }
+
+    /**
+     * Move the cursor to the section containing the given block, loading its chunk if the light spreads into a
+     * chunk that is not loaded yet, just like the block id lookups of {@link Level} did.
+     *
+     * @return false if the block is outside the world or its chunk could not be loaded
+     */
+    private boolean select(int x, int y, int z) {
+        if (y < this.minY || y > this.maxY) {
+            return false;
+        }
+
+        int cx = x >> 4;
+        int cz = z >> 4;
+        if (this.chunk == null || this.chunkX != cx || this.chunkZ != cz) {
+            if (!(this.level.getChunk(cx, cz, true) instanceof BaseChunk chunk)) {
+                return false;
+            }
+            this.chunk = chunk;
+            this.chunkX = cx;
+            this.chunkZ = cz;
+            this.section = chunk.getSection(y >> 4);
+            this.sectionY = y >> 4;
+        } else if (this.sectionY != y >> 4) {
+            this.section = this.chunk.getSection(y >> 4);
+            this.sectionY = y >> 4;
+        }
+        return true;
+    }
+
+    /**
+     * Write light at the block selected by the cursor.
+     */
+    private void write(int x, int y, int z, int light) {
+        // The chunk takes care of replacing empty sections and marking itself as changed
+        this.chunk.setBlockLight(x & 0x0f, y, z & 0x0f, light & 0x0f);
+        if (this.section instanceof EmptyChunkSection) {
+            this.section = this.chunk.getSection(this.sectionY);
+        }
+    }
+
+    private void reset() {
+        this.removalQueue.clear();
+        this.propagationQueue.clear();
+        this.removalVisited.clear();
+        this.removalVisited.trim(VISITED_TRIM_SIZE);
+        this.propagationVisited.clear();
+        this.propagationVisited.trim(VISITED_TRIM_SIZE);
+        this.chunk = null;
+        this.section = null;
+    }
+}
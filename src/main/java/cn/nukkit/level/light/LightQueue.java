@@ -0,0 +1,89 @@
+package cn.nukkit.level.light;
+
+/**
+ * Growable FIFO ring buffer of (block hash, light level) pairs used by the light engines.
+ * Positions are stored as {@link cn.nukkit.utils.Hash#hashBlock(int, int, int)} values next to their level,
+ * so queueing a node never allocates once the buffer has grown to the working size.
+ */
+final class LightQueue {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private long[] positions;
+    private byte[] levels;
+    private int mask;
+    private int head;
+    private int tail;
+
+    private int lastLevel;
+
+    LightQueue() {
+        this(INITIAL_CAPACITY);
+    }
+
+    LightQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.positions = new long[size];
+        this.levels = new byte[size];
+        this.mask = size - 1;
+    }
+
+    void add(long position, int level) {
+        this.positions[this.tail] = position;
+        this.levels[this.tail] = (byte) level;
+        this.tail = (this.tail + 1) & this.mask;
+        if (this.tail == this.head) {
+            this.grow();
+        }
+    }
+
+    /**
+     * Remove the oldest entry and return its position. The level of that entry is available from {@link #level()}.
+     */
+    long poll() {
+        long position = this.positions[this.head];
+        this.lastLevel = this.levels[this.head];
+        this.head = (this.head + 1) & this.mask;
+        return position;
+    }
+
+    int level() {
+        return this.lastLevel;
+    }
+
+    boolean isEmpty() {
+        return this.head == this.tail;
+    }
+
+    int size() {
+        return (this.tail - this.head) & this.mask;
+    }
+
+    int capacity() {
+        return this.positions.length;
+    }
+
+    void clear() {
+        this.head = 0;
+        this.tail = 0;
+    }
+
+    private void grow() {
+        // Called when the buffer is completely full (tail caught up with head)
+        int length = this.positions.length;
+        long[] newPositions = new long[length << 1];
+        byte[] newLevels = new byte[length << 1];
+
+        int first = length - this.head;
+        System.arraycopy(this.positions, this.head, newPositions, 0, first);
+        System.arraycopy(this.positions, 0, newPositions, first, this.head);
+        System.arraycopy(this.levels, this.head, newLevels, 0, first);
+        System.arraycopy(this.levels, 0, newLevels, first, this.head);
+
+        this.positions = newPositions;
+        this.levels = newLevels;
+        this.mask = newPositions.length - 1;
+        this.head = 0;
+        this.tail = length;
+    }
+}
@@ -0,0 +1,449 @@
+package cn.nukkit.level.light;
+
+import cn.nukkit.block.BlockID;
+import cn.nukkit.level.Level;
+import cn.nukkit.level.format.Chunk;
+import cn.nukkit.level.format.ChunkSection;
+import cn.nukkit.level.format.generic.BaseFullChunk;
+import cn.nukkit.plugin.InternalPlugin;
+import cn.nukkit.registry.Registries;
+import cn.nukkit.scheduler.AsyncTask;
+import cn.nukkit.utils.Hash;
+import it.unimi.dsi.fastutil.longs.Long2ByteMap;
+import it.unimi.dsi.fastutil.longs.Long2ByteOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Incremental sky light for a single level.
+ * <p>
+ * Block changes are reported from the tick thread through {@link #enqueue(BaseFullChunk, int, int, int)}, which keeps
+ * the chunk height map up to date and records the positions whose sky exposure changed. Once per tick
+ * {@link #tick()} hands the collected positions to the async pool, where a removal/propagation flood fill runs
+ * across chunk borders. The worker never reads the live chunks: the height maps of the chunks around the changes are
+ * copied when the batch starts and their sections are copied under the section read lock the first time the batch
+ * reads them. Computed values are kept in a private overlay and only written to the chunks by the next {@link #tick()}
+ * call, so sky light never changes in the middle of a tick. Changes made while a batch is running are picked up by the
+ * following batch.
+ * <p>
+ * The height map only looks at layer 0, like {@link BaseFullChunk#recalculateHeightMapColumn(int, int)}. Layer 1 only
+ * holds blocks together with a block on layer 0, like the water of waterlogged blocks, so it never raises the top of a
+ * column. It does filter light though, which the flood fill takes into account.
+ */
+@Log4j2
+public class SkyLightEngine {
+
+    private static final int DOWN = 1;
+
+    private static final int[] OFFSET_X = {0, 0, 0, 0, -1, 1};
+    private static final int[] OFFSET_Y = {1, -1, 0, 0, 0, 0};
+    private static final int[] OFFSET_Z = {0, 0, -1, 1, 0, 0};
+
+    private static final int OVERLAY_TRIM_SIZE = 4096;
+
+    // Light spreads up to 15 blocks from a change and lit blocks at the edge of the removed area refill up to 15 more
+    private static final int SNAPSHOT_RADIUS = 2;
+
+    private static final int OPAQUE = -1;
+    // Set in the filter of blocks which diffuse sky light
+    private static final int DIFFUSES_SKY_LIGHT = 0x100;
+
+    private final Level level;
+    private final int minY;
+    private final int maxY;
+
+    private final LongOpenHashSet pending = new LongOpenHashSet();
+
+    private final LongArrayList seeds = new LongArrayList();
+    private final LightQueue removalQueue = new LightQueue();
+    private final LightQueue propagationQueue = new LightQueue();
+    private final Long2ByteOpenHashMap overlay = new Long2ByteOpenHashMap();
+    private final Long2ObjectOpenHashMap<ChunkSnapshot> snapshots = new Long2ObjectOpenHashMap<>();
+
+    private volatile boolean running;
+
+    // Chunk cursor used by the worker
+    private ChunkSnapshot chunk;
+    private int chunkX;
+    private int chunkZ;
+
+    public SkyLightEngine(Level level) {
+        this.level = level;
+        this.minY = level.getMinBlockY();
+        this.maxY = level.getMaxBlockY();
+        this.overlay.defaultReturnValue((byte) -1);
+    }
+
+    /**
+     * Update the height map column of a changed block and queue every position whose sky light may have changed.
+     * Must be called after the block has been set in the chunk.
+     */
+    public void enqueue(BaseFullChunk chunk, int x, int y, int z) {
+        int lx = x & 0x0f;
+        int lz = z & 0x0f;
+        int height = chunk.getHeightMap(lx, lz);
+        int newHeight = height;
+
+        if (chunk.getBlockId(lx, y, lz) != BlockID.AIR) {
+            if (y + 1 > height) {
+                newHeight = y + 1;
+            }
+        } else if (y + 1 == height) {
+            newHeight = this.minY;
+            for (int scanY = y - 1; scanY >= this.minY; --scanY) {
+                if (chunk.getBlockId(lx, scanY, lz) != BlockID.AIR) {
+                    newHeight = scanY + 1;
+                    break;
+                }
+            }
+        }
+
+        synchronized (this.pending) {
+            this.pending.add(Hash.hashBlock(x, y, z));
+            if (newHeight != height) {
+                chunk.setHeightMap(lx, lz, newHeight);
+                // Every block between the old and the new top either lost or gained direct sky access
+                int from = Math.max(Math.min(height, newHeight) - 1, this.minY);
+                int to = Math.min(Math.max(height, newHeight) - 1, this.maxY);
+                for (int columnY = from; columnY <= to; columnY++) {
+                    this.pending.add(Hash.hashBlock(x, columnY, z));
+                }
+            }
+        }
+    }
+
+    /**
+     * Merge the results of the last finished batch and start a new one if there is anything queued.
+     * Called from the level tick.
+     */
+    public void tick() {
+        if (this.running) {
+            return;
+        }
+
+        if (!this.overlay.isEmpty()) {
+            this.merge();
+        }
+
+        synchronized (this.pending) {
+            if (this.pending.isEmpty()) {
+                return;
+            }
+            this.seeds.addAll(this.pending);
+            this.pending.clear();
+            this.pending.trim(OVERLAY_TRIM_SIZE);
+        }
+        this.snapshotChunks();
+
+        this.running = true;
+        this.level.getServer().getScheduler().scheduleAsyncTask(InternalPlugin.INSTANCE, new AsyncTask() {
+            @Override
+            public void onRun() {
+                try {
+                    SkyLightEngine.this.compute();
+                } catch (Exception e) {
+                    log.error("Failed to update sky light in level {}", SkyLightEngine.this.level.getFolderName(), e);
+                    SkyLightEngine.this.overlay.clear();
+                } finally {
+                    SkyLightEngine.this.seeds.clear();
+                    SkyLightEngine.this.removalQueue.clear();
+                    SkyLightEngine.this.propagationQueue.clear();
+                    SkyLightEngine.this.snapshots.clear();
+                    SkyLightEngine.this.chunk = null;
+                    SkyLightEngine.this.running = false;
+                }
+            }
+        });
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    private void merge() {
+        BaseFullChunk chunk = null;
+        for (Long2ByteMap.Entry entry : this.overlay.long2ByteEntrySet()) {
+            long node = entry.getLongKey();
+            int x = Hash.hashBlockX(node);
+            int y = Hash.hashBlockY(node);
+            int z = Hash.hashBlockZ(node);
+            if (chunk == null || chunk.getX() != x >> 4 || chunk.getZ() != z >> 4) {
+                chunk = this.level.getChunkIfLoaded(x >> 4, z >> 4);
+            }
+            if (chunk != null) {
+                chunk.setBlockSkyLight(x & 0x0f, y, z & 0x0f, entry.getByteValue());
+            }
+        }
+        this.overlay.clear();
+        this.overlay.trim(OVERLAY_TRIM_SIZE);
+    }
+
+    /**
+     * Copy the height maps of the loaded chunks the batch may reach. Called from the level tick before the batch starts.
+     */
+    private void snapshotChunks() {
+        LongOpenHashSet seedChunks = new LongOpenHashSet();
+        for (int i = 0, size = this.seeds.size(); i < size; i++) {
+            long node = this.seeds.getLong(i);
+            seedChunks.add(Level.chunkHash(Hash.hashBlockX(node) >> 4, Hash.hashBlockZ(node) >> 4));
+        }
+
+        for (long seedChunk : seedChunks) {
+            int seedX = Level.getHashX(seedChunk);
+            int seedZ = Level.getHashZ(seedChunk);
+            for (int cx = seedX - SNAPSHOT_RADIUS; cx <= seedX + SNAPSHOT_RADIUS; cx++) {
+                for (int cz = seedZ - SNAPSHOT_RADIUS; cz <= seedZ + SNAPSHOT_RADIUS; cz++) {
+                    long index = Level.chunkHash(cx, cz);
+                    if (this.snapshots.containsKey(index)) {
+                        continue;
+                    }
+                    BaseFullChunk chunk = this.level.getChunkIfLoaded(cx, cz);
+                    if (chunk instanceof Chunk sectioned) {
+                        this.snapshots.put(index, new ChunkSnapshot(sectioned));
+                    }
+                }
+            }
+        }
+    }
+
+    private void compute() {
+        for (int i = 0, size = this.seeds.size(); i < size; i++) {
+            long node = this.seeds.getLong(i);
+            int x = Hash.hashBlockX(node);
+            int y = Hash.hashBlockY(node);
+            int z = Hash.hashBlockZ(node);
+            if (!this.select(x, z)) {
+                continue;
+            }
+
+            int current = this.getLight(x, y, z);
+            int expected = this.isDirect(x, y, z) ? 15 : 0;
+            if (expected < current) {
+                this.setLight(node, expected);
+                this.removalQueue.add(node, current);
+            } else if (expected > current) {
+                this.setLight(node, expected);
+                this.propagationQueue.add(node, expected);
+            } else if (current > 0) {
+                this.propagationQueue.add(node, current);
+            }
+
+            // Let lit neighbours flow into blocks that became transparent
+            for (int face = 0; face < 6; face++) {
+                int nx = x + OFFSET_X[face];
+                int ny = y + OFFSET_Y[face];
+                int nz = z + OFFSET_Z[face];
+                if (ny < this.minY || ny > this.maxY || !this.select(nx, nz)) {
+                    continue;
+                }
+                int light = this.getLight(nx, ny, nz);
+                if (light > 0) {
+                    this.propagationQueue.add(Hash.hashBlock(nx, ny, nz), light);
+                }
+            }
+        }
+
+        this.propagateRemoval();
+        this.propagateLight();
+    }
+
+    private void propagateRemoval() {
+        LightQueue queue = this.removalQueue;
+        while (!queue.isEmpty()) {
+            long node = queue.poll();
+            int lightLevel = queue.level();
+            int x = Hash.hashBlockX(node);
+            int y = Hash.hashBlockY(node);
+            int z = Hash.hashBlockZ(node);
+
+            for (int face = 0; face < 6; face++) {
+                int nx = x + OFFSET_X[face];
+                int ny = y + OFFSET_Y[face];
+                int nz = z + OFFSET_Z[face];
+                if (ny < this.minY || ny > this.maxY || !this.select(nx, nz)) {
+                    continue;
+                }
+
+                int current = this.getLight(nx, ny, nz);
+                if (current == 0) {
+                    continue;
+                }
+
+                long index = Hash.hashBlock(nx, ny, nz);
+                if (this.isDirect(nx, ny, nz)) {
+                    this.propagationQueue.add(index, current);
+                } else if (current < lightLevel || (face == DOWN && lightLevel == 15)) {
+                    this.setLight(index, 0);
+                    this.removalQueue.add(index, current);
+                } else {
+                    this.propagationQueue.add(index, current);
+                }
+            }
+        }
+    }
+
+    private void propagateLight() {
+        LightQueue queue = this.propagationQueue;
+        while (!queue.isEmpty()) {
+            long node = queue.poll();
+            int x = Hash.hashBlockX(node);
+            int y = Hash.hashBlockY(node);
+            int z = Hash.hashBlockZ(node);
+            if (!this.select(x, z)) {
+                continue;
+            }
+
+            // Values may have been raised again since the node was queued
+            int lightLevel = this.getLight(x, y, z);
+            if (lightLevel <= 1 || this.chunk.getFilter(x, y, z) == OPAQUE) {
+                continue;
+            }
+
+            for (int face = 0; face < 6; face++) {
+                int nx = x + OFFSET_X[face];
+                int ny = y + OFFSET_Y[face];
+                int nz = z + OFFSET_Z[face];
+                if (ny < this.minY || ny > this.maxY || !this.select(nx, nz)) {
+                    continue;
+                }
+
+                int filter = this.chunk.getFilter(nx, ny, nz);
+                if (filter == OPAQUE) {
+                    continue;
+                }
+
+                int lightFilter = filter & 0xff;
+                int newLevel;
+                if (face == DOWN && lightLevel == 15 && lightFilter <= 1 && (filter & DIFFUSES_SKY_LIGHT) == 0) {
+                    // Unobstructed sky light travels straight down without fading
+                    newLevel = 15;
+                } else {
+                    newLevel = lightLevel - Math.max(1, lightFilter);
+                }
+
+                if (newLevel > this.getLight(nx, ny, nz)) {
+                    long index = Hash.hashBlock(nx, ny, nz);
+                    this.setLight(index, newLevel);
+                    queue.add(index, newLevel);
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the block is at or above the top-most block of its column, see {@link BaseFullChunk#populateSkyLight()}.
+     * The chunk cursor must point at the block's chunk.
+     */
+    private boolean isDirect(int x, int y, int z) {
+        return y >= this.chunk.getHeight(x, z) - 1;
+    }
+
+    /**
+     * Read sky light, preferring values computed by the running batch. The chunk cursor must point at the block's chunk.
+     */
+    private int getLight(int x, int y, int z) {
+        byte light = this.overlay.get(Hash.hashBlock(x, y, z));
+        if (light >= 0) {
+            return light;
+        }
+        return this.chunk.getSkyLight(x, y, z);
+    }
+
+    private void setLight(long index, int light) {
+        this.overlay.put(index, (byte) light);
+    }
+
+    private boolean select(int x, int z) {
+        int cx = x >> 4;
+        int cz = z >> 4;
+        if (this.chunk == null || this.chunkX != cx || this.chunkZ != cz) {
+            ChunkSnapshot chunk = this.snapshots.get(Level.chunkHash(cx, cz));
+            if (chunk == null) {
+                return false;
+            }
+            this.chunk = chunk;
+            this.chunkX = cx;
+            this.chunkZ = cz;
+        }
+        return true;
+    }
+
+    /**
+     * A chunk as seen by the running batch.
+     */
+    private static class ChunkSnapshot {
+
+        private final int[] heightMap = new int[256];
+        private final ChunkSection[] sections;
+        private final ChunkSection[] copies;
+        private final int sectionOffset;
+
+        private ChunkSnapshot(Chunk chunk) {
+            for (int z = 0; z < 16; z++) {
+                for (int x = 0; x < 16; x++) {
+                    this.heightMap[(z << 4) | x] = chunk.getHeightMap(x, z);
+                }
+            }
+            // Sections replaced after this point are picked up by the next batch
+            this.sections = chunk.getSections().clone();
+            this.copies = new ChunkSection[this.sections.length];
+            this.sectionOffset = chunk.getSectionOffset();
+        }
+
+        private int getHeight(int x, int z) {
+            return this.heightMap[((z & 0x0f) << 4) | (x & 0x0f)];
+        }
+
+        private int getSkyLight(int x, int y, int z) {
+            ChunkSection section = this.getSection(y);
+            return section == null ? 15 : section.getBlockSkyLight(x & 0x0f, y & 0x0f, z & 0x0f);
+        }
+
+        /**
+         * @return {@link #OPAQUE} if the block doesn't let light through, otherwise the light filter of both layers
+         * combined with the {@link #DIFFUSES_SKY_LIGHT} flag
+         */
+        private int getFilter(int x, int y, int z) {
+            ChunkSection section = this.getSection(y);
+            if (section == null) {
+                return 0;
+            }
+
+            int id = section.getBlockId(x & 0x0f, y & 0x0f, z & 0x0f, 0);
+            if (!Registries.BLOCK.isTransparent(id)) {
+                return OPAQUE;
+            }
+            int filter = Registries.BLOCK.getLightFilter(id) | (Registries.BLOCK.isDiffusesSkyLight(id) ? DIFFUSES_SKY_LIGHT : 0);
+
+            int extra = section.getBlockId(x & 0x0f, y & 0x0f, z & 0x0f, 1);
+            if (extra != BlockID.AIR) {
+                if (!Registries.BLOCK.isTransparent(extra)) {
+                    return OPAQUE;
+                }
+                filter = Math.max(filter & 0xff, Registries.BLOCK.getLightFilter(extra))
+                        | ((filter & DIFFUSES_SKY_LIGHT) != 0 || Registries.BLOCK.isDiffusesSkyLight(extra) ? DIFFUSES_SKY_LIGHT : 0);
+            }
+            return filter;
+        }
+
+        private ChunkSection getSection(int y) {
+            int index = (y >> 4) + this.sectionOffset;
+            if (index < 0 || index >= this.sections.length) {
+                return null;
+            }
+
+            ChunkSection copy = this.copies[index];
+            if (copy == null) {
+                ChunkSection section = this.sections[index];
+                if (section == null) {
+                    return null;
+                }
+                // Copied under the read lock of the section, so it is never read while the tick thread writes it
+                this.copies[index] = copy = section.copy();
+            }
+            return copy;
+        }
+    }
+}
@@ -5,34 +5,59 @@ import cn.nukkit.Server;
 import cn.nukkit.event.server.BatchPacketsEvent;
 import cn.nukkit.network.protocol.BatchPacket;
 import cn.nukkit.network.protocol.DataPacket;
-import cn.nukkit.network.protocol.ProtocolInfo;
-import cn.nukkit.utils.Binary;
-import cn.nukkit.utils.BinaryStream;
+import cn.nukkit.utils.VarInt;
 import cn.nukkit.utils.compression.SnappyCompression;
 import cn.nukkit.utils.compression.Zlib;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
-import it.unimi.dsi.fastutil.ints.Int2IntMap;
-import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
 import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectList;
+import lombok.extern.log4j.Log4j2;
 
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * 主要处理服务器广播数据包
  * 因为每个玩家的协议版本不同，所以在这个线程提前根据玩家协议进行编码
+ * <p>
+ * Broadcasts are split by protocol and every protocol always goes to the same shard, a single thread executor.
+ * This keeps packets of a player in order while different protocols are encoded and compressed in parallel.
+ * Each shard reuses one pooled buffer to assemble batches. Packets are encoded for every broadcast they are part of,
+ * callers often change a packet and broadcast it again, so an earlier encoding can't be reused.
  */
+@Log4j2
 public class BatchingHelper {
 
-    private final ExecutorService threadedExecutor;
+    private static final int MAX_PAYLOAD_SIZE = 3145728; // 3 * 1024 * 1024
+
+    private final Shard[] shards;
+
+    private final LongAdder batches = new LongAdder();
 
     public BatchingHelper() {
-        ThreadFactoryBuilder builder = new ThreadFactoryBuilder();
-        builder.setNameFormat("Batching Executor");
-        this.threadedExecutor = Executors.newSingleThreadExecutor(builder.build());
+        this(0);
+    }
+
+    /**
+     * @param threads number of shards, 0 to pick it from the number of available processors
+     */
+    public BatchingHelper(int threads) {
+        if (threads <= 0) {
+            threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+        }
+
+        this.shards = new Shard[threads];
+        for (int i = 0; i < threads; i++) {
+            this.shards[i] = new Shard(i);
+        }
     }
 
     public void batchPackets(Player[] players, DataPacket[] packets) {
@@ -46,18 +71,19 @@ public class BatchingHelper {
             return;
         }
 
-        this.threadedExecutor.execute(() -> this.batchAndSendPackets(players, packets));
-    }
-
-    private void batchAndSendPackets(Player[] players, DataPacket[] packets) {
         //只有一个玩家时直接发送
         //未知原因 注释掉会导致客户端容易闪退
         if (players.length == 1) {
-            for (DataPacket packet : packets) {
-                packet.protocol = players[0].protocol;
-                players[0].getNetworkSession().sendPacket(packet);
-           }
-           return;
+            Player player = players[0];
+            this.shardFor(player.protocol).submit(() -> {
+                for (DataPacket packet : packets) {
+                    // Other shards may be cloning the same packet for another broadcast, don't encode it in place
+                    DataPacket pk = packet.clone();
+                    pk.protocol = player.protocol;
+                    player.getNetworkSession().sendPacket(pk);
+                }
+            });
+            return;
         }
 
         Int2ObjectMap<ObjectList<Player>> targets = new Int2ObjectOpenHashMap<>();
@@ -65,73 +91,141 @@ public class BatchingHelper {
             targets.computeIfAbsent(player.protocol, i -> new ObjectArrayList<>()).add(player);
         }
 
-        // Encoded packets by encoding protocol
-        Int2ObjectMap<ObjectList<DataPacket>> encodedPackets = new Int2ObjectOpenHashMap<>();
+        for (Int2ObjectMap.Entry<ObjectList<Player>> entry : targets.int2ObjectEntrySet()) {
+            int protocol = entry.getIntKey();
+            ObjectList<Player> protocolTargets = entry.getValue();
+            Shard shard = this.shardFor(protocol);
+            shard.submit(() -> shard.batchAndSendPackets(protocol, protocolTargets, packets));
+        }
+    }
 
-        for (DataPacket packet : packets) {
-            Int2IntMap encodingProtocols = new Int2IntOpenHashMap();
-            for (int protocolId : targets.keySet()) {
-                // TODO: encode only by encoding protocols
-                // No need to have all versions here
-                encodingProtocols.put(protocolId, protocolId);
-            }
+    private Shard shardFor(int protocol) {
+        return this.shards[Math.floorMod(protocol, this.shards.length)];
+    }
 
-            Int2ObjectMap<DataPacket> encodedPacket = new Int2ObjectOpenHashMap<>();
-            for (int encodingProtocol : encodingProtocols.values()) {
-                if (!encodedPacket.containsKey(encodingProtocol)) {
-                    DataPacket pk = packet.clone();
-                    pk.protocol = encodingProtocol;
-                    pk.tryEncode();
-                    encodedPacket.put(encodingProtocol, pk);
-                }
-            }
+    /**
+     * @return number of batches waiting to be encoded on all shards
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (Shard shard : this.shards) {
+            depth += shard.queued.get();
+        }
+        return depth;
+    }
 
-            for (int protocolId : encodingProtocols.values()) {
-                int encodingProtocol = encodingProtocols.get(protocolId);
-                encodedPackets.computeIfAbsent(protocolId, i -> new ObjectArrayList<>()).add(encodedPacket.get(encodingProtocol));
+    /**
+     * @return moving average of the time between submitting a batch and handing it to the sessions, in milliseconds
+     */
+    public double getAverageLatencyMillis() {
+        double latency = 0;
+        for (Shard shard : this.shards) {
+            latency += shard.averageLatencyNanos;
+        }
+        return latency / this.shards.length / 1_000_000d;
+    }
+
+    public long getBatchCount() {
+        return this.batches.sum();
+    }
+
+    public int getThreadCount() {
+        return this.shards.length;
+    }
+
+    public void shutdown() {
+        for (Shard shard : this.shards) {
+            shard.executor.shutdownNow();
+        }
+    }
+
+    private class Shard {
+
+        private final ExecutorService executor;
+        private final AtomicInteger queued = new AtomicInteger();
+        private volatile double averageLatencyNanos;
+
+        // Everything below is only touched by the shard thread
+        private ByteBuf buffer;
+
+        private Shard(int index) {
+            ThreadFactoryBuilder builder = new ThreadFactoryBuilder();
+            builder.setNameFormat("Batching Executor #" + index);
+            builder.setDaemon(true);
+            this.executor = Executors.newSingleThreadExecutor(builder.build());
+        }
+
+        private void submit(Runnable task) {
+            long submitted = System.nanoTime();
+            this.queued.incrementAndGet();
+            try {
+                this.executor.execute(() -> {
+                    this.queued.decrementAndGet();
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        log.error("Failed to batch packets", e);
+                    }
+                    this.averageLatencyNanos += ((System.nanoTime() - submitted) - this.averageLatencyNanos) * 0.05;
+                    batches.increment();
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                this.queued.decrementAndGet();
             }
         }
 
-        for (int protocolId : targets.keySet()) {
-            ObjectList<DataPacket> packetList = encodedPackets.get(protocolId);
-            ObjectList<Player> finalTargets = targets.get(protocolId);
+        private void batchAndSendPackets(int protocol, ObjectList<Player> targets, DataPacket[] packets) {
+            ByteBuf batched = this.buffer;
+            if (batched == null) {
+                batched = this.buffer = ByteBufAllocator.DEFAULT.heapBuffer(8192);
+            }
+            batched.clear();
 
-            BinaryStream batched = new BinaryStream();
-            for (DataPacket packet : packetList) {
+            for (DataPacket packet : packets) {
                 if (packet instanceof BatchPacket) {
                     throw new RuntimeException("Cannot batch BatchPacket");
                 }
-                packet.tryEncode();
-                byte[] buf = packet.getBuffer();
-                batched.putUnsignedVarInt(buf.length);
-                batched.put(buf);
+                DataPacket pk = packet.clone();
+                pk.protocol = protocol;
+                pk.tryEncode();
+                int length = pk.getCount();
+                VarInt.writeUnsignedVarInt(batched, length);
+                batched.writeBytes(pk.getBufferUnsafe(), 0, length);
             }
 
             try {
-                byte[] bytes = Binary.appendBytes(batched.getBuffer());
                 BatchPacket pk = new BatchPacket();
                 if (Server.getInstance().getSettings().network().compression().useSnappyCompression()) {
-                    pk.payload = SnappyCompression.compress(bytes);
+                    pk.payload = SnappyCompression.compress(batched.array(), batched.arrayOffset() + batched.readerIndex(), batched.readableBytes());
                 } else {
-                    pk.payload = Zlib.deflateRaw(bytes, Server.getInstance().getSettings().network().compression().compressionLevel());
+                    pk.payload = Zlib.deflateRaw(batched.array(), batched.arrayOffset() + batched.readerIndex(), batched.readableBytes(),
+                            Server.getInstance().getSettings().network().compression().compressionLevel());
                 }
-                for (Player player : finalTargets) {
+
+                byte[] uncompressed = null;
+                for (Player player : targets) {
                     CompressionProvider compressionProvider = player.getNetworkSession().getCompression();
                     if (compressionProvider == CompressionProvider.NONE) {
+                        if (uncompressed == null) {
+                            uncompressed = ByteBufUtil.getBytes(batched);
+                        }
                         BatchPacket batchPacket = new BatchPacket();
-                        batchPacket.payload = bytes;
+                        batchPacket.payload = uncompressed;
                         player.dataPacket(batchPacket);
-                    }else {
+                    } else {
                         player.dataPacket(pk);
                     }
                 }
             } catch (Exception e) {
                 throw new RuntimeException(e);
+            } finally {
+                if (batched.capacity() > MAX_PAYLOAD_SIZE) {
+                    // Don't keep a huge buffer around because of a single large broadcast
+                    batched.release();
+                    this.buffer = null;
+                }
             }
         }
     }
-
-    public void shutdown() {
-        this.threadedExecutor.shutdownNow();
-    }
 }
@@ -0,0 +1,93 @@
+package cn.nukkit.network;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Blobs recently sent to clients with the blob cache enabled, by their xxHash64 id.
+ * <p>
+ * Equal sub-chunks are very common (empty, solid stone, ocean...), so chunks serialized for the cache share one copy
+ * of each blob through {@link #intern(long, byte[], int, int)}. The store also answers cache misses for blobs a player
+ * no longer has pending. Blobs are evicted in least recently used order once the memory budget is exceeded.
+ */
+public class ClientBlobStore {
+
+    // Rough per entry overhead of the map and the array header
+    private static final int ENTRY_OVERHEAD = 48;
+
+    private final long maxBytes;
+    private final Long2ObjectLinkedOpenHashMap<byte[]> blobs = new Long2ObjectLinkedOpenHashMap<>();
+    private long usedBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ClientBlobStore(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the stored copy of a blob, storing a copy of the given range if there is none yet.
+     */
+    public synchronized byte[] intern(long blobId, byte[] data, int offset, int length) {
+        byte[] blob = this.blobs.getAndMoveToLast(blobId);
+        if (blob != null) {
+            this.hits.increment();
+            return blob;
+        }
+
+        this.misses.increment();
+        blob = Arrays.copyOfRange(data, offset, offset + length);
+        if (this.maxBytes <= 0 || length + ENTRY_OVERHEAD > this.maxBytes) {
+            return blob;
+        }
+
+        this.blobs.putAndMoveToLast(blobId, blob);
+        this.usedBytes += length + ENTRY_OVERHEAD;
+        while (this.usedBytes > this.maxBytes) {
+            byte[] evicted = this.blobs.removeFirst();
+            this.usedBytes -= evicted.length + ENTRY_OVERHEAD;
+            this.evictions.increment();
+        }
+        return blob;
+    }
+
+    /**
+     * @return the blob or null if it is not stored (anymore)
+     */
+    public synchronized byte[] get(long blobId) {
+        return this.blobs.getAndMoveToLast(blobId);
+    }
+
+    public synchronized void clear() {
+        this.blobs.clear();
+        this.usedBytes = 0;
+    }
+
+    public synchronized long getUsedBytes() {
+        return this.usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+    public synchronized int getBlobCount() {
+        return this.blobs.size();
+    }
+
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    public long getEvictions() {
+        return this.evictions.sum();
+    }
+}
@@ -4,6 +4,7 @@ import cn.nukkit.network.protocol.types.PacketCompressionAlgorithm;
 import cn.nukkit.utils.BinaryStream;
 import cn.nukkit.utils.compression.SnappyCompression;
 import cn.nukkit.utils.compression.Zlib;
+import io.netty.buffer.ByteBuf;
 
 public interface CompressionProvider {
 
@@ -13,6 +14,11 @@ public interface CompressionProvider {
             return packet.getBuffer();
         }
 
+        @Override
+        public void compress(BinaryStream packet, int level, ByteBuf out) {
+            out.writeBytes(packet.getBufferUnsafe(), 0, packet.getCount());
+        }
+
         @Override
         public byte[] decompress(byte[] compressed) {
             return compressed;
@@ -47,6 +53,11 @@ public interface CompressionProvider {
             return Zlib.deflateRaw(packet.getBuffer(), level);
         }
 
+        @Override
+        public void compress(BinaryStream packet, int level, ByteBuf out) throws Exception {
+            Zlib.deflateRaw(packet.getBufferUnsafe(), 0, packet.getCount(), level, out);
+        }
+
         @Override
         public byte[] decompress(byte[] compressed) throws Exception {
             return Zlib.inflateRaw(compressed, 3145728); // 3 * 1024 * 1024
@@ -57,6 +68,11 @@ public interface CompressionProvider {
             return Zlib.inflateRaw(compressed, maxSize);
         }
 
+        @Override
+        public byte[] decompress(ByteBuf compressed, int maxSize) throws Exception {
+            return Zlib.inflateRaw(compressed.nioBuffer(), maxSize);
+        }
+
         @Override
         public byte getPrefix() {
             return (byte) 0x00;
@@ -93,6 +109,22 @@ public interface CompressionProvider {
         return this.decompress(compressed);
     }
 
+    /**
+     * Compress the packet and append the result to the buffer.
+     */
+    default void compress(BinaryStream packet, int level, ByteBuf out) throws Exception {
+        out.writeBytes(this.compress(packet, level));
+    }
+
+    /**
+     * Decompress the readable bytes of the buffer without changing its indexes.
+     */
+    default byte[] decompress(ByteBuf compressed, int maxSize) throws Exception {
+        byte[] bytes = new byte[compressed.readableBytes()];
+        compressed.getBytes(compressed.readerIndex(), bytes);
+        return this.decompress(bytes, maxSize);
+    }
+
     static CompressionProvider from(PacketCompressionAlgorithm algorithm, int raknetProtocol) {
         if (algorithm == null) {
             return NONE;
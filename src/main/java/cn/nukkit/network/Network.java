@@ -215,18 +215,38 @@ public class Network {
     }
 
     public void processBatch(byte[] payload, Collection<DataPacket> packets, CompressionProvider compression, int raknetProtocol, Player player) {
-        int maxSize = 3145728; // 3 * 1024 * 1024
-        if (player != null && player.getSkin() == null) {
-            maxSize = 6291456; // 6 * 1024 * 1024
+        byte[] data;
+        try {
+            data = compression.decompress(payload, getMaxBatchSize(player));
+        } catch (Exception e) {
+            log.debug("Exception while inflating batch packet", e);
+            return;
         }
+        this.processBatch(data, packets, raknetProtocol, player);
+    }
+
+    /**
+     * Decode a batch straight from the received buffer, its indexes are left unchanged.
+     */
+    public void processBatch(ByteBuf payload, Collection<DataPacket> packets, CompressionProvider compression, int raknetProtocol, Player player) {
         byte[] data;
         try {
-            data = compression.decompress(payload, maxSize);
+            data = compression.decompress(payload, getMaxBatchSize(player));
         } catch (Exception e) {
             log.debug("Exception while inflating batch packet", e);
             return;
         }
+        this.processBatch(data, packets, raknetProtocol, player);
+    }
+
+    private static int getMaxBatchSize(Player player) {
+        if (player != null && player.getSkin() == null) {
+            return 6291456; // 6 * 1024 * 1024
+        }
+        return 3145728; // 3 * 1024 * 1024
+    }
 
+    private void processBatch(byte[] data, Collection<DataPacket> packets, int raknetProtocol, Player player) {
         BinaryStream stream = new BinaryStream(data);
         try {
             int count = 0;
@@ -264,9 +284,8 @@ public class Network {
 
                     try {
                         if (raknetProtocol > 8) {
-                            DataPacketDecodeEvent event = new DataPacketDecodeEvent(player, pk);
-
-                            if (!event.call()) {
+                            if (this.server.getPluginManager().hasListeners(DataPacketDecodeEvent.class)
+                                    && !new DataPacketDecodeEvent(player, pk).call()) {
                                 return;
                             }
 
@@ -274,9 +293,8 @@ public class Network {
                         } else { // version < 1.6
                             pk.setBuffer(buf, 3);
 
-                            DataPacketDecodeEvent event = new DataPacketDecodeEvent(player, pk);
-
-                            if (!event.call()) {
+                            if (this.server.getPluginManager().hasListeners(DataPacketDecodeEvent.class)
+                                    && !new DataPacketDecodeEvent(player, pk).call()) {
                                 return;
                             }
 
@@ -483,6 +501,8 @@ public class Network {
                 .registerPacket(ProtocolInfo.LECTERN_UPDATE_PACKET, LecternUpdatePacket.class, LecternUpdatePacket::new)
                 .registerPacket(ProtocolInfo.VIDEO_STREAM_CONNECT_PACKET, VideoStreamConnectPacket.class, VideoStreamConnectPacket::new)
                 .registerPacket(ProtocolInfo.CLIENT_CACHE_STATUS_PACKET, ClientCacheStatusPacket.class, ClientCacheStatusPacket::new)
+                .registerPacket(ProtocolInfo.CLIENT_CACHE_BLOB_STATUS_PACKET, ClientCacheBlobStatusPacket.class, ClientCacheBlobStatusPacket::new)
+                .registerPacket(ProtocolInfo.CLIENT_CACHE_MISS_RESPONSE_PACKET, ClientCacheMissResponsePacket.class, ClientCacheMissResponsePacket::new)
                 .registerPacket(ProtocolInfo.MAP_CREATE_LOCKED_COPY_PACKET, MapCreateLockedCopyPacket.class, MapCreateLockedCopyPacket::new)
                 .registerPacket(ProtocolInfo.ON_SCREEN_TEXTURE_ANIMATION_PACKET, OnScreenTextureAnimationPacket.class, OnScreenTextureAnimationPacket::new)
                 .registerPacket(ProtocolInfo.COMPLETED_USING_ITEM_PACKET, CompletedUsingItemPacket.class, CompletedUsingItemPacket::new)
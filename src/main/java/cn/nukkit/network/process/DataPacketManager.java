@@ -201,7 +201,9 @@ public final class DataPacketManager {
                 BlockEntityDataProcessor.INSTANCE,
                 SettingsCommandProcessor.INSTANCE,
                 InventoryTransactionProcessor.INSTANCE,
-                CommandBlockUpdateProcessor.INSTANCE
+                CommandBlockUpdateProcessor.INSTANCE,
+                ClientCacheStatusProcessor.INSTANCE,
+                ClientCacheBlobStatusProcessor.INSTANCE
         );
     }
 }
@@ -0,0 +1,31 @@
+package cn.nukkit.network.process.processor.common;
+
+import cn.nukkit.PlayerHandle;
+import cn.nukkit.network.process.DataPacketProcessor;
+import cn.nukkit.network.protocol.ClientCacheBlobStatusPacket;
+import cn.nukkit.network.protocol.DataPacket;
+import cn.nukkit.network.protocol.ProtocolInfo;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class ClientCacheBlobStatusProcessor extends DataPacketProcessor<ClientCacheBlobStatusPacket> {
+
+    public static final ClientCacheBlobStatusProcessor INSTANCE = new ClientCacheBlobStatusProcessor();
+
+    @Override
+    public void handle(@NotNull PlayerHandle playerHandle, @NotNull ClientCacheBlobStatusPacket pk) {
+        playerHandle.player.handleBlobStatus(pk.missingBlobIds, pk.foundBlobIds);
+    }
+
+    @Override
+    public int getPacketId() {
+        return ProtocolInfo.toNewProtocolID(ProtocolInfo.CLIENT_CACHE_BLOB_STATUS_PACKET);
+    }
+
+    @Override
+    public Class<? extends DataPacket> getPacketClass() {
+        return ClientCacheBlobStatusPacket.class;
+    }
+}
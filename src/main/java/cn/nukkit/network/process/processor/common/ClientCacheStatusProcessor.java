@@ -0,0 +1,31 @@
+package cn.nukkit.network.process.processor.common;
+
+import cn.nukkit.PlayerHandle;
+import cn.nukkit.network.process.DataPacketProcessor;
+import cn.nukkit.network.protocol.ClientCacheStatusPacket;
+import cn.nukkit.network.protocol.DataPacket;
+import cn.nukkit.network.protocol.ProtocolInfo;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.jetbrains.annotations.NotNull;
+
+@NoArgsConstructor(access = AccessLevel.PROTECTED)
+public class ClientCacheStatusProcessor extends DataPacketProcessor<ClientCacheStatusPacket> {
+
+    public static final ClientCacheStatusProcessor INSTANCE = new ClientCacheStatusProcessor();
+
+    @Override
+    public void handle(@NotNull PlayerHandle playerHandle, @NotNull ClientCacheStatusPacket pk) {
+        playerHandle.player.setBlobCacheSupported(pk.supported);
+    }
+
+    @Override
+    public int getPacketId() {
+        return ProtocolInfo.toNewProtocolID(ProtocolInfo.CLIENT_CACHE_STATUS_PACKET);
+    }
+
+    @Override
+    public Class<? extends DataPacket> getPacketClass() {
+        return ClientCacheStatusPacket.class;
+    }
+}
@@ -10,13 +10,18 @@ import cn.nukkit.network.protocol.ResourcePackChunkRequestPacket;
 import cn.nukkit.resourcepacks.ResourcePack;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
+import lombok.extern.log4j.Log4j2;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.UncheckedIOException;
+import java.util.BitSet;
+
 import static cn.nukkit.Player.RESOURCE_PACK_CHUNK_SIZE;
 
 /**
  * @author LT_Name
  */
+@Log4j2
 @NoArgsConstructor(access = AccessLevel.PROTECTED)
 public class ResourcePackChunkRequestProcessor extends DataPacketProcessor<ResourcePackChunkRequestPacket> {
 
@@ -31,12 +36,48 @@ public class ResourcePackChunkRequestProcessor extends DataPacketProcessor<Resou
             return;
         }
 
+        int chunkCount = (resourcePack.getPackSize() + RESOURCE_PACK_CHUNK_SIZE - 1) / RESOURCE_PACK_CHUNK_SIZE;
+        if (pk.chunkIndex < 0 || pk.chunkIndex >= chunkCount) {
+            log.debug("{} requested chunk {} of resource pack {} with {} chunks", player.getName(), pk.chunkIndex, resourcePack.getPackId(), chunkCount);
+            return;
+        }
+
+        int chunksAhead = player.getServer().getSettings().general().resourcePackChunksAhead();
+        if (chunksAhead <= 0) {
+            sendChunk(player, resourcePack, pk.chunkIndex);
+            return;
+        }
+
+        // The following chunks are sent right away so the download doesn't wait for a request per chunk. Chunks which
+        // were sent ahead are not sent again when the client requests them.
+        BitSet sent = playerHandle.getSentResourcePackChunks().computeIfAbsent(resourcePack.getPackId(), id -> new BitSet(chunkCount));
+        int last = Math.min(chunkCount - 1, pk.chunkIndex + chunksAhead);
+        for (int chunkIndex = pk.chunkIndex; chunkIndex <= last; chunkIndex++) {
+            if (!sent.get(chunkIndex)) {
+                if (!sendChunk(player, resourcePack, chunkIndex)) {
+                    return;
+                }
+                sent.set(chunkIndex);
+            }
+        }
+    }
+
+    /**
+     * @return false if the chunk could not be read from the pack, the rest of the request is dropped then
+     */
+    private static boolean sendChunk(Player player, ResourcePack resourcePack, int chunkIndex) {
         ResourcePackChunkDataPacket dataPacket = new ResourcePackChunkDataPacket();
         dataPacket.packId = resourcePack.getPackId();
-        dataPacket.chunkIndex = pk.chunkIndex;
-        dataPacket.data = resourcePack.getPackChunk(RESOURCE_PACK_CHUNK_SIZE * pk.chunkIndex, RESOURCE_PACK_CHUNK_SIZE);
-        dataPacket.progress = (long) RESOURCE_PACK_CHUNK_SIZE * pk.chunkIndex;
+        dataPacket.chunkIndex = chunkIndex;
+        try {
+            dataPacket.dataBuffer = resourcePack.getPackChunkBuffer(RESOURCE_PACK_CHUNK_SIZE * chunkIndex, RESOURCE_PACK_CHUNK_SIZE);
+        } catch (UncheckedIOException e) {
+            log.error("Unable to read chunk {} of resource pack {} for {}", chunkIndex, resourcePack.getPackId(), player.getName(), e);
+            return false;
+        }
+        dataPacket.progress = (long) RESOURCE_PACK_CHUNK_SIZE * chunkIndex;
         player.dataPacket(dataPacket);
+        return true;
     }
 
     @Override
@@ -0,0 +1,53 @@
+package cn.nukkit.network.protocol;
+
+import lombok.ToString;
+
+@ToString
+public class ClientCacheBlobStatusPacket extends DataPacket {
+
+    public static final byte NETWORK_ID = ProtocolInfo.CLIENT_CACHE_BLOB_STATUS_PACKET;
+
+    /**
+     * Limit of blob ids per list accepted from the client
+     */
+    public static final int MAX_BLOB_IDS = 4096;
+
+    public long[] missingBlobIds = new long[0];
+    public long[] foundBlobIds = new long[0];
+
+    @Override
+    public byte pid() {
+        return NETWORK_ID;
+    }
+
+    @Override
+    public void decode() {
+        int missingCount = (int) this.getUnsignedVarInt();
+        int foundCount = (int) this.getUnsignedVarInt();
+        if (missingCount < 0 || missingCount > MAX_BLOB_IDS || foundCount < 0 || foundCount > MAX_BLOB_IDS) {
+            throw new IllegalArgumentException("Too many blob ids: " + missingCount + " missing, " + foundCount + " found");
+        }
+
+        this.missingBlobIds = new long[missingCount];
+        for (int i = 0; i < missingCount; i++) {
+            this.missingBlobIds[i] = this.getLLong();
+        }
+        this.foundBlobIds = new long[foundCount];
+        for (int i = 0; i < foundCount; i++) {
+            this.foundBlobIds[i] = this.getLLong();
+        }
+    }
+
+    @Override
+    public void encode() {
+        this.reset();
+        this.putUnsignedVarInt(this.missingBlobIds.length);
+        this.putUnsignedVarInt(this.foundBlobIds.length);
+        for (long blobId : this.missingBlobIds) {
+            this.putLLong(blobId);
+        }
+        for (long blobId : this.foundBlobIds) {
+            this.putLLong(blobId);
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package cn.nukkit.network.protocol;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import lombok.ToString;
+
+@ToString(exclude = "blobs")
+public class ClientCacheMissResponsePacket extends DataPacket {
+
+    public static final byte NETWORK_ID = ProtocolInfo.CLIENT_CACHE_MISS_RESPONSE_PACKET;
+
+    public final Long2ObjectMap<byte[]> blobs = new Long2ObjectOpenHashMap<>();
+
+    @Override
+    public byte pid() {
+        return NETWORK_ID;
+    }
+
+    @Override
+    public void decode() {
+        int count = (int) this.getUnsignedVarInt();
+        for (int i = 0; i < count && !this.feof(); i++) {
+            long blobId = this.getLLong();
+            this.blobs.put(blobId, this.getByteArray());
+        }
+    }
+
+    @Override
+    public void encode() {
+        this.reset();
+        this.putUnsignedVarInt(this.blobs.size());
+        for (Long2ObjectMap.Entry<byte[]> entry : this.blobs.long2ObjectEntrySet()) {
+            this.putLLong(entry.getLongKey());
+            this.putByteArray(entry.getValue());
+        }
+    }
+}
@@ -2,9 +2,10 @@ package cn.nukkit.network.protocol;
 
 import lombok.ToString;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
-@ToString(exclude = "data")
+@ToString(exclude = {"data", "dataBuffer"})
 public class ResourcePackChunkDataPacket extends DataPacket {
 
     public static final byte NETWORK_ID = ProtocolInfo.RESOURCE_PACK_CHUNK_DATA_PACKET;
@@ -13,6 +14,10 @@ public class ResourcePackChunkDataPacket extends DataPacket {
     public int chunkIndex;
     public long progress;
     public byte[] data;
+    /**
+     * Written instead of {@link #data} if that is null, so a pack chunk doesn't have to be copied before encoding
+     */
+    public ByteBuffer dataBuffer;
 
     @Override
     public void decode() {
@@ -32,7 +37,14 @@ public class ResourcePackChunkDataPacket extends DataPacket {
         this.putString(this.packId.toString());
         this.putLInt(this.chunkIndex);
         this.putLLong(this.progress);
-        if (protocol < 388) {
+        if (this.data == null && this.dataBuffer != null) {
+            if (protocol < 388) {
+                this.putLInt(this.dataBuffer.remaining());
+                this.put(this.dataBuffer);
+            } else {
+                this.putByteArray(this.dataBuffer);
+            }
+        } else if (protocol < 388) {
             this.putLInt(this.data.length);
             this.put(this.data);
         } else {
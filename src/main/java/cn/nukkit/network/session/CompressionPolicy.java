@@ -0,0 +1,151 @@
+package cn.nukkit.network.session;
+
+import cn.nukkit.Server;
+import cn.nukkit.settings.NetworkSettings;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Chooses how the outbound batches of a session are compressed and keeps its compression statistics.
+ * <p>
+ * Batches below the compression threshold are not compressed. The level starts at the configured level, is lowered
+ * while the main thread or the compressing network threads are busy and raised by one for clients with a high ping,
+ * where the saved bytes matter more than the CPU time.
+ * <p>
+ * Batches are recorded on the event loop of the session, the statistics can be read from any thread.
+ */
+public class CompressionPolicy {
+
+    private static final int MIN_LEVEL = 1;
+    private static final int MAX_LEVEL = 9;
+    private static final long HIGH_PING = 150;
+    private static final long LOAD_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    // Compression time of every session, the network load is measured from it once per interval
+    private static final LongAdder COMPRESSION_TIME = new LongAdder();
+    private static volatile long loadIntervalStart = System.nanoTime();
+    private static volatile double networkLoad;
+
+    private final int threshold;
+    private final int level;
+    private final boolean adaptive;
+
+    private volatile long batches;
+    private volatile long skippedBatches;
+    private volatile long uncompressedBytes;
+    private volatile long compressedBytes;
+    private volatile long compressionNanos;
+
+    public CompressionPolicy(NetworkSettings.CompressionSettings settings) {
+        this(settings.compressionThreshold(), settings.compressionLevel(), settings.adaptiveLevel());
+    }
+
+    public CompressionPolicy(int threshold, int level, boolean adaptive) {
+        this.threshold = threshold;
+        this.level = level;
+        this.adaptive = adaptive;
+    }
+
+    public boolean shouldCompress(int size) {
+        return size >= this.threshold;
+    }
+
+    /**
+     * @return level to compress a batch of the size with, 0 stores batches below the threshold
+     */
+    public int getLevel(int size, long ping) {
+        if (!this.shouldCompress(size)) {
+            return 0;
+        }
+
+        int level = this.level;
+        if (!this.adaptive || level < MIN_LEVEL) {
+            return level;
+        }
+
+        float tickUsage = Server.getInstance().getTickUsageAverage();
+        if (tickUsage >= 90) {
+            level -= 2;
+        } else if (tickUsage >= 70) {
+            level--;
+        }
+
+        double networkLoad = getNetworkLoad();
+        if (networkLoad >= 0.5) {
+            level -= 2;
+        } else if (networkLoad >= 0.25) {
+            level--;
+        }
+
+        if (ping >= HIGH_PING) {
+            level++;
+        }
+        return Math.max(MIN_LEVEL, Math.min(MAX_LEVEL, level));
+    }
+
+    /**
+     * Record a sent batch.
+     *
+     * @param compressed whether the batch was compressed, the sizes are equal for skipped batches
+     */
+    public void record(int uncompressedSize, int compressedSize, long nanos, boolean compressed) {
+        this.batches++;
+        if (!compressed) {
+            this.skippedBatches++;
+        }
+        this.uncompressedBytes += uncompressedSize;
+        this.compressedBytes += compressedSize;
+        this.compressionNanos += nanos;
+        COMPRESSION_TIME.add(nanos);
+    }
+
+    public long getBatches() {
+        return this.batches;
+    }
+
+    public long getSkippedBatches() {
+        return this.skippedBatches;
+    }
+
+    public long getUncompressedBytes() {
+        return this.uncompressedBytes;
+    }
+
+    public long getCompressedBytes() {
+        return this.compressedBytes;
+    }
+
+    public long getCompressionNanos() {
+        return this.compressionNanos;
+    }
+
+    /**
+     * @return compressed size relative to the uncompressed size, 1 if nothing was sent yet
+     */
+    public double getRatio() {
+        long uncompressed = this.uncompressedBytes;
+        return uncompressed == 0 ? 1 : (double) this.compressedBytes / uncompressed;
+    }
+
+    public long getBytesSaved() {
+        return this.uncompressedBytes - this.compressedBytes;
+    }
+
+    /**
+     * @return share of the available cores spent compressing batches during the last interval
+     */
+    public static double getNetworkLoad() {
+        long now = System.nanoTime();
+        if (now - loadIntervalStart >= LOAD_INTERVAL) {
+            synchronized (CompressionPolicy.class) {
+                long start = loadIntervalStart;
+                if (now - start >= LOAD_INTERVAL) {
+                    networkLoad = COMPRESSION_TIME.sumThenReset() / ((double) (now - start) * Runtime.getRuntime().availableProcessors());
+                    loadIntervalStart = now;
+                }
+            }
+        }
+        return networkLoad;
+    }
+}
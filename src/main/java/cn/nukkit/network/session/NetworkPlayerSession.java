@@ -24,6 +24,13 @@ public interface NetworkPlayerSession {
     void setCompression(CompressionProvider compression);
     CompressionProvider getCompression();
 
+    /**
+     * @return compression policy and statistics of the outbound batches, null if the session doesn't keep them
+     */
+    default CompressionPolicy getCompressionPolicy() {
+        return null;
+    }
+
     default void setEncryption(SecretKey encryptionKey, Cipher encryptionCipher, Cipher decryptionCipher) {
 
     }
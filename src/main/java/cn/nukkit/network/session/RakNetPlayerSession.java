@@ -16,8 +16,7 @@ import com.google.common.base.Preconditions;
 import com.nukkitx.natives.sha256.Sha256;
 import com.nukkitx.natives.util.Natives;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufAllocator;
-import io.netty.buffer.Unpooled;
+import io.netty.buffer.ByteBufUtil;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.util.internal.PlatformDependent;
@@ -32,6 +31,7 @@ import javax.crypto.Cipher;
 import javax.crypto.SecretKey;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -44,7 +44,11 @@ import java.util.concurrent.atomic.AtomicLong;
 public class RakNetPlayerSession extends SimpleChannelInboundHandler<RakMessage> implements NetworkPlayerSession {
 
     private static final ThreadLocal<Sha256> HASH_LOCAL = ThreadLocal.withInitial(Natives.SHA_256);
-    private static final ThreadLocal<byte[]> CHECKSUM_LOCAL = ThreadLocal.withInitial(() -> new byte[8]);
+    private static final ThreadLocal<ByteBuffer> COUNTER_LOCAL = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(8).order(ByteOrder.LITTLE_ENDIAN));
+
+    private static final int MAX_BATCH_SIZE = 3145728; // 3 * 1024 * 1024
+    // Batch buffers which grew beyond this are dropped after use instead of being kept by the session
+    private static final int MAX_RETAINED_BATCH_CAPACITY = 262144;
 
     private final RakNetInterface server;
     private final RakChildChannel channel;
@@ -59,14 +63,18 @@ public class RakNetPlayerSession extends SimpleChannelInboundHandler<RakMessage>
     private CompressionProvider compressionIn;
     private CompressionProvider compressionOut;
     private boolean compressionInitialized;
+    private final CompressionPolicy compressionPolicy = new CompressionPolicy(Server.getInstance().getSettings().network().compression());
 
     private SecretKey encryptionKey;
+    private byte[] encryptionKeyBytes;
     private Cipher encryptionCipher;
     private Cipher decryptionCipher;
     private final AtomicLong encryptCounter = new AtomicLong();
     private final AtomicLong decryptCounter = new AtomicLong();
 
     private final List<DataPacket> toBatch = new ObjectArrayList<>();
+    // Framing buffer of the outbound batches, only used on the event loop
+    private BinaryStream batched = new BinaryStream();
 
     public RakNetPlayerSession(RakNetInterface server, RakChildChannel channel) {
         this.server = server;
@@ -93,13 +101,9 @@ public class RakNetPlayerSession extends SimpleChannelInboundHandler<RakMessage>
                 return;
             }
 
-            byte[] packetBuffer;
-
-            boolean ci = false;
-            if (this.compressionInitialized && this.player.protocol >= ProtocolInfo.v1_20_60) {
-                ci = true;
-            }
+            boolean ci = this.isCompressionPrefixed();
 
+            int payloadEnd = buffer.writerIndex();
             if (this.decryptionCipher != null) {
                 try {
                     ByteBuffer buf = buffer.nioBuffer();
@@ -109,45 +113,32 @@ public class RakNetPlayerSession extends SimpleChannelInboundHandler<RakMessage>
                     return;
                 }
 
-                if (ci) {
-                    this.compressionIn = CompressionProvider.byPrefix(buffer.readByte(), this.channel.config().getProtocolVersion());
-                }
-
                 // Verify the checksum
-                buffer.markReaderIndex();
                 int trailerIndex = buffer.writerIndex() - 8;
-                byte[] checksum = CHECKSUM_LOCAL.get();
-                try {
-                    buffer.readerIndex(trailerIndex);
-                    buffer.readBytes(checksum);
-                } catch (Exception e) {
+                if (trailerIndex < buffer.readerIndex()) {
                     this.disconnect("Bad checksum");
-                    log.debug("Unable to verify checksum", e);
+                    log.debug("Encrypted packet is too short for a checksum");
                     return;
                 }
-                ByteBuf payload = buffer.slice(1, trailerIndex - 1);
                 long count = this.decryptCounter.getAndIncrement();
-                byte[] expected = this.calculateChecksum(count, payload);
+                byte[] expected = this.calculateChecksum(count, buffer, buffer.readerIndex(), trailerIndex - buffer.readerIndex());
                 for (int i = 0; i < 8; i++) {
-                    if (checksum[i] != expected[i]) {
+                    if (buffer.getByte(trailerIndex + i) != expected[i]) {
                         this.disconnect("Invalid checksum");
                         log.debug("Encrypted packet {} has invalid checksum (expected {}, got {})",
-                                count, Binary.bytesToHexString(expected), Binary.bytesToHexString(checksum));
+                                count, Binary.bytesToHexString(Arrays.copyOf(expected, 8)), ByteBufUtil.hexDump(buffer, trailerIndex, 8));
                         return;
                     }
                 }
-                buffer.resetReaderIndex();
-
-                packetBuffer = new byte[buffer.readableBytes() - 8];
-            } else {
-                if (ci) {
-                    this.compressionIn = CompressionProvider.byPrefix(buffer.readByte(), this.channel.config().getProtocolVersion());
-                }
+                payloadEnd = trailerIndex;
+            }
 
-                packetBuffer = new byte[buffer.readableBytes()];
+            if (ci) {
+                this.compressionIn = CompressionProvider.byPrefix(buffer.readByte(), this.channel.config().getProtocolVersion());
             }
 
-            buffer.readBytes(packetBuffer);
+            // Decoded from the received buffer, the packets are copied out while decompressing
+            ByteBuf packetBuffer = buffer.slice(buffer.readerIndex(), payloadEnd - buffer.readerIndex());
 
             try {
                 this.server.getNetwork().processBatch(packetBuffer, this.inbound, compressionIn, this.channel.config().getProtocolVersion(), this.player);
@@ -277,7 +268,8 @@ public class RakNetPlayerSession extends SimpleChannelInboundHandler<RakMessage>
     }
 
     private void sendPackets(Collection<DataPacket> packets) {
-        BinaryStream batched = new BinaryStream();
+        BinaryStream batched = this.batched;
+        batched.reset();
         for (DataPacket packet : packets) {
             if (packet instanceof BatchPacket) {
                 throw new IllegalArgumentException("Cannot batch BatchPacket");
@@ -287,60 +279,82 @@ public class RakNetPlayerSession extends SimpleChannelInboundHandler<RakMessage>
             }
 
             byte[] buf = packet.getBuffer();
-            if (batched.getCount() + buf.length > 3145728) { // 3 * 1024 * 1024
+            if (batched.getCount() + buf.length > MAX_BATCH_SIZE) {
                 this.sendPackets(batched);
-                batched = new BinaryStream();
+                batched.reset();
             }
             batched.putUnsignedVarInt(buf.length);
             batched.put(buf);
         }
 
         this.sendPackets(batched);
+        if (batched.getBufferUnsafe().length > MAX_RETAINED_BATCH_CAPACITY) {
+            this.batched = new BinaryStream();
+        }
     }
 
     private void sendPackets(BinaryStream batched) {
+        int size = batched.getCount();
+        CompressionProvider compression = this.compressionOut;
+        // Clients reading the prefix accept uncompressed batches, older ones get stored deflate blocks instead
+        if (compression != CompressionProvider.NONE && this.isCompressionPrefixed() && !this.compressionPolicy.shouldCompress(size)) {
+            compression = CompressionProvider.NONE;
+        }
+
+        ByteBuf payload = this.allocatePayload(compression, size);
+        int start = payload.writerIndex();
+        long startTime = System.nanoTime();
         try {
-            this.sendPacket(this.compressionOut.compress(batched, Server.getInstance().getSettings().network().compression().compressionLevel()));
+            compression.compress(batched, this.compressionPolicy.getLevel(size, this.getPing()), payload);
         } catch (Exception e) {
+            payload.release();
             log.error("Unable to compress batched packets", e);
+            return;
         }
+        this.compressionPolicy.record(size, payload.writerIndex() - start, System.nanoTime() - startTime, compression != CompressionProvider.NONE);
+        this.sendPayload(payload);
     }
 
     private void sendPacket(byte[] compressedPayload) {
-        boolean ci = false;
-        if (this.compressionInitialized && this.player.protocol >= ProtocolInfo.v1_20_60) {
-            ci = true;
-        }
+        ByteBuf payload = this.allocatePayload(this.compressionOut, compressedPayload.length);
+        payload.writeBytes(compressedPayload);
+        this.sendPayload(payload);
+    }
 
-        ByteBuf finalPayload = ByteBufAllocator.DEFAULT.directBuffer((ci ? 10 : 9) + compressedPayload.length); // prefix(1)+id(1)+encryption(8)+data
-        finalPayload.writeByte(0xfe);
+    private boolean isCompressionPrefixed() {
+        return this.compressionInitialized && this.player.protocol >= ProtocolInfo.v1_20_60;
+    }
 
+    /**
+     * Allocate a pooled buffer for a batch, the header is written and the payload is appended after it.
+     * Room for the checksum is reserved so encryption doesn't need to grow the buffer.
+     */
+    private ByteBuf allocatePayload(CompressionProvider compression, int length) {
+        ByteBuf buffer = this.channel.alloc().ioBuffer(10 + length); // id(1)+prefix(1)+data+checksum(8)
+        buffer.writeByte(0xfe);
+        if (this.isCompressionPrefixed()) {
+            buffer.writeByte(compression.getPrefix());
+        }
+        return buffer;
+    }
+
+    private void sendPayload(ByteBuf buffer) {
         if (this.encryptionCipher != null) {
             try {
-                byte[] fullPayload = ci ? new byte[compressedPayload.length + 1] : compressedPayload;
-                if (ci) {
-                    fullPayload[0] = this.compressionOut.getPrefix();
-                    System.arraycopy(compressedPayload, 0, fullPayload, 1, compressedPayload.length);
-                }
-                ByteBuf compressed = Unpooled.wrappedBuffer(fullPayload);
-                ByteBuffer trailer = ByteBuffer.wrap(this.calculateChecksum(this.encryptCounter.getAndIncrement(), compressed));
-                ByteBuffer outBuffer = finalPayload.internalNioBuffer(1, compressed.readableBytes() + 8);
-                ByteBuffer inBuffer = compressed.internalNioBuffer(compressed.readerIndex(), compressed.readableBytes());
-                this.encryptionCipher.update(inBuffer, outBuffer);
-                this.encryptionCipher.update(trailer, outBuffer);
-                finalPayload.writerIndex(finalPayload.writerIndex() + compressed.readableBytes() + 8);
+                // The compression prefix is encrypted as well, everything after the packet id is
+                int length = buffer.writerIndex() - 1;
+                byte[] checksum = this.calculateChecksum(this.encryptCounter.getAndIncrement(), buffer, 1, length);
+                buffer.writeBytes(checksum, 0, 8);
+                ByteBuffer region = buffer.nioBuffer(1, length + 8);
+                this.encryptionCipher.update(region, region.duplicate());
             } catch (Exception e) {
+                buffer.release();
                 log.error("Packet encryption failed for {}", player.getName(), e);
+                return;
             }
-        }else {
-            if (ci) {
-                finalPayload.writeByte(this.compressionOut.getPrefix());
-            }
-
-            finalPayload.writeBytes(compressedPayload);
         }
 
-        this.channel.writeAndFlush(finalPayload);
+        this.channel.writeAndFlush(buffer);
     }
 
     @Override
@@ -356,6 +370,11 @@ public class RakNetPlayerSession extends SimpleChannelInboundHandler<RakMessage>
         return this.compressionOut;
     }
 
+    @Override
+    public CompressionPolicy getCompressionPolicy() {
+        return this.compressionPolicy;
+    }
+
     public void setPlayer(Player player) {
         Preconditions.checkArgument(this.player == null && player != null);
         this.player = player;
@@ -377,6 +396,7 @@ public class RakNetPlayerSession extends SimpleChannelInboundHandler<RakMessage>
     @Override
     public void setEncryption(SecretKey encryptionKey, Cipher encryptionCipher, Cipher decryptionCipher) {
         this.encryptionKey = encryptionKey;
+        this.encryptionKeyBytes = encryptionKey == null ? null : encryptionKey.getEncoded();
         this.encryptionCipher = encryptionCipher;
         this.decryptionCipher = decryptionCipher;
     }
@@ -390,20 +410,21 @@ public class RakNetPlayerSession extends SimpleChannelInboundHandler<RakMessage>
         return codec.getPing();
     }
 
-    private byte[] calculateChecksum(long count, ByteBuf payload) {
+    /**
+     * @return digest of the counter, the payload range and the key, its first 8 bytes are the checksum
+     */
+    private byte[] calculateChecksum(long count, ByteBuf buffer, int index, int length) {
         Sha256 hash = HASH_LOCAL.get();
-        ByteBuf counterBuf = ByteBufAllocator.DEFAULT.directBuffer(8);
+        ByteBuffer counter = COUNTER_LOCAL.get();
         try {
-            counterBuf.writeLongLE(count);
-            ByteBuffer keyBuffer = ByteBuffer.wrap(this.encryptionKey.getEncoded());
-            hash.update(counterBuf.internalNioBuffer(0, 8));
-            hash.update(payload.internalNioBuffer(payload.readerIndex(), payload.readableBytes()));
-            hash.update(keyBuffer);
-            byte[] digested = hash.digest();
-            return Arrays.copyOf(digested, 8);
+            counter.clear();
+            counter.putLong(0, count);
+            hash.update(counter);
+            hash.update(buffer.nioBuffer(index, length));
+            hash.update(ByteBuffer.wrap(this.encryptionKeyBytes));
+            return hash.digest();
         } finally {
-            counterBuf.release();
             hash.reset();
         }
     }
-}
\ No newline at end of file
+}
@@ -116,6 +116,7 @@ public abstract class DefaultPermissions {
         registerPermission(new Permission("nukkit.command.world", "Allows the user to switch world", Permission.DEFAULT_OP), commands);
         registerPermission(new Permission("nukkit.command.world.others", "Allows the user to switch world for other players", Permission.DEFAULT_OP), commands);
         registerPermission(new Permission("nukkit.command.generateworld", "Allows the user to generate new world", Permission.DEFAULT_OP), commands);
+        registerPermission(new Permission("nukkit.command.pregenerate", "Allows the user to pre-generate chunks of a world", Permission.DEFAULT_OP), commands);
         registerPermission(new Permission("nukkit.command.seed", "Allows the user to see world's seed", Permission.DEFAULT_OP), commands);
         registerPermission(new Permission("nukkit.command.playsound", "Allows the user to play sounds", Permission.DEFAULT_OP), commands);
         registerPermission(new Permission("nukkit.command.stopsound", "Allows the user to stop sounds", Permission.DEFAULT_OP), commands);
@@ -3,37 +3,74 @@ package cn.nukkit.plugin;
 import cn.nukkit.event.Event;
 import cn.nukkit.event.Listener;
 import cn.nukkit.event.EventException;
+import lombok.extern.log4j.Log4j2;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Type;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.objectweb.asm.Opcodes.*;
 
 /**
+ * Calls an event handler method of a listener.
+ * <p>
+ * The method is called through a small class generated next to the class declaring it, so a call costs a type check
+ * and a direct invocation. Private handler methods can't be called from another class and use a method handle instead.
+ *
  * @author MagicDroidX
  * Nukkit Project
  */
+@Log4j2
 public class MethodEventExecutor implements EventExecutor {
 
+    private static final MethodType HANDLE_TYPE = MethodType.methodType(void.class, Listener.class, Event.class);
+    private static final String EXECUTOR_NAME = Type.getInternalName(EventExecutor.class);
+    private static final String EXECUTE_DESCRIPTOR = Type.getMethodDescriptor(Type.VOID_TYPE, Type.getType(Listener.class), Type.getType(Event.class));
+    private static final AtomicInteger GENERATED = new AtomicInteger();
+
     private final Method method;
+    private final Class<?> eventClass;
+    private final EventExecutor generated;
+    private final MethodHandle handle;
 
     public MethodEventExecutor(Method method) {
+        if (method.getParameterCount() != 1) {
+            throw new IllegalArgumentException("Event handler " + method.toGenericString() + " must take exactly one parameter");
+        }
         this.method = method;
+        this.eventClass = method.getParameterTypes()[0];
+
+        EventExecutor generated = null;
+        if (canGenerate(method)) {
+            try {
+                generated = generate(method);
+            } catch (Throwable t) {
+                log.debug("Unable to generate an executor for {}, falling back to a method handle", method.toGenericString(), t);
+            }
+        }
+        this.generated = generated;
+        this.handle = generated == null ? createHandle(method) : null;
     }
 
-    @SuppressWarnings("unchecked")
     @Override
     public void execute(Listener listener, Event event) throws EventException {
+        // Handler lists are shared with subclasses of the event that don't have their own
+        if (!this.eventClass.isInstance(event)) {
+            return;
+        }
+
         try {
-            Class<Event>[] params = (Class<Event>[]) method.getParameterTypes();
-            for (Class<Event> param : params) {
-                if (param.isAssignableFrom(event.getClass())) {
-                    method.invoke(listener, event);
-                    break;
-                }
+            if (this.generated != null) {
+                this.generated.execute(listener, event);
+            } else {
+                this.handle.invokeExact(listener, event);
             }
-        } catch (InvocationTargetException ex) {
-            throw new EventException(ex.getCause());
-        } catch (ClassCastException ex) {
-            // We are going to ignore ClassCastException because EntityDamageEvent can't be cast to EntityDamageByEntityEvent
         } catch (Throwable t) {
             throw new EventException(t);
         }
@@ -42,4 +79,77 @@ public class MethodEventExecutor implements EventExecutor {
     public Method getMethod() {
         return method;
     }
-}
\ No newline at end of file
+
+    private static boolean canGenerate(Method method) {
+        if (Modifier.isPrivate(method.getModifiers())) {
+            return false;
+        }
+
+        Class<?> declaringClass = method.getDeclaringClass();
+        if (declaringClass.isHidden() || declaringClass.isArray()) {
+            return false;
+        }
+
+        // The generated class lives in the package of the declaring class and has to see the event class
+        Class<?> eventClass = method.getParameterTypes()[0];
+        return Modifier.isPublic(eventClass.getModifiers()) || eventClass.getPackageName().equals(declaringClass.getPackageName());
+    }
+
+    private static EventExecutor generate(Method method) throws ReflectiveOperationException {
+        Class<?> declaringClass = method.getDeclaringClass();
+        String declaringName = Type.getInternalName(declaringClass);
+        String className = declaringName + "$$EventExecutor$" + GENERATED.incrementAndGet();
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        boolean isInterface = declaringClass.isInterface();
+
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        classWriter.visit(V1_8, ACC_PUBLIC | ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, className, null, "java/lang/Object", new String[]{EXECUTOR_NAME});
+
+        MethodVisitor constructor = classWriter.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        constructor.visitCode();
+        constructor.visitVarInsn(ALOAD, 0);
+        constructor.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        constructor.visitInsn(RETURN);
+        constructor.visitMaxs(0, 0);
+        constructor.visitEnd();
+
+        MethodVisitor execute = classWriter.visitMethod(ACC_PUBLIC, "execute", EXECUTE_DESCRIPTOR, null, null);
+        execute.visitCode();
+        if (!isStatic) {
+            execute.visitVarInsn(ALOAD, 1);
+            execute.visitTypeInsn(CHECKCAST, declaringName);
+        }
+        execute.visitVarInsn(ALOAD, 2);
+        execute.visitTypeInsn(CHECKCAST, Type.getInternalName(method.getParameterTypes()[0]));
+        int opcode = isStatic ? INVOKESTATIC : isInterface ? INVOKEINTERFACE : INVOKEVIRTUAL;
+        execute.visitMethodInsn(opcode, declaringName, method.getName(), Type.getMethodDescriptor(method), isInterface);
+        Class<?> returnType = method.getReturnType();
+        if (returnType == long.class || returnType == double.class) {
+            execute.visitInsn(POP2);
+        } else if (returnType != void.class) {
+            execute.visitInsn(POP);
+        }
+        execute.visitInsn(RETURN);
+        execute.visitMaxs(0, 0);
+        execute.visitEnd();
+        classWriter.visitEnd();
+
+        // Defined in the class loader of the listener, so it goes away together with the plugin
+        MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(declaringClass, MethodHandles.lookup());
+        Class<?> clazz = lookup.defineClass(classWriter.toByteArray());
+        return (EventExecutor) clazz.getConstructor().newInstance();
+    }
+
+    private static MethodHandle createHandle(Method method) {
+        try {
+            method.trySetAccessible();
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Listener.class);
+            }
+            return handle.asType(HANDLE_TYPE);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Event handler " + method.toGenericString() + " is not accessible", e);
+        }
+    }
+}
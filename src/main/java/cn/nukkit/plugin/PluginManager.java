@@ -44,6 +44,19 @@ public class PluginManager {
 
     protected final Map<String, PluginLoader> fileAssociations = new HashMap<>();
 
+    // The handler list of an event class never changes, so it is only looked up once
+    private final ClassValue<HandlerList> handlerLists = new ClassValue<>() {
+        @Override
+        @SuppressWarnings("unchecked")
+        protected HandlerList computeValue(Class<?> type) {
+            try {
+                return findEventListeners((Class<? extends Event>) type);
+            } catch (IllegalAccessException e) {
+                throw new HandlerListException(e);
+            }
+        }
+    };
+
     public PluginManager(Server server, SimpleCommandMap commandMap) {
         this.server = server;
         this.commandMap = commandMap;
@@ -653,7 +666,27 @@ public class PluginManager {
         }
     }
 
+    /**
+     * Whether any listener is registered for the event. Call sites firing an event very often can use this to skip
+     * creating the event when nobody listens to it.
+     */
+    public boolean hasListeners(Class<? extends Event> type) {
+        try {
+            return !this.getEventListeners(type).isEmpty();
+        } catch (IllegalAccessException e) {
+            return false;
+        }
+    }
+
     private HandlerList getEventListeners(Class<? extends Event> type) throws IllegalAccessException {
+        try {
+            return this.handlerLists.get(type);
+        } catch (HandlerListException e) {
+            throw e.getCause();
+        }
+    }
+
+    private HandlerList findEventListeners(Class<? extends Event> type) throws IllegalAccessException {
         try {
             Method method = getRegistrationClass(type).getDeclaredMethod("getHandlers");
             method.setAccessible(true);
@@ -679,4 +712,16 @@ public class PluginManager {
             }
         }
     }
+
+    private static class HandlerListException extends RuntimeException {
+
+        private HandlerListException(IllegalAccessException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IllegalAccessException getCause() {
+            return (IllegalAccessException) super.getCause();
+        }
+    }
 }
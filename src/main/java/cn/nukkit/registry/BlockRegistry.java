@@ -1323,6 +1323,8 @@ public class BlockRegistry implements IRegistry<Integer, Block, Class<? extends
         ID_TO_CUSTOM_BLOCK.clear();
         CUSTOM_BLOCK_ID_MAP.clear();
         LEGACY_2_CUSTOM_STATE.clear();
+        BlockShapes.clear();
+        BlockStateView.clear();
 
         init();
     }
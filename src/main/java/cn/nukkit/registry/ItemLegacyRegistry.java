@@ -5,12 +5,23 @@ import cn.nukkit.item.*;
 import cn.nukkit.network.protocol.ProtocolInfo;
 import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.objects.Object2IntMap;
+import lombok.extern.log4j.Log4j2;
 
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 //TODO: remove legacy items at all
+@Log4j2
 public class ItemLegacyRegistry implements IRegistry<Integer, Class<?>, Class<?>>, BlockID, ItemID {
+    private static final MethodType FACTORY_TYPE = MethodType.methodType(Item.class, Integer.class, int.class);
+
     private static final Int2ObjectOpenHashMap<Class<?>> LEGACY_ITEMS = new Int2ObjectOpenHashMap<>();
+    // Constructors of the item classes by id, compiled once so creating an item doesn't go through reflection
+    private static Factory[] FACTORIES = new Factory[0];
     public static int HIGHEST_LEGACY_ITEM_ID = 0;
 
     private static final AtomicBoolean isLoad = new AtomicBoolean(false);
@@ -296,6 +307,15 @@ public class ItemLegacyRegistry implements IRegistry<Integer, Class<?>, Class<?>
     public void register(Integer key, Class<?> value) {
         LEGACY_ITEMS.put(key, value);
         if (key > HIGHEST_LEGACY_ITEM_ID) HIGHEST_LEGACY_ITEM_ID = key;
+
+        if (key >= 0) {
+            Factory[] factories = FACTORIES;
+            if (key >= factories.length) {
+                factories = Arrays.copyOf(factories, Math.max(key + 1, factories.length * 2));
+            }
+            factories[key] = Item.class.isAssignableFrom(value) ? createFactory(value) : null;
+            FACTORIES = factories;
+        }
     }
 
     @Override
@@ -303,6 +323,42 @@ public class ItemLegacyRegistry implements IRegistry<Integer, Class<?>, Class<?>
         return LEGACY_ITEMS.get(key);
     }
 
+    /**
+     * @return constructor of the item class registered for the id, null if there is none or the class has no
+     * {@code (Integer meta, int count)} constructor
+     */
+    public Factory getFactory(int id) {
+        Factory[] factories = FACTORIES;
+        return id >= 0 && id < factories.length ? factories[id] : null;
+    }
+
+    private static Factory createFactory(Class<?> clazz) {
+        MethodHandle constructor;
+        MethodHandles.Lookup lookup;
+        try {
+            // The lambda class is defined next to the item class, plugin items are visible from there
+            lookup = MethodHandles.privateLookupIn(clazz, MethodHandles.lookup());
+            constructor = lookup.findConstructor(clazz, MethodType.methodType(void.class, Integer.class, int.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+
+        try {
+            return (Factory) LambdaMetafactory.metafactory(lookup, "create", MethodType.methodType(Factory.class),
+                    FACTORY_TYPE, constructor, constructor.type()).getTarget().invokeExact();
+        } catch (Throwable t) {
+            log.debug("Unable to compile a factory for {}, falling back to a method handle", clazz.getName(), t);
+            MethodHandle handle = constructor.asType(FACTORY_TYPE);
+            return (meta, count) -> {
+                try {
+                    return (Item) handle.invokeExact(meta, count);
+                } catch (Throwable e) {
+                    throw new IllegalStateException("Unable to create " + clazz.getName(), e);
+                }
+            };
+        }
+    }
+
     @Override
     public void trim() {
         LEGACY_ITEMS.trim();
@@ -312,6 +368,12 @@ public class ItemLegacyRegistry implements IRegistry<Integer, Class<?>, Class<?>
     public void reload() {
         isLoad.set(false);
         LEGACY_ITEMS.clear();
+        FACTORIES = new Factory[0];
         init();
     }
+
+    @FunctionalInterface
+    public interface Factory {
+        Item create(Integer meta, int count);
+    }
 }
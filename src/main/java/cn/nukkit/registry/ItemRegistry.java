@@ -13,7 +13,9 @@ import org.jetbrains.annotations.NotNull;
 import java.lang.reflect.InvocationTargetException;
 import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Supplier;
 
@@ -22,6 +24,8 @@ public class ItemRegistry implements ItemNamespaceId, IRegistry<String, Item, Su
     private static final Object2ObjectOpenHashMap<String, Supplier<Item>> NAMESPACE_ID_ITEMS = new Object2ObjectOpenHashMap<>();
     private static final Object2ObjectOpenHashMap<String, Supplier<Item>> CUSTOM_ITEMS = new Object2ObjectOpenHashMap<>();
     private static final Object2ObjectOpenHashMap<String, CustomItemDefinition> CUSTOM_ITEM_DEFINITIONS = new Object2ObjectOpenHashMap<>();
+    // Ids as passed to Item.get mapped to the registered namespace id, so repeated lookups don't build new strings
+    private static final Map<String, String> NORMALIZED_IDS = new ConcurrentHashMap<>();
 
     private static final AtomicBoolean isLoad = new AtomicBoolean(false);
 
@@ -303,6 +307,26 @@ public class ItemRegistry implements ItemNamespaceId, IRegistry<String, Item, Su
         return NAMESPACE_ID_ITEMS.get(id);
     }
 
+    /**
+     * @return the id in lower case, with the minecraft namespace if it has none
+     */
+    public static String normalizeId(String id) {
+        String normalized = NORMALIZED_IDS.get(id);
+        if (normalized != null) {
+            return normalized;
+        }
+
+        normalized = id.toLowerCase(Locale.ROOT);
+        if (normalized.indexOf(':') == -1) {
+            normalized = "minecraft:" + normalized;
+        }
+        // Only registered ids are kept, anything else would let the map grow without bound
+        if (NAMESPACE_ID_ITEMS.containsKey(normalized)) {
+            NORMALIZED_IDS.put(id, normalized);
+        }
+        return normalized;
+    }
+
     public Map<String, Supplier<Item>> getNamespaceIdItems() {
         return Collections.unmodifiableMap(NAMESPACE_ID_ITEMS);
     }
@@ -329,6 +353,7 @@ public class ItemRegistry implements ItemNamespaceId, IRegistry<String, Item, Su
         isLoad.set(false);
         NAMESPACE_ID_ITEMS.clear();
         CUSTOM_ITEM_DEFINITIONS.clear();
+        NORMALIZED_IDS.clear();
         init();
     }
 }
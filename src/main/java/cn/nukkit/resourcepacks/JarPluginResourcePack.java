@@ -150,4 +150,11 @@ public class JarPluginResourcePack extends AbstractResourcePack {
 
         return chunk;
     }
+
+    @Override
+    public ByteBuffer getPackChunkBuffer(int off, int len) {
+        int size = this.getPackSize();
+        off = Math.min(Math.max(off, 0), size);
+        return this.zippedByteBuffer.slice(off, Math.min(len, size - off)).asReadOnlyBuffer();
+    }
 }
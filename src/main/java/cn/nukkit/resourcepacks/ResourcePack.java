@@ -2,6 +2,7 @@ package cn.nukkit.resourcepacks;
 
 import cn.nukkit.network.protocol.ResourcePackDataInfoPacket;
 
+import java.nio.ByteBuffer;
 import java.util.UUID;
 
 public interface ResourcePack {
@@ -24,6 +25,14 @@ public interface ResourcePack {
 
     byte[] getPackChunk(int off, int len);
 
+    /**
+     * Same as {@link #getPackChunk(int, int)}, but packs which are kept in memory or mapped return a read only view of
+     * the chunk instead of a copy.
+     */
+    default ByteBuffer getPackChunkBuffer(int off, int len) {
+        return ByteBuffer.wrap(this.getPackChunk(off, len)).asReadOnlyBuffer();
+    }
+
     ResourcePackDataInfoPacket toNetwork();
 
     default String getEncryptionKey() {
@@ -4,11 +4,15 @@ import cn.nukkit.Server;
 import com.google.gson.JsonParser;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.util.Locale;
 import java.util.zip.ZipEntry;
@@ -18,6 +22,7 @@ public class ZippedResourcePack extends AbstractResourcePack {
 
     private File file;
     private byte[] sha256;
+    private volatile MappedByteBuffer mappedFile;
 
     private String encryptionKey = "";
     private String cdnUrl = "";
@@ -78,7 +83,9 @@ public class ZippedResourcePack extends AbstractResourcePack {
     public byte[] getSha256() {
         if (this.sha256 == null) {
             try {
-                this.sha256 = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(this.file.toPath()));
+                MessageDigest digest = MessageDigest.getInstance("SHA-256");
+                digest.update(this.getMappedFile().duplicate());
+                this.sha256 = digest.digest();
             } catch (Exception e) {
                 Server.getInstance().getLogger().logException(e);
             }
@@ -89,21 +96,48 @@ public class ZippedResourcePack extends AbstractResourcePack {
 
     @Override
     public byte[] getPackChunk(int off, int len) {
-        byte[] chunk;
-        if (this.getPackSize() - off > len) {
-            chunk = new byte[len];
-        } else {
-            chunk = new byte[this.getPackSize() - off];
-        }
-
-        try (FileInputStream fis = new FileInputStream(this.file)) {
-            fis.skip(off);
-            fis.read(chunk);
+        try {
+            ByteBuffer chunk = this.getPackChunkBuffer(off, len);
+            byte[] bytes = new byte[chunk.remaining()];
+            chunk.get(bytes);
+            return bytes;
         } catch (Exception e) {
             Server.getInstance().getLogger().logException(e);
+            return new byte[0];
         }
+    }
 
-        return chunk;
+    @Override
+    public ByteBuffer getPackChunkBuffer(int off, int len) {
+        MappedByteBuffer file;
+        try {
+            file = this.getMappedFile();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to read resource pack " + this.file.getName(), e);
+        }
+
+        int size = file.capacity();
+        off = Math.min(Math.max(off, 0), size);
+        return file.slice(off, Math.min(len, size - off));
+    }
+
+    /**
+     * The pack is mapped once and read by every connection downloading it, the file is not changed while the server
+     * is running.
+     */
+    private MappedByteBuffer getMappedFile() throws IOException {
+        MappedByteBuffer mapped = this.mappedFile;
+        if (mapped == null) {
+            synchronized (this) {
+                mapped = this.mappedFile;
+                if (mapped == null) {
+                    try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ)) {
+                        this.mappedFile = mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    }
+                }
+            }
+        }
+        return mapped;
     }
 
     @Override
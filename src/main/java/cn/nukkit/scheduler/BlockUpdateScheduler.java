@@ -3,84 +3,169 @@ package cn.nukkit.scheduler;
 import cn.nukkit.block.Block;
 import cn.nukkit.level.Level;
 import cn.nukkit.math.AxisAlignedBB;
+import cn.nukkit.math.NukkitMath;
 import cn.nukkit.math.SimpleAxisAlignedBB;
 import cn.nukkit.math.Vector3;
 import cn.nukkit.level.util.BlockUpdateEntry;
-import cn.nukkit.utils.collection.nb.Long2ObjectNonBlockingMap;
-import it.unimi.dsi.fastutil.longs.LongArrayList;
+import cn.nukkit.utils.Hash;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
-import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Scheduled block updates of a level.
+ * <p>
+ * Updates are kept in a {@link TimingWheel} by tick and indexed by block position and by chunk, so scheduling,
+ * cancelling and looking up an update is O(1) and the updates of a chunk can be collected without looking at the rest
+ * of the level. Updates due at the same tick run in the order they were scheduled.
+ */
 public class BlockUpdateScheduler {
 
     private final Level level;
     private long lastTick;
-    private final Long2ObjectNonBlockingMap<Set<BlockUpdateEntry>> queuedUpdates;
 
+    private final TimingWheel<ScheduledUpdate> wheel;
+    // Updates at a block position, chained through ScheduledUpdate.nextAtPosition
+    private final Long2ObjectOpenHashMap<ScheduledUpdate> byPosition = new Long2ObjectOpenHashMap<>();
+    // Updates in a chunk, chained through ScheduledUpdate.prevInChunk/nextInChunk
+    private final Long2ObjectOpenHashMap<ScheduledUpdate> byChunk = new Long2ObjectOpenHashMap<>();
+
+    private final List<ScheduledUpdate> due = new ObjectArrayList<>();
+    private final Set<BlockUpdateEntry> running = new ObjectOpenHashSet<>();
     private Set<BlockUpdateEntry> pendingUpdates;
 
     public BlockUpdateScheduler(Level level, long currentTick) {
-        queuedUpdates = new Long2ObjectNonBlockingMap<>();
-        lastTick = currentTick;
+        this.wheel = new TimingWheel<>(currentTick + 1);
+        this.lastTick = currentTick;
         this.level = level;
     }
 
     public void tick(long currentTick) {
+        if (currentTick <= this.lastTick) {
+            if (currentTick < this.lastTick) {
+                synchronized (this) {
+                    // Time went backwards, keep every update but move the wheel
+                    this.rebuild(currentTick);
+                }
+            }
+            this.lastTick = currentTick;
+            return;
+        }
+
         // Should only perform once, unless ticks were skipped
-        if (currentTick - lastTick < Short.MAX_VALUE) {// Arbitrary
-            for (long tick = lastTick + 1; tick <= currentTick; tick++) {
-                perform(tick);
+        if (currentTick - this.lastTick < Short.MAX_VALUE) {// Arbitrary
+            while (this.lastTick < currentTick) {
+                synchronized (this) {
+                    this.lastTick = this.wheel.advance(this.due);
+                    for (ScheduledUpdate update : this.due) {
+                        this.unindex(update);
+                    }
+                }
+                this.perform(this.due);
             }
         } else {
-            LongArrayList times = new LongArrayList(queuedUpdates.keySet());
-            Collections.sort(times);
-            for (long tick : times) {
-                if (tick <= currentTick) {
-                    perform(tick);
-                } else {
-                    break;
+            List<ScheduledUpdate> expired = new ObjectArrayList<>();
+            synchronized (this) {
+                this.rebuild(currentTick, expired);
+            }
+            expired.sort(Comparator.comparingLong(update -> update.time));
+
+            int start = 0;
+            while (start < expired.size()) {
+                long tick = expired.get(start).time;
+                int end = start;
+                while (end < expired.size() && expired.get(end).time == tick) {
+                    this.due.add(expired.get(end++));
                 }
+                this.lastTick = tick;
+                this.perform(this.due);
+                start = end;
             }
         }
-        lastTick = currentTick;
+        this.lastTick = currentTick;
     }
 
-    private void perform(long tick) {
+    private void perform(List<ScheduledUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+
         try {
-            lastTick = tick;
-            Set<BlockUpdateEntry> updates = pendingUpdates = queuedUpdates.remove(tick);
-            if (updates != null) {
-                for (BlockUpdateEntry entry : updates) {
-                    if (level.isAreaLoaded(new SimpleAxisAlignedBB(entry.pos, entry.pos))) {
-                        Block block = level.getBlock(entry.pos, entry.block.layer);
-
-                        if (Block.equals(block, entry.block, false)) {
-                            block.onUpdate(Level.BLOCK_UPDATE_SCHEDULED);
-                        }
-                    } else {
-                        level.scheduleUpdate(entry.block, entry.pos, 0);
+            for (ScheduledUpdate update : updates) {
+                this.running.add(update.entry);
+            }
+            this.pendingUpdates = this.running;
+
+            for (ScheduledUpdate update : updates) {
+                BlockUpdateEntry entry = update.entry;
+                if (level.isAreaLoaded(new SimpleAxisAlignedBB(entry.pos, entry.pos))) {
+                    Block block = level.getBlock(entry.pos, entry.block.layer);
+
+                    if (Block.equals(block, entry.block, false)) {
+                        block.onUpdate(Level.BLOCK_UPDATE_SCHEDULED);
                     }
+                } else {
+                    level.scheduleUpdate(entry.block, entry.pos, 0);
                 }
             }
         } finally {
-            pendingUpdates = null;
+            this.pendingUpdates = null;
+            this.running.clear();
+            updates.clear();
         }
     }
 
-    public Set<BlockUpdateEntry> getPendingBlockUpdates(AxisAlignedBB boundingBox) {
+    /**
+     * Move the wheel so the next tick is the one after {@code currentTick}, keeping every update.
+     */
+    private void rebuild(long currentTick) {
+        List<ScheduledUpdate> updates = new ObjectArrayList<>(this.wheel.size());
+        this.wheel.drainAll(updates);
+        this.wheel.reset(currentTick + 1);
+        for (ScheduledUpdate update : updates) {
+            this.wheel.add(update);
+        }
+    }
+
+    /**
+     * Move the wheel so the next tick is the one after {@code currentTick}, handing over updates due until then.
+     */
+    private void rebuild(long currentTick, List<ScheduledUpdate> expired) {
+        List<ScheduledUpdate> updates = new ObjectArrayList<>(this.wheel.size());
+        this.wheel.drainAll(updates);
+        this.wheel.reset(currentTick + 1);
+        for (ScheduledUpdate update : updates) {
+            if (update.time <= currentTick) {
+                this.unindex(update);
+                expired.add(update);
+            } else {
+                this.wheel.add(update);
+            }
+        }
+    }
+
+    public synchronized Set<BlockUpdateEntry> getPendingBlockUpdates(AxisAlignedBB boundingBox) {
         Set<BlockUpdateEntry> set = new HashSet<>();
 
-        for (Set<BlockUpdateEntry> tickSet : this.queuedUpdates.values()) {
-            for (BlockUpdateEntry update : tickSet) {
-                Vector3 pos = update.pos;
+        int minChunkX = NukkitMath.floorDouble(boundingBox.getMinX()) >> 4;
+        int maxChunkX = NukkitMath.floorDouble(boundingBox.getMaxX()) >> 4;
+        int minChunkZ = NukkitMath.floorDouble(boundingBox.getMinZ()) >> 4;
+        int maxChunkZ = NukkitMath.floorDouble(boundingBox.getMaxZ()) >> 4;
 
-                if (pos.getX() >= boundingBox.getMinX() && pos.getX() < boundingBox.getMaxX() &&
-                        pos.getZ() >= boundingBox.getMinZ() && pos.getZ() < boundingBox.getMaxZ()) {
-                    set.add(update);
+        long chunks = (long) (maxChunkX - minChunkX + 1) * (maxChunkZ - minChunkZ + 1);
+        if (chunks > this.byChunk.size()) {
+            for (ScheduledUpdate first : this.byChunk.values()) {
+                collect(first, boundingBox, set);
+            }
+        } else {
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                    collect(this.byChunk.get(Level.chunkHash(chunkX, chunkZ)), boundingBox, set);
                 }
             }
         }
@@ -88,6 +173,17 @@ public class BlockUpdateScheduler {
         return set;
     }
 
+    private static void collect(ScheduledUpdate update, AxisAlignedBB boundingBox, Set<BlockUpdateEntry> set) {
+        for (; update != null; update = update.nextInChunk) {
+            Vector3 pos = update.entry.pos;
+
+            if (pos.getX() >= boundingBox.getMinX() && pos.getX() < boundingBox.getMaxX() &&
+                    pos.getZ() >= boundingBox.getMinZ() && pos.getZ() < boundingBox.getMaxZ()) {
+                set.add(update.entry);
+            }
+        }
+    }
+
     public boolean isBlockTickPending(Vector3 pos, Block block) {
         Set<BlockUpdateEntry> tmpUpdates = pendingUpdates;
         if (tmpUpdates == null || tmpUpdates.isEmpty()) return false;
@@ -98,42 +194,126 @@ public class BlockUpdateScheduler {
         return Math.max(entry.delay, lastTick + 1);
     }
 
-    public void add(BlockUpdateEntry entry) {
+    public synchronized void add(BlockUpdateEntry entry) {
         long time = getMinTime(entry);
-        Set<BlockUpdateEntry> updateSet = queuedUpdates.get(time);
-        if (updateSet == null) {
-            Set<BlockUpdateEntry> tmp = queuedUpdates.putIfAbsent(time, updateSet = ConcurrentHashMap.newKeySet());
-            if (tmp != null) updateSet = tmp;
+        long position = positionHash(entry.pos);
+        ScheduledUpdate head = this.byPosition.get(position);
+        for (ScheduledUpdate update = head; update != null; update = update.nextAtPosition) {
+            if (update.time == time && update.entry.equals(entry)) {
+                return;
+            }
+        }
+
+        ScheduledUpdate update = new ScheduledUpdate(entry, time, position,
+                Level.chunkHash(entry.pos.getFloorX() >> 4, entry.pos.getFloorZ() >> 4));
+
+        update.nextAtPosition = head;
+        this.byPosition.put(position, update);
+
+        ScheduledUpdate first = this.byChunk.put(update.chunk, update);
+        if (first != null) {
+            update.nextInChunk = first;
+            first.prevInChunk = update;
+        }
+
+        this.wheel.add(update);
+    }
+
+    public synchronized boolean contains(BlockUpdateEntry entry) {
+        return this.find(entry) != null;
+    }
+
+    public synchronized boolean remove(BlockUpdateEntry entry) {
+        ScheduledUpdate update = this.find(entry);
+        if (update == null) {
+            return false;
         }
-        updateSet.add(entry);
+        this.wheel.remove(update);
+        this.unindex(update);
+        return true;
     }
 
-    public boolean contains(BlockUpdateEntry entry) {
-        for (Map.Entry<Long, Set<BlockUpdateEntry>> tickUpdateSet : queuedUpdates.entrySet()) {
-            if (tickUpdateSet.getValue().contains(entry)) {
+    @Deprecated
+    public synchronized boolean remove(Vector3 pos) {
+        for (ScheduledUpdate update = this.byPosition.get(positionHash(pos)); update != null; update = update.nextAtPosition) {
+            if (update.entry.pos.equals(pos)) {
+                this.wheel.remove(update);
+                this.unindex(update);
                 return true;
             }
         }
         return false;
     }
 
-    public boolean remove(BlockUpdateEntry entry) {
-        for (Map.Entry<Long, Set<BlockUpdateEntry>> tickUpdateSet : queuedUpdates.entrySet()) {
-            if (tickUpdateSet.getValue().remove(entry)) {
-                return true;
+    /**
+     * @return number of scheduled updates
+     */
+    public synchronized int size() {
+        return this.wheel.size();
+    }
+
+    private ScheduledUpdate find(BlockUpdateEntry entry) {
+        for (ScheduledUpdate update = this.byPosition.get(positionHash(entry.pos)); update != null; update = update.nextAtPosition) {
+            if (update.entry.equals(entry)) {
+                return update;
             }
         }
-        return false;
+        return null;
     }
 
-    @Deprecated
-    @SuppressWarnings("SuspiciousMethodCalls")
-    public boolean remove(Vector3 pos) {
-        for (Set<BlockUpdateEntry> tickUpdateSet : queuedUpdates.values()) {
-            if (tickUpdateSet.remove(pos)) {
-                return true;
+    private void unindex(ScheduledUpdate update) {
+        ScheduledUpdate head = this.byPosition.get(update.position);
+        if (head == update) {
+            if (update.nextAtPosition == null) {
+                this.byPosition.remove(update.position);
+            } else {
+                this.byPosition.put(update.position, update.nextAtPosition);
             }
+        } else if (head != null) {
+            ScheduledUpdate previous = head;
+            while (previous.nextAtPosition != null && previous.nextAtPosition != update) {
+                previous = previous.nextAtPosition;
+            }
+            previous.nextAtPosition = update.nextAtPosition;
+        }
+
+        if (update.prevInChunk == null) {
+            if (update.nextInChunk == null) {
+                this.byChunk.remove(update.chunk);
+            } else {
+                this.byChunk.put(update.chunk, update.nextInChunk);
+            }
+        } else {
+            update.prevInChunk.nextInChunk = update.nextInChunk;
+        }
+        if (update.nextInChunk != null) {
+            update.nextInChunk.prevInChunk = update.prevInChunk;
+        }
+
+        update.nextAtPosition = null;
+        update.prevInChunk = null;
+        update.nextInChunk = null;
+    }
+
+    private static long positionHash(Vector3 pos) {
+        return Hash.hashBlock(pos.getFloorX(), pos.getFloorY(), pos.getFloorZ());
+    }
+
+    private static final class ScheduledUpdate extends TimingWheel.Node {
+
+        private final BlockUpdateEntry entry;
+        private final long position;
+        private final long chunk;
+
+        private ScheduledUpdate nextAtPosition;
+        private ScheduledUpdate prevInChunk;
+        private ScheduledUpdate nextInChunk;
+
+        private ScheduledUpdate(BlockUpdateEntry entry, long time, long position, long chunk) {
+            super(time);
+            this.entry = entry;
+            this.position = position;
+            this.chunk = chunk;
         }
-        return false;
     }
 }
@@ -0,0 +1,102 @@
+package cn.nukkit.scheduler;
+
+import cn.nukkit.level.Level;
+import lombok.extern.log4j.Log4j2;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Ticks independent levels in parallel on a fork-join pool.
+ * <p>
+ * Thread ownership contract: while a level is being ticked, the level, its {@link BlockUpdateScheduler}
+ * and its entity and block entity maps belong to the worker ticking it (see {@link Level#isTickThread()}).
+ * Levels never share a worker during a tick, and {@link #tick(Level[], Consumer)} only returns once every
+ * level has finished, so everything after the barrier (network flush, player ticks, scheduler) keeps
+ * running single-threaded on the main thread as before.
+ * Code that has to touch another level during its tick must hand the work over with
+ * {@link Level#executeOnTickThread(Runnable)}. Work touching more than one level at once, like moving an entity
+ * to another level, is queued with {@link #executeAfterTick(Runnable)} and runs on the main thread once every
+ * level has finished its tick.
+ */
+@Log4j2
+public class LevelTickPool {
+
+    private final ForkJoinPool pool;
+    private final Queue<Runnable> afterTickTasks = new ConcurrentLinkedQueue<>();
+
+    public LevelTickPool(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Level Tick Worker #" + thread.getPoolIndex());
+            return thread;
+        }, (thread, ex) -> log.error("Exception in {}", thread.getName(), ex), false);
+    }
+
+    /**
+     * Run the tick action for every level and wait for all of them to finish.
+     *
+     * @param levels levels to tick
+     * @param action tick action, called once per level on a worker thread
+     */
+    public void tick(Level[] levels, Consumer<Level> action) {
+        ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            Level level = levels[i];
+            tasks[i] = this.pool.submit(() -> action.accept(level));
+        }
+
+        for (int i = 0; i < tasks.length; i++) {
+            try {
+                tasks[i].join();
+            } catch (Exception e) {
+                log.error("Exception while ticking level {}", levels[i].getFolderName(), e);
+            }
+        }
+
+        Runnable task;
+        while ((task = this.afterTickTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                log.error("Exception in a task scheduled after the level ticks", e);
+            }
+        }
+    }
+
+    /**
+     * Queue a task to run on the thread calling {@link #tick(Level[], Consumer)} after every level has finished.
+     *
+     * @param task task to run
+     */
+    public void executeAfterTick(Runnable task) {
+        this.afterTickTasks.add(task);
+    }
+
+    /**
+     * @return true if the current thread is one of the workers of this pool
+     */
+    public boolean isWorkerThread() {
+        return Thread.currentThread() instanceof ForkJoinWorkerThread thread && thread.getPool() == this.pool;
+    }
+
+    public int getParallelism() {
+        return this.pool.getParallelism();
+    }
+
+    public void shutdown() {
+        this.pool.shutdown();
+        try {
+            if (!this.pool.awaitTermination(5, TimeUnit.SECONDS)) {
+                this.pool.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            this.pool.shutdownNow();
+        }
+    }
+}
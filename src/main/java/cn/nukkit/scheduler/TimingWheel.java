@@ -0,0 +1,226 @@
+package cn.nukkit.scheduler;
+
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel keyed by tick.
+ * <p>
+ * The first level has one slot per tick for the next 256 ticks, the two levels above cover 2^14 and 2^20 ticks with
+ * coarser slots, and anything further away waits in an overflow list. Whenever the wheel passes a slot boundary of a
+ * higher level the nodes of that slot are cascaded down, so adding, removing and expiring a node is O(1) and every node
+ * is moved at most four times. Nodes of a slot expire in the order they were added.
+ * <p>
+ * Not thread safe.
+ */
+final class TimingWheel<N extends TimingWheel.Node> {
+
+    private static final int LEVEL_0_BITS = 8;
+    private static final int LEVEL_BITS = 6;
+    private static final int LEVEL_1_SHIFT = LEVEL_0_BITS;
+    private static final int LEVEL_2_SHIFT = LEVEL_0_BITS + LEVEL_BITS;
+    private static final int OVERFLOW_SHIFT = LEVEL_0_BITS + 2 * LEVEL_BITS;
+
+    private static final int LEVEL_0_MASK = (1 << LEVEL_0_BITS) - 1;
+    private static final int LEVEL_MASK = (1 << LEVEL_BITS) - 1;
+
+    private static final int OVERFLOW = 3;
+
+    private final Node[][] heads = {
+            new Node[1 << LEVEL_0_BITS],
+            new Node[1 << LEVEL_BITS],
+            new Node[1 << LEVEL_BITS],
+            new Node[1]
+    };
+    private final Node[][] tails = {
+            new Node[1 << LEVEL_0_BITS],
+            new Node[1 << LEVEL_BITS],
+            new Node[1 << LEVEL_BITS],
+            new Node[1]
+    };
+
+    /**
+     * Next tick to expire
+     */
+    private long tick;
+    private int size;
+
+    TimingWheel(long tick) {
+        this.tick = tick;
+    }
+
+    long getTick() {
+        return this.tick;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * Schedule the node at {@link Node#time}. Nodes scheduled before the next tick expire with the next tick.
+     */
+    void add(N node) {
+        if (node.time < this.tick) {
+            node.time = this.tick;
+        }
+        this.insert(node);
+        this.size++;
+    }
+
+    void remove(N node) {
+        if (this.unlink(node)) {
+            this.size--;
+        }
+    }
+
+    /**
+     * Expire the next tick.
+     *
+     * @param out receives the nodes scheduled at the tick, which are removed from the wheel
+     * @return the expired tick
+     */
+    @SuppressWarnings("unchecked")
+    long advance(List<N> out) {
+        long current = this.tick;
+        if ((current & LEVEL_0_MASK) == 0) {
+            long upper = current >> LEVEL_1_SHIFT;
+            if ((upper & LEVEL_MASK) == 0) {
+                if (((current >> LEVEL_2_SHIFT) & LEVEL_MASK) == 0) {
+                    this.cascade(OVERFLOW, 0);
+                }
+                this.cascade(2, (int) ((current >> LEVEL_2_SHIFT) & LEVEL_MASK));
+            }
+            this.cascade(1, (int) (upper & LEVEL_MASK));
+        }
+
+        int slot = (int) (current & LEVEL_0_MASK);
+        Node node = this.heads[0][slot];
+        this.heads[0][slot] = null;
+        this.tails[0][slot] = null;
+        while (node != null) {
+            Node next = node.next;
+            node.prev = null;
+            node.next = null;
+            node.level = -1;
+            out.add((N) node);
+            this.size--;
+            node = next;
+        }
+
+        this.tick = current + 1;
+        return current;
+    }
+
+    /**
+     * Remove every node from the wheel.
+     */
+    @SuppressWarnings("unchecked")
+    void drainAll(List<N> out) {
+        for (int level = 0; level < this.heads.length; level++) {
+            Node[] levelHeads = this.heads[level];
+            for (int slot = 0; slot < levelHeads.length; slot++) {
+                Node node = levelHeads[slot];
+                levelHeads[slot] = null;
+                this.tails[level][slot] = null;
+                while (node != null) {
+                    Node next = node.next;
+                    node.prev = null;
+                    node.next = null;
+                    node.level = -1;
+                    out.add((N) node);
+                    node = next;
+                }
+            }
+        }
+        this.size = 0;
+    }
+
+    /**
+     * Move the wheel to another tick. Must only be called while the wheel is empty.
+     */
+    void reset(long tick) {
+        if (this.size != 0) {
+            throw new IllegalStateException("Timing wheel is not empty");
+        }
+        this.tick = tick;
+    }
+
+    private void cascade(int level, int slot) {
+        Node node = this.heads[level][slot];
+        this.heads[level][slot] = null;
+        this.tails[level][slot] = null;
+        while (node != null) {
+            Node next = node.next;
+            node.prev = null;
+            node.next = null;
+            this.insert(node);
+            node = next;
+        }
+    }
+
+    private void insert(Node node) {
+        long time = node.time;
+        long delta = time - this.tick;
+        int level;
+        int slot;
+        if (delta < (1L << LEVEL_1_SHIFT)) {
+            level = 0;
+            slot = (int) (time & LEVEL_0_MASK);
+        } else if (delta < (1L << LEVEL_2_SHIFT)) {
+            level = 1;
+            slot = (int) ((time >> LEVEL_1_SHIFT) & LEVEL_MASK);
+        } else if (delta < (1L << OVERFLOW_SHIFT)) {
+            level = 2;
+            slot = (int) ((time >> LEVEL_2_SHIFT) & LEVEL_MASK);
+        } else {
+            level = OVERFLOW;
+            slot = 0;
+        }
+
+        node.level = level;
+        node.slot = slot;
+        Node tail = this.tails[level][slot];
+        if (tail == null) {
+            this.heads[level][slot] = node;
+        } else {
+            tail.next = node;
+            node.prev = tail;
+        }
+        this.tails[level][slot] = node;
+    }
+
+    private boolean unlink(Node node) {
+        if (node.level < 0) {
+            return false;
+        }
+
+        if (node.prev == null) {
+            this.heads[node.level][node.slot] = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next == null) {
+            this.tails[node.level][node.slot] = node.prev;
+        } else {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.level = -1;
+        return true;
+    }
+
+    abstract static class Node {
+
+        long time;
+
+        private Node prev;
+        private Node next;
+        private int level = -1;
+        private int slot;
+
+        Node(long time) {
+            this.time = time;
+        }
+    }
+}
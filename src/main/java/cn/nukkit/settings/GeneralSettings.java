@@ -43,6 +43,10 @@ public class GeneralSettings extends OkaeriConfig {
     @Comment("Force the player to use own resource packs")
     private boolean forceResourcesAllowClientPacks = true;
 
+    @CustomKey("resource-pack-chunks-ahead")
+    @Comment("Resource pack chunks sent after a requested chunk before the client asks for them, 0 to only send requested chunks")
+    private int resourcePackChunksAhead = 0;
+
     @CustomKey("shutdown-message")
     private String shutdownMessage = "Server closed";
 
@@ -47,6 +47,18 @@ public class NetworkSettings extends OkaeriConfig {
     @Comment("Connection encryption (recommended if proxy is not used)")
     private boolean encryption;
 
+    @CustomKey("batching-threads")
+    @Comment("Number of threads used to encode and compress broadcast packets, 0 to pick automatically")
+    private int batchingThreads = 0;
+
+    @CustomKey("client-blob-cache")
+    @Comment("Send chunks by sub-chunk hashes to clients supporting the blob cache, so areas seen before are not sent again")
+    private boolean clientBlobCache = true;
+
+    @CustomKey("blob-store-mb")
+    @Comment("Memory for recently sent blobs shared between chunks and players")
+    private int blobStoreMb = 64;
+
     @Setter(value = AccessLevel.NONE)
     @Comment("RCON settings")
     private RconSettings rcon = new RconSettings();
@@ -73,14 +85,20 @@ public class NetworkSettings extends OkaeriConfig {
     public static class CompressionSettings extends OkaeriConfig {
 
         @CustomKey("zlib-provider")
+        @Comment("0 = Java original, 1 = Java single thread, 2 = Java thread local, 3 = libdeflate, falls back to 2 when unavailable")
         private int zlibProvider = 3;
 
         @CustomKey("compression-level")
         private int compressionLevel = 5;
 
         @CustomKey("compression-threshold")
+        @Comment("Batches smaller than this many bytes are sent uncompressed")
         private int compressionThreshold = 256;
 
+        @CustomKey("adaptive-level")
+        @Comment("Lower the compression level while the server is busy and raise it for clients with a high ping")
+        private boolean adaptiveLevel = true;
+
         @CustomKey("use-snappy-compression")
         private boolean useSnappyCompression = false;
     }
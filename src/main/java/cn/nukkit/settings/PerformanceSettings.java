@@ -26,6 +26,15 @@ public class PerformanceSettings extends OkaeriConfig {
     @CustomKey("base-tick-rate")
     private int baseTickRate = 1;
 
+    @CustomKey("parallel-level-ticking")
+    @Comment("Tick worlds in parallel on a separate thread pool")
+    @Comment("Plugins listening to level, block and entity events must be thread safe when this is enabled")
+    private boolean parallelLevelTicking = false;
+
+    @CustomKey("level-tick-threads")
+    @Comment("Number of threads used for parallel level ticking, 0 to use the number of available processors")
+    private int levelTickThreads = 0;
+
     @CustomKey("always-tick-players")
     private boolean alwaysTickPlayers = false;
 
@@ -1,6 +1,7 @@
 package cn.nukkit.settings;
 
 import cn.nukkit.Difficulty;
+import cn.nukkit.level.antixray.AntiXrayEngine;
 import cn.nukkit.level.antixray.AntiXrayMode;
 import cn.nukkit.level.antixray.ObfuscatedBlock;
 import eu.okaeri.configs.OkaeriConfig;
@@ -102,6 +103,11 @@ public class WorldSettings extends OkaeriConfig {
     @Comment("World chunks settings")
     private ChunkSettings chunk = new ChunkSettings();
 
+    @Setter(value = AccessLevel.NONE)
+    @CustomKey("pregeneration")
+    @Comment("World pre-generation settings, see /pregen")
+    private PregenerationSettings pregeneration = new PregenerationSettings();
+
     @Setter(value = AccessLevel.NONE)
     @CustomKey("auto-save")
     @Comment("World auto save settings")
@@ -113,6 +119,7 @@ public class WorldSettings extends OkaeriConfig {
     @Comment("anti-xray:")
     @Comment("  world:")
     @Comment("      mode: LOW")
+    @Comment("      engine: FAKE_ORES")
     @Comment("      pre-deobfuscate: false")
     @Setter(value = AccessLevel.NONE)
     private Map<String, AntiXraySettings> antiXray = new HashMap<>();
@@ -145,6 +152,33 @@ public class WorldSettings extends OkaeriConfig {
         @CustomKey("worlds-entity-spawning-disabled")
         @Comment("List of worlds where entity shouldn't spawn")
         private List<String> worldsEntitySpawningDisabled = new ArrayList<>();
+
+        @Setter(value = AccessLevel.NONE)
+        @CustomKey("activation-range")
+        @Comment("Entities further away from every player than the range of their category are ticked less often")
+        private ActivationRangeSettings activationRange = new ActivationRangeSettings();
+    }
+
+    @Getter
+    @Setter
+    public static class ActivationRangeSettings extends OkaeriConfig {
+
+        private boolean enable = true;
+
+        @Comment("Range in blocks, 0 to always tick entities of the category")
+        private int monster = 32;
+
+        private int animal = 32;
+
+        private int item = 16;
+
+        private int projectile = 16;
+
+        private int misc = 16;
+
+        @CustomKey("inactive-tick-interval")
+        @Comment("Ticks between two updates of an entity outside of its activation range")
+        private int inactiveTickInterval = 20;
     }
 
     @Getter
@@ -157,6 +191,18 @@ public class WorldSettings extends OkaeriConfig {
         @CustomKey("async-chunks")
         private boolean asyncChunks = true;
 
+        @CustomKey("async-loading")
+        @Comment("Read chunks from disk on a separate thread pool instead of the main thread")
+        private boolean asyncLoading = true;
+
+        @CustomKey("loading-threads")
+        @Comment("Number of threads per world used to read chunks when async-loading is enabled")
+        private int loadingThreads = 2;
+
+        @CustomKey("network-cache-mb")
+        @Comment("Memory per world for serialized chunks shared between players, 0 to disable")
+        private int networkCacheMb = 32;
+
         @CustomKey("compression-level")
         private int compressionLevel;
 
@@ -177,6 +223,31 @@ public class WorldSettings extends OkaeriConfig {
 
         @CustomKey("generation-population-queue-size")
         private int generationPopulationQueueSize = 8;
+
+        @CustomKey("generation-threads")
+        @Comment("Number of threads per world used to generate and populate chunks, 0 uses every available core")
+        private int generationThreads = 0;
+    }
+
+    @Getter
+    @Setter
+    public static class PregenerationSettings extends OkaeriConfig {
+
+        @CustomKey("tick-budget-ms")
+        @Comment("Main thread time per tick spent on queueing and saving pre-generated chunks")
+        private int tickBudgetMs = 5;
+
+        @CustomKey("min-tps")
+        @Comment("No new chunks are queued while the server runs below this TPS")
+        private float minTps = 18;
+
+        @CustomKey("save-batch-size")
+        @Comment("Number of generated chunks written to LevelDB in one write batch")
+        private int saveBatchSize = 64;
+
+        @CustomKey("resume-on-start")
+        @Comment("Continue unfinished pre-generations when their world is loaded")
+        private boolean resumeOnStart = true;
     }
 
     @Getter
@@ -200,6 +271,9 @@ public class WorldSettings extends OkaeriConfig {
 
         private AntiXrayMode mode = AntiXrayMode.LOW;
 
+        @Comment("HIDE only hides ores, FAKE_ORES also shows fake ores, LAYERED uses one fake ore per layer")
+        private AntiXrayEngine engine = AntiXrayEngine.FAKE_ORES;
+
         @CustomKey("pre-deobfuscate")
         private boolean preDeobfuscate;
 
@@ -48,6 +48,7 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
@@ -169,6 +170,21 @@ public class BinaryStream {
         this.count += bytes.length;
     }
 
+    /**
+     * Write the remaining bytes of the buffer, without changing its position.
+     */
+    public void put(ByteBuffer bytes) {
+        int length = bytes.remaining();
+        if (length == 0) {
+            return;
+        }
+
+        this.ensureCapacity(this.count + length);
+
+        bytes.get(bytes.position(), this.buffer, this.count, length);
+        this.count += length;
+    }
+
     public long getLong() {
         return Binary.readLong(this.get(8));
     }
@@ -833,6 +849,11 @@ public class BinaryStream {
         this.put(b);
     }
 
+    public void putByteArray(ByteBuffer b) {
+        this.putUnsignedVarInt(b.remaining());
+        this.put(b);
+    }
+
     public String getString() {
         return new String(this.getByteArray(), StandardCharsets.UTF_8);
     }
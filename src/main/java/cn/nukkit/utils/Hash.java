@@ -1,5 +1,9 @@
 package cn.nukkit.utils;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
 /**
  * Hash utils
  */
@@ -20,4 +24,86 @@ public class Hash {
     public static int hashBlockZ(long triple) {
         return (int) ((((triple >> 26) & 0x3ffffff) << 38) >> 38);
     }
+
+    private static final long XXH_PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long XXH_PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long XXH_PRIME_3 = 0x165667B19E3779F9L;
+    private static final long XXH_PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long XXH_PRIME_5 = 0x27D4EB2F165667C5L;
+
+    private static final VarHandle LONG_LE = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT_LE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    public static long xxHash64(byte[] data) {
+        return xxHash64(data, 0, data.length);
+    }
+
+    /**
+     * XXH64 with seed 0, as used by the client blob cache
+     */
+    public static long xxHash64(byte[] data, int offset, int length) {
+        int end = offset + length;
+        long hash;
+
+        if (length >= 32) {
+            long v1 = XXH_PRIME_1 + XXH_PRIME_2;
+            long v2 = XXH_PRIME_2;
+            long v3 = 0;
+            long v4 = -XXH_PRIME_1;
+            int limit = end - 32;
+            do {
+                v1 = xxRound(v1, (long) LONG_LE.get(data, offset));
+                v2 = xxRound(v2, (long) LONG_LE.get(data, offset + 8));
+                v3 = xxRound(v3, (long) LONG_LE.get(data, offset + 16));
+                v4 = xxRound(v4, (long) LONG_LE.get(data, offset + 24));
+                offset += 32;
+            } while (offset <= limit);
+
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = xxMergeRound(hash, v1);
+            hash = xxMergeRound(hash, v2);
+            hash = xxMergeRound(hash, v3);
+            hash = xxMergeRound(hash, v4);
+        } else {
+            hash = XXH_PRIME_5;
+        }
+
+        hash += length;
+
+        while (offset + 8 <= end) {
+            hash ^= xxRound(0, (long) LONG_LE.get(data, offset));
+            hash = Long.rotateLeft(hash, 27) * XXH_PRIME_1 + XXH_PRIME_4;
+            offset += 8;
+        }
+
+        if (offset + 4 <= end) {
+            hash ^= ((int) INT_LE.get(data, offset) & 0xFFFFFFFFL) * XXH_PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * XXH_PRIME_2 + XXH_PRIME_3;
+            offset += 4;
+        }
+
+        while (offset < end) {
+            hash ^= (data[offset] & 0xFF) * XXH_PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * XXH_PRIME_1;
+            offset++;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= XXH_PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= XXH_PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private static long xxRound(long acc, long input) {
+        acc += input * XXH_PRIME_2;
+        acc = Long.rotateLeft(acc, 31);
+        return acc * XXH_PRIME_1;
+    }
+
+    private static long xxMergeRound(long acc, long value) {
+        acc ^= xxRound(0, value);
+        return acc * XXH_PRIME_1 + XXH_PRIME_4;
+    }
 }
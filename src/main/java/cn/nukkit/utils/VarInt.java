@@ -1,5 +1,7 @@
 package cn.nukkit.utils;
 
+import io.netty.buffer.ByteBuf;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -199,6 +201,19 @@ public final class VarInt {
         write(stream, value);
     }
 
+    /**
+     * @param buffer ByteBuf
+     * @param value  Unsigned int
+     */
+    public static void writeUnsignedVarInt(ByteBuf buffer, long value) {
+        value &= 0xFFFFFFFFL;
+        while ((value & ~0x7FL) != 0) {
+            buffer.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.writeByte((int) value);
+    }
+
     /**
      * @param stream BinaryStream
      * @param value  Signed long
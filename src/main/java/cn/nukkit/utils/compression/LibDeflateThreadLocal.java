@@ -10,6 +10,9 @@ public class LibDeflateThreadLocal implements ZlibProvider {
 
     private static final ThreadLocal<LibdeflateDecompressor> DECOMPRESSOR =
             ThreadLocal.withInitial(LibdeflateDecompressor::new);
+    // Compressors by level, creating one allocates the native compressor state
+    private static final ThreadLocal<LibdeflateCompressor[]> COMPRESSORS =
+            ThreadLocal.withInitial(() -> new LibdeflateCompressor[LibdeflateCompressor.MAX_LEVEL + 1]);
 
     @Override
     public byte[] deflate(byte[][] datas, int level) throws IOException {
@@ -23,7 +26,11 @@ public class LibDeflateThreadLocal implements ZlibProvider {
 
     @Override
     public byte[] deflateRaw(byte[][] datas, int level) throws IOException {
-        int effectiveLevel = datas.length < Server.getInstance().getSettings()
+        int length = 0;
+        for (byte[] data : datas) {
+            length += data.length;
+        }
+        int effectiveLevel = length < Server.getInstance().getSettings()
                 .network().compression().compressionThreshold() ? 0 : level;
         return compressMulti(datas, effectiveLevel, false);
     }
@@ -34,7 +41,8 @@ public class LibDeflateThreadLocal implements ZlibProvider {
     }
 
     private byte[] compressSingle(byte[] data, int level, boolean zlibFormat) throws IOException {
-        try (var compressor = new LibdeflateCompressor(clampLevel(level))) {
+        try {
+            LibdeflateCompressor compressor = getCompressor(clampLevel(level));
             return zlibFormat ? compressor.zlibCompress(data) : compressor.deflateCompress(data);
         } catch (LibdeflateException e) {
             throw new IOException("Compression failed", e);
@@ -53,6 +61,29 @@ public class LibDeflateThreadLocal implements ZlibProvider {
         return compressSingle(combined, level, zlibFormat);
     }
 
+    private static LibdeflateCompressor getCompressor(int level) {
+        LibdeflateCompressor[] compressors = COMPRESSORS.get();
+        LibdeflateCompressor compressor = compressors[level];
+        if (compressor == null) {
+            compressor = new LibdeflateCompressor(level);
+            compressors[level] = compressor;
+        }
+        //LibdeflateCompressor::close is called the time when the process exits.
+        return compressor;
+    }
+
+    /**
+     * @return whether the native library can be loaded on this platform
+     */
+    static boolean isAvailable() {
+        try {
+            getCompressor(clampLevel(LibdeflateCompressor.MIN_LEVEL));
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
     private static int clampLevel(int level) {
         if (level < LibdeflateCompressor.MIN_LEVEL) return LibdeflateCompressor.MIN_LEVEL;
         if (level > LibdeflateCompressor.MAX_LEVEL) return LibdeflateCompressor.MAX_LEVEL;
@@ -3,6 +3,7 @@ package cn.nukkit.utils.compression;
 import org.xerial.snappy.Snappy;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 public class SnappyCompression {
 
@@ -10,6 +11,12 @@ public class SnappyCompression {
         return Snappy.compress(data);
     }
 
+    public static byte[] compress(byte[] data, int offset, int length) throws IOException {
+        byte[] buffer = new byte[Snappy.maxCompressedLength(length)];
+        int size = Snappy.compress(data, offset, length, buffer, 0);
+        return Arrays.copyOf(buffer, size);
+    }
+
     public static byte[] decompress(byte[] data, int maxSize) throws IOException {
         int length = Snappy.uncompressedLength(data);
         if (maxSize > 0 && length >= maxSize) {
@@ -1,10 +1,14 @@
 package cn.nukkit.utils.compression;
 
 import cn.nukkit.Server;
+import io.netty.buffer.ByteBuf;
+import lombok.extern.log4j.Log4j2;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.zip.Deflater;
 
+@Log4j2
 public abstract class Zlib {
 
     private static ZlibProvider[] providers;
@@ -22,6 +26,7 @@ public abstract class Zlib {
      * 0 = ZlibOriginal
      * 1 = ZlibSingleThreadLowMem
      * 2 = ZlibThreadLocal (default)
+     * 3 = LibDeflateThreadLocal, falls back to ZlibThreadLocal when the native library is not available
      */
     public static void setProvider(int providerIndex) {
         switch (providerIndex) {
@@ -38,6 +43,11 @@ public abstract class Zlib {
                     providers[providerIndex] = new ZlibThreadLocal();
                 break;
             case 3:
+                if (!LibDeflateThreadLocal.isAvailable()) {
+                    log.warn("libdeflate is not available on this platform, using the Java zlib implementation");
+                    setProvider(2);
+                    return;
+                }
                 if (providers[providerIndex] == null)
                     providers[providerIndex] = new LibDeflateThreadLocal();
                 break;
@@ -67,6 +77,17 @@ public abstract class Zlib {
         return provider.deflateRaw(data, level);
     }
 
+    public static byte[] deflateRaw(byte[] data, int offset, int length, int level) throws Exception {
+        return provider.deflateRaw(data, offset, length, level);
+    }
+
+    /**
+     * Compress the range and append the result to the buffer, without an intermediate array where the provider allows it
+     */
+    public static void deflateRaw(byte[] data, int offset, int length, int level, ByteBuf out) throws Exception {
+        provider.deflateRaw(data, offset, length, level, out);
+    }
+
     public static byte[] deflateRaw(byte[][] data, int level) throws Exception {
         return provider.deflateRaw(data, level);
     }
@@ -82,4 +103,8 @@ public abstract class Zlib {
     public static byte[] inflateRaw(byte[] data, int maxSize) throws IOException {
         return provider.inflateRaw(data, maxSize);
     }
+
+    public static byte[] inflateRaw(ByteBuffer data, int maxSize) throws IOException {
+        return provider.inflateRaw(data, maxSize);
+    }
 }
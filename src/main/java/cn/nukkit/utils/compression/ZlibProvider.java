@@ -1,6 +1,10 @@
 package cn.nukkit.utils.compression;
 
+import io.netty.buffer.ByteBuf;
+
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 /**
  * ZlibProvider
@@ -17,7 +21,21 @@ interface ZlibProvider {
 
     byte[] deflateRaw(byte[] data, int level) throws IOException;
 
+    default byte[] deflateRaw(byte[] data, int offset, int length, int level) throws IOException {
+        return this.deflateRaw(Arrays.copyOfRange(data, offset, offset + length), level);
+    }
+
+    default void deflateRaw(byte[] data, int offset, int length, int level, ByteBuf out) throws IOException {
+        out.writeBytes(this.deflateRaw(data, offset, length, level));
+    }
+
     byte[] inflate(byte[] data, int maxSize) throws IOException;
 
     byte[] inflateRaw(byte[] data, int maxSize) throws IOException;
+
+    default byte[] inflateRaw(ByteBuffer data, int maxSize) throws IOException {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return this.inflateRaw(bytes, maxSize);
+    }
 }
@@ -3,8 +3,10 @@ package cn.nukkit.utils.compression;
 import cn.nukkit.Server;
 import cn.nukkit.nbt.stream.FastByteArrayOutputStream;
 import cn.nukkit.utils.ThreadCache;
+import io.netty.buffer.ByteBuf;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
@@ -62,9 +64,13 @@ public final class ZlibThreadLocal implements ZlibProvider {
 
     @Override
     public byte[] deflateRaw(byte[][] datas, int level) throws IOException {
+        int length = 0;
+        for (byte[] data : datas) {
+            length += data.length;
+        }
         Deflater deflater = DEFLATER_RAW.get();
         deflater.reset();
-        deflater.setLevel(datas.length < Server.getInstance().getSettings().network().compression().compressionThreshold() ? 0 : level);
+        deflater.setLevel(length < Server.getInstance().getSettings().network().compression().compressionThreshold() ? 0 : level);
         FastByteArrayOutputStream bos = ThreadCache.fbaos.get();
         bos.reset();
         byte[] buffer = BUFFER.get();
@@ -87,10 +93,15 @@ public final class ZlibThreadLocal implements ZlibProvider {
 
     @Override
     public byte[] deflateRaw(byte[] data, int level) throws IOException {
+        return this.deflateRaw(data, 0, data.length, level);
+    }
+
+    @Override
+    public byte[] deflateRaw(byte[] data, int offset, int length, int level) throws IOException {
         Deflater deflater = DEFLATER_RAW.get();
         deflater.reset();
         deflater.setLevel(level);
-        deflater.setInput(data);
+        deflater.setInput(data, offset, length);
         deflater.finish();
         FastByteArrayOutputStream bos = ThreadCache.fbaos.get();
         bos.reset();
@@ -103,6 +114,22 @@ public final class ZlibThreadLocal implements ZlibProvider {
         return bos.toByteArray();
     }
 
+    @Override
+    public void deflateRaw(byte[] data, int offset, int length, int level, ByteBuf out) throws IOException {
+        Deflater deflater = DEFLATER_RAW.get();
+        deflater.reset();
+        deflater.setLevel(level);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+        while (!deflater.finished()) {
+            // Grows only when the buffer is nearly full, the output is usually smaller than the input
+            out.ensureWritable(256);
+            ByteBuffer output = out.nioBuffer(out.writerIndex(), out.writableBytes());
+            out.writerIndex(out.writerIndex() + deflater.deflate(output));
+        }
+        //Deflater::end is called the time when the process exits.
+    }
+
     @Override
     public byte[] inflate(byte[] data, int maxSize) throws IOException {
         Inflater inflater = INFLATER.get();
@@ -137,7 +164,23 @@ public final class ZlibThreadLocal implements ZlibProvider {
         Inflater inflater = INFLATER_RAW.get();
         inflater.reset();
         inflater.setInput(data);
-        inflater.finished();
+        return this.inflateRaw(inflater, maxSize);
+    }
+
+    @Override
+    public byte[] inflateRaw(ByteBuffer data, int maxSize) throws IOException {
+        Inflater inflater = INFLATER_RAW.get();
+        inflater.reset();
+        inflater.setInput(data);
+        try {
+            return this.inflateRaw(inflater, maxSize);
+        } finally {
+            // Don't keep the input, it is usually a view of a pooled network buffer
+            inflater.reset();
+        }
+    }
+
+    private byte[] inflateRaw(Inflater inflater, int maxSize) throws IOException {
         FastByteArrayOutputStream bos = ThreadCache.fbaos.get();
         bos.reset();
 
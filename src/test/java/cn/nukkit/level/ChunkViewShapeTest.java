@@ -0,0 +1,65 @@
+package cn.nukkit.level;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class ChunkViewShapeTest {
+
+    @Test
+    public void testOffsetsAreOrderedByDistance() {
+        for (int radius = 0; radius <= 20; radius++) {
+            ChunkViewShape shape = ChunkViewShape.get(radius);
+            LongSet offsets = new LongOpenHashSet();
+            long last = 0;
+            for (int i = 0; i < shape.size(); i++) {
+                int x = shape.getOffsetX(i);
+                int z = shape.getOffsetZ(i);
+                long distance = ChunkViewShape.distanceSquared(x, z);
+                Assertions.assertTrue(distance >= last);
+                Assertions.assertTrue(shape.contains(x, z));
+                Assertions.assertTrue(offsets.add(Level.chunkHash(x, z)));
+                last = distance;
+            }
+
+            int count = 0;
+            for (int x = -radius - 2; x <= radius + 2; x++) {
+                for (int z = -radius - 2; z <= radius + 2; z++) {
+                    if (shape.contains(x, z)) {
+                        count++;
+                    }
+                }
+            }
+            Assertions.assertEquals(count, shape.size());
+        }
+    }
+
+    @Test
+    public void testDifferenceMatchesContains() {
+        Random random = new Random(42);
+        for (int round = 0; round < 500; round++) {
+            ChunkViewShape shape = ChunkViewShape.get(random.nextInt(12));
+            ChunkViewShape other = ChunkViewShape.get(random.nextInt(12));
+            int x = random.nextInt(40) - 20;
+            int z = random.nextInt(40) - 20;
+            int otherX = x + random.nextInt(9) - 4 + (round % 10 == 0 ? 50 : 0);
+            int otherZ = z + random.nextInt(9) - 4;
+
+            LongSet visited = new LongOpenHashSet();
+            shape.forEachNotIn(x, z, other, otherX, otherZ, index -> Assertions.assertTrue(visited.add(index)));
+
+            LongSet expected = new LongOpenHashSet();
+            for (int i = 0; i < shape.size(); i++) {
+                int chunkX = x + shape.getOffsetX(i);
+                int chunkZ = z + shape.getOffsetZ(i);
+                if (!other.contains(chunkX - otherX, chunkZ - otherZ)) {
+                    expected.add(Level.chunkHash(chunkX, chunkZ));
+                }
+            }
+            Assertions.assertEquals(expected, visited);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package cn.nukkit.level.antixray;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+public class ExposureMaskTest {
+
+    @Test
+    public void testMatchesNeighbourLookups() {
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            boolean[] transparent = new boolean[4096];
+            long[] words = new long[ExposureMask.WORDS];
+            for (int i = 0; i < transparent.length; i++) {
+                if (random.nextInt(10) == 0) {
+                    transparent[i] = true;
+                    words[i >> 6] |= 1L << i;
+                }
+            }
+
+            ExposureMask mask = new ExposureMask(words);
+            // Incremental updates have to end up where a new mask would
+            for (int change = 0; change < 500; change++) {
+                int index = random.nextInt(transparent.length);
+                transparent[index] = random.nextBoolean();
+                mask.setTransparent(index, transparent[index]);
+            }
+
+            int hidden = 0;
+            for (int i = 0; i < transparent.length; i++) {
+                boolean exposed = isExposed(transparent, i);
+                Assertions.assertEquals(exposed, mask.isExposed(i), "index " + i);
+                Assertions.assertEquals(!exposed, (mask.getHidden(i >> 6) & (1L << i)) != 0, "index " + i);
+                if (!exposed) {
+                    hidden++;
+                }
+            }
+            Assertions.assertEquals(hidden, mask.countHidden());
+        }
+    }
+
+    @Test
+    public void testOpaqueSectionHidesInterior() {
+        ExposureMask mask = new ExposureMask(new long[ExposureMask.WORDS]);
+        Assertions.assertEquals(14 * 14 * 14, mask.countHidden());
+        Assertions.assertTrue(mask.isExposed(index(0, 5, 5)));
+        Assertions.assertFalse(mask.isExposed(index(1, 1, 1)));
+
+        mask.setTransparent(index(5, 5, 5), true);
+        Assertions.assertTrue(mask.isExposed(index(4, 5, 5)));
+        Assertions.assertTrue(mask.isExposed(index(5, 6, 5)));
+        Assertions.assertTrue(mask.isExposed(index(5, 5, 4)));
+        Assertions.assertFalse(mask.isExposed(index(5, 5, 5)));
+        Assertions.assertFalse(mask.isExposed(index(6, 6, 5)));
+    }
+
+    private static boolean isExposed(boolean[] transparent, int index) {
+        int x = index >> 8;
+        int z = (index >> 4) & 0xf;
+        int y = index & 0xf;
+        if (x == 0 || x == 15 || y == 0 || y == 15 || z == 0 || z == 15) {
+            return true;
+        }
+        return transparent[index(x + 1, y, z)] || transparent[index(x - 1, y, z)]
+                || transparent[index(x, y + 1, z)] || transparent[index(x, y - 1, z)]
+                || transparent[index(x, y, z + 1)] || transparent[index(x, y, z - 1)];
+    }
+
+    private static int index(int x, int y, int z) {
+        return x << 8 | z << 4 | y;
+    }
+}
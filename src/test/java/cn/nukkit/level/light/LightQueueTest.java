@@ -0,0 +1,47 @@
+package cn.nukkit.level.light;
+
+import cn.nukkit.utils.Hash;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class LightQueueTest {
+
+    @Test
+    public void testFifoOrder() {
+        LightQueue queue = new LightQueue(4);
+        for (int i = 0; i < 3; i++) {
+            queue.add(Hash.hashBlock(i, -64 + i, -i), i);
+        }
+
+        for (int i = 0; i < 3; i++) {
+            long position = queue.poll();
+            Assertions.assertEquals(i, Hash.hashBlockX(position));
+            Assertions.assertEquals(-64 + i, Hash.hashBlockY(position));
+            Assertions.assertEquals(-i, Hash.hashBlockZ(position));
+            Assertions.assertEquals(i, queue.level());
+        }
+        Assertions.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testGrowAfterWrap() {
+        LightQueue queue = new LightQueue(4);
+        // Move head away from index 0 so growing has to unwrap the buffer
+        queue.add(-1, 0);
+        queue.add(-1, 0);
+        queue.poll();
+        queue.poll();
+
+        for (int i = 0; i < 100; i++) {
+            queue.add(i, i & 0x0f);
+        }
+        Assertions.assertEquals(100, queue.size());
+        Assertions.assertTrue(queue.capacity() >= 100);
+
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(i, queue.poll());
+            Assertions.assertEquals(i & 0x0f, queue.level());
+        }
+        Assertions.assertTrue(queue.isEmpty());
+    }
+}
@@ -0,0 +1,79 @@
+package cn.nukkit.plugin;
+
+import cn.nukkit.event.Event;
+import cn.nukkit.event.EventException;
+import cn.nukkit.event.Listener;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Method;
+
+public class MethodEventExecutorTest {
+
+    @Test
+    public void testPublicHandler() throws Exception {
+        TestListener listener = new TestListener();
+        MethodEventExecutor executor = executor("onEvent");
+        executor.execute(listener, new TestEvent());
+        executor.execute(listener, new SubEvent());
+        Assertions.assertEquals(2, listener.calls);
+    }
+
+    @Test
+    public void testPrivateHandler() throws Exception {
+        TestListener listener = new TestListener();
+        executor("onPrivateEvent").execute(listener, new TestEvent());
+        Assertions.assertEquals(1, listener.calls);
+    }
+
+    @Test
+    public void testSkipsOtherEvents() throws Exception {
+        TestListener listener = new TestListener();
+        executor("onSubEvent").execute(listener, new TestEvent());
+        Assertions.assertEquals(0, listener.calls);
+    }
+
+    @Test
+    public void testWrapsExceptions() throws Exception {
+        EventException exception = Assertions.assertThrows(EventException.class,
+                () -> executor("onFailingEvent").execute(new TestListener(), new TestEvent()));
+        Assertions.assertInstanceOf(IllegalStateException.class, exception.getCause());
+    }
+
+    private static MethodEventExecutor executor(String name) throws NoSuchMethodException {
+        for (Method method : TestListener.class.getDeclaredMethods()) {
+            if (method.getName().equals(name)) {
+                method.setAccessible(true);
+                return new MethodEventExecutor(method);
+            }
+        }
+        throw new NoSuchMethodException(name);
+    }
+
+    public static class TestEvent extends Event {
+    }
+
+    public static class SubEvent extends TestEvent {
+    }
+
+    public static class TestListener implements Listener {
+
+        private int calls;
+
+        public void onEvent(TestEvent event) {
+            this.calls++;
+        }
+
+        private void onPrivateEvent(TestEvent event) {
+            this.calls++;
+        }
+
+        int onSubEvent(SubEvent event) {
+            return ++this.calls;
+        }
+
+        public void onFailingEvent(TestEvent event) {
+            throw new IllegalStateException();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package cn.nukkit.scheduler;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class TimingWheelTest {
+
+    @Test
+    public void testNodesExpireAtTheirTick() {
+        Random random = new Random(42);
+        TimingWheel<TestNode> wheel = new TimingWheel<>(1000);
+        List<TestNode> nodes = new ArrayList<>();
+        // Cover every level including the overflow list
+        long[] ranges = {16, 256, 1 << 14, 1 << 20, 3 << 20};
+        for (int i = 0; i < 5000; i++) {
+            TestNode node = new TestNode(wheel.getTick() + random.nextLong(ranges[i % ranges.length]));
+            nodes.add(node);
+            wheel.add(node);
+        }
+
+        long last = nodes.stream().mapToLong(node -> node.time).max().orElseThrow();
+        List<TestNode> out = new ArrayList<>();
+        int expired = 0;
+        while (wheel.getTick() <= last) {
+            out.clear();
+            long tick = wheel.advance(out);
+            for (TestNode node : out) {
+                Assertions.assertEquals(node.time, tick);
+            }
+            expired += out.size();
+        }
+        Assertions.assertEquals(nodes.size(), expired);
+        Assertions.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testRemove() {
+        TimingWheel<TestNode> wheel = new TimingWheel<>(0);
+        TestNode first = new TestNode(5);
+        TestNode second = new TestNode(5);
+        TestNode far = new TestNode(100000);
+        wheel.add(first);
+        wheel.add(second);
+        wheel.add(far);
+
+        wheel.remove(first);
+        wheel.remove(far);
+        // Removing twice must not break the count
+        wheel.remove(far);
+        Assertions.assertEquals(1, wheel.size());
+
+        List<TestNode> out = new ArrayList<>();
+        for (int i = 0; i <= 5; i++) {
+            wheel.advance(out);
+        }
+        Assertions.assertEquals(List.of(second), out);
+        Assertions.assertEquals(0, wheel.size());
+    }
+
+    private static class TestNode extends TimingWheel.Node {
+
+        private TestNode(long time) {
+            super(time);
+        }
+    }
+}
@@ -41,4 +41,14 @@ public class HashTest {
         Assertions.assertEquals(z, z1);
     }
 
+    @Test
+    public void testXxHash64() {
+        Assertions.assertEquals(0xEF46DB3751D8E999L, Hash.xxHash64(new byte[0]));
+        Assertions.assertEquals(0x44BC2CF5AD770999L, Hash.xxHash64("abc".getBytes()));
+        Assertions.assertEquals(0xFBCEA83C8A378BF1L, Hash.xxHash64("Nobody inspects the spammish repetition".getBytes()));
+
+        byte[] padded = "__abc__".getBytes();
+        Assertions.assertEquals(Hash.xxHash64("abc".getBytes()), Hash.xxHash64(padded, 2, 3));
+    }
+
 }